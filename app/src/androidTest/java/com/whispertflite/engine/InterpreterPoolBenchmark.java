@@ -0,0 +1,110 @@
+package com.whispertflite.engine;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.whispertflite.MainActivity;
+import com.whispertflite.asr.AudioClip;
+import com.whispertflite.asr.Whisper;
+import com.whispertflite.asr.WhisperResult;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the aggregate throughput of concurrent local transcriptions against the latency of
+ * a single one, for 1 to MAX_INTERPRETERS interpreters, on the device's real TFLite model.
+ * Only reports the numbers, which depend on the device.
+ * <p>
+ * Opt-in: skipped unless the model file in the app's external files folder is named, e.g.
+ * <pre>
+ * ./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.model=whisper-tiny.tflite
+ * </pre>
+ */
+@RunWith(AndroidJUnit4.class)
+public class InterpreterPoolBenchmark {
+
+    private static final String TAG = "InterpreterPoolBenchmark";
+    private static final int CLIENTS = 3;
+    private static final int JOBS_PER_CLIENT = 4;
+
+    private static WhisperEngineJava load(Context context, File model, int interpreters) throws Exception {
+        boolean multilingual = !model.getName().endsWith(MainActivity.ENGLISH_ONLY_MODEL_EXTENSION);
+        File vocab = new File(model.getParentFile(),
+                multilingual ? MainActivity.MULTILINGUAL_VOCAB_FILE : MainActivity.ENGLISH_ONLY_VOCAB_FILE);
+        WhisperEngineJava engine = new WhisperEngineJava(context);
+        engine.setInterpreterCount(interpreters);
+        engine.initialize(model.getAbsolutePath(), vocab.getAbsolutePath(), multilingual);
+        assertTrue(engine.isInitialized());
+        return engine;
+    }
+
+    private static void transcribe(WhisperEngineJava engine, AudioClip clip) {
+        WhisperResult result = engine.process(clip, Whisper.Action.TRANSCRIBE, -1);
+        assertFalse(result.isFailed());
+    }
+
+    @Test
+    public void throughputByInterpreterCount() throws Exception {
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        String modelName = arguments.getString("model");
+        assumeTrue("No model given", modelName != null);
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        File model = new File(context.getExternalFilesDir(null), modelName);
+        assumeTrue("Model not found: " + model, model.exists());
+
+        // 5 s of quiet noise, a typical dictated utterance
+        byte[] pcm = new byte[5 * 16000 * 2];
+        for (int i = 0; i < pcm.length; i += 2) pcm[i] = (byte) (i * 31 % 7 - 3);
+        AudioClip clip = AudioClip.fromPcm(pcm);
+
+        for (int n = 1; n <= WhisperEngineJava.MAX_INTERPRETERS; n++) {
+            // One engine per client, e.g. the keyboard and the RecognitionService, sharing the pool
+            List<WhisperEngineJava> engines = new ArrayList<>();
+            for (int c = 0; c < CLIENTS; c++) engines.add(load(context, model, n));
+
+            WhisperEngineJava single = engines.get(0);
+            transcribe(single, clip);
+            long start = System.nanoTime();
+            transcribe(single, clip);
+            double singleMs = (System.nanoTime() - start) / 1e6;
+
+            AtomicInteger failures = new AtomicInteger();
+            List<Thread> threads = new ArrayList<>();
+            start = System.nanoTime();
+            for (WhisperEngineJava engine : engines) {
+                Thread client = new Thread(() -> {
+                    try {
+                        for (int j = 0; j < JOBS_PER_CLIENT; j++) transcribe(engine, clip);
+                    } catch (Throwable e) {
+                        Log.e(TAG, "Transcription failed", e);
+                        failures.incrementAndGet();
+                    }
+                });
+                threads.add(client);
+                client.start();
+            }
+            for (Thread client : threads) client.join();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            for (WhisperEngineJava engine : engines) engine.deinitialize();
+            assertEquals(0, failures.get());
+
+            Log.i(TAG, String.format(Locale.US, "N = %d: single job %.0f ms, %.2f jobs/s with %d clients",
+                    n, singleMs, CLIENTS * JOBS_PER_CLIENT / seconds, CLIENTS));
+        }
+        clip.release();
+    }
+}
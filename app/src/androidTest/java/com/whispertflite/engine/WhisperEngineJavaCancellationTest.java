@@ -0,0 +1,84 @@
+package com.whispertflite.engine;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.whispertflite.MainActivity;
+import com.whispertflite.asr.AudioClip;
+import com.whispertflite.asr.TranscriptionException;
+import com.whispertflite.asr.Whisper;
+import com.whispertflite.asr.WhisperResult;
+import com.whispertflite.utils.CancellationToken;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aborts a transcription while the real TFLite interpreter runs it and checks that the same
+ * engine transcribes the next clip without being reloaded.
+ * <p>
+ * Opt-in like InterpreterPoolBenchmark: skipped unless the "model" runner argument names a
+ * model file in the app's external files folder.
+ */
+@RunWith(AndroidJUnit4.class)
+public class WhisperEngineJavaCancellationTest {
+
+    private WhisperEngineJava engine;
+    private ScheduledExecutorService canceller;
+
+    @Before
+    public void setUp() throws Exception {
+        String modelName = InstrumentationRegistry.getArguments().getString("model");
+        assumeTrue("No model given", modelName != null);
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        File model = new File(context.getExternalFilesDir(null), modelName);
+        assumeTrue("Model not found: " + model, model.exists());
+
+        boolean multilingual = !model.getName().endsWith(MainActivity.ENGLISH_ONLY_MODEL_EXTENSION);
+        File vocab = new File(model.getParentFile(),
+                multilingual ? MainActivity.MULTILINGUAL_VOCAB_FILE : MainActivity.ENGLISH_ONLY_VOCAB_FILE);
+        engine = new WhisperEngineJava(context);
+        engine.setInterpreterCount(1);
+        engine.initialize(model.getAbsolutePath(), vocab.getAbsolutePath(), multilingual);
+        assertTrue(engine.isInitialized());
+        canceller = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        if (canceller != null) canceller.shutdownNow();
+        if (engine != null) engine.deinitialize();
+    }
+
+    @Test
+    public void engineTranscribesAgainAfterCancelledJob() {
+        // 30 s, a full window, so that the interpreter is still running when cancelled
+        AudioClip clip = AudioClip.fromPcm(new byte[30 * 16000 * 2]);
+        try {
+            CancellationToken token = new CancellationToken();
+            canceller.schedule(token::cancel, 100, TimeUnit.MILLISECONDS);
+            WhisperResult cancelled = engine.process(clip, Whisper.Action.TRANSCRIBE, -1, token);
+            assertTrue(cancelled.isFailed());
+            assertEquals(TranscriptionException.Reason.CANCELLED, cancelled.getError().getReason());
+
+            // The interpreter's cancelled flag is reset for the next job
+            WhisperResult next = engine.process(clip, Whisper.Action.TRANSCRIBE, -1, new CancellationToken());
+            assertFalse(next.isFailed());
+            assertTrue(engine.isInitialized());
+        } finally {
+            clip.release();
+        }
+    }
+}
@@ -16,7 +16,9 @@ import androidx.appcompat.app.AppCompatDelegate;
 import androidx.appcompat.widget.SwitchCompat;
 import androidx.preference.PreferenceManager;
 
+import com.whispertflite.engine.WhisperEngineRemote;
 import com.whispertflite.utils.ApiEndpointBuilder;
+import com.whispertflite.utils.RemoteEndpoint;
 import com.whispertflite.utils.ThemeUtils;
 
 public class ApiSettingsActivity extends AppCompatActivity {
@@ -28,6 +30,10 @@ public class ApiSettingsActivity extends AppCompatActivity {
     private EditText editEndpoint;
     private EditText editModel;
     private EditText editCustomDictionary;
+    private EditText editAdditionalEndpoints;
+    private SwitchCompat switchHedging;
+    private SwitchCompat switchStreaming;
+    private TextView tvEndpointStats;
     private Button btnSave;
     private TextView tvStatus;
     private SharedPreferences sp;
@@ -55,6 +61,10 @@ public class ApiSettingsActivity extends AppCompatActivity {
         editEndpoint = findViewById(R.id.editEndpoint);
         editModel = findViewById(R.id.editModel);
         editCustomDictionary = findViewById(R.id.editCustomDictionary);
+        editAdditionalEndpoints = findViewById(R.id.editAdditionalEndpoints);
+        switchHedging = findViewById(R.id.switchHedging);
+        switchStreaming = findViewById(R.id.switchStreaming);
+        tvEndpointStats = findViewById(R.id.tvEndpointStats);
         btnSave = findViewById(R.id.btnSave);
         tvStatus = findViewById(R.id.tvSettingsStatus);
 
@@ -115,6 +125,15 @@ public class ApiSettingsActivity extends AppCompatActivity {
         editEndpoint.setText(sp.getString("apiEndpoint", ApiEndpointBuilder.GROQ_BASE_URL));
         editModel.setText(sp.getString("apiModel", ApiEndpointBuilder.GROQ_DEFAULT_MODEL));
         editCustomDictionary.setText(sp.getString("customDictionary", ""));
+        editAdditionalEndpoints.setText(sp.getString("apiAdditionalEndpoints", ""));
+        switchHedging.setChecked(sp.getBoolean("apiHedging", false));
+        switchStreaming.setChecked(sp.getBoolean("apiStreaming", false));
+
+        String stats = WhisperEngineRemote.getRouter().dumpStats(System.currentTimeMillis());
+        if (!stats.isEmpty()) {
+            tvEndpointStats.setText(getString(R.string.endpoint_stats) + "\n" + stats
+                    + "\n" + WhisperEngineRemote.getHedgePolicy().dumpStats());
+        }
     }
 
     private void saveSettings() {
@@ -124,6 +143,7 @@ public class ApiSettingsActivity extends AppCompatActivity {
 
         // Validate
         String error = ApiEndpointBuilder.validateSettings(apiKey, endpoint, model);
+        if (error == null) error = RemoteEndpoint.validateList(editAdditionalEndpoints.getText().toString());
         if (error != null) {
             tvStatus.setText(error);
             tvStatus.setTextColor(getResources().getColor(android.R.color.holo_red_dark));
@@ -142,6 +162,9 @@ public class ApiSettingsActivity extends AppCompatActivity {
         editor.putString("apiEndpoint", endpoint);
         editor.putString("apiModel", model);
         editor.putString("customDictionary", editCustomDictionary.getText().toString().trim());
+        editor.putString("apiAdditionalEndpoints", editAdditionalEndpoints.getText().toString().trim());
+        editor.putBoolean("apiHedging", switchHedging.isChecked());
+        editor.putBoolean("apiStreaming", switchStreaming.isChecked());
         editor.apply();
 
         finish();
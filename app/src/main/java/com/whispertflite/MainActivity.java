@@ -41,12 +41,17 @@ import androidx.core.content.ContextCompat;
 
 import com.github.houbb.opencc4j.util.ZhConverterUtil;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
+import com.whispertflite.asr.AudioClip;
+import com.whispertflite.asr.PipelineListener;
 import com.whispertflite.asr.Recorder;
+import com.whispertflite.asr.TranscriptionException;
 import com.whispertflite.asr.Whisper;
 import com.whispertflite.asr.WhisperResult;
+import com.whispertflite.engine.WhisperEngineJava;
 import com.whispertflite.utils.HapticFeedback;
 import com.whispertflite.utils.InputLang;
 import com.whispertflite.utils.LanguagePairAdapter;
+import com.whispertflite.utils.MetricsRegistry;
 import com.whispertflite.utils.ThemeUtils;
 
 import org.woheller69.freeDroidWarn.FreeDroidWarn;
@@ -71,6 +76,9 @@ public class MainActivity extends AppCompatActivity {
     public static final String ENGLISH_ONLY_MODEL_EXTENSION = ".en.tflite";
     public static final String ENGLISH_ONLY_VOCAB_FILE = "filters_vocab_en.bin";
     public static final String MULTILINGUAL_VOCAB_FILE = "filters_vocab_multilingual.bin";
+    // Shows the stage latencies, e.g.
+    // adb shell am start -n org.woheller69.whisperremote/com.whispertflite.MainActivity -a com.whispertflite.DUMP_METRICS
+    public static final String ACTION_DUMP_METRICS = "com.whispertflite.DUMP_METRICS";
 
 
     private TextView tvStatus;
@@ -82,6 +90,11 @@ public class MainActivity extends AppCompatActivity {
     private CheckBox append;
     private CheckBox translate;
     private CheckBox modeSimpleChinese;
+    private CheckBox modePreRoll;
+    private CheckBox modeContinuous;
+    private CheckBox modeLongRecording;
+    private CheckBox modeNativeRate;
+    private CheckBox modeDual;
     private CheckBox modeTTS;
     private ProgressBar processingBar;
     private ImageButton btnInfo;
@@ -95,14 +108,16 @@ public class MainActivity extends AppCompatActivity {
     private Spinner spinnerTflite;
     private CountDownTimer countDownTimer;
     private Spinner spinnerLanguage;
+    private Spinner spinnerInterpreters;
     private int langToken = -1;
-    private long startTime = 0;
+    private long timeTaken = 0;
     private TextToSpeech tts;
 
     @Override
     protected void onDestroy() {
         deinitModel();
         deinitTTS();
+        if (mRecorder != null) mRecorder.close();
         super.onDestroy();
     }
 
@@ -292,6 +307,77 @@ public class MainActivity extends AppCompatActivity {
             tvResult.setText("");
         });
 
+        modePreRoll = findViewById(R.id.mode_pre_roll);
+        modePreRoll.setChecked(sp.getBoolean("imePreRoll", false));
+        modePreRoll.setOnCheckedChangeListener((compoundButton, isChecked) -> {
+            SharedPreferences.Editor editor = sp.edit();
+            editor.putBoolean("imePreRoll", isChecked);
+            editor.apply();
+        });
+
+        modeContinuous = findViewById(R.id.mode_continuous);
+        modeContinuous.setChecked(sp.getBoolean("imeContinuous", false));
+        modeContinuous.setOnCheckedChangeListener((compoundButton, isChecked) -> {
+            SharedPreferences.Editor editor = sp.edit();
+            editor.putBoolean("imeContinuous", isChecked);
+            editor.apply();
+        });
+
+        modeLongRecording = findViewById(R.id.mode_long_recording);
+        modeLongRecording.setChecked(sp.getBoolean("longRecording", false));
+        modeLongRecording.setOnCheckedChangeListener((compoundButton, isChecked) -> {
+            SharedPreferences.Editor editor = sp.edit();
+            editor.putBoolean("longRecording", isChecked);
+            editor.apply();
+        });
+
+        modeNativeRate = findViewById(R.id.mode_native_rate);
+        modeNativeRate.setChecked(sp.getBoolean("nativeRateCapture", false));
+        modeNativeRate.setOnCheckedChangeListener((compoundButton, isChecked) -> {
+            SharedPreferences.Editor editor = sp.edit();
+            editor.putBoolean("nativeRateCapture", isChecked);
+            editor.apply();
+        });
+
+        spinnerInterpreters = findViewById(R.id.spnrInterpreters);
+        List<Integer> interpreterCounts = new ArrayList<>();
+        for (int n = 1; n <= WhisperEngineJava.MAX_INTERPRETERS; n++) interpreterCounts.add(n);
+        ArrayAdapter<Integer> interpreterAdapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, interpreterCounts);
+        interpreterAdapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        spinnerInterpreters.setAdapter(interpreterAdapter);
+        spinnerInterpreters.setSelection(WhisperEngineJava.getInterpreterCount(sp) - 1, false);
+        spinnerInterpreters.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                int count = interpreterCounts.get(position);
+                if (count == WhisperEngineJava.getInterpreterCount(sp)) return;
+                SharedPreferences.Editor editor = sp.edit();
+                editor.putInt("interpreterCount", count);
+                editor.apply();
+                // Reload the local model with the other number of interpreters
+                if (mWhisper != null && !mWhisper.isInProgress() && !Whisper.isRemoteMode(MainActivity.this)) {
+                    deinitModel();
+                    initModel();
+                }
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) { }
+        });
+
+        modeDual = findViewById(R.id.mode_dual);
+        modeDual.setChecked(sp.getBoolean("dualOutput", false));
+        modeDual.setOnCheckedChangeListener((compoundButton, isChecked) -> {
+            SharedPreferences.Editor editor = sp.edit();
+            editor.putBoolean("dualOutput", isChecked);
+            editor.apply();
+            // Both signatures run on interpreters of their own
+            if (mWhisper != null && !mWhisper.isInProgress() && !Whisper.isRemoteMode(this)) {
+                deinitModel();
+                initModel();
+            }
+        });
+
         tvStatus = findViewById(R.id.tvStatus);
         tvResult = findViewById(R.id.tvResult);
         tvResult.setOnClickListener(view -> tvResult.setCursorVisible(true));
@@ -315,37 +401,44 @@ public class MainActivity extends AppCompatActivity {
 
         // Audio recording functionality
         mRecorder = new Recorder(this);
-        mRecorder.setListener(new Recorder.RecorderListener() {
+        mRecorder.setListener(new PipelineListener() {
             @Override
-            public void onUpdateReceived(String message) {
-                Log.d(TAG, "Update is received, Message: " + message);
-                if (message.equals(Recorder.MSG_RECORDING)) {
-                    runOnUiThread(() -> tvStatus.setText(getString(R.string.record_button) +"…"));
-                    if (!append.isChecked()) runOnUiThread(() -> tvResult.setText(""));
-                    runOnUiThread(() -> btnRecord.setBackgroundResource(R.drawable.rounded_button_background_pressed));
-                } else if (message.equals(Recorder.MSG_RECORDING_DONE)) {
-                    HapticFeedback.vibrate(mContext);
-                    runOnUiThread(() -> btnRecord.setBackgroundResource(R.drawable.rounded_button_background));
-
-                    if (translate.isChecked()) startProcessing(Whisper.ACTION_TRANSLATE);
-                    else startProcessing(Whisper.ACTION_TRANSCRIBE);
-                } else if (message.equals(Recorder.MSG_RECORDING_ERROR)) {
-                    HapticFeedback.vibrate(mContext);
-                    if (countDownTimer!=null) { countDownTimer.cancel();}
-                    runOnUiThread(() -> {
-                        btnRecord.setBackgroundResource(R.drawable.rounded_button_background);
-                        processingBar.setProgress(0);
-                        tvStatus.setText(getString(R.string.error_no_input));
-                    });
-                }
+            public void onRecordingStarted() {
+                tvStatus.setText(getString(R.string.record_button) +"…");
+                if (!append.isChecked()) tvResult.setText("");
+                btnRecord.setBackgroundResource(R.drawable.rounded_button_background_pressed);
             }
 
-        });
+            @Override
+            public void onRecordingDone() {
+                HapticFeedback.vibrate(mContext);
+                btnRecord.setBackgroundResource(R.drawable.rounded_button_background);
+
+                if (translate.isChecked()) startProcessing(Whisper.ACTION_TRANSLATE);
+                else startProcessing(Whisper.ACTION_TRANSCRIBE);
+            }
+
+            @Override
+            public void onFailure(TranscriptionException error) {
+                Log.d(TAG, "Recording failed: " + error.getMessage());
+                HapticFeedback.vibrate(mContext);
+                if (countDownTimer!=null) { countDownTimer.cancel();}
+                btnRecord.setBackgroundResource(R.drawable.rounded_button_background);
+                processingBar.setProgress(0);
+                tvStatus.setText(getString(R.string.error_no_input));
+            }
+        }, getMainExecutor());
         FreeDroidWarn.showWarningOnUpgrade(this, BuildConfig.VERSION_CODE);
         if (GithubStar.shouldShowStarDialog(this)) GithubStar.starDialog(this, "https://github.com/woheller69/whisperIME");
         // Assume this Activity is the current activity, check record permission
         checkPermissions();
+        if (ACTION_DUMP_METRICS.equals(getIntent().getAction())) dumpMetrics();
+    }
 
+    private void dumpMetrics() {
+        String metrics = MetricsRegistry.getDefault().dump();
+        Log.i(TAG, "Metrics:\n" + metrics);
+        tvResult.setText(metrics);
     }
 
     private void checkInputMethodEnabled() {
@@ -385,44 +478,57 @@ public class MainActivity extends AppCompatActivity {
             Log.d(TAG, "Initialized: " + modelFile.getName());
         }
 
-        mWhisper.setListener(new Whisper.WhisperListener() {
+        // Dual output needs a model with a translate signature
+        findViewById(R.id.layout_mode_dual).setVisibility(mWhisper.canTranslate() ? View.VISIBLE : View.GONE);
+
+        mWhisper.setListener(new PipelineListener() {
             @Override
-            public void onUpdateReceived(String message) {
-                Log.d(TAG, "Update is received, Message: " + message);
+            public void onProcessingStarted() {
+                tvStatus.setText(getString(R.string.processing));
+                spinnerTflite.setEnabled(false);
+            }
 
-                if (message.equals(Whisper.MSG_PROCESSING)) {
-                    runOnUiThread(() -> tvStatus.setText(getString(R.string.processing)));
-                    startTime = System.currentTimeMillis();
-                    runOnUiThread(() -> spinnerTflite.setEnabled(false));
-                }
+            @Override
+            public void onStageTiming(Stage stage, long millis) {
+                if (stage == Stage.TRANSCRIPTION) timeTaken = millis;
             }
 
             @Override
-            public void onResultReceived(WhisperResult whisperResult) {
-                long timeTaken = System.currentTimeMillis() - startTime;
-                runOnUiThread(() -> tvStatus.setText(getString(R.string.processing_done) + timeTaken + "\u2009ms" + "\n"+ getString(R.string.language) + " " + new Locale(whisperResult.getLanguage()).getDisplayLanguage() + " " + (whisperResult.getTask() == Whisper.Action.TRANSCRIBE ? getString(R.string.mode_transcription) : getString(R.string.mode_translation))));
-                runOnUiThread(() -> processingBar.setIndeterminate(false));
+            public void onResult(WhisperResult whisperResult) {
+                tvStatus.setText(getString(R.string.processing_done) + timeTaken + "\u2009ms" + "\n"+ getString(R.string.language) + " " + new Locale(whisperResult.getLanguage()).getDisplayLanguage() + " " + (whisperResult.getTask() == Whisper.Action.TRANSCRIBE ? getString(R.string.mode_transcription) : getString(R.string.mode_translation)));
+                processingBar.setIndeterminate(false);
                 Log.d(TAG, "Result: " + whisperResult.getResult() + " " + whisperResult.getLanguage() + " " + (whisperResult.getTask() == Whisper.Action.TRANSCRIBE ? "transcribing" : "translating"));
                 if ((whisperResult.getLanguage().equals("zh")) && (whisperResult.getTask() == Whisper.Action.TRANSCRIBE)){
-                    runOnUiThread(() -> layoutModeChinese.setVisibility(View.VISIBLE));
+                    layoutModeChinese.setVisibility(View.VISIBLE);
                     boolean simpleChinese = sp.getBoolean("simpleChinese",false);  //convert to desired Chinese mode
+                    long start = System.nanoTime();
                     String result = simpleChinese ? ZhConverterUtil.toSimple(whisperResult.getResult()) : ZhConverterUtil.toTraditional(whisperResult.getResult());
-                    runOnUiThread(() -> tvResult.append(result));
+                    MetricsRegistry.getDefault().recordSince(MetricsRegistry.Stage.CHINESE_CONVERSION, start);
+                    tvResult.append(result);
                 } else {
-                    runOnUiThread(() -> layoutModeChinese.setVisibility(View.GONE));
-                    runOnUiThread(() -> tvResult.append(whisperResult.getResult()));
+                    layoutModeChinese.setVisibility(View.GONE);
+                    tvResult.append(whisperResult.getResult());
                 }
-                runOnUiThread(() -> spinnerTflite.setEnabled(true));
+                if (whisperResult.hasTranslation()) tvResult.append("\n" + whisperResult.getTranslation());
+                spinnerTflite.setEnabled(true);
                 if (modeTTS.isChecked()){
                     tts.speak(whisperResult.getResult(), TextToSpeech.QUEUE_FLUSH, null, null);
                 }
             }
-        });
+
+            @Override
+            public void onFailure(TranscriptionException error) {
+                Log.d(TAG, "Transcription failed: " + error.getMessage());
+                processingBar.setIndeterminate(false);
+                spinnerTflite.setEnabled(true);
+                tvStatus.setText(error.getMessage());
+            }
+        }, getMainExecutor());
     }
 
     private void deinitModel() {
         if (mWhisper != null) {
-            mWhisper.unloadModel();
+            mWhisper.close();
             mWhisper = null;
         }
     }
@@ -511,6 +617,8 @@ public class MainActivity extends AppCompatActivity {
     // Recording calls
     private void startRecording() {
         checkPermissions();
+        mRecorder.setLongRecording(sp.getBoolean("longRecording", false));
+        mRecorder.setNativeRateCapture(sp.getBoolean("nativeRateCapture", false));
         mRecorder.start();
     }
 
@@ -527,7 +635,10 @@ public class MainActivity extends AppCompatActivity {
         });
         mWhisper.setAction(action);
         mWhisper.setLanguage(langToken);
-        mWhisper.start();
+        mWhisper.setDualOutput(modeDual.isChecked() && mWhisper.canTranslate());
+        AudioClip recording = mRecorder.acquireLastRecording();
+        mWhisper.start(recording);
+        if (recording != null) recording.release();
     }
 
     private void stopProcessing() {
@@ -22,6 +22,7 @@ import android.view.KeyEvent;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.InputConnection;
 import android.widget.ImageButton;
 import android.widget.LinearLayout;
 import android.widget.ProgressBar;
@@ -30,11 +31,15 @@ import android.widget.TextView;
 import androidx.core.content.ContextCompat;
 
 import com.github.houbb.opencc4j.util.ZhConverterUtil;
+import com.whispertflite.asr.AudioClip;
+import com.whispertflite.asr.PipelineListener;
 import com.whispertflite.asr.Recorder;
+import com.whispertflite.asr.TranscriptionException;
 import com.whispertflite.asr.Whisper;
 import com.whispertflite.asr.WhisperResult;
 import com.whispertflite.utils.HapticFeedback;
 import com.whispertflite.utils.InputLang;
+import com.whispertflite.utils.MetricsRegistry;
 
 import java.io.File;
 
@@ -58,7 +63,9 @@ public class WhisperInputMethodService extends InputMethodService {
     private CountDownTimer countDownTimer;
     private static boolean translate = false;
     private boolean modeAuto = false;
+    private boolean continuous = false;
     private LinearLayout layoutButtons;
+    private boolean composing = false;
 
     @Override
     public void onCreate() {
@@ -69,9 +76,11 @@ public class WhisperInputMethodService extends InputMethodService {
     @Override
     public void onDestroy() {
         deinitModel();
+        if (mRecorder != null) mRecorder.stopWarmCapture();
         if (mRecorder != null && mRecorder.isInProgress()) {
             mRecorder.stop();
         }
+        if (mRecorder != null) mRecorder.close();
         super.onDestroy();
     }
 
@@ -80,12 +89,33 @@ public class WhisperInputMethodService extends InputMethodService {
         if (attribute.inputType ==  EditorInfo.TYPE_NULL) {
             Log.d(TAG, "Cancelling: onStartInput: inputType=" + attribute.inputType + ", package=" + attribute.packageName + ", fieldId=" + attribute.fieldId);
             deinitModel();
+            if (mRecorder != null) mRecorder.stopWarmCapture();
             if (mRecorder != null && mRecorder.isInProgress()) {
                 mRecorder.stop();
             }
+        } else if (!restarting && mWhisper != null && mWhisper.isInProgress()) {
+            // The text would go to the new field, so stop transcribing for the old one
+            Log.d(TAG, "Cancelling transcription: onStartInput: fieldId=" + attribute.fieldId);
+            stopTranscription();
         }
     }
 
+    @Override
+    public void onFinishInputView(boolean finishingInput) {
+        // Release the microphone as soon as the keyboard is hidden
+        if (mRecorder != null) mRecorder.stopWarmCapture();
+        if (continuous && mRecorder != null && mRecorder.isInProgress()) {
+            mRecorder.stop();
+        }
+        super.onFinishInputView(finishingInput);
+    }
+
+    @Override
+    public void onWindowHidden() {
+        if (mRecorder != null) mRecorder.stopWarmCapture();
+        super.onWindowHidden();
+    }
+
     @Override
     public void onStartInputView(EditorInfo attribute, boolean restarting){
         boolean isRemote = Whisper.isRemoteMode(this);
@@ -118,6 +148,14 @@ public class WhisperInputMethodService extends InputMethodService {
                 }
             }
         }
+
+        // Optionally keep the microphone warm while the keyboard is visible, so that speech
+        // starting together with the tap on the record button is not clipped
+        if (mRecorder != null && sp.getBoolean("imePreRoll", false)
+                && ContextCompat.checkSelfPermission(this, android.Manifest.permission.RECORD_AUDIO) == PackageManager.PERMISSION_GRANTED) {
+            mRecorder.setNativeRateCapture(sp.getBoolean("nativeRateCapture", false));
+            mRecorder.startWarmCapture();
+        }
     }
 
 
@@ -141,30 +179,42 @@ public class WhisperInputMethodService extends InputMethodService {
         layoutButtons = view.findViewById(R.id.layout_buttons);
         checkRecordPermission();
 
-        // Audio recording functionality
+        // Audio recording functionality, replacing the recorder of an earlier input view
+        if (mRecorder != null) mRecorder.close();
         mRecorder = new Recorder(this);
-        mRecorder.setListener(new Recorder.RecorderListener() {
+        mRecorder.setListener(new PipelineListener() {
             @Override
-            public void onUpdateReceived(String message) {
-                if (message.equals(Recorder.MSG_RECORDING)) {
-                    handler.post(() -> btnRecord.setBackgroundResource(R.drawable.rounded_button_background_pressed));
-                } else if (message.equals(Recorder.MSG_RECORDING_DONE)) {
-                    HapticFeedback.vibrate(mContext);
-                    handler.post(() -> btnRecord.setBackgroundResource(R.drawable.rounded_button_background));
-                    startTranscription();
-                } else if (message.equals(Recorder.MSG_RECORDING_ERROR)) {
-                    HapticFeedback.vibrate(mContext);
-                    if (countDownTimer!=null) { countDownTimer.cancel();}
-                    handler.post(() -> {
-                        btnRecord.setBackgroundResource(R.drawable.rounded_button_background);
-                        tvStatus.setText(getString(R.string.error_no_input));
-                        tvStatus.setVisibility(View.VISIBLE);
-                        processingBar.setProgress(0);
-                    });
-                }
+            public void onRecordingStarted() {
+                btnRecord.setBackgroundResource(R.drawable.rounded_button_background_pressed);
             }
 
-        });
+            @Override
+            public void onRecordingDone() {
+                HapticFeedback.vibrate(mContext);
+                btnRecord.setBackgroundResource(R.drawable.rounded_button_background);
+                // In continuous mode all utterances have been queued already
+                if (!continuous) startTranscription();
+            }
+
+            @Override
+            public void onFailure(TranscriptionException error) {
+                HapticFeedback.vibrate(mContext);
+                if (countDownTimer!=null) { countDownTimer.cancel();}
+                btnRecord.setBackgroundResource(R.drawable.rounded_button_background);
+                tvStatus.setText(getString(R.string.error_no_input));
+                tvStatus.setVisibility(View.VISIBLE);
+                processingBar.setProgress(0);
+            }
+
+            @Override
+            public void onUtteranceRecorded(AudioClip utterance) {
+                // Transcribed while the next utterance is being recorded, results are committed in order
+                if (mWhisper != null) {
+                    prepareTranscription();
+                    mWhisper.enqueue(utterance);
+                }
+            }
+        }, getMainExecutor());
 
         if (modeAuto) {
             layoutButtons.setVisibility(View.GONE);
@@ -293,6 +343,10 @@ public class WhisperInputMethodService extends InputMethodService {
 
     private void startRecording() {
         if (modeAuto) mRecorder.initVad();
+        continuous = modeAuto && sp.getBoolean("imeContinuous", false);
+        mRecorder.setContinuous(continuous);
+        mRecorder.setLongRecording(sp.getBoolean("longRecording", false));
+        mRecorder.setNativeRateCapture(sp.getBoolean("nativeRateCapture", false));
         mRecorder.start();
     }
 
@@ -301,7 +355,7 @@ public class WhisperInputMethodService extends InputMethodService {
         mWhisper = new Whisper(this, true);
         mWhisper.initRemote();
         Log.d(TAG, "Initialized: Remote API");
-        mWhisper.setListener(createWhisperListener());
+        mWhisper.setListener(createWhisperListener(), getMainExecutor());
     }
 
     // Model initialization
@@ -313,51 +367,94 @@ public class WhisperInputMethodService extends InputMethodService {
         mWhisper = new Whisper(this);
         mWhisper.loadModel(modelFile, vocabFile, isMultilingualModel);
         Log.d(TAG, "Initialized: " + modelFile.getName());
-        mWhisper.setListener(createWhisperListener());
+        mWhisper.setListener(createWhisperListener(), getMainExecutor());
     }
 
-    private Whisper.WhisperListener createWhisperListener() {
-        return new Whisper.WhisperListener() {
+    private PipelineListener createWhisperListener() {
+        return new PipelineListener() {
             @Override
-            public void onUpdateReceived(String message) {
+            public void onPartialResult(String text) {
+                InputConnection ic = getCurrentInputConnection();
+                // Composing text of a closed connection is gone with it
+                if (ic == null) {
+                    composing = false;
+                    return;
+                }
+                // Shown as composing text, replaced by the final result
+                composing = ic.setComposingText(text.trim(), 1);
             }
 
             @Override
-            public void onResultReceived(WhisperResult whisperResult) {
-                handler.post(() -> processingBar.setIndeterminate(false));
-                handler.post(() -> {
-                    tvStatus.setText("");
-                    tvStatus.setVisibility(View.GONE);
-                });
+            public void onFailure(TranscriptionException error) {
+                processingBar.setIndeterminate(false);
+                tvStatus.setText(error.getMessage());
+                tvStatus.setVisibility(View.VISIBLE);
+                clearComposingText(getCurrentInputConnection());
+            }
+
+            @Override
+            public void onResult(WhisperResult whisperResult) {
+                processingBar.setIndeterminate(false);
+                tvStatus.setText("");
+                tvStatus.setVisibility(View.GONE);
 
                 String result = whisperResult.getResult();
                 if (whisperResult.getLanguage().equals("zh")){
                     boolean simpleChinese = sp.getBoolean("simpleChinese",false);
+                    long start = System.nanoTime();
                     result = simpleChinese ? ZhConverterUtil.toSimple(result) : ZhConverterUtil.toTraditional(result);
+                    MetricsRegistry.getDefault().recordSince(MetricsRegistry.Stage.CHINESE_CONVERSION, start);
                 }
                 boolean commitSuccess = false;
-                if (result.trim().length() > 0) commitSuccess = getCurrentInputConnection().commitText(result.trim() + " ",1);
-                if (modeAuto && commitSuccess) handler.postDelayed(() -> switchToPreviousInputMethod(), 100); //slightly delayed, otherwise some apps, e.g. WhatsApp, do not accept the committed text (commitText on inactive InputConnection)
+                InputConnection ic = getCurrentInputConnection();
+                if (ic != null && result.trim().length() > 0) {
+                    long start = System.nanoTime();
+                    commitSuccess = ic.commitText(result.trim() + " ",1);
+                    MetricsRegistry.getDefault().recordSince(MetricsRegistry.Stage.COMMIT, start);
+                    composing = false;
+                } else {
+                    clearComposingText(ic);
+                }
+                // In continuous mode the keyboard stays open for the next utterance
+                if (modeAuto && !continuous && commitSuccess) handler.postDelayed(() -> switchToPreviousInputMethod(), 100); //slightly delayed, otherwise some apps, e.g. WhatsApp, do not accept the committed text (commitText on inactive InputConnection)
             }
         };
     }
 
+    /**
+     * Removes the partial result shown as composing text, if any. Without a connection there
+     * is nothing left to remove.
+     */
+    private void clearComposingText(InputConnection ic) {
+        if (composing && ic != null) {
+            ic.setComposingText("", 1);
+            ic.finishComposingText();
+        }
+        composing = false;
+    }
+
     private void startTranscription() {
         if (countDownTimer!=null) { countDownTimer.cancel();}
         handler.post(() -> processingBar.setProgress(0));
         handler.post(() -> processingBar.setIndeterminate(true));
         if (mWhisper!=null){
-            if (translate) mWhisper.setAction(Whisper.ACTION_TRANSLATE);
-            else mWhisper.setAction(Whisper.ACTION_TRANSCRIBE);
-
-            String langCode = sp.getString("language", "auto");
-            int langToken = InputLang.getIdForLanguage(InputLang.getLangList(),langCode);
-            Log.d("WhisperIME","default langToken " + langToken);
-            mWhisper.setLanguage(langToken);
-            mWhisper.start();
+            prepareTranscription();
+            AudioClip recording = mRecorder.acquireLastRecording();
+            mWhisper.start(recording);
+            if (recording != null) recording.release();
         }
     }
 
+    private void prepareTranscription() {
+        if (translate) mWhisper.setAction(Whisper.ACTION_TRANSLATE);
+        else mWhisper.setAction(Whisper.ACTION_TRANSCRIBE);
+
+        String langCode = sp.getString("language", "auto");
+        int langToken = InputLang.getIdForLanguage(InputLang.getLangList(),langCode);
+        Log.d("WhisperIME","default langToken " + langToken);
+        mWhisper.setLanguage(langToken);
+    }
+
     private void stopTranscription() {
         handler.post(() -> processingBar.setIndeterminate(false));
         mWhisper.stop();
@@ -374,7 +471,7 @@ public class WhisperInputMethodService extends InputMethodService {
 
     private void deinitModel() {
         if (mWhisper != null) {
-            mWhisper.unloadModel();
+            mWhisper.close();
             mWhisper = null;
         }
     }
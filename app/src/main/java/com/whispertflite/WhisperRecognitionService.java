@@ -3,6 +3,7 @@ package com.whispertflite;
 import static android.speech.SpeechRecognizer.ERROR_CLIENT;
 import static android.speech.SpeechRecognizer.ERROR_INSUFFICIENT_PERMISSIONS;
 import static android.speech.SpeechRecognizer.ERROR_LANGUAGE_UNAVAILABLE;
+import static android.speech.SpeechRecognizer.ERROR_NETWORK;
 import static com.whispertflite.MainActivity.ENGLISH_ONLY_MODEL_EXTENSION;
 import static com.whispertflite.MainActivity.ENGLISH_ONLY_VOCAB_FILE;
 import static com.whispertflite.MainActivity.MULTILINGUAL_VOCAB_FILE;
@@ -26,11 +27,15 @@ import androidx.core.content.ContextCompat;
 import androidx.preference.PreferenceManager;
 
 import com.github.houbb.opencc4j.util.ZhConverterUtil;
+import com.whispertflite.asr.AudioClip;
+import com.whispertflite.asr.PipelineListener;
 import com.whispertflite.asr.Recorder;
+import com.whispertflite.asr.TranscriptionException;
 import com.whispertflite.asr.Whisper;
 import com.whispertflite.asr.WhisperResult;
 import com.whispertflite.utils.HapticFeedback;
 import com.whispertflite.utils.InputLang;
+import com.whispertflite.utils.MetricsRegistry;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -62,6 +67,10 @@ public class WhisperRecognitionService extends RecognitionService {
 
         checkRecordPermission(callback);
 
+        // A new session replaces the previous one
+        deinitModel();
+        if (mRecorder != null) mRecorder.close();
+
         boolean isRemote = Whisper.isRemoteMode(this);
 
         if (isRemote) {
@@ -86,29 +95,36 @@ public class WhisperRecognitionService extends RecognitionService {
         }
 
         mRecorder = new Recorder(this);
-        mRecorder.setListener(message -> {
-            if (message.equals(Recorder.MSG_RECORDING)){
+        mRecorder.setListener(new PipelineListener() {
+            @Override
+            public void onRecordingStarted() {
                 try {
                     callback.rmsChanged(10);
                 } catch (RemoteException e) {
                     throw new RuntimeException(e);
                 }
-            } else if (message.equals(Recorder.MSG_RECORDING_DONE)) {
-                HapticFeedback.vibrate(this);
+            }
+
+            @Override
+            public void onRecordingDone() {
+                HapticFeedback.vibrate(WhisperRecognitionService.this);
                 try {
                     callback.rmsChanged(-20.0f);
                 } catch (RemoteException e) {
                     throw new RuntimeException(e);
                 }
                 startTranscription();
-            } else if (message.equals(Recorder.MSG_RECORDING_ERROR)) {
+            }
+
+            @Override
+            public void onFailure(TranscriptionException error) {
                 try {
                     callback.error(ERROR_CLIENT);
                 } catch (RemoteException e) {
                     throw new RuntimeException(e);
                 }
             }
-        });
+        }, getMainExecutor());
 
         if (!mWhisper.isInProgress()) {
             HapticFeedback.vibrate(this);
@@ -148,7 +164,7 @@ public class WhisperRecognitionService extends RecognitionService {
         Log.d(TAG, "Initialized: Remote API");
         mWhisper.setLanguage(langToken);
         Log.d(TAG, "Language token " + langToken);
-        mWhisper.setListener(createWhisperListener(callback));
+        mWhisper.setListener(createWhisperListener(callback), getMainExecutor());
     }
 
     // Model initialization
@@ -162,16 +178,23 @@ public class WhisperRecognitionService extends RecognitionService {
         Log.d(TAG, "Initialized: " + modelFile.getName());
         mWhisper.setLanguage(langToken);
         Log.d(TAG, "Language token " + langToken);
-        mWhisper.setListener(createWhisperListener(callback));
+        mWhisper.setListener(createWhisperListener(callback), getMainExecutor());
     }
 
-    private Whisper.WhisperListener createWhisperListener(Callback callback) {
-        return new Whisper.WhisperListener() {
+    private PipelineListener createWhisperListener(Callback callback) {
+        return new PipelineListener() {
             @Override
-            public void onUpdateReceived(String message) { }
+            public void onFailure(TranscriptionException error) {
+                Log.d(TAG, "Transcription failed: " + error.getMessage());
+                try {
+                    callback.error(error.getReason() == TranscriptionException.Reason.REMOTE_FAILED ? ERROR_NETWORK : ERROR_CLIENT);
+                } catch (RemoteException e) {
+                    throw new RuntimeException(e);
+                }
+            }
 
             @Override
-            public void onResultReceived(WhisperResult whisperResult) {
+            public void onResult(WhisperResult whisperResult) {
                 if (whisperResult.getResult().trim().length() > 0){
                     Log.d(TAG, whisperResult.getResult().trim());
                     try {
@@ -183,12 +206,16 @@ public class WhisperRecognitionService extends RecognitionService {
                         String result = whisperResult.getResult();
                         if (whisperResult.getLanguage().equals("zh")){
                             boolean simpleChinese = sp.getBoolean("RecognitionServiceSimpleChinese",false);
+                            long start = System.nanoTime();
                             result = simpleChinese ? ZhConverterUtil.toSimple(result) : ZhConverterUtil.toTraditional(result);
+                            MetricsRegistry.getDefault().recordSince(MetricsRegistry.Stage.CHINESE_CONVERSION, start);
                         }
 
                         resultList.add(result.trim());
                         results.putStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION, resultList);
+                        long start = System.nanoTime();
                         callback.results(results);
+                        MetricsRegistry.getDefault().recordSince(MetricsRegistry.Stage.COMMIT, start);
                     } catch (RemoteException e) {
                         throw new RuntimeException(e);
                     }
@@ -222,7 +249,9 @@ public class WhisperRecognitionService extends RecognitionService {
                 toast.show();
             });
             mWhisper.setAction(Whisper.ACTION_TRANSCRIBE);
-            mWhisper.start();
+            AudioClip recording = mRecorder.acquireLastRecording();
+            mWhisper.start(recording);
+            if (recording != null) recording.release();
             Log.d(TAG,"Start Transcription");
         }
     }
@@ -230,10 +259,11 @@ public class WhisperRecognitionService extends RecognitionService {
     @Override
     public void onDestroy (){
         deinitModel();
+        if (mRecorder != null) mRecorder.close();
     }
     private void deinitModel() {
         if (mWhisper != null) {
-            mWhisper.unloadModel();
+            mWhisper.close();
             mWhisper = null;
         }
     }
@@ -28,11 +28,15 @@ import androidx.core.content.ContextCompat;
 import androidx.preference.PreferenceManager;
 
 import com.github.houbb.opencc4j.util.ZhConverterUtil;
+import com.whispertflite.asr.AudioClip;
+import com.whispertflite.asr.PipelineListener;
 import com.whispertflite.asr.Recorder;
+import com.whispertflite.asr.TranscriptionException;
 import com.whispertflite.asr.Whisper;
 import com.whispertflite.asr.WhisperResult;
 import com.whispertflite.utils.HapticFeedback;
 import com.whispertflite.utils.InputLang;
+import com.whispertflite.utils.MetricsRegistry;
 
 import java.io.File;
 import java.util.ArrayList;
@@ -109,27 +113,28 @@ public class WhisperRecognizeActivity extends AppCompatActivity {
 
         // Audio recording functionality
         mRecorder = new Recorder(this);
-        mRecorder.setListener(new Recorder.RecorderListener() {
+        mRecorder.setListener(new PipelineListener() {
             @Override
-            public void onUpdateReceived(String message) {
-                if (message.equals(Recorder.MSG_RECORDING)) {
-                    runOnUiThread(() -> btnRecord.setBackgroundResource(R.drawable.rounded_button_background_pressed));
-                } else if (message.equals(Recorder.MSG_RECORDING_DONE)) {
-                    HapticFeedback.vibrate(mContext);
-                    runOnUiThread(() -> btnRecord.setBackgroundResource(R.drawable.rounded_button_background));
-                    startTranscription();
-                } else if (message.equals(Recorder.MSG_RECORDING_ERROR)) {
-                    HapticFeedback.vibrate(mContext);
-                    if (countDownTimer!=null) { countDownTimer.cancel();}
-                    runOnUiThread(() -> {
-                        btnRecord.setBackgroundResource(R.drawable.rounded_button_background);
-                        processingBar.setProgress(0);
-                        Toast.makeText(mContext,R.string.error_no_input,Toast.LENGTH_SHORT).show();
-                    });
-                }
+            public void onRecordingStarted() {
+                btnRecord.setBackgroundResource(R.drawable.rounded_button_background_pressed);
             }
 
-        });
+            @Override
+            public void onRecordingDone() {
+                HapticFeedback.vibrate(mContext);
+                btnRecord.setBackgroundResource(R.drawable.rounded_button_background);
+                startTranscription();
+            }
+
+            @Override
+            public void onFailure(TranscriptionException error) {
+                HapticFeedback.vibrate(mContext);
+                if (countDownTimer!=null) { countDownTimer.cancel();}
+                btnRecord.setBackgroundResource(R.drawable.rounded_button_background);
+                processingBar.setProgress(0);
+                Toast.makeText(mContext,R.string.error_no_input,Toast.LENGTH_SHORT).show();
+            }
+        }, getMainExecutor());
 
         if (modeAuto) {
             btnRecord.setVisibility(View.GONE);
@@ -200,6 +205,8 @@ public class WhisperRecognizeActivity extends AppCompatActivity {
     }
     private void startRecording() {
         if (modeAuto) mRecorder.initVad();
+        mRecorder.setLongRecording(sp.getBoolean("longRecording", false));
+        mRecorder.setNativeRateCapture(sp.getBoolean("nativeRateCapture", false));
         mRecorder.start();
     }
 
@@ -210,7 +217,7 @@ public class WhisperRecognizeActivity extends AppCompatActivity {
         Log.d(TAG, "Initialized: Remote API");
         mWhisper.setLanguage(langToken);
         Log.d(TAG, "Language token " + langToken);
-        mWhisper.setListener(createWhisperListener());
+        mWhisper.setListener(createWhisperListener(), getMainExecutor());
     }
 
     // Model initialization
@@ -224,25 +231,32 @@ public class WhisperRecognizeActivity extends AppCompatActivity {
         Log.d(TAG, "Initialized: " + modelFile.getName());
         mWhisper.setLanguage(langToken);
         Log.d(TAG, "Language token " + langToken);
-        mWhisper.setListener(createWhisperListener());
+        mWhisper.setListener(createWhisperListener(), getMainExecutor());
     }
 
-    private Whisper.WhisperListener createWhisperListener() {
-        return new Whisper.WhisperListener() {
+    private PipelineListener createWhisperListener() {
+        return new PipelineListener() {
             @Override
-            public void onUpdateReceived(String message) { }
+            public void onFailure(TranscriptionException error) {
+                processingBar.setIndeterminate(false);
+                Toast.makeText(mContext, error.getMessage(), Toast.LENGTH_SHORT).show();
+            }
 
             @Override
-            public void onResultReceived(WhisperResult whisperResult) {
-                runOnUiThread(() -> processingBar.setIndeterminate(false));
+            public void onResult(WhisperResult whisperResult) {
+                processingBar.setIndeterminate(false);
 
                 String result = whisperResult.getResult();
                 if (whisperResult.getLanguage().equals("zh")){
                     boolean simpleChinese = sp.getBoolean("simpleChinese",false);
+                    long start = System.nanoTime();
                     result = simpleChinese ? ZhConverterUtil.toSimple(result) : ZhConverterUtil.toTraditional(result);
+                    MetricsRegistry.getDefault().recordSince(MetricsRegistry.Stage.CHINESE_CONVERSION, start);
                 }
                 if (result.trim().length() > 0){
+                    long start = System.nanoTime();
                     sendResult(result.trim());
+                    MetricsRegistry.getDefault().recordSince(MetricsRegistry.Stage.COMMIT, start);
                 }
             }
         };
@@ -266,7 +280,9 @@ public class WhisperRecognizeActivity extends AppCompatActivity {
         });
         if (mWhisper!=null){
             mWhisper.setAction(Whisper.ACTION_TRANSCRIBE);
-            mWhisper.start();
+            AudioClip recording = mRecorder.acquireLastRecording();
+            mWhisper.start(recording);
+            if (recording != null) recording.release();
             Log.d(TAG,"Start Transcription");
         }
     }
@@ -286,7 +302,7 @@ public class WhisperRecognizeActivity extends AppCompatActivity {
 
     private void deinitModel() {
         if (mWhisper != null) {
-            mWhisper.unloadModel();
+            mWhisper.close();
             mWhisper = null;
         }
     }
@@ -297,6 +313,7 @@ public class WhisperRecognizeActivity extends AppCompatActivity {
         if (mRecorder != null && mRecorder.isInProgress()) {
             mRecorder.stop();
         }
+        if (mRecorder != null) mRecorder.close();
         super.onDestroy();
     }
 }
@@ -0,0 +1,140 @@
+package com.whispertflite.asr;
+
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+/**
+ * Immutable 16 kHz, mono, PCM16 audio of one transcription job. It keeps a reference to the
+ * recording arena holding the audio, so the audio stays valid however often the recorder
+ * publishes new recordings meanwhile. Release a clip when done with it.
+ */
+public final class AudioClip {
+
+    /**
+     * Identifies the audio of a clip, e.g. to reuse what has been computed from it when the
+     * same recording is transcribed again. Clips of the same bytes of the same recording have
+     * equal keys; keys are never reused for other audio.
+     */
+    public static final class Key {
+        private final long recordingId;
+        private final int offset;
+        private final int length;
+
+        Key(long recordingId, int offset, int length) {
+            this.recordingId = recordingId;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * Returns the key of part of the clip, like AudioClip.slice().
+         */
+        public Key slice(int offset, int length) {
+            if (offset < 0 || length < 0 || offset + length > this.length) {
+                throw new IndexOutOfBoundsException("Slice " + offset + "+" + length + " of " + this.length);
+            }
+            return new Key(recordingId, this.offset + offset, length);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return recordingId == other.recordingId && offset == other.offset && length == other.length;
+        }
+
+        @Override
+        public int hashCode() {
+            return (Long.hashCode(recordingId) * 31 + offset) * 31 + length;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "recording %d [%d+%d]", recordingId, offset, length);
+        }
+    }
+
+    private final RecordingArena arena;
+    private final int offset;
+    private final int length;
+
+    private AudioClip(RecordingArena arena) {
+        this(arena, 0, arena.size());
+    }
+
+    private AudioClip(RecordingArena arena, int offset, int length) {
+        this.arena = arena;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Creates a clip of a finished recording without copying it. The arena must not be
+     * written to anymore; the clip holds its own reference.
+     */
+    public static AudioClip of(RecordingArena arena) {
+        return new AudioClip(arena.retain());
+    }
+
+    /**
+     * Creates a clip of a copy of the given PCM16 audio.
+     */
+    public static AudioClip fromPcm(byte[] pcm) {
+        return new AudioClip(RecordingArena.wrap(pcm.clone()));
+    }
+
+    /**
+     * Creates a clip of the recording currently published in RecordBuffer, or returns null
+     * if there is none.
+     */
+    public static AudioClip fromRecordBuffer() {
+        RecordingArena arena = RecordBuffer.acquire();
+        return arena != null ? new AudioClip(arena) : null;
+    }
+
+    /**
+     * Returns a read-only view of the audio, positioned at zero. Only valid until release().
+     */
+    public ByteBuffer view() {
+        ByteBuffer view = arena.view();
+        if (offset == 0 && length == view.remaining()) return view;
+        view.position(offset);
+        view.limit(offset + length);
+        return view.slice().order(view.order());
+    }
+
+    public int size() {
+        return length;
+    }
+
+    public Key getKey() {
+        return new Key(arena.getRecordingId(), offset, length);
+    }
+
+    public long getDurationMillis() {
+        return length / 2 * 1000L / AudioSource.SAMPLE_RATE;
+    }
+
+    /**
+     * Returns a clip of part of this one without copying the audio, e.g. one window of a long
+     * recording. It holds its own reference; release it when done with it.
+     *
+     * @param offset Start in bytes within this clip
+     * @param length Length in bytes
+     */
+    public AudioClip slice(int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > this.length) {
+            throw new IndexOutOfBoundsException("Slice " + offset + "+" + length + " of " + this.length);
+        }
+        return new AudioClip(arena.retain(), this.offset + offset, length);
+    }
+
+    public AudioClip retain() {
+        arena.retain();
+        return this;
+    }
+
+    public void release() {
+        arena.release();
+    }
+}
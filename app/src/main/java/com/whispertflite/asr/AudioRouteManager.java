@@ -0,0 +1,110 @@
+package com.whispertflite.asr;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.media.AudioDeviceInfo;
+import android.media.AudioManager;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routes the microphone through a Bluetooth headset when one is connected.
+ * Bluetooth SCO is only negotiated if a Bluetooth input device is present, and activate()
+ * returns once the SCO audio link is actually connected, so that capture does not start on
+ * the built-in microphone. Without a headset SCO is skipped entirely.
+ */
+public class AudioRouteManager {
+
+    private static final String TAG = "AudioRouteManager";
+    public static final long DEFAULT_SCO_TIMEOUT_MS = 3000;
+
+    private final Context mContext;
+    private final AudioManager mAudioManager;
+    // Delivers SCO state broadcasts while the main thread may be waiting for the recorder
+    private static HandlerThread sCallbackThread;
+    private boolean mScoStarted = false;
+
+    public AudioRouteManager(Context context) {
+        mContext = context;
+        mAudioManager = (AudioManager) context.getSystemService(Context.AUDIO_SERVICE);
+    }
+
+    /**
+     * Returns whether a Bluetooth headset microphone is available as input.
+     */
+    public boolean hasBluetoothInput() {
+        AudioDeviceInfo[] devices = mAudioManager.getDevices(AudioManager.GET_DEVICES_INPUTS);
+        if (devices == null) return false;
+        for (AudioDeviceInfo device : devices) {
+            if (device.getType() == AudioDeviceInfo.TYPE_BLUETOOTH_SCO) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Routes capture to a Bluetooth headset if one is present, waiting for the SCO link.
+     * If the link does not connect within the timeout, SCO is stopped again and the default
+     * microphone is used.
+     *
+     * @return Whether capture is routed through Bluetooth SCO
+     */
+    public boolean activate(long timeoutMs) throws InterruptedException {
+        if (!hasBluetoothInput()) return false;
+        if (mScoStarted && mAudioManager.isBluetoothScoOn()) return true;
+
+        CountDownLatch connected = new CountDownLatch(1);
+        BroadcastReceiver receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                // The sticky broadcast reports the state of an earlier link
+                if (isInitialStickyBroadcast()) return;
+                int state = intent.getIntExtra(AudioManager.EXTRA_SCO_AUDIO_STATE, AudioManager.SCO_AUDIO_STATE_ERROR);
+                if (state == AudioManager.SCO_AUDIO_STATE_CONNECTED) connected.countDown();
+            }
+        };
+        mContext.registerReceiver(receiver, new IntentFilter(AudioManager.ACTION_SCO_AUDIO_STATE_UPDATED),
+                null, getCallbackHandler());
+        long start = System.currentTimeMillis();
+        try {
+            mAudioManager.startBluetoothSco();
+            mAudioManager.setBluetoothScoOn(true);
+            mScoStarted = true;
+            if (connected.await(timeoutMs, TimeUnit.MILLISECONDS)) {
+                Log.d(TAG, "Bluetooth SCO connected after " + (System.currentTimeMillis() - start) + " ms");
+                return true;
+            }
+            Log.d(TAG, "Bluetooth SCO did not connect within " + timeoutMs + " ms, using the default microphone");
+            deactivate();
+            return false;
+        } catch (InterruptedException e) {
+            deactivate();
+            throw e;
+        } finally {
+            mContext.unregisterReceiver(receiver);
+        }
+    }
+
+    /**
+     * Stops Bluetooth SCO if it was started by activate().
+     */
+    public void deactivate() {
+        if (!mScoStarted) return;
+        mAudioManager.stopBluetoothSco();
+        mAudioManager.setBluetoothScoOn(false);
+        mScoStarted = false;
+    }
+
+    private static synchronized Handler getCallbackHandler() {
+        if (sCallbackThread == null) {
+            sCallbackThread = new HandlerThread("AudioRoute");
+            sCallbackThread.start();
+        }
+        return new Handler(sCallbackThread.getLooper());
+    }
+}
@@ -0,0 +1,51 @@
+package com.whispertflite.asr;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Source of 16 kHz, mono, PCM16 audio read by the Recorder.
+ * The live implementation captures from the microphone (MicAudioSource); FileAudioSource
+ * replays a recording, so that the capture path can be run and benchmarked without one.
+ *
+ * A source can be started and stopped repeatedly until it is released.
+ */
+public interface AudioSource {
+
+    int SAMPLE_RATE = 16000;
+
+    /**
+     * Creates a new, not yet started source for a recording.
+     */
+    interface Factory {
+        AudioSource create();
+    }
+
+    /**
+     * Starts (or restarts) capturing.
+     *
+     * @return Whether the source is capturing now
+     */
+    boolean start();
+
+    /**
+     * Reads up to maxBytes of audio to the start of dst, blocking until audio is available.
+     * Like AudioRecord.read(ByteBuffer, int), the position of dst is not changed.
+     *
+     * @return Number of bytes read, 0 or negative at the end of the audio or on error
+     */
+    int read(ByteBuffer dst, int maxBytes);
+
+    /**
+     * Reads up to length bytes of audio into dst, blocking until audio is available.
+     *
+     * @return Number of bytes read, 0 or negative at the end of the audio or on error
+     */
+    int read(byte[] dst, int offset, int length);
+
+    /**
+     * Stops capturing, keeping the source for a later start().
+     */
+    void stop();
+
+    void release();
+}
@@ -0,0 +1,137 @@
+package com.whispertflite.asr;
+
+import com.whispertflite.utils.WavUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays 16 kHz, mono, PCM16 audio, e.g. a WAV file, as if it was captured live.
+ * In real time mode reads block until the audio would have been captured, which reproduces
+ * the timing of a microphone; otherwise audio is delivered as fast as it is read.
+ * The end of the audio is reported as -1, which ends a recording.
+ *
+ * Pure Java, no Android dependencies — fully unit-testable.
+ */
+public class FileAudioSource implements AudioSource {
+
+    private static final int BYTES_PER_SECOND = SAMPLE_RATE * 2;
+
+    private final byte[] pcm;
+    private final boolean realTime;
+    private int position = 0;
+    private long startNanos = 0;
+    private boolean started = false;
+
+    /**
+     * @param pcm      Little-endian PCM16 audio
+     * @param realTime Deliver the audio at the rate it would be captured
+     */
+    public FileAudioSource(byte[] pcm, boolean realTime) {
+        this.pcm = pcm;
+        this.realTime = realTime;
+    }
+
+    /**
+     * Reads a WAV file, or raw PCM16 audio from any other file.
+     *
+     * @throws IOException If the file cannot be read or is a WAV file in another format
+     */
+    public static FileAudioSource fromFile(File file, boolean realTime) throws IOException {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        boolean wav = file.getName().toLowerCase(Locale.ROOT).endsWith(".wav");
+        return new FileAudioSource(wav ? WavUtil.wav16kMonoToPcm(bytes) : bytes, realTime);
+    }
+
+    /**
+     * Returns a factory whose sources replay the same audio from the start.
+     */
+    public static Factory factory(byte[] pcm, boolean realTime) {
+        return () -> new FileAudioSource(pcm, realTime);
+    }
+
+    /**
+     * Continues where the previous capture stopped.
+     *
+     * @return false if the audio has been replayed completely
+     */
+    @Override
+    public synchronized boolean start() {
+        startNanos = System.nanoTime() - bytesToNanos(position);
+        started = true;
+        return position < pcm.length - 1;
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst, int maxBytes) {
+        int length = next(Math.min(maxBytes, dst.capacity()));
+        if (length > 0) {
+            // Like AudioRecord: written to the start, the position of dst is not changed
+            ByteBuffer out = dst.duplicate();
+            out.clear();
+            out.put(pcm, position - length, length);
+        }
+        return length;
+    }
+
+    @Override
+    public synchronized int read(byte[] dst, int offset, int length) {
+        int read = next(length);
+        if (read > 0) System.arraycopy(pcm, position - read, dst, offset, read);
+        return read;
+    }
+
+    /**
+     * Advances over the next whole samples, waiting for them in real time mode.
+     *
+     * @return Number of bytes advanced over, or -1 at the end
+     */
+    private synchronized int next(int maxBytes) {
+        if (!started) return -1;
+        int length = Math.min(maxBytes, pcm.length - position) & ~1;
+        if (length <= 0) return -1;
+        if (realTime) {
+            long waitNanos = startNanos + bytesToNanos(position + length) - System.nanoTime();
+            if (waitNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return -1;
+                }
+            }
+        }
+        position += length;
+        return length;
+    }
+
+    @Override
+    public synchronized void stop() {
+        started = false;
+    }
+
+    @Override
+    public void release() {
+        stop();
+    }
+
+    /**
+     * Returns the number of bytes replayed so far.
+     */
+    public synchronized int getPosition() {
+        return position;
+    }
+
+    public synchronized void rewind() {
+        position = 0;
+        startNanos = System.nanoTime();
+    }
+
+    private static long bytesToNanos(long bytes) {
+        return TimeUnit.SECONDS.toNanos(bytes) / BYTES_PER_SECOND;
+    }
+}
@@ -0,0 +1,119 @@
+package com.whispertflite.asr;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free single-producer/single-consumer ring of fixed-size audio frames.
+ * The capture thread claims a slot, fills it and publishes it without ever blocking; the
+ * consumer thread waits for frames with await() and advances past them when done.
+ *
+ * Frames that do not fit because the consumer fell behind are dropped and counted as
+ * overruns. Waiting for the next frame is the normal case with a real-time producer; only
+ * waits longer than a frame period or so, when the producer stalled, count as underruns.
+ *
+ * Pure Java, no Android dependencies — fully unit-testable.
+ */
+public class FrameRing {
+
+    private final byte[][] slots;
+    // Sequence numbers of the next frame to read and to write
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong overruns = new AtomicLong();
+    private final AtomicLong underruns = new AtomicLong();
+    private final long underrunNanos;
+    private volatile Thread consumer = null;
+
+    /**
+     * @param underrunNanos Waits in await() longer than this count as underruns, e.g. a bit
+     *                      more than the time the producer takes per frame
+     */
+    public FrameRing(int capacity, int frameBytes, long underrunNanos) {
+        slots = new byte[capacity][frameBytes];
+        this.underrunNanos = underrunNanos;
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * Returns the slot to fill with the next frame, or null if the ring is full.
+     * Producer thread only.
+     */
+    public byte[] claim() {
+        long t = tail.get();
+        if (t - head.get() == slots.length) {
+            overruns.incrementAndGet();
+            return null;
+        }
+        return slots[(int) (t % slots.length)];
+    }
+
+    /**
+     * Makes the claimed slot available to the consumer. Producer thread only.
+     */
+    public void publish() {
+        // Full fence: the frame content is visible before the new tail, and the consumer is read
+        // only after it, so a consumer that has just found the ring empty is woken up
+        tail.set(tail.get() + 1);
+        wakeConsumer();
+    }
+
+    /**
+     * Returns the oldest frame without removing it, or null if the ring is empty.
+     * Consumer thread only.
+     */
+    public byte[] peek() {
+        long h = head.get();
+        if (h == tail.get()) return null;
+        return slots[(int) (h % slots.length)];
+    }
+
+    /**
+     * Waits until a frame is available and returns it without removing it.
+     * Consumer thread only.
+     *
+     * @return The oldest frame, or null on timeout, interrupt, wakeConsumer() or a spurious wakeup
+     */
+    public byte[] await(long timeout, TimeUnit unit) {
+        consumer = Thread.currentThread();
+        byte[] frame = peek();
+        if (frame != null) return frame;
+        long start = System.nanoTime();
+        LockSupport.parkNanos(this, unit.toNanos(timeout));
+        if (System.nanoTime() - start > underrunNanos) underruns.incrementAndGet();
+        return peek();
+    }
+
+    /**
+     * Frees the oldest frame's slot. Consumer thread only.
+     */
+    public void advance() {
+        long h = head.get();
+        if (h == tail.get()) throw new IllegalStateException("Ring is empty");
+        head.lazySet(h + 1);
+    }
+
+    /**
+     * Wakes a consumer waiting in await(), e.g. to let it check for the end of the stream.
+     */
+    public void wakeConsumer() {
+        Thread thread = consumer;
+        if (thread != null) LockSupport.unpark(thread);
+    }
+
+    public long getOverrunCount() {
+        return overruns.get();
+    }
+
+    public long getUnderrunCount() {
+        return underruns.get();
+    }
+}
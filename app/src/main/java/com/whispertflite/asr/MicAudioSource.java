@@ -0,0 +1,128 @@
+package com.whispertflite.asr;
+
+import android.annotation.SuppressLint;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+
+import com.whispertflite.utils.PolyphaseDecimator;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Captures from the microphone with an AudioRecord tuned for speech recognition.
+ *
+ * Optionally the AudioRecord runs at a multiple of 16 kHz, typically the device's native
+ * 48 kHz, which avoids the HAL resampler and its latency on many devices. The audio is then
+ * decimated to 16 kHz in Java, in preallocated buffers.
+ */
+public class MicAudioSource implements AudioSource {
+
+    private final AudioRecord audioRecord;
+    // Only used when capturing at a higher rate
+    private final PolyphaseDecimator decimator;
+    private final short[] captured;
+    private final short[] decimated;
+
+    /**
+     * @param minBufferBytes Minimum size of the AudioRecord buffer, e.g. one VAD frame
+     */
+    public MicAudioSource(int minBufferBytes) {
+        this(SAMPLE_RATE, minBufferBytes);
+    }
+
+    /**
+     * @param captureRate    Rate of the AudioRecord, a multiple of 16 kHz
+     * @param minBufferBytes Minimum size of the AudioRecord buffer at 16 kHz, e.g. one VAD frame.
+     *                       Reads return at most this many bytes when decimating.
+     */
+    @SuppressLint("MissingPermission")  // checked by the Recorder
+    public MicAudioSource(int captureRate, int minBufferBytes) {
+        int channelConfig = AudioFormat.CHANNEL_IN_MONO;
+        int audioFormat = AudioFormat.ENCODING_PCM_16BIT;
+        int audioSource = MediaRecorder.AudioSource.VOICE_RECOGNITION;
+
+        int factor = captureRate / SAMPLE_RATE;
+        if (captureRate != SAMPLE_RATE) {
+            decimator = new PolyphaseDecimator(captureRate, SAMPLE_RATE);
+            decimated = new short[minBufferBytes / 2];
+            captured = new short[decimated.length * factor];
+        } else {
+            decimator = null;
+            decimated = null;
+            captured = null;
+        }
+
+        int bufferSize = AudioRecord.getMinBufferSize(captureRate, channelConfig, audioFormat);
+        if (bufferSize < minBufferBytes * factor) bufferSize = minBufferBytes * factor;
+
+        AudioRecord.Builder builder = new AudioRecord.Builder()
+                .setAudioSource(audioSource)
+                .setAudioFormat(new AudioFormat.Builder()
+                        .setChannelMask(channelConfig)
+                        .setEncoding(audioFormat)
+                        .setSampleRate(captureRate)
+                        .build())
+                .setBufferSizeInBytes(bufferSize);
+
+        audioRecord = builder.build();
+    }
+
+    @Override
+    public boolean start() {
+        if (decimator != null) decimator.reset();
+        audioRecord.startRecording();
+        // Fails e.g. if the microphone was taken over by another app in the meantime
+        return audioRecord.getRecordingState() == AudioRecord.RECORDSTATE_RECORDING;
+    }
+
+    @Override
+    public int read(ByteBuffer dst, int maxBytes) {
+        if (decimator == null) return audioRecord.read(dst, maxBytes);
+        int samples = readDecimated(maxBytes);
+        // PCM16 little-endian like AudioRecord, position unchanged
+        for (int i = 0; i < samples; i++) {
+            dst.put(2 * i, (byte) decimated[i]);
+            dst.put(2 * i + 1, (byte) (decimated[i] >> 8));
+        }
+        return samples > 0 ? samples * 2 : samples;
+    }
+
+    @Override
+    public int read(byte[] dst, int offset, int length) {
+        if (decimator == null) return audioRecord.read(dst, offset, length);
+        int samples = readDecimated(length);
+        for (int i = 0; i < samples; i++) {
+            dst[offset + 2 * i] = (byte) decimated[i];
+            dst[offset + 2 * i + 1] = (byte) (decimated[i] >> 8);
+        }
+        return samples > 0 ? samples * 2 : samples;
+    }
+
+    /**
+     * Captures enough audio for up to maxBytes at 16 kHz and decimates it.
+     *
+     * @return Number of samples in decimated, or the AudioRecord error
+     */
+    private int readDecimated(int maxBytes) {
+        int samples = Math.min(maxBytes / 2, decimated.length);
+        int produced;
+        do {
+            // A short read may not complete an output sample
+            int read = audioRecord.read(captured, 0, samples * decimator.getFactor());
+            if (read <= 0) return read;
+            produced = decimator.process(captured, 0, read, decimated, 0);
+        } while (produced == 0);
+        return produced;
+    }
+
+    @Override
+    public void stop() {
+        audioRecord.stop();
+    }
+
+    @Override
+    public void release() {
+        audioRecord.release();
+    }
+}
@@ -0,0 +1,52 @@
+package com.whispertflite.asr;
+
+/**
+ * Typed progress of recording and transcription. Set the same listener on Recorder and Whisper
+ * to follow a whole session; callbacks run on the executor passed along with the listener, in
+ * the order they occurred. All methods are optional.
+ */
+public interface PipelineListener {
+
+    /**
+     * Measured stages of a session.
+     */
+    enum Stage {
+        FIRST_FRAME,    // from start() until the first audio frame has been read
+        RECORDING,      // duration of the recorded audio
+        QUEUE_WAIT,     // from submission until the transcription starts
+        TRANSCRIPTION   // running the engine
+    }
+
+    /**
+     * Capturing has started, or with VAD, speech has been detected.
+     */
+    default void onRecordingStarted() { }
+
+    /**
+     * The recording has ended and is ready for Recorder.acquireLastRecording(), or in
+     * continuous mode all utterances have been delivered.
+     */
+    default void onRecordingDone() { }
+
+    /**
+     * An utterance of a continuous recording has ended while capturing continues.
+     * The clip is released after the call returns, so retain it to keep it.
+     */
+    default void onUtteranceRecorded(AudioClip utterance) { }
+
+    default void onProcessingStarted() { }
+
+    /**
+     * Text recognized so far, if the engine supports streaming.
+     */
+    default void onPartialResult(String text) { }
+
+    default void onResult(WhisperResult result) { }
+
+    default void onStageTiming(Stage stage, long millis) { }
+
+    /**
+     * The recording or transcription failed. Cancelled transcriptions are not reported.
+     */
+    default void onFailure(TranscriptionException error) { }
+}
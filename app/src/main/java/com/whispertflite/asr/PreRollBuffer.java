@@ -0,0 +1,74 @@
+package com.whispertflite.asr;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Ring of the most recent audio captured while the microphone is kept warm.
+ * When a recording starts, its content is prepended so that speech starting together
+ * with the tap on the record button is not clipped.
+ *
+ * Not thread-safe; written and drained by the recording thread only.
+ */
+public class PreRollBuffer {
+
+    private final byte[] ring;
+    private int start = 0;
+    private int size = 0;
+
+    public PreRollBuffer(int capacityBytes) {
+        ring = new byte[capacityBytes];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    /**
+     * Appends audio, overwriting the oldest bytes once the ring is full.
+     */
+    public void write(byte[] src, int offset, int length) {
+        if (length >= ring.length) {
+            // Only the newest bytes fit
+            System.arraycopy(src, offset + length - ring.length, ring, 0, ring.length);
+            start = 0;
+            size = ring.length;
+            return;
+        }
+        int end = (start + size) % ring.length;
+        int first = Math.min(length, ring.length - end);
+        System.arraycopy(src, offset, ring, end, first);
+        System.arraycopy(src, offset + first, ring, 0, length - first);
+        size += length;
+        if (size > ring.length) {
+            start = (start + size - ring.length) % ring.length;
+            size = ring.length;
+        }
+    }
+
+    /**
+     * Moves the buffered audio, oldest first, into the arena as far as it fits and empties the ring.
+     *
+     * @return Number of bytes moved
+     */
+    public int drainTo(RecordingArena arena) {
+        int length = Math.min(size, arena.remaining());
+        // Drop the oldest bytes that do not fit
+        int from = (start + size - length) % ring.length;
+        ByteBuffer window = arena.writeWindow(length);
+        int first = Math.min(length, ring.length - from);
+        window.put(ring, from, first);
+        window.put(ring, 0, length - first);
+        arena.advance(length);
+        clear();
+        return length;
+    }
+
+    public void clear() {
+        start = 0;
+        size = 0;
+    }
+}
@@ -1,48 +1,80 @@
 package com.whispertflite.asr;
 
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 
 public class RecordBuffer {
-    // Static variable to store the byte array
-    private static byte[] outputBuffer;
+    // The most recent recording, retained while it is published
+    private static RecordingArena outputArena;
 
     // Synchronized method to set the byte array
     public static synchronized void setOutputBuffer(byte[] buffer) {
-        outputBuffer = buffer;
+        RecordingArena arena = buffer != null ? RecordingArena.wrap(buffer) : null;
+        publish(arena);
+        if (arena != null) arena.release();
     }
 
-    // Synchronized method to get the byte array
-    public static synchronized byte[] getOutputBuffer() {
-        return outputBuffer;
+    /**
+     * Publishes a recording without copying it. The arena is retained until the next recording
+     * is published and must not be written to anymore.
+     */
+    public static synchronized void publish(RecordingArena arena) {
+        if (arena != null) arena.retain();
+        RecordingArena previous = outputArena;
+        outputArena = arena;
+        if (previous != null) previous.release();
+    }
+
+    /**
+     * Returns the current recording with an additional reference, or null if there is none.
+     * The caller reads it through RecordingArena.view() and must release it when done.
+     */
+    public static synchronized RecordingArena acquire() {
+        return outputArena != null ? outputArena.retain() : null;
+    }
+
+    public static synchronized boolean hasRecording() {
+        return outputArena != null;
     }
 
     public static float[] getSamples() {
+        RecordingArena arena = acquire();
+        if (arena == null) return new float[0];
+        try {
+            float[] samples = new float[arena.size() / 2];
+            getSamples(arena.view(), samples);
+            return samples;
+        } finally {
+            arena.release();
+        }
+    }
 
-        int numSamples = RecordBuffer.getOutputBuffer().length / 2;
-        ByteBuffer byteBuffer = ByteBuffer.wrap(RecordBuffer.getOutputBuffer());
-        byteBuffer.order(ByteOrder.nativeOrder());
+    /**
+     * Converts PCM16 audio to normalized PCM_FLOAT samples, writing them to the start of dst.
+     *
+     * @return Number of samples written
+     */
+    public static int getSamples(ByteBuffer pcm, float[] dst) {
+        int numSamples = Math.min(pcm.remaining() / 2, dst.length);
+        int start = pcm.position();
 
         // Convert audio data to PCM_FLOAT format
-        float[] samples = new float[numSamples];
         float maxAbsValue = 0.0f;
 
         for (int i = 0; i < numSamples; i++) {
-            samples[i] = (float) (byteBuffer.getShort() / 32768.0);
+            dst[i] = (float) (pcm.getShort(start + 2 * i) / 32768.0);
             // Track the maximum absolute value
-            if (Math.abs(samples[i]) > maxAbsValue) {
-                maxAbsValue = Math.abs(samples[i]);
+            if (Math.abs(dst[i]) > maxAbsValue) {
+                maxAbsValue = Math.abs(dst[i]);
             }
         }
 
         // Normalize the samples
         if (maxAbsValue > 0.0f) {
             for (int i = 0; i < numSamples; i++) {
-                samples[i] /= maxAbsValue;
+                dst[i] /= maxAbsValue;
             }
         }
 
-        return samples;
-
+        return numSamples;
     }
 }
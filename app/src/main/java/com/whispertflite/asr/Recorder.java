@@ -3,10 +3,7 @@ package com.whispertflite.asr;
 import android.Manifest;
 import android.content.Context;
 import android.content.pm.PackageManager;
-import android.media.AudioFormat;
 import android.media.AudioManager;
-import android.media.AudioRecord;
-import android.media.MediaRecorder;
 import android.util.Log;
 
 import androidx.core.app.ActivityCompat;
@@ -17,18 +14,41 @@ import com.konovalov.vad.webrtc.config.FrameSize;
 import com.konovalov.vad.webrtc.config.Mode;
 import com.konovalov.vad.webrtc.config.SampleRate;
 import com.whispertflite.R;
-
-import java.io.ByteArrayOutputStream;
-
+import com.whispertflite.utils.CallbackDispatcher;
+import com.whispertflite.utils.MetricsRegistry;
+import com.whispertflite.utils.SerialExecutor;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Recorder {
 
+    /**
+     * @deprecated Progress is reported as strings to compare with the MSG_ constants.
+     *             Use setListener(PipelineListener, Executor) instead.
+     */
+    @Deprecated
     public interface RecorderListener {
         void onUpdateReceived(String message);
+
+        /**
+         * Called in continuous mode with each utterance as soon as VAD detects its end,
+         * while capturing continues. The arena is released after the call returns, so
+         * retain it to keep it.
+         */
+        default void onUtteranceRecorded(RecordingArena utterance) { }
     }
 
     private static final String TAG = "Recorder";
@@ -39,72 +59,174 @@ public class Recorder {
     public static final String MSG_RECORDING_ERROR = "Recording error...";
 
     private final Context mContext;
+    private final AudioRouteManager mAudioRoute;
     private final AtomicBoolean mInProgress = new AtomicBoolean(false);
 
     private RecorderListener mListener;
-    private final Lock lock = new ReentrantLock();
-    private final Condition hasTask = lock.newCondition();
-    private final Object fileSavedLock = new Object(); // Lock object for wait/notify
+    private final CallbackDispatcher<PipelineListener> mEvents = new CallbackDispatcher<>();
+    // Released when the current recording has ended, on every path, or when the recorder is closed
+    private volatile CountDownLatch mRecordingDone = new CountDownLatch(0);
+    // stop() gives up waiting after this, e.g. when called on the main thread
+    static final long STOP_TIMEOUT_MS = 2000;
 
     private volatile boolean shouldStartRecording = false;
-    private boolean useVAD = false;
-    private VadWebRTC vad = null;
+    private volatile boolean useVAD = false;
+    private volatile SpeechDetector vad = null;
     private static final int VAD_FRAME_SIZE = 480;
-
-    private final Thread workerThread;
+    // Shorter recordings and utterances are not transcribed
+    private static final int MIN_RECORDING_BYTES = 6400;  // 0.2 s
+    // Frames handed from the capture loop to the VAD worker, 32 * 30 ms = 960 ms
+    private static final int VAD_RING_FRAMES = 32;
+    // Capture delivering the next frame more than half a frame late counts as an underrun
+    private final FrameRing mFrameRing = new FrameRing(VAD_RING_FRAMES, VAD_FRAME_SIZE * 2,
+            TimeUnit.MILLISECONDS.toNanos(45));
+    private static final int MAX_RECORDING_SECONDS = 30;
+    // Off-heap arenas for 30 s of 16 kHz, mono, 16 bit audio, shared by all recorders
+    private static final RecordingArenaPool sArenaPool =
+            new RecordingArenaPool(16000 * 2 * MAX_RECORDING_SECONDS, VAD_FRAME_SIZE * 2, 2);
+
+    // Long recordings are spilled to memory-mapped files in the cache directory
+    private static final int MAX_LONG_RECORDING_MINUTES = 30;
+    private static final String SPILL_DIR = "recordings";
+    private static boolean sSpillDirCleaned = false;
+    private static int sSpillCount = 0;
+    private volatile boolean mLongRecording = false;
+    // Last recording of a single utterance, guarded by this
+    private AudioClip mLastRecording = null;
+    private volatile boolean mContinuous = false;
+
+    // Warm capture: keep the microphone open between recordings and remember the last moments
+    private static final int PRE_ROLL_FRAMES = 16;  // 16 * 30 ms = 480 ms
+    private volatile boolean mWarm = false;
+    private final PreRollBuffer mPreRoll = new PreRollBuffer(PRE_ROLL_FRAMES * VAD_FRAME_SIZE * 2);
+    // Running source handed over between warm capture and recording (worker thread only)
+    private AudioSource mWarmSource = null;
+
+    // Stopped but initialized source kept for the next recording (worker thread only)
+    public static final long DEFAULT_IDLE_TIMEOUT_MS = 30000;
+    private volatile long mIdleTimeoutMs = DEFAULT_IDLE_TIMEOUT_MS;
+    private AudioSource mIdleSource = null;
+    private long mIdleSince = 0;
+    private ScheduledFuture<?> mIdleRelease = null;
+
+    // Time from start() until the first audio frame has been read, recorded by how the source
+    // was obtained
+    private volatile long mStartRequestedAt = 0;
+    private MetricsRegistry.Stage mFirstFrame = MetricsRegistry.Stage.MIC_START_NEW;  // worker thread only
+    private static final MetricsRegistry sMetrics = MetricsRegistry.getDefault();
+
+    // Creates the sources to capture from, null for the microphone
+    private volatile AudioSource.Factory mSourceFactory = null;
+    // Microphone capture at the device's native rate, decimated to 16 kHz
+    private volatile boolean mNativeRate = false;
+
+    // Capture and VAD of all recorders run on shared pools, one task at a time per recorder
+    public static final int MAX_WORKER_THREADS = 3;
+    private static final ExecutorService sWorkerPool =
+            SerialExecutor.newSharedPool("RecorderWorker", MAX_WORKER_THREADS);
+    private static final ExecutorService sVadPool =
+            SerialExecutor.newSharedPool("RecorderVad", MAX_WORKER_THREADS);
+    private static final ScheduledThreadPoolExecutor sIdleTimer = createIdleTimer();
+    // Runs recordings, warm capture and source releases in order (the "worker thread")
+    private final SerialExecutor mWorker = new SerialExecutor(sWorkerPool);
+    private final AtomicBoolean mWarmScheduled = new AtomicBoolean(false);
+    private volatile boolean mClosed = false;
 
     public Recorder(Context context) {
         this.mContext = context;
+        this.mAudioRoute = new AudioRouteManager(context);
+    }
 
-        // Initialize and start the worker thread
-        workerThread = new Thread(this::recordLoop);
-        workerThread.start();
+    private static ScheduledThreadPoolExecutor createIdleTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> new Thread(r, "RecorderIdle"));
+        timer.setKeepAliveTime(30, TimeUnit.SECONDS);
+        timer.allowCoreThreadTimeOut(true);
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
     }
 
+    /**
+     * @deprecated Use setListener(PipelineListener, Executor) instead.
+     */
+    @Deprecated
     public void setListener(RecorderListener listener) {
         this.mListener = listener;
     }
 
+    /**
+     * Sets the listener of typed recording events and failures, or removes it if null.
+     *
+     * @param executor Runs the callbacks, e.g. Context.getMainExecutor() for UI updates
+     */
+    public void setListener(PipelineListener listener, Executor executor) {
+        mEvents.setListener(listener, executor);
+    }
+
 
     public void start() {
+        if (mClosed) {
+            Log.d(TAG, "Recorder is closed");
+            return;
+        }
         if (!mInProgress.compareAndSet(false, true)) {
             Log.d(TAG, "Recording is already in progress...");
             return;
         }
-        lock.lock();
-        try {
-            Log.d(TAG, "Recording starts now");
-            shouldStartRecording = true;
-            hasTask.signal();
-        } finally {
-            lock.unlock();
-        }
+        CountDownLatch done = new CountDownLatch(1);
+        mRecordingDone = done;
+        mStartRequestedAt = System.nanoTime();
+        Log.d(TAG, "Recording starts now");
+        // Also ends a running warm capture, which hands over its source
+        shouldStartRecording = true;
+        mWorker.execute(() -> record(done));
     }
 
     public void initVad(){
-        vad = Vad.builder()
+        VadWebRTC webRtcVad = Vad.builder()
                 .setSampleRate(SampleRate.SAMPLE_RATE_16K)
                 .setFrameSize(FrameSize.FRAME_SIZE_480)
                 .setMode(Mode.VERY_AGGRESSIVE)
                 .setSilenceDurationMs(800)
                 .setSpeechDurationMs(200)
                 .build();
+        initVad(new SpeechDetector() {
+            @Override
+            public boolean isSpeech(byte[] frame) {
+                return webRtcVad.isSpeech(frame);
+            }
+
+            @Override
+            public void close() {
+                webRtcVad.close();
+            }
+        });
+    }
+
+    /**
+     * Uses the given detector for VAD in the next recording, which closes it when done.
+     */
+    public void initVad(SpeechDetector detector) {
+        vad = detector;
         useVAD = true;
         Log.d(TAG, "VAD initialized");
     }
 
 
+    /**
+     * Stops the recording and waits until it has ended, at most STOP_TIMEOUT_MS, as this may
+     * be called on the main thread. Returns right away if no recording is running, also one
+     * that ended by itself after isInProgress() was checked.
+     */
     public void stop() {
         Log.d(TAG, "Recording stopped");
+        CountDownLatch done = mRecordingDone;
         mInProgress.set(false);
-
-        // Wait for the recording thread to finish
-        synchronized (fileSavedLock) {
-            try {
-                fileSavedLock.wait(); // Wait until notified by the recording thread
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt(); // Restore interrupted status
+        try {
+            if (!done.await(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Recording did not end within " + STOP_TIMEOUT_MS + " ms");
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Restore interrupted status
         }
     }
 
@@ -112,119 +234,623 @@ public class Recorder {
         return mInProgress.get();
     }
 
+    /**
+     * Stops a running recording without waiting for it and releases the audio sources.
+     * The recorder cannot be used afterwards; it holds no thread, so nothing else has to
+     * be released.
+     */
+    public void close() {
+        mClosed = true;
+        mWarm = false;
+        mInProgress.set(false);
+        // Nobody waits for a recording of a closed recorder
+        mRecordingDone.countDown();
+        mWorker.execute(this::releaseSources);
+    }
+
+    public boolean isClosed() {
+        return mClosed;
+    }
+
+    /**
+     * Keeps the microphone open while idle, so that the last moments before start() are
+     * prepended to the recording. Call stopWarmCapture() as soon as no recording is expected,
+     * e.g. when the keyboard is hidden, to release the microphone.
+     */
+    public void startWarmCapture() {
+        if (mClosed) return;
+        mWarm = true;
+        scheduleWarmCapture();
+    }
+
+    /**
+     * Releases the microphone kept open by startWarmCapture(), or after the current recording.
+     */
+    public void stopWarmCapture() {
+        mWarm = false;
+        // A recording that checked mWarm just before may still hand over its running source.
+        // This runs after it on the worker thread and stops that source.
+        mWorker.execute(this::releaseWarmSource);
+    }
+
+    /**
+     * Enables recordings of up to 30 minutes instead of 30 seconds. They are written to a
+     * memory-mapped file in the cache directory rather than kept in memory.
+     */
+    public void setLongRecording(boolean longRecording) {
+        mLongRecording = longRecording;
+    }
+
+    /**
+     * Enables continuous dictation with VAD: instead of stopping at the end of speech, each
+     * utterance is passed to RecorderListener.onUtteranceRecorded() and capturing continues
+     * until stop() is called. Without VAD recordings are not split.
+     */
+    public void setContinuous(boolean continuous) {
+        mContinuous = continuous;
+    }
+
+    /**
+     * Captures from sources of the given factory instead of the microphone, e.g. to replay
+     * recordings with FileAudioSource. null restores the microphone.
+     */
+    public void setAudioSource(AudioSource.Factory factory) {
+        mSourceFactory = factory;
+        // The idle source may be of the previous kind
+        releaseIdle();
+    }
+
+    /**
+     * Captures from the microphone at the device's native sample rate (e.g. 48 kHz) and
+     * decimates to 16 kHz, instead of requesting 16 kHz from the audio HAL. Only used if the
+     * native rate is a multiple of 16 kHz.
+     */
+    public void setNativeRateCapture(boolean nativeRate) {
+        if (mNativeRate == nativeRate) return;
+        mNativeRate = nativeRate;
+        // The idle AudioRecord runs at the other rate
+        releaseIdle();
+    }
+
+    public boolean isWarm() {
+        return mWarm;
+    }
+
+    /**
+     * Sets how long the audio source is kept initialized after a recording, so that the next
+     * recording only has to restart it. 0 releases it right away.
+     */
+    public void setIdleTimeout(long millis) {
+        mIdleTimeoutMs = Math.max(0, millis);
+    }
+
+    /**
+     * Releases an audio source kept for reuse without waiting for the idle timeout,
+     * e.g. when the owning component is destroyed.
+     */
+    public void releaseIdle() {
+        // Runs after a recording in progress, which may keep its source idle
+        mWorker.execute(this::releaseIdleSource);
+    }
+
+    /**
+     * Returns the number of frames the VAD worker missed because it fell behind the capture.
+     */
+    public long getOverrunCount() {
+        return mFrameRing.getOverrunCount();
+    }
+
+    /**
+     * Returns how often the VAD worker waited for the next frame for more than one and a half
+     * frame periods, i.e. the capture stalled.
+     */
+    public long getUnderrunCount() {
+        return mFrameRing.getUnderrunCount();
+    }
+
     private void sendUpdate(String message) {
         if (mListener != null)
             mListener.onUpdateReceived(message);
     }
 
+    private void sendRecordingStarted() {
+        sendUpdate(MSG_RECORDING);
+        mEvents.dispatch(PipelineListener::onRecordingStarted);
+    }
+
+    private void sendFailure(TranscriptionException.Reason reason, String message, Throwable cause) {
+        TranscriptionException error = new TranscriptionException(reason, message, cause);
+        mEvents.dispatch(listener -> listener.onFailure(error));
+    }
+
+    private void sendRecordingEnd(boolean recorded, long totalBytesRead) {
+        if (recorded) {
+            long millis = totalBytesRead / 2 * 1000 / AudioSource.SAMPLE_RATE;
+            mEvents.dispatch(listener -> listener.onStageTiming(PipelineListener.Stage.RECORDING, millis));
+            mEvents.dispatch(PipelineListener::onRecordingDone);
+        } else {
+            sendFailure(TranscriptionException.Reason.NOTHING_RECORDED, "Nothing recorded", null);
+        }
+    }
+
 
-    private void recordLoop() {
-        while (true) {
-            lock.lock();
+    private void record(CountDownLatch done) {
+        shouldStartRecording = false;
+        try {
+            recordAudio();
+        } catch (Exception e) {
+            Log.e(TAG, "Recording error...", e);
+            mInProgress.set(false);
+            sendUpdate(e.getMessage());
+            sendFailure(TranscriptionException.Reason.RECORDING_FAILED, e.getMessage(), e);
+        } finally {
+            done.countDown();
+        }
+        // Resume capturing into the pre-roll ring
+        if (mWarm) scheduleWarmCapture();
+    }
+
+    private void scheduleWarmCapture() {
+        if (mWarmScheduled.compareAndSet(false, true)) mWorker.execute(this::runWarmCapture);
+    }
+
+    private void runWarmCapture() {
+        mWarmScheduled.set(false);
+        if (mWarm && !shouldStartRecording && !mClosed) {
             try {
-                while (!shouldStartRecording) {
-                    hasTask.await();
+                warmCapture();
+            } catch (Exception e) {
+                Log.e(TAG, "Warm capture error...", e);
+                mWarm = false;
+            }
+        } else {
+            releaseWarmSource();
+        }
+    }
+
+    /**
+     * Stops a source handed over by the last recording if warm capture has been stopped since,
+     * unless the next recording is about to take it over.
+     */
+    private void releaseWarmSource() {
+        if (mWarmSource != null && (!mWarm || mClosed) && !shouldStartRecording) {
+            keepIdle(mWarmSource);
+            mWarmSource = null;
+            mPreRoll.clear();
+        }
+    }
+
+    private AudioSource createSource() {
+        AudioSource.Factory factory = mSourceFactory;
+        if (factory != null) return factory.create();
+        int captureRate = mNativeRate ? getNativeCaptureRate() : AudioSource.SAMPLE_RATE;
+        Log.d(TAG, "Capturing at " + captureRate + " Hz");
+        return new MicAudioSource(captureRate, VAD_FRAME_SIZE * 2);
+    }
+
+    /**
+     * Returns the device's native sample rate if it is a multiple of 16 kHz, otherwise 16 kHz.
+     */
+    private int getNativeCaptureRate() {
+        AudioManager audioManager = (AudioManager) mContext.getSystemService(Context.AUDIO_SERVICE);
+        String property = audioManager.getProperty(AudioManager.PROPERTY_OUTPUT_SAMPLE_RATE);
+        try {
+            int rate = property != null ? Integer.parseInt(property) : 0;
+            if (rate > AudioSource.SAMPLE_RATE && rate % AudioSource.SAMPLE_RATE == 0) return rate;
+        } catch (NumberFormatException e) {
+            Log.d(TAG, "Invalid native sample rate: " + property);
+        }
+        return AudioSource.SAMPLE_RATE;
+    }
+
+    /**
+     * Returns a started source, restarting the idle one if possible.
+     */
+    private AudioSource startSource() {
+        AudioSource source = mIdleSource;
+        mIdleSource = null;
+        cancelIdleRelease();
+        if (source != null) {
+            if (source.start()) {
+                mFirstFrame = MetricsRegistry.Stage.MIC_START_REUSED;
+                return source;
+            }
+            Log.d(TAG, "Idle audio source could not be restarted, creating a new one");
+            source.release();
+        }
+        source = createSource();
+        source.start();
+        mFirstFrame = MetricsRegistry.Stage.MIC_START_NEW;
+        return source;
+    }
+
+    /**
+     * Stops the source and keeps it for the next recording during the idle timeout.
+     */
+    private void keepIdle(AudioSource source) {
+        source.stop();
+        long timeout = mIdleTimeoutMs;
+        if (timeout > 0 && !mClosed) {
+            mIdleSource = source;
+            mIdleSince = System.currentTimeMillis();
+            cancelIdleRelease();
+            mIdleRelease = sIdleTimer.schedule(() -> mWorker.execute(this::releaseExpiredIdleSource),
+                    timeout, TimeUnit.MILLISECONDS);
+        } else {
+            source.release();
+        }
+    }
+
+    private void releaseExpiredIdleSource() {
+        // The source may have been reused and kept idle again meanwhile
+        if (mIdleSource != null && System.currentTimeMillis() - mIdleSince >= mIdleTimeoutMs) {
+            releaseIdleSource();
+        }
+    }
+
+    private void releaseIdleSource() {
+        cancelIdleRelease();
+        if (mIdleSource != null) {
+            mIdleSource.release();
+            mIdleSource = null;
+            Log.d(TAG, "Idle audio source released");
+        }
+    }
+
+    private void cancelIdleRelease() {
+        if (mIdleRelease != null) {
+            mIdleRelease.cancel(false);
+            mIdleRelease = null;
+        }
+    }
+
+    /**
+     * Returns the last recording of this recorder with an additional reference, or null if
+     * there is none. Unlike RecordBuffer, it is not overwritten by other sessions. The caller
+     * must release it when done.
+     */
+    public synchronized AudioClip acquireLastRecording() {
+        return mLastRecording != null ? mLastRecording.retain() : null;
+    }
+
+    private synchronized void setLastRecording(AudioClip recording) {
+        AudioClip previous = mLastRecording;
+        mLastRecording = recording;
+        if (previous != null) previous.release();
+    }
+
+    private void releaseSources() {
+        if (mWarmSource != null) {
+            mWarmSource.release();
+            mWarmSource = null;
+        }
+        mPreRoll.clear();
+        releaseIdleSource();
+        setLastRecording(null);
+    }
+
+    /**
+     * Returns an empty arena for the next recording, spilled to disk in long recording mode.
+     */
+    private RecordingArena acquireArena() {
+        if (!mLongRecording) return sArenaPool.acquire();
+        try {
+            return RecordingArena.spill(createSpillFile(mContext.getCacheDir()),
+                    16000 * 2 * 60 * MAX_LONG_RECORDING_MINUTES, VAD_FRAME_SIZE * 2);
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot create spill file, recording up to " + MAX_RECORDING_SECONDS + " s", e);
+            return sArenaPool.acquire();
+        }
+    }
+
+    private static synchronized File createSpillFile(File cacheDir) throws IOException {
+        File dir = new File(cacheDir, SPILL_DIR);
+        if (!sSpillDirCleaned) {
+            // Left over by an earlier process, none of them is in use
+            File[] stale = dir.listFiles();
+            if (stale != null) for (File file : stale) file.delete();
+            sSpillDirCleaned = true;
+        }
+        if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create " + dir);
+        return new File(dir, "recording-" + (sSpillCount++) + ".pcm");
+    }
+
+    /**
+     * Runs VAD on the frames of one recording and notifies the listener, on a thread of the
+     * VAD pool, so that neither delays the next read of the capture loop.
+     */
+    private class VadWorker implements Runnable {
+
+        final boolean continuous;
+        // Counted on this thread, a start always before its end
+        final AtomicInteger speechStarts = new AtomicInteger();
+        final AtomicInteger speechEnds = new AtomicInteger();
+        // Utterances handed over by the capture loop, to be passed to the listener
+        private final ConcurrentLinkedQueue<RecordingArena> utterances = new ConcurrentLinkedQueue<>();
+        // When the end of speech stopped the recording, 0 if it did not
+        volatile long speechEndAt = 0;
+        private volatile boolean finished = false;
+        private Future<?> future = null;
+
+        VadWorker(boolean continuous) {
+            this.continuous = continuous;
+        }
+
+        void start() {
+            future = sVadPool.submit(this);
+        }
+
+        void emit(RecordingArena utterance) {
+            utterances.add(utterance);
+            mFrameRing.wakeConsumer();
+        }
+
+        /**
+         * Waits until the remaining frames and utterances have been processed.
+         */
+        void finish() {
+            finished = true;
+            mFrameRing.wakeConsumer();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Log.e(TAG, "VAD error...", e.getCause());
+                    // Drop what is left for the next recording's worker
+                    while (mFrameRing.peek() != null) mFrameRing.advance();
+                    break;
                 }
-                shouldStartRecording = false;
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                return;
-            } finally {
-                lock.unlock();
             }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
 
-            // Start recording process
-            try {
-                recordAudio();
-            } catch (Exception e) {
-                Log.e(TAG, "Recording error...", e);
-                sendUpdate(e.getMessage());
-            } finally {
-                mInProgress.set(false);
+        @Override
+        public void run() {
+            boolean speaking = false;
+            boolean notified = false;
+            while (true) {
+                byte[] frame = mFrameRing.await(100, TimeUnit.MILLISECONDS);
+                notifyUtterances();
+                if (frame == null) {
+                    if (finished && mFrameRing.peek() == null) break;
+                    continue;
+                }
+
+                if (useVAD) {
+                    long vadStart = System.nanoTime();
+                    boolean isSpeech = vad.isSpeech(frame);
+                    sMetrics.recordSince(MetricsRegistry.Stage.VAD, vadStart);
+                    if (isSpeech && !speaking) {
+                        Log.d(TAG, "VAD Speech detected: recording starts");
+                        speaking = true;
+                        speechStarts.incrementAndGet();
+                        sendRecordingStarted();
+                    } else if (!isSpeech && speaking) {
+                        speaking = false;
+                        speechEnds.incrementAndGet();
+                        // Without continuous mode the end of speech ends the recording
+                        if (!continuous && mInProgress.get()) {
+                            speechEndAt = System.nanoTime();
+                            mInProgress.set(false);
+                        }
+                    }
+                } else if (!notified) {
+                    notified = true;
+                    sendRecordingStarted();
+                }
+                mFrameRing.advance();
             }
+            notifyUtterances();
+        }
+
+        private void notifyUtterances() {
+            RecordingArena utterance;
+            while ((utterance = utterances.poll()) != null) emitUtterance(utterance);
         }
     }
 
-    private void recordAudio() {
-        if (ActivityCompat.checkSelfPermission(mContext, Manifest.permission.RECORD_AUDIO) != PackageManager.PERMISSION_GRANTED) {
-            Log.d(TAG, "AudioRecord permission is not granted");
-            sendUpdate(mContext.getString(R.string.need_record_audio_permission));
-            return;
+    private void emitUtterance(RecordingArena utterance) {
+        if (mListener != null) mListener.onUtteranceRecorded(utterance);
+        if (mEvents.hasListener()) {
+            // The listener may run later on its own executor
+            AudioClip clip = AudioClip.of(utterance);
+            mEvents.dispatch(listener -> {
+                try {
+                    listener.onUtteranceRecorded(clip);
+                } finally {
+                    clip.release();
+                }
+            });
         }
+        utterance.release();
+    }
 
-        int channels = 1;
-        int bytesPerSample = 2;
-        int sampleRateInHz = 16000;
-        int channelConfig = AudioFormat.CHANNEL_IN_MONO;
-        int audioFormat = AudioFormat.ENCODING_PCM_16BIT;
-        int audioSource = MediaRecorder.AudioSource.VOICE_RECOGNITION;
+    /**
+     * Replaces an arena that holds no speech with an empty one that starts with its last frames.
+     */
+    private RecordingArena discardSilence(RecordingArena silent, byte[] frame) {
+        int frameCount = silent.getFrameCount();
+        for (int i = Math.max(0, frameCount - PRE_ROLL_FRAMES); i < frameCount; i++) {
+            silent.copyFrame(i, frame);
+            mPreRoll.write(frame, 0, frame.length);
+        }
+        silent.release();
+        RecordingArena arena = acquireArena();
+        mPreRoll.drainTo(arena);
+        return arena;
+    }
 
-        int bufferSize = AudioRecord.getMinBufferSize(sampleRateInHz, channelConfig, audioFormat);
-        if (bufferSize < VAD_FRAME_SIZE * 2) bufferSize = VAD_FRAME_SIZE * 2;
+    private boolean usesMicrophone() {
+        return mSourceFactory == null;
+    }
 
-        AudioManager audioManager = (AudioManager) mContext.getSystemService(Context.AUDIO_SERVICE);
-        audioManager.startBluetoothSco();
-        audioManager.setBluetoothScoOn(true);
+    private boolean hasRecordPermission() {
+        // Replayed audio needs no permission
+        if (!usesMicrophone()) return true;
+        return ActivityCompat.checkSelfPermission(mContext, Manifest.permission.RECORD_AUDIO) == PackageManager.PERMISSION_GRANTED;
+    }
 
-        AudioRecord.Builder builder = new AudioRecord.Builder()
-                .setAudioSource(audioSource)
-                .setAudioFormat(new AudioFormat.Builder()
-                        .setChannelMask(channelConfig)
-                        .setEncoding(audioFormat)
-                        .setSampleRate(sampleRateInHz)
-                        .build())
-                .setBufferSizeInBytes(bufferSize);
+    /**
+     * Reads audio into the pre-roll ring until a recording is started or warm capture is stopped.
+     * A started recording takes over the running source.
+     */
+    private void warmCapture() {
+        if (!hasRecordPermission()) {
+            Log.d(TAG, "AudioRecord permission is not granted, no warm capture");
+            mWarm = false;
+            return;
+        }
 
-        AudioRecord audioRecord = builder.build();
-        audioRecord.startRecording();
+        AudioSource source = mWarmSource;
+        mWarmSource = null;
+        if (source == null) {
+            source = startSource();
+            Log.d(TAG, "Warm capture started");
+        }
 
-        // Calculate maximum byte counts for 30 seconds (for saving)
-        int bytesForThirtySeconds = sampleRateInHz * bytesPerSample * channels * 30;
+        byte[] frame = new byte[VAD_FRAME_SIZE * 2];
+        while (mWarm && !shouldStartRecording) {
+            int bytesRead = source.read(frame, 0, frame.length);
+            if (bytesRead <= 0) {
+                Log.d(TAG, "AudioRecord error during warm capture, bytes read: " + bytesRead);
+                mWarm = false;
+                break;
+            }
+            mPreRoll.write(frame, 0, bytesRead);
+        }
 
-        ByteArrayOutputStream outputBuffer = new ByteArrayOutputStream(); // Buffer for saving data RecordBuffer
+        if (shouldStartRecording) {
+            mWarmSource = source;
+        } else {
+            keepIdle(source);
+            mPreRoll.clear();
+            Log.d(TAG, "Warm capture stopped");
+        }
+    }
 
-        byte[] audioData = new byte[bufferSize];
+    private void recordAudio() {
+        if (!hasRecordPermission()) {
+            Log.d(TAG, "AudioRecord permission is not granted");
+            mInProgress.set(false);
+            sendUpdate(mContext.getString(R.string.need_record_audio_permission));
+            sendFailure(TranscriptionException.Reason.NO_PERMISSION,
+                    mContext.getString(R.string.need_record_audio_permission), null);
+            return;
+        }
+
+        // Only negotiate Bluetooth SCO with a headset connected, and start capturing once it is up
+        try {
+            if (usesMicrophone() && mAudioRoute.activate(AudioRouteManager.DEFAULT_SCO_TIMEOUT_MS)) {
+                Log.d(TAG, "Recording through Bluetooth SCO");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Already capturing if the microphone was kept warm
+        AudioSource source = mWarmSource;
+        mWarmSource = null;
+        if (source != null) {
+            mFirstFrame = MetricsRegistry.Stage.MIC_START_WARM;
+        } else {
+            source = startSource();
+        }
+
+        // Audio is read straight into a reused off-heap arena, which is handed to RecordBuffer as is
+        RecordingArena outputBuffer = acquireArena();
+        int preRollBytes = mPreRoll.drainTo(outputBuffer);
+        if (preRollBytes > 0) Log.d(TAG, "Pre-roll: " + preRollBytes + " bytes");
         int totalBytesRead = 0;
 
-        boolean isSpeech;
-        boolean isRecording = false;
         byte[] vadAudioBuffer = new byte[VAD_FRAME_SIZE * 2];  //VAD needs 16 bit
-
-        while (mInProgress.get() && totalBytesRead < bytesForThirtySeconds) {
-            int bytesRead = audioRecord.read(audioData, 0, VAD_FRAME_SIZE * 2);
+        boolean continuous = mContinuous && useVAD;
+        int utterances = 0;
+        // VAD and listener notifications run on their own thread, fed with the recorded frames
+        VadWorker vadWorker = new VadWorker(continuous);
+        vadWorker.start();
+        int framesPublished = 0;
+        int speechEnds = 0;       // handled so far
+        int emittedStarts = 0;    // speech starts up to the last emitted utterance
+
+        while (mInProgress.get()) {
+            if (continuous) {
+                // Ends first: each end is counted after its start
+                int ends = vadWorker.speechEnds.get();
+                int starts = vadWorker.speechStarts.get();
+                if (ends > speechEnds && outputBuffer.size() <= MIN_RECORDING_BYTES) {
+                    // End of an utterance cut just before, its audio has been handed over already
+                    speechEnds = ends;
+                    emittedStarts = starts;
+                } else if (ends > speechEnds) {
+                    // Hand over the utterance and keep capturing the next one
+                    Log.d(TAG, "VAD end of speech: utterance " + (utterances + 1));
+                    speechEnds = ends;
+                    emittedStarts = starts;
+                    vadWorker.emit(outputBuffer);
+                    utterances++;
+                    outputBuffer = acquireArena();
+                    framesPublished = 0;
+                } else if (outputBuffer.isFull()) {
+                    if (starts > ends || starts > emittedStarts) {
+                        // Cut an utterance that does not fit into one arena
+                        emittedStarts = starts;
+                        vadWorker.emit(outputBuffer);
+                        utterances++;
+                        outputBuffer = acquireArena();
+                        framesPublished = 0;
+                    } else {
+                        // Only silence so far, keep the last moments in case speech is just starting
+                        outputBuffer = discardSilence(outputBuffer, vadAudioBuffer);
+                        // These frames have been analyzed already
+                        framesPublished = outputBuffer.getFrameCount();
+                    }
+                }
+            } else if (outputBuffer.isFull()) {
+                break;
+            }
+            ByteBuffer window = outputBuffer.writeWindow(VAD_FRAME_SIZE * 2);
+            int bytesRead = source.read(window, window.remaining());
             if (bytesRead > 0) {
-                outputBuffer.write(audioData, 0, bytesRead);  // Save all bytes read up to 30 seconds
+                if (totalBytesRead == 0) {
+                    long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mStartRequestedAt);
+                    sMetrics.recordMillis(mFirstFrame, millis);
+                    Log.d(TAG, "Time to first frame (" + mFirstFrame + "): " + millis + " ms");
+                    mEvents.dispatch(listener -> listener.onStageTiming(PipelineListener.Stage.FIRST_FRAME, millis));
+                }
+                outputBuffer.advance(bytesRead);  // Save all bytes read up to 30 seconds
                 totalBytesRead += bytesRead;
             } else {
                 Log.d(TAG, "AudioRecord error, bytes read: " + bytesRead);
                 break;
             }
 
-            if (useVAD){
-                byte[] outputBufferByteArray = outputBuffer.toByteArray();
-                if (outputBufferByteArray.length >= VAD_FRAME_SIZE * 2) {
-                    // Always use the last VAD_FRAME_SIZE * 2 bytes (16 bit) from outputBuffer for VAD
-                    System.arraycopy(outputBufferByteArray, outputBufferByteArray.length - VAD_FRAME_SIZE * 2, vadAudioBuffer, 0, VAD_FRAME_SIZE * 2);
-
-                    isSpeech = vad.isSpeech(vadAudioBuffer);
-                    if (isSpeech) {
-                        if (!isRecording) {
-                            Log.d(TAG, "VAD Speech detected: recording starts");
-                            sendUpdate(MSG_RECORDING);
-                        }
-                        isRecording = true;
-                    } else {
-                        if (isRecording) {
-                            isRecording = false;
-                            mInProgress.set(false);
-                        }
-                    }
+            // Publish the new complete frames without waiting for the VAD worker
+            int frameCount = outputBuffer.getFrameCount();
+            for (; framesPublished < frameCount; framesPublished++) {
+                byte[] slot = mFrameRing.claim();
+                if (slot == null) {
+                    // Overrun, the VAD worker skips these frames
+                    framesPublished = frameCount;
+                    break;
                 }
-            } else {
-                if (!isRecording) sendUpdate(MSG_RECORDING);
-                isRecording = true;
+                outputBuffer.copyFrame(framesPublished, slot);
+                mFrameRing.publish();
             }
         }
+        long captureStoppedAt = System.nanoTime();
+        // Also if ended by itself, e.g. at the end of a replay: ready for the next start() before
+        // the end is reported
+        mInProgress.set(false);
+        long speechEndAt = vadWorker.speechEndAt;
+        if (speechEndAt != 0) sMetrics.get(MetricsRegistry.Stage.VAD_STOP).recordNanos(captureStoppedAt - speechEndAt);
+        vadWorker.finish();
+        if (mFrameRing.getOverrunCount() > 0) {
+            Log.d(TAG, "VAD ring overruns: " + mFrameRing.getOverrunCount() + ", underruns: " + mFrameRing.getUnderrunCount());
+        }
         Log.d(TAG, "Total bytes recorded: " + totalBytesRead);
 
         if (useVAD){
@@ -233,24 +859,42 @@ public class Recorder {
             vad = null;
             Log.d(TAG, "Closing VAD");
         }
-        audioRecord.stop();
-        audioRecord.release();
-        audioManager.stopBluetoothSco();
-        audioManager.setBluetoothScoOn(false);
-
-        // Save recorded audio data to BufferStore (up to 30 seconds)
-        RecordBuffer.setOutputBuffer(outputBuffer.toByteArray());
-        if (totalBytesRead > 6400){  //min 0.2s
-            sendUpdate(MSG_RECORDING_DONE);
+        if (mWarm) {
+            // Keep capturing into the pre-roll ring for the next recording
+            mWarmSource = source;
         } else {
-            sendUpdate(MSG_RECORDING_ERROR);
+            keepIdle(source);
         }
-
-        // Notify the waiting thread that recording is complete
-        synchronized (fileSavedLock) {
-            fileSavedLock.notify(); // Notify that recording is finished
+        mAudioRoute.deactivate();
+
+        if (continuous) {
+            // The last utterance may still be in progress when stopped, or its end not handled yet.
+            // Stopped right after a cut, the arena only holds the moments since the part handed
+            // over, which would be transcribed as another utterance.
+            int ends = vadWorker.speechEnds.get();
+            int starts = vadWorker.speechStarts.get();
+            if ((starts > ends || ends > speechEnds) && outputBuffer.size() > MIN_RECORDING_BYTES) {
+                emitUtterance(outputBuffer);
+                utterances++;
+            } else {
+                outputBuffer.release();
+            }
+            Log.d(TAG, "Utterances recorded: " + utterances);
+            sendUpdate(utterances > 0 ? MSG_RECORDING_DONE : MSG_RECORDING_ERROR);
+            sendRecordingEnd(utterances > 0, totalBytesRead);
+        } else {
+            // Keep the recording for this session, and publish it for the deprecated static path
+            setLastRecording(AudioClip.of(outputBuffer));
+            RecordBuffer.publish(outputBuffer);
+            outputBuffer.release();
+            if (totalBytesRead > MIN_RECORDING_BYTES){
+                sendUpdate(MSG_RECORDING_DONE);
+            } else {
+                sendUpdate(MSG_RECORDING_ERROR);
+            }
+            sendRecordingEnd(totalBytesRead > MIN_RECORDING_BYTES, totalBytesRead);
         }
-
+        sMetrics.recordSince(MetricsRegistry.Stage.CAPTURE_STOP, captureStoppedAt);
     }
 
 }
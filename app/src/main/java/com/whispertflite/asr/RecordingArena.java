@@ -0,0 +1,219 @@
+package com.whispertflite.asr;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed-capacity buffer that the recorder reads audio into directly.
+ * Pooled arenas are direct (off-heap) buffers allocated once for the maximum recording
+ * duration and reused across sessions, so capturing never allocates, copies or regrows.
+ *
+ * Audio is addressed in frames of a fixed size (e.g. the VAD frame), so that the most recent
+ * frame can be inspected without touching the rest of the recording. Consumers get read-only
+ * views; the arena is returned to its pool when the last reference is released.
+ *
+ * Long recordings spill to a memory-mapped file instead (see spill()), so that their length
+ * is not limited by the heap or by off-heap memory.
+ */
+public class RecordingArena {
+
+    // Dirty pages of a spilled arena are written back after this many bytes
+    static final int SPILL_WINDOW_BYTES = 1024 * 1024;
+    // Writes dirty pages back off the recording thread, force() blocks until they are on disk
+    private static final ThreadPoolExecutor sFlusher = createFlusher();
+
+    private final ByteBuffer buffer;
+    // Used by copyFrame() only, which is called by the recording thread
+    private final ByteBuffer frameReader;
+    private final int frameBytes;
+    private final RecordingArenaPool pool;
+    private final AtomicInteger refCount = new AtomicInteger();
+    private volatile int size = 0;
+    // Identifies the recording held, renewed when a recycled arena starts the next one
+    private static final AtomicLong sNextRecordingId = new AtomicLong();
+    private volatile long recordingId = sNextRecordingId.incrementAndGet();
+    // Backing file of a spilled arena, deleted on the last release
+    private File spillFile = null;
+    // Used by advance() only, which is called by the recording thread
+    private int flushedSize = 0;
+    private final AtomicBoolean flushPending = new AtomicBoolean();
+
+    RecordingArena(ByteBuffer buffer, int frameBytes, RecordingArenaPool pool) {
+        this.buffer = buffer.order(ByteOrder.nativeOrder());
+        this.frameReader = buffer.duplicate();
+        this.frameBytes = frameBytes;
+        this.pool = pool;
+    }
+
+    private static ThreadPoolExecutor createFlusher() {
+        ThreadPoolExecutor flusher = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "RecordingFlush");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        flusher.allowCoreThreadTimeOut(true);
+        return flusher;
+    }
+
+    /**
+     * Creates an arena backed by a memory-mapped file, e.g. in the cache directory.
+     * Recorded audio is written back to the file in the background as it grows, so that the
+     * system can reclaim its pages under memory pressure and heap usage does not depend on the
+     * duration. How much of the recording stays resident is up to the system. The file is
+     * deleted when the last reference is released. The returned arena holds one reference.
+     */
+    public static RecordingArena spill(File file, int capacityBytes, int frameBytes) throws IOException {
+        MappedByteBuffer mapped;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(capacityBytes);
+            // The mapping stays valid after the channel is closed
+            mapped = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacityBytes);
+        }
+        RecordingArena arena = new RecordingArena(mapped, frameBytes, null);
+        arena.spillFile = file;
+        arena.refCount.set(1);
+        return arena;
+    }
+
+    public boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    /**
+     * Wraps existing PCM16 audio in an arena that does not belong to a pool.
+     * The returned arena holds one reference.
+     */
+    public static RecordingArena wrap(byte[] pcm) {
+        RecordingArena arena = new RecordingArena(ByteBuffer.wrap(pcm), 2, null);
+        arena.size = pcm.length;
+        arena.refCount.set(1);
+        return arena;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns an id that no other recording has, neither one of another arena nor the next
+     * one of this arena after it has been recycled.
+     */
+    public long getRecordingId() {
+        return recordingId;
+    }
+
+    public int capacity() {
+        return buffer.capacity();
+    }
+
+    public int remaining() {
+        return buffer.capacity() - size;
+    }
+
+    public boolean isFull() {
+        return size == buffer.capacity();
+    }
+
+    /**
+     * Returns a buffer covering the next free bytes (at most maxBytes), positioned at zero,
+     * e.g. for AudioRecord.read(ByteBuffer, int). Call advance() with the number of bytes written.
+     */
+    public ByteBuffer writeWindow(int maxBytes) {
+        ByteBuffer window = buffer.duplicate();
+        window.position(size);
+        window.limit(size + Math.min(maxBytes, remaining()));
+        return window.slice();
+    }
+
+    /**
+     * Marks bytes written into the write window as recorded.
+     */
+    public void advance(int bytes) {
+        if (bytes < 0 || bytes > remaining()) {
+            throw new IllegalArgumentException("Cannot advance by " + bytes + " bytes, " + remaining() + " remaining");
+        }
+        size += bytes;
+        if (spillFile != null && size - flushedSize >= SPILL_WINDOW_BYTES) {
+            flushedSize = size;
+            // At most one write-back queued, the next one covers whatever was skipped
+            if (flushPending.compareAndSet(false, true)) sFlusher.execute(this::flush);
+        }
+    }
+
+    private void flush() {
+        flushPending.set(false);
+        // Nothing to keep once the last reference is gone and the file is deleted
+        if (refCount.get() > 0) ((MappedByteBuffer) buffer).force();
+    }
+
+    /**
+     * Returns the number of complete frames recorded so far.
+     */
+    public int getFrameCount() {
+        return size / frameBytes;
+    }
+
+    /**
+     * Copies one complete frame into dst, which must hold at least one frame.
+     */
+    public void copyFrame(int index, byte[] dst) {
+        if (index < 0 || index >= getFrameCount()) {
+            throw new IndexOutOfBoundsException("Frame " + index + " of " + getFrameCount());
+        }
+        frameReader.clear();
+        frameReader.position(index * frameBytes);
+        frameReader.get(dst, 0, frameBytes);
+    }
+
+    /**
+     * Returns a read-only view of the recorded bytes in native byte order, positioned at zero.
+     * The view is only valid while a reference to the arena is held.
+     */
+    public ByteBuffer view() {
+        ByteBuffer view = buffer.asReadOnlyBuffer();
+        view.position(0);
+        view.limit(size);
+        return view.slice().order(ByteOrder.nativeOrder());
+    }
+
+    public RecordingArena retain() {
+        refCount.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * Drops a reference. The last release returns a pooled arena to its pool.
+     */
+    public void release() {
+        int count = refCount.decrementAndGet();
+        if (count < 0) throw new IllegalStateException("Arena released too often");
+        if (count == 0 && pool != null) pool.recycle(this);
+        // A file that cannot be deleted now is removed with the stale ones by the recorder
+        if (count == 0 && spillFile != null) spillFile.delete();
+    }
+
+    int getRefCount() {
+        return refCount.get();
+    }
+
+    /**
+     * Prepares a recycled arena for the next recording, holding one reference.
+     */
+    void reset() {
+        size = 0;
+        recordingId = sNextRecordingId.incrementAndGet();
+        refCount.set(1);
+    }
+}
@@ -0,0 +1,60 @@
+package com.whispertflite.asr;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Small pool of direct recording arenas of equal size.
+ * A recording that is still being transcribed keeps its arena while the next one is captured,
+ * so a pool of two covers back-to-back dictation without allocating; further arenas are
+ * allocated on demand and dropped when released while the pool is full.
+ */
+public class RecordingArenaPool {
+
+    private final int arenaBytes;
+    private final int frameBytes;
+    private final int maxPooled;
+    private final ArrayDeque<RecordingArena> free = new ArrayDeque<>();
+    private int allocated = 0;
+
+    /**
+     * @param arenaBytes Capacity of each arena
+     * @param frameBytes Frame size of each arena
+     * @param maxPooled  Maximum number of released arenas kept for reuse
+     */
+    public RecordingArenaPool(int arenaBytes, int frameBytes, int maxPooled) {
+        this.arenaBytes = arenaBytes;
+        this.frameBytes = frameBytes;
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Returns an empty arena holding one reference, reusing a released one if available.
+     */
+    public synchronized RecordingArena acquire() {
+        RecordingArena arena = free.poll();
+        if (arena == null) {
+            arena = new RecordingArena(ByteBuffer.allocateDirect(arenaBytes), frameBytes, this);
+            allocated++;
+        }
+        arena.reset();
+        return arena;
+    }
+
+    synchronized void recycle(RecordingArena arena) {
+        if (free.size() < maxPooled) {
+            free.push(arena);
+        }
+    }
+
+    /**
+     * Returns the number of arenas allocated by this pool so far.
+     */
+    public synchronized int getAllocatedCount() {
+        return allocated;
+    }
+
+    public synchronized int getPooledCount() {
+        return free.size();
+    }
+}
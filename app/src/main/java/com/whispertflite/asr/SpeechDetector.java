@@ -0,0 +1,13 @@
+package com.whispertflite.asr;
+
+/**
+ * Classifies 30 ms frames of 16 kHz, mono, PCM16 audio as speech or not, smoothing over the
+ * previous frames. The live implementation is WebRTC VAD (Recorder.initVad()); replays may
+ * use their own, e.g. to run continuous dictation without the native library.
+ */
+public interface SpeechDetector {
+
+    boolean isSpeech(byte[] frame);
+
+    void close();
+}
@@ -0,0 +1,47 @@
+package com.whispertflite.asr;
+
+import com.whispertflite.utils.CancellationToken;
+
+/**
+ * Failure of a recording or transcription, with the reason to tell the user about.
+ * Jobs cancelled through their future fail with a CancellationException instead.
+ */
+public class TranscriptionException extends Exception {
+
+    public enum Reason {
+        NO_PERMISSION,      // the app may not record audio
+        NOTHING_RECORDED,   // no speech, or too short to transcribe
+        RECORDING_FAILED,   // the audio source failed
+        NOT_INITIALIZED,    // no model loaded or remote API configured
+        QUEUE_FULL,         // too many jobs waiting for transcription
+        CLOSED,             // the recorder or Whisper instance has been closed
+        REMOTE_FAILED,      // the remote API could not be reached or returned an error
+        ENGINE_FAILED,      // the local engine failed
+        CANCELLED,          // stopped by the user
+        TIMED_OUT           // stopped at the deadline of the job
+    }
+
+    private final Reason reason;
+
+    public TranscriptionException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public TranscriptionException(Reason reason, String message, Throwable cause) {
+        super(message, cause);
+        this.reason = reason;
+    }
+
+    /**
+     * Returns the failure of work stopped by the token.
+     */
+    public static TranscriptionException cancelled(CancellationToken token) {
+        return token.isDeadlineExceeded() ? new TranscriptionException(Reason.TIMED_OUT, "Deadline exceeded")
+                : new TranscriptionException(Reason.CANCELLED, "Cancelled");
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
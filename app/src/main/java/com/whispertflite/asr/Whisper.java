@@ -9,19 +9,39 @@ import androidx.preference.PreferenceManager;
 import com.whispertflite.engine.WhisperEngine;
 import com.whispertflite.engine.WhisperEngineJava;
 import com.whispertflite.engine.WhisperEngineRemote;
+import com.whispertflite.utils.AudioSegmenter;
+import com.whispertflite.utils.BoundedJobQueue;
+import com.whispertflite.utils.CallbackDispatcher;
+import com.whispertflite.utils.CancellationToken;
+import com.whispertflite.utils.MetricsRegistry;
+import com.whispertflite.utils.SerialExecutor;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Whisper {
 
+    /**
+     * @deprecated Progress is reported as strings to compare with the MSG_ constants, and
+     *             failures as text. Use setListener(PipelineListener, Executor) instead.
+     */
+    @Deprecated
     public interface WhisperListener {
         void onUpdateReceived(String message);
         void onResultReceived(WhisperResult result);
+
+        /**
+         * Called with the text recognized so far while a transcription is in progress,
+         * if the engine supports streaming. The final text is delivered by onResultReceived.
+         */
+        default void onPartialResultReceived(String text) { }
     }
 
     private static final String TAG = "Whisper";
@@ -36,16 +56,162 @@ public class Whisper {
         TRANSLATE, TRANSCRIBE
     }
 
-    private final AtomicBoolean mInProgress = new AtomicBoolean(false);
+    public enum Priority {
+        INTERACTIVE,    // someone is waiting for the text, e.g. dictation
+        BACKGROUND      // long-form transcription, yields to interactive jobs between windows
+    }
+
+    /**
+     * Parameters of one transcription job.
+     */
+    public static class Options {
+        private final Action action;
+        private final int langToken;
+        private final Priority priority;
+        private final long timeoutMillis;
+        private final boolean dualOutput;
+
+        public Options(Action action, int langToken) {
+            this(action, langToken, Priority.INTERACTIVE);
+        }
+
+        public Options(Action action, int langToken, Priority priority) {
+            this(action, langToken, priority, 0, false);
+        }
+
+        private Options(Action action, int langToken, Priority priority, long timeoutMillis, boolean dualOutput) {
+            this.action = action;
+            this.langToken = langToken;
+            this.priority = priority;
+            this.timeoutMillis = timeoutMillis;
+            this.dualOutput = dualOutput;
+        }
+
+        /**
+         * Returns a copy whose job fails with TIMED_OUT unless it has finished within the given
+         * time after submission, 0 for no deadline.
+         */
+        public Options withTimeout(long millis) {
+            return new Options(action, langToken, priority, millis, dualOutput);
+        }
+
+        /**
+         * Returns a copy whose job both transcribes the audio and translates it to English,
+         * whatever the action. The result carries the translation, see
+         * WhisperResult.getTranslation(), unless the engine cannot translate (see canTranslate()).
+         */
+        public Options withDualOutput(boolean dualOutput) {
+            return new Options(action, langToken, priority, timeoutMillis, dualOutput);
+        }
+
+        public Action getAction() {
+            return action;
+        }
+
+        public int getLangToken() {
+            return langToken;
+        }
+
+        public Priority getPriority() {
+            return priority;
+        }
+
+        public long getTimeoutMillis() {
+            return timeoutMillis;
+        }
+
+        public boolean isDualOutput() {
+            return dualOutput;
+        }
+    }
+
+    private static class Job {
+        final AudioClip clip;  // null if nothing has been recorded
+        final Options options;
+        // Raised when the future is cancelled or the deadline passes, aborts the engine
+        final CancellationToken token;
+        final CompletableFuture<WhisperResult> future;
+        final long submittedAt = System.nanoTime();
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        // Progress of a background job across pre-emptions (worker thread only)
+        boolean started = false;
+        long engineMillis = 0;
+        List<AudioSegmenter.Segment> windows = null;
+        int nextWindow = 0;
+        final StringBuilder text = new StringBuilder();
+        final StringBuilder translation = new StringBuilder();
+        boolean translated = false;
+        String language = null;
+
+        Job(AudioClip clip, Options options) {
+            this.clip = clip;
+            this.options = options;
+            this.token = options.getTimeoutMillis() > 0
+                    ? CancellationToken.withTimeout(options.getTimeoutMillis()) : new CancellationToken();
+            this.future = new CompletableFuture<WhisperResult>() {
+                @Override
+                public boolean cancel(boolean mayInterruptIfRunning) {
+                    boolean cancelled = super.cancel(mayInterruptIfRunning);
+                    token.cancel();
+                    return cancelled;
+                }
+            };
+        }
+
+        void complete(WhisperResult result) {
+            releaseClip();
+            token.finish();
+            future.complete(result);
+        }
+
+        void fail(Throwable error) {
+            releaseClip();
+            token.finish();
+            future.completeExceptionally(error);
+        }
+
+        void cancel() {
+            releaseClip();
+            future.cancel(false);
+            token.finish();
+        }
+
+        private void releaseClip() {
+            if (clip != null && released.compareAndSet(false, true)) clip.release();
+        }
+    }
+
+    // Queued and running jobs
+    private final AtomicInteger mPendingJobs = new AtomicInteger(0);
 
     private final WhisperEngine mWhisperEngine;
     private Action mAction;
     private int mLangToken = -1;
+    private long mTimeoutMillis = 0;
+    private boolean mDualOutput = false;
     private WhisperListener mUpdateListener;
-
-    private final Lock taskLock = new ReentrantLock();
-    private final Condition hasTask = taskLock.newCondition();
-    private volatile boolean taskAvailable = false;
+    private final CallbackDispatcher<PipelineListener> mEvents = new CallbackDispatcher<>();
+
+    // Transcriptions of all instances run on a shared pool, one at a time per instance, with a
+    // thread for each interpreter the local engines may share
+    public static final int MAX_WORKER_THREADS = WhisperEngineJava.MAX_INTERPRETERS;
+    private static final ExecutorService sWorkerPool =
+            SerialExecutor.newSharedPool("WhisperWorker", MAX_WORKER_THREADS);
+    private final SerialExecutor mWorker = new SerialExecutor(sWorkerPool);
+    private volatile boolean mClosed = false;
+    private volatile Job mRunningJob = null;
+
+    private static final MetricsRegistry sMetrics = MetricsRegistry.getDefault();
+    // Jobs waiting for transcription, oldest first. Background jobs only run while no
+    // interactive one is waiting. The queues record how long jobs of all instances wait until
+    // their transcription starts, or resumes.
+    private final BoundedJobQueue<Job> mJobs = new BoundedJobQueue<>(BoundedJobQueue.DEFAULT_CAPACITY,
+            BoundedJobQueue.OverflowPolicy.REJECT_NEW, sMetrics.get(MetricsRegistry.Stage.QUEUE_WAIT));
+    private final BoundedJobQueue<Job> mBackgroundJobs = new BoundedJobQueue<>(BoundedJobQueue.DEFAULT_CAPACITY,
+            BoundedJobQueue.OverflowPolicy.REJECT_NEW, sMetrics.get(MetricsRegistry.Stage.BACKGROUND_QUEUE_WAIT));
+    // Windows of background jobs, at whose boundaries they can be pre-empted
+    private final AudioSegmenter mSegmenter = new AudioSegmenter();
 
     /**
      * Creates a Whisper instance using the local TFLite engine.
@@ -61,15 +227,15 @@ public class Whisper {
      * @param useRemote  true to use remote API, false for local TFLite
      */
     public Whisper(Context context, boolean useRemote) {
-        if (useRemote) {
-            this.mWhisperEngine = new WhisperEngineRemote(context);
-        } else {
-            this.mWhisperEngine = new WhisperEngineJava(context);
-        }
+        this(useRemote ? new WhisperEngineRemote(context) : new WhisperEngineJava(context));
+    }
 
-        // Start thread for RecordBuffer transcription
-        Thread threadProcessRecordBuffer = new Thread(this::processRecordBufferLoop);
-        threadProcessRecordBuffer.start();
+    /**
+     * Creates a Whisper instance using the given engine, initialized by the caller.
+     */
+    public Whisper(WhisperEngine engine) {
+        this.mWhisperEngine = engine;
+        mWhisperEngine.setPartialResultListener(this::sendPartialResult);
     }
 
     /**
@@ -95,13 +261,28 @@ public class Whisper {
         } catch (IOException e) {
             Log.e(TAG, "Error initializing remote engine", e);
             sendUpdate("Remote API initialization failed: " + e.getMessage());
+            sendFailure(new TranscriptionException(TranscriptionException.Reason.NOT_INITIALIZED,
+                    "Remote API initialization failed: " + e.getMessage(), e));
         }
     }
 
+    /**
+     * @deprecated Use setListener(PipelineListener, Executor) instead.
+     */
+    @Deprecated
     public void setListener(WhisperListener listener) {
         this.mUpdateListener = listener;
     }
 
+    /**
+     * Sets the listener of typed progress events, results and failures, or removes it if null.
+     *
+     * @param executor Runs the callbacks, e.g. Context.getMainExecutor() for UI updates
+     */
+    public void setListener(PipelineListener listener, Executor executor) {
+        mEvents.setListener(listener, executor);
+    }
+
     public void loadModel(File modelPath, File vocabPath, boolean isMultilingual) {
         loadModel(modelPath.getAbsolutePath(), vocabPath.getAbsolutePath(), isMultilingual);
         currentModelPath = modelPath.getAbsolutePath();
@@ -113,6 +294,8 @@ public class Whisper {
         } catch (IOException e) {
             Log.e(TAG, "Error initializing model...", e);
             sendUpdate("Model initialization failed");
+            sendFailure(new TranscriptionException(TranscriptionException.Reason.NOT_INITIALIZED,
+                    "Model initialization failed", e));
         }
     }
 
@@ -120,6 +303,10 @@ public class Whisper {
         return currentModelPath;
     }
 
+    /**
+     * Unloads the model right away. Only call it while no job is running, otherwise use close(),
+     * which waits for the running job to be aborted.
+     */
     public void unloadModel() {
         mWhisperEngine.deinitialize();
         currentModelPath = "";
@@ -133,69 +320,366 @@ public class Whisper {
         this.mLangToken = language;
     }
 
+    /**
+     * Sets the deadline of the jobs queued by start() and enqueue(), counted from submission,
+     * 0 for none. Jobs past it fail with TIMED_OUT, and a running transcription is aborted.
+     */
+    public void setTimeout(long millis) {
+        this.mTimeoutMillis = millis;
+    }
+
+    /**
+     * Sets whether the jobs queued by start() and enqueue() transcribe and translate the audio
+     * at once, see Options.withDualOutput().
+     */
+    public void setDualOutput(boolean dualOutput) {
+        this.mDualOutput = dualOutput;
+    }
+
+    /**
+     * Returns whether the engine can translate, which dual output needs, see
+     * WhisperEngine.canTranslate().
+     */
+    public boolean canTranslate() {
+        return mWhisperEngine.canTranslate();
+    }
+
+    /**
+     * Sets how many jobs may wait for transcription and what happens to a job submitted to a
+     * full queue: REJECT_NEW fails it with QUEUE_FULL, DROP_OLDEST cancels the future of the
+     * job waiting longest instead.
+     */
+    public void setQueueCapacity(int capacity, BoundedJobQueue.OverflowPolicy policy) {
+        mJobs.setCapacity(capacity, policy);
+        mBackgroundJobs.setCapacity(capacity, policy);
+    }
+
+    /**
+     * Transcribes the clip, e.g. from Recorder.acquireLastRecording(), with the action and
+     * language set before.
+     *
+     * @param clip Audio of this session, null if nothing has been recorded
+     */
+    public void start(AudioClip clip) {
+        submit(clip, defaultOptions());
+    }
+
+    /**
+     * Transcribes the current recording of RecordBuffer with the action and language set before.
+     *
+     * @deprecated RecordBuffer is shared by all sessions, which overwrite each other's
+     *             recording. Pass the session's own audio to start(AudioClip) instead.
+     */
+    @Deprecated
     public void start() {
-        if (!mInProgress.compareAndSet(false, true)) {
-            Log.d(TAG, "Execution is already in progress...");
-            return;
+        AudioClip clip = AudioClip.fromRecordBuffer();
+        start(clip);
+        if (clip != null) clip.release();
+    }
+
+    /**
+     * Queues an utterance of a continuous recording for transcription, e.g. from
+     * Recorder.RecorderListener.onUtteranceRecorded(). Utterances are transcribed one after
+     * another in the order they were queued, while the next ones are still being recorded,
+     * and each result is delivered to the listener.
+     */
+    public void enqueue(RecordingArena utterance) {
+        AudioClip clip = AudioClip.of(utterance);
+        enqueue(clip);
+        clip.release();
+    }
+
+    /**
+     * Queues an utterance, e.g. from PipelineListener.onUtteranceRecorded(), like
+     * enqueue(RecordingArena).
+     */
+    public void enqueue(AudioClip utterance) {
+        submit(utterance, defaultOptions());
+    }
+
+    private Options defaultOptions() {
+        return new Options(mAction, mLangToken).withTimeout(mTimeoutMillis).withDualOutput(mDualOutput);
+    }
+
+    /**
+     * Queues a transcription job without waiting. Jobs run one at a time in submission order,
+     * except that interactive jobs go before background ones. A running background job yields
+     * to a waiting interactive job after each window of up to 30 s, and resumes with its next
+     * window afterwards. The returned future completes on the worker thread with the result, or fails with a
+     * TranscriptionException. The listener's onResult() or onFailure() is dispatched to its
+     * executor just before, but may run after the future has completed; there is no order
+     * between the two. Use the future's async methods with an executor of your choice to
+     * continue elsewhere. Cancelling the future aborts the
+     * job even while it is being transcribed, and the engine is ready for the next one.
+     *
+     * @param clip Audio to transcribe, the job holds its own reference
+     */
+    public CompletableFuture<WhisperResult> submit(AudioClip clip, Options options) {
+        Job job = new Job(clip != null ? clip.retain() : null, options);
+        if (mClosed) {
+            Log.d(TAG, "Closed, not transcribing");
+            fail(job, new TranscriptionException(TranscriptionException.Reason.CLOSED, "Whisper is closed"));
+            return job.future;
         }
-        taskLock.lock();
-        try {
-            taskAvailable = true;
-            hasTask.signal();
-        } finally {
-            taskLock.unlock();
+
+        mPendingJobs.incrementAndGet();
+        Job overflow = queueOf(job).offer(job);
+        if (overflow == job) {
+            Log.d(TAG, "Transcription queue is full, job rejected");
+            mPendingJobs.decrementAndGet();
+            fail(job, new TranscriptionException(TranscriptionException.Reason.QUEUE_FULL,
+                    "Transcription queue is full"));
+            return job.future;
         }
+        if (overflow != null) {
+            Log.d(TAG, "Transcription queue is full, oldest job dropped");
+            mPendingJobs.decrementAndGet();
+            overflow.cancel();
+        }
+        mWorker.execute(this::processNextJob);
+        return job.future;
     }
 
+    /**
+     * Cancels the jobs that have not started yet, including pre-empted background jobs waiting
+     * to resume, and aborts the running transcription.
+     */
     public void stop() {
-        mInProgress.set(false);
+        cancelQueued(mJobs);
+        cancelQueued(mBackgroundJobs);
+        Job running = mRunningJob;
+        if (running != null) running.future.cancel(false);
+    }
+
+    private void cancelQueued(BoundedJobQueue<Job> queue) {
+        for (Job job : queue.drain()) {
+            mPendingJobs.decrementAndGet();
+            job.cancel();
+        }
     }
 
     public boolean isInProgress() {
-        return mInProgress.get();
+        return mPendingJobs.get() > 0;
     }
 
-    private void processRecordBufferLoop() {
-        while (!Thread.currentThread().isInterrupted()) {
-            taskLock.lock();
-            try {
-                while (!taskAvailable) {
-                    hasTask.await();
-                }
-                processRecordBuffer();
-                taskAvailable = false;
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            } finally {
-                taskLock.unlock();
+    /**
+     * Drops pending transcriptions, aborts the running one and unloads the model once it has
+     * returned, without waiting. The instance cannot be used afterwards; it holds no thread,
+     * so nothing else has to be released.
+     */
+    public void close() {
+        mClosed = true;
+        stop();
+        // The engine may still be running the aborted job, whose interpreter must not be
+        // closed under it. The worker runs the unload after the job.
+        mWorker.execute(this::unloadModel);
+    }
+
+    public boolean isClosed() {
+        return mClosed;
+    }
+
+    /**
+     * Returns the queue wait statistics of all instances and the overflows of this one.
+     */
+    public String getQueueStats() {
+        return sMetrics.get(MetricsRegistry.Stage.QUEUE_WAIT).dumpStats()
+                + "\n" + sMetrics.get(MetricsRegistry.Stage.BACKGROUND_QUEUE_WAIT).dumpStats()
+                + "\nrejected: " + (mJobs.getRejectedCount() + mBackgroundJobs.getRejectedCount())
+                + ", dropped: " + (mJobs.getDroppedCount() + mBackgroundJobs.getDroppedCount());
+    }
+
+    private BoundedJobQueue<Job> queueOf(Job job) {
+        return job.options.getPriority() == Priority.BACKGROUND ? mBackgroundJobs : mJobs;
+    }
+
+    private void processNextJob() {
+        // Dropped or cancelled by stop() meanwhile
+        Job job = mJobs.poll();
+        if (job == null) job = mBackgroundJobs.poll();
+        if (job == null) return;
+        boolean done = true;
+        mRunningJob = job;
+        try {
+            if (job.future.isDone()) {
+                // Cancelled by the caller while queued
+                job.cancel();
+            } else {
+                done = process(job);
             }
+        } finally {
+            mRunningJob = null;
+            if (done) mPendingJobs.decrementAndGet();
         }
     }
 
-    private void processRecordBuffer() {
+    /**
+     * Runs one job on the engine. No lock of the queue is held meanwhile, so jobs can be
+     * submitted without waiting for the transcription.
+     *
+     * @return false if a background job has yielded to an interactive one and waits again
+     */
+    private boolean process(Job job) {
+        if (mClosed) {
+            fail(job, new TranscriptionException(TranscriptionException.Reason.CLOSED, "Whisper is closed"));
+            return true;
+        }
+        if (job.token.isCancelled()) {
+            // Deadline passed while queued
+            fail(job, TranscriptionException.cancelled(job.token));
+            return true;
+        }
         try {
-            if (mWhisperEngine.isInitialized() && RecordBuffer.getOutputBuffer() != null) {
-                long startTime = System.currentTimeMillis();
-                sendUpdate(MSG_PROCESSING);
+            if (mWhisperEngine.isInitialized() && job.clip != null) {
+                if (!job.started) {
+                    job.started = true;
+                    // Recorded by the queue already
+                    long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - job.submittedAt);
+                    mEvents.dispatch(listener -> listener.onStageTiming(PipelineListener.Stage.QUEUE_WAIT, waited));
+                    sendUpdate(MSG_PROCESSING);
+                    mEvents.dispatch(PipelineListener::onProcessingStarted);
+                }
 
-                WhisperResult whisperResult = null;
-                synchronized (mWhisperEngine) {
-                    whisperResult = mWhisperEngine.processRecordBuffer(mAction, mLangToken);
+                long startTime = System.currentTimeMillis();
+                WhisperResult whisperResult;
+                if (job.options.getPriority() == Priority.BACKGROUND) {
+                    whisperResult = processWindows(job);
+                } else {
+                    whisperResult = runEngine(job, job.clip);
+                }
+                job.engineMillis += System.currentTimeMillis() - startTime;
+                if (whisperResult == null) return resumeLater(job);
+                if (job.future.isCancelled()) {
+                    // Aborted by the caller, whose future has failed already
+                    Log.d(TAG, "Transcription cancelled");
+                    job.cancel();
+                    sendUpdate(MSG_PROCESSING_DONE);
+                    return true;
                 }
-                sendResult(whisperResult);
 
-                long timeTaken = System.currentTimeMillis() - startTime;
+                long timeTaken = job.engineMillis;
                 Log.d(TAG, "Time Taken for transcription: " + timeTaken + "ms");
+                sMetrics.recordMillis(MetricsRegistry.Stage.TRANSCRIPTION, timeTaken);
+                mEvents.dispatch(listener -> listener.onStageTiming(PipelineListener.Stage.TRANSCRIPTION, timeTaken));
+
+                sendResult(whisperResult);
+                if (whisperResult.isFailed()) {
+                    fail(job, whisperResult.getError());
+                } else {
+                    WhisperResult result = whisperResult;
+                    // Only queued on the listener's executor, which may run it after the future
+                    mEvents.dispatch(listener -> listener.onResult(result));
+                    job.complete(whisperResult);
+                }
                 sendUpdate(MSG_PROCESSING_DONE);
+            } else if (!mWhisperEngine.isInitialized()) {
+                sendUpdate("Engine not initialized or file path not set");
+                fail(job, new TranscriptionException(TranscriptionException.Reason.NOT_INITIALIZED,
+                        "Engine not initialized"));
             } else {
                 sendUpdate("Engine not initialized or file path not set");
+                fail(job, new TranscriptionException(TranscriptionException.Reason.NOTHING_RECORDED,
+                        "Nothing recorded"));
             }
         } catch (Exception e) {
             Log.e(TAG, "Error during transcription", e);
             sendUpdate("Transcription failed: " + e.getMessage());
-        } finally {
-            mInProgress.set(false);
+            fail(job, new TranscriptionException(TranscriptionException.Reason.ENGINE_FAILED, e.getMessage(), e));
+        }
+        return true;
+    }
+
+    /**
+     * Transcribes the remaining windows of a background job, stopping early at a window
+     * boundary if an interactive job is waiting or the job has been cancelled.
+     *
+     * @return The result of the whole clip, or null if stopped early
+     */
+    private WhisperResult processWindows(Job job) {
+        if (job.windows == null) job.windows = mSegmenter.split(job.clip.view());
+        int count = job.windows.size();
+        while (job.nextWindow < count) {
+            if (job.future.isDone() || job.token.isCancelled()
+                    || (job.nextWindow > 0 && !mJobs.isEmpty())) return null;
+
+            AudioSegmenter.Segment segment = job.windows.get(job.nextWindow);
+            AudioClip window = job.clip.slice(segment.offset, segment.length);
+            WhisperResult result;
+            try {
+                result = runEngine(job, window);
+            } finally {
+                window.release();
+            }
+            if (result.isFailed()) return result;
+
+            if (job.language == null) job.language = result.getLanguage();
+            String part = result.getResult().trim();
+            if (!part.isEmpty()) {
+                if (job.text.length() > 0) job.text.append(' ');
+                job.text.append(part);
+            }
+            if (result.hasTranslation()) {
+                job.translated = true;
+                String translated = result.getTranslation().trim();
+                if (!translated.isEmpty()) {
+                    if (job.translation.length() > 0) job.translation.append(' ');
+                    job.translation.append(translated);
+                }
+            }
+            job.nextWindow++;
+            if (job.nextWindow < count) sendPartialResult(job.text.toString());
         }
+        WhisperResult result = new WhisperResult(job.text.toString(), job.language != null ? job.language : "",
+                job.options.isDualOutput() ? Action.TRANSCRIBE : job.options.getAction());
+        // Engines that cannot translate only transcribe
+        return job.translated ? result.withTranslation(job.translation.toString()) : result;
+    }
+
+    /**
+     * Runs the engine without a lock: the serial worker already runs one job of this instance
+     * at a time, and jobs of other instances, e.g. of the keyboard and the RecognitionService,
+     * run next to it on idle interpreters of the shared pool.
+     */
+    private WhisperResult runEngine(Job job, AudioClip clip) {
+        if (job.options.isDualOutput()) {
+            return mWhisperEngine.processDual(clip, job.options.getLangToken(), job.token);
+        }
+        return mWhisperEngine.process(clip, job.options.getAction(), job.options.getLangToken(), job.token);
+    }
+
+    /**
+     * Queues a background job that stopped early again, so that it resumes with its next
+     * window once no interactive job is waiting.
+     *
+     * @return Whether the job is done after all, because it has been cancelled, timed out
+     *         or closed
+     */
+    private boolean resumeLater(Job job) {
+        if (job.future.isDone()) {
+            job.cancel();
+            return true;
+        }
+        if (job.token.isCancelled()) {
+            fail(job, TranscriptionException.cancelled(job.token));
+            return true;
+        }
+        if (mClosed) {
+            fail(job, new TranscriptionException(TranscriptionException.Reason.CLOSED, "Whisper is closed"));
+            return true;
+        }
+        Log.d(TAG, "Background job yields after window " + job.nextWindow + " of " + job.windows.size());
+        mBackgroundJobs.requeue(job);
+        mWorker.execute(this::processNextJob);
+        return false;
+    }
+
+    private void fail(Job job, TranscriptionException error) {
+        sendFailure(error);
+        job.fail(error);
+    }
+
+    private void sendFailure(TranscriptionException error) {
+        mEvents.dispatch(listener -> listener.onFailure(error));
     }
 
     private void sendUpdate(String message) {
@@ -204,6 +688,13 @@ public class Whisper {
         }
     }
 
+    private void sendPartialResult(String text) {
+        if (mUpdateListener != null) {
+            mUpdateListener.onPartialResultReceived(text);
+        }
+        mEvents.dispatch(listener -> listener.onPartialResult(text));
+    }
+
     private void sendResult(WhisperResult whisperResult) {
         if (mUpdateListener != null) {
             mUpdateListener.onResultReceived(whisperResult);
@@ -4,11 +4,36 @@ public class WhisperResult {
     private final String result;
     private final String language;
     private final Whisper.Action task;
+    private final TranscriptionException error;
+    private final String translation;  // null unless transcribed and translated at once
 
     public WhisperResult(String result, String language, Whisper.Action task){
+        this(result, language, task, null, null);
+    }
+
+    private WhisperResult(String result, String language, Whisper.Action task, TranscriptionException error,
+                          String translation){
         this.result = result;
         this.language = language;
         this.task = task;
+        this.error = error;
+        this.translation = translation;
+    }
+
+    /**
+     * Creates the result of a failed transcription. Its text is "[Error: message]" for callers
+     * that only look at the text.
+     */
+    public static WhisperResult failed(TranscriptionException error, Whisper.Action task) {
+        return new WhisperResult("[Error: " + error.getMessage() + "]", "", task, error, null);
+    }
+
+    /**
+     * Returns a copy of this transcription that also carries the English translation of the
+     * same audio.
+     */
+    public WhisperResult withTranslation(String translation) {
+        return new WhisperResult(result, language, task, error, translation);
     }
 
     public String getResult() {
@@ -22,4 +47,27 @@ public class WhisperResult {
     public Whisper.Action getTask() {
         return task;
     }
+
+    /**
+     * Returns the English translation of a dual-output result, whose getResult() is the
+     * transcription, or null otherwise.
+     */
+    public String getTranslation() {
+        return translation;
+    }
+
+    public boolean hasTranslation() {
+        return translation != null;
+    }
+
+    public boolean isFailed() {
+        return error != null;
+    }
+
+    /**
+     * Returns why the transcription failed, or null if it succeeded.
+     */
+    public TranscriptionException getError() {
+        return error;
+    }
 }
@@ -0,0 +1,153 @@
+package com.whispertflite.engine;
+
+import android.util.Log;
+
+import com.whispertflite.utils.ResourcePool;
+import com.whispertflite.utils.WhisperUtil;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interpreters over one memory-mapped TFLite model, shared by all local engines that load the
+ * same model file. The model is mapped once; each interpreter only adds its own tensor memory.
+ * The CPU threads are split among the interpreters, so that concurrent transcriptions do not
+ * oversubscribe the cores.
+ */
+class InterpreterPool {
+
+    private static final String TAG = "InterpreterPool";
+
+    /**
+     * An interpreter with its share of the threads and its own input buffer.
+     */
+    static class Slot {
+        final Interpreter interpreter;
+        final int numThreads;
+        // Reused across calls, 30 s of audio
+        final float[] inputSamples = new float[WhisperUtil.WHISPER_SAMPLE_RATE * WhisperUtil.WHISPER_CHUNK_SIZE];
+
+        Slot(Interpreter interpreter, int numThreads) {
+            this.interpreter = interpreter;
+            this.numThreads = numThreads;
+        }
+    }
+
+    // Open pools by model path
+    private static final Map<String, InterpreterPool> sPools = new HashMap<>();
+
+    private final String modelPath;
+    private final ResourcePool<Slot> slots;
+    // Signatures of the model, the same for every interpreter
+    private final Set<String> signatures;
+    private final Set<Slot> busy = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private int refCount = 1;  // guarded by InterpreterPool.class
+
+    private InterpreterPool(String modelPath, List<Slot> slots) {
+        this.modelPath = modelPath;
+        this.slots = new ResourcePool<>(slots);
+        this.signatures = new HashSet<>(Arrays.asList(slots.get(0).interpreter.getSignatureKeys()));
+    }
+
+    /**
+     * Returns the pool of the model, creating it with the given number of interpreters unless
+     * it is open already with as many. Call close() when done with it.
+     */
+    static synchronized InterpreterPool open(String modelPath, int count) throws IOException {
+        InterpreterPool pool = sPools.get(modelPath);
+        if (pool != null && pool.size() == count) {
+            pool.refCount++;
+            return pool;
+        }
+
+        ByteBuffer model;
+        try (FileInputStream fileInputStream = new FileInputStream(modelPath)) {
+            FileChannel fileChannel = fileInputStream.getChannel();
+            model = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        int threads = Math.max(1, cores / count);
+        List<Slot> slots = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Interpreter.Options options = new Interpreter.Options();
+            options.setUseXNNPACK(false);  //cannot be used due to dynamic tensors
+            options.setNumThreads(threads);
+            options.setCancellable(true);
+            slots.add(new Slot(new Interpreter(model, options), threads));
+        }
+        Log.d(TAG, count + " interpreters with " + threads + " threads each for " + modelPath);
+
+        // Engines still using a pool of another size keep it until they close it
+        pool = new InterpreterPool(modelPath, slots);
+        sPools.put(modelPath, pool);
+        return pool;
+    }
+
+    int size() {
+        return slots.size();
+    }
+
+    boolean hasSignature(String key) {
+        return signatures.contains(key);
+    }
+
+    /**
+     * Returns an idle interpreter, waiting for one if all are busy.
+     *
+     * @throws IllegalStateException If the pool has been closed
+     */
+    Slot acquire() throws InterruptedException {
+        Slot slot = slots.acquire();
+        // May have been cancelled by the engine of an earlier job
+        slot.interpreter.setCancelled(false);
+        busy.add(slot);
+        return slot;
+    }
+
+    /**
+     * Returns several idle interpreters at once, waiting until as many are idle.
+     *
+     * @throws IllegalStateException If the pool has been closed
+     */
+    List<Slot> acquire(int count) throws InterruptedException {
+        List<Slot> acquired = slots.acquire(count);
+        for (Slot slot : acquired) {
+            slot.interpreter.setCancelled(false);
+            busy.add(slot);
+        }
+        return acquired;
+    }
+
+    void release(Slot slot) {
+        busy.remove(slot);
+        // Closed while in use
+        if (!slots.release(slot)) slot.interpreter.close();
+    }
+
+    /**
+     * Drops a reference. The last one closes the idle interpreters and cancels the busy ones,
+     * which are closed when released.
+     */
+    void close() {
+        synchronized (InterpreterPool.class) {
+            if (--refCount > 0) return;
+            if (sPools.get(modelPath) == this) sPools.remove(modelPath);
+        }
+        for (Slot slot : slots.close()) slot.interpreter.close();
+        for (Slot slot : busy) slot.interpreter.setCancelled(true);
+    }
+}
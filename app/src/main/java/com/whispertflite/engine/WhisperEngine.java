@@ -1,13 +1,80 @@
 package com.whispertflite.engine;
 
+import com.whispertflite.asr.AudioClip;
+import com.whispertflite.asr.TranscriptionException;
 import com.whispertflite.asr.Whisper;
 import com.whispertflite.asr.WhisperResult;
+import com.whispertflite.utils.CancellationToken;
 
 import java.io.IOException;
 
 public interface WhisperEngine {
+    interface PartialResultListener {
+        void onPartialResult(String textSoFar);
+    }
+
     boolean isInitialized();
     void initialize(String modelPath, String vocabPath, boolean multilingual) throws IOException;
     void deinitialize();
-    WhisperResult processRecordBuffer(Whisper.Action mAction, int mLangToken);
+
+    /**
+     * Transcribes or translates the audio of the clip. The clip is only read; it stays
+     * owned by the caller.
+     *
+     * @param clip Audio to process, null for none
+     */
+    WhisperResult process(AudioClip clip, Whisper.Action action, int langToken);
+
+    /**
+     * Like process(), but stops as soon as possible once the token is cancelled and returns a
+     * failed result with reason CANCELLED or TIMED_OUT. The engine stays ready for the next
+     * call. Engines that cannot be interrupted only check the token before starting.
+     */
+    default WhisperResult process(AudioClip clip, Whisper.Action action, int langToken, CancellationToken token) {
+        if (token.isCancelled()) return WhisperResult.failed(TranscriptionException.cancelled(token), action);
+        return process(clip, action, langToken);
+    }
+
+    /**
+     * Returns whether the engine can translate to English. Local models without a translate
+     * signature cannot; processDual() then only transcribes.
+     */
+    default boolean canTranslate() {
+        return true;
+    }
+
+    /**
+     * Transcribes the audio and translates it to English, returning the transcription with
+     * the translation attached (see WhisperResult.getTranslation()). Engines that can run
+     * both at the same time override this; by default they run one after the other.
+     */
+    default WhisperResult processDual(AudioClip clip, int langToken, CancellationToken token) {
+        WhisperResult transcription = process(clip, Whisper.Action.TRANSCRIBE, langToken, token);
+        if (transcription.isFailed()) return transcription;
+        WhisperResult translation = process(clip, Whisper.Action.TRANSLATE, langToken, token);
+        if (translation.isFailed()) return translation;
+        return transcription.withTranslation(translation.getResult());
+    }
+
+    /**
+     * Processes the recording currently published in RecordBuffer.
+     *
+     * @deprecated RecordBuffer is shared by all sessions, which overwrite each other's
+     *             recording. Pass the session's own audio to process() instead.
+     */
+    @Deprecated
+    default WhisperResult processRecordBuffer(Whisper.Action action, int langToken) {
+        AudioClip clip = AudioClip.fromRecordBuffer();
+        try {
+            return process(clip, action, langToken);
+        } finally {
+            if (clip != null) clip.release();
+        }
+    }
+
+    /**
+     * Sets a listener for the text recognized so far while process() is running.
+     * Engines that cannot report partial results ignore it.
+     */
+    default void setPartialResultListener(PartialResultListener listener) { }
 }
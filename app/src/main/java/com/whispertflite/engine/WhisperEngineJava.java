@@ -1,12 +1,22 @@
 package com.whispertflite.engine;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.util.Log;
 
+import androidx.preference.PreferenceManager;
+
+import com.whispertflite.asr.AudioClip;
 import com.whispertflite.asr.RecordBuffer;
+import com.whispertflite.asr.TranscriptionException;
 import com.whispertflite.asr.Whisper;
 import com.whispertflite.asr.WhisperResult;
+import com.whispertflite.utils.AudioSegmenter;
+import com.whispertflite.utils.BoundedLruCache;
+import com.whispertflite.utils.CancellationToken;
 import com.whispertflite.utils.InputLang;
+import com.whispertflite.utils.MetricsRegistry;
+import com.whispertflite.utils.SerialExecutor;
 import com.whispertflite.utils.WhisperUtil;
 
 import org.tensorflow.lite.DataType;
@@ -14,31 +24,83 @@ import org.tensorflow.lite.Interpreter;
 import org.tensorflow.lite.Tensor;
 import org.tensorflow.lite.support.tensorbuffer.TensorBuffer;
 
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.IntBuffer;
-import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 public class WhisperEngineJava implements WhisperEngine {
     private final String TAG = "WhisperEngineJava";
     private final WhisperUtil mWhisperUtil = new WhisperUtil();
+    // Recordings longer than the model input are transcribed in windows cut at pauses
+    private final AudioSegmenter mSegmenter = new AudioSegmenter();
+    private PartialResultListener mPartialListener = null;
+
+    private static final String SIGNATURE_TRANSLATE = "serving_translate";
+
+    // Range of the "interpreterCount" setting
+    public static final int MAX_INTERPRETERS = 3;
+    // Interpreters needed to run both signatures of a dual-output job at once
+    public static final int DUAL_INTERPRETERS = 2;
+    // Windows of long recordings run concurrently if the pool has more than one interpreter
+    private static final ExecutorService sWindowPool =
+            SerialExecutor.newSharedPool("WhisperWindow", MAX_INTERPRETERS);
+    // Runs the translation of dual-output jobs next to their transcription. Separate from the
+    // window pool, whose tasks may wait for the interpreters a dual-output job holds.
+    private static final ExecutorService sDualPool =
+            SerialExecutor.newSharedPool("WhisperDual", DUAL_INTERPRETERS);
+
+    private static final MetricsRegistry sMetrics = MetricsRegistry.getDefault();
 
     private final Context mContext;
-    private boolean mIsInitialized = false;
-    private Interpreter mInterpreter = null;
+    private volatile boolean mIsInitialized = false;
+    private int mInterpreterCount = 0;  // 0: from the settings
+    private volatile InterpreterPool mPool = null;
+    // Slots running a job of this engine, cancelled by deinitialize()
+    private final Set<InterpreterPool.Slot> mBusySlots = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    // Spectrograms of the last windows, reused when the same audio is run again with another
+    // action or language. One window takes WHISPER_N_MEL * 3000 floats, about 1 MB.
+    static final int MEL_CACHE_ENTRIES = 4;
+    private static final long MEL_CACHE_BYTES = MEL_CACHE_ENTRIES * (long) WhisperUtil.WHISPER_N_MEL
+            * WhisperUtil.WHISPER_SAMPLE_RATE * WhisperUtil.WHISPER_CHUNK_SIZE / WhisperUtil.WHISPER_HOP_LENGTH * Float.BYTES;
+    private final BoundedLruCache<AudioClip.Key, float[]> mMelCache =
+            new BoundedLruCache<>(MEL_CACHE_ENTRIES, MEL_CACHE_BYTES, mel -> (long) mel.length * Float.BYTES);
 
     public WhisperEngineJava(Context context) {
         mContext = context;
     }
 
+    /**
+     * Returns the number of interpreters chosen in the settings, 1 to MAX_INTERPRETERS.
+     * Before it could be chosen, "parallelTranscriptions" switched between 2 and 1.
+     */
+    public static int getInterpreterCount(SharedPreferences sp) {
+        int count = sp.getInt("interpreterCount", sp.getBoolean("parallelTranscriptions", false) ? 2 : 1);
+        return Math.max(1, Math.min(MAX_INTERPRETERS, count));
+    }
+
+    /**
+     * Sets the number of interpreters for the next initialize(). Local engines that load the
+     * same model share them, and jobs run on whichever interpreter is idle.
+     */
+    public void setInterpreterCount(int count) {
+        mInterpreterCount = Math.max(1, count);
+    }
+
     @Override
     public boolean isInitialized() {
         return mIsInitialized;
@@ -46,6 +108,7 @@ public class WhisperEngineJava implements WhisperEngine {
 
     @Override
     public void initialize(String modelPath, String vocabPath, boolean multilingual) throws IOException {
+        mMelCache.clear();
         // Load model
         loadModel(modelPath);
         Log.d(TAG, "Model is loaded..." + modelPath);
@@ -65,59 +128,309 @@ public class WhisperEngineJava implements WhisperEngine {
     // Unload the model by closing the interpreter
     @Override
     public void deinitialize() {
-        if (mInterpreter != null) {
-            mInterpreter.setCancelled(true);
-            mInterpreter.close();
-            mInterpreter = null; // Optional: Set to null to avoid accidental reuse
+        mIsInitialized = false;
+        mMelCache.clear();
+        for (InterpreterPool.Slot slot : mBusySlots) slot.interpreter.setCancelled(true);
+        if (mPool != null) {
+            mPool.close();
+            mPool = null; // Optional: Set to null to avoid accidental reuse
         }
     }
 
     @Override
-    public WhisperResult processRecordBuffer(Whisper.Action mAction, int mLangToken) {
-        // Calculate Mel spectrogram
-        Log.d(TAG, "Calculating Mel spectrogram...");
-        float[] melSpectrogram = getMelSpectrogram();
-        Log.d(TAG, "Mel spectrogram is calculated...!");
+    public WhisperResult process(AudioClip clip, Whisper.Action mAction, int mLangToken) {
+        return process(clip, mAction, mLangToken, CancellationToken.NONE);
+    }
+
+    @Override
+    public WhisperResult process(AudioClip clip, Whisper.Action mAction, int mLangToken, CancellationToken token) {
+        try {
+            return processWindows(clip, mAction, mLangToken, token);
+        } catch (CancellationException e) {
+            Log.d(TAG, "Transcription stopped: " + e.getMessage());
+            return WhisperResult.failed(TranscriptionException.cancelled(token), mAction);
+        }
+    }
+
+    private WhisperResult processWindows(AudioClip clip, Whisper.Action mAction, int mLangToken, CancellationToken token) {
+        ByteBuffer pcm = clip != null ? clip.view() : ByteBuffer.allocate(0);
+        AudioClip.Key key = clip != null ? clip.getKey() : null;
+        List<AudioSegmenter.Segment> segments = mSegmenter.split(pcm);
+        if (segments.size() == 1) return processSamples(pcm, key, mAction, mLangToken, token);
+
+        // Long recording, read window by window from the (possibly disk-spilled) clip
+        Log.d(TAG, "Transcribing " + segments.size() + " windows");
+        InterpreterPool pool = mPool;
+        List<Future<WhisperResult>> parallel = null;
+        if (pool != null && pool.size() > 1) {
+            // Each window runs on the next idle interpreter
+            parallel = new ArrayList<>(segments.size());
+            for (AudioSegmenter.Segment segment : segments) {
+                ByteBuffer window = window(pcm, segment);
+                AudioClip.Key windowKey = key.slice(segment.offset, segment.length);
+                parallel.add(sWindowPool.submit(() -> processSamples(window, windowKey, mAction, mLangToken, token)));
+            }
+        }
+        StringBuilder text = new StringBuilder();
+        WhisperResult first = null;
+        for (int i = 0; i < segments.size(); i++) {
+            AudioSegmenter.Segment segment = segments.get(i);
+            WhisperResult result = parallel != null ? getResult(parallel, i, mAction)
+                    : processSamples(window(pcm, segment), key.slice(segment.offset, segment.length),
+                            mAction, mLangToken, token);
+            if (result.isFailed()) return result;
+            if (first == null) first = result;
+            String part = result.getResult().trim();
+            if (part.isEmpty()) continue;
+            if (text.length() > 0) text.append(' ');
+            text.append(part);
+            if (mPartialListener != null) mPartialListener.onPartialResult(text.toString());
+        }
+        return new WhisperResult(text.toString(), first.getLanguage(), first.getTask());
+    }
+
+    private static ByteBuffer window(ByteBuffer pcm, AudioSegmenter.Segment segment) {
+        ByteBuffer window = pcm.duplicate();
+        window.position(segment.offset);
+        window.limit(segment.offset + segment.length);
+        return window.slice().order(pcm.order());
+    }
 
-        // Perform inference
-        WhisperResult whisperResult = runInference(melSpectrogram, mAction, mLangToken);
-        Log.d(TAG, "Inference is executed...!");
+    /**
+     * Waits for the result of a window; on failure the remaining windows are cancelled.
+     */
+    private WhisperResult getResult(List<Future<WhisperResult>> windows, int index, Whisper.Action action) {
+        try {
+            return windows.get(index).get();
+        } catch (InterruptedException | ExecutionException e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            Log.e(TAG, "Window " + index + " failed", e);
+            for (int i = index + 1; i < windows.size(); i++) windows.get(i).cancel(true);
+            Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+            if (cause instanceof CancellationException) throw (CancellationException) cause;
+            return WhisperResult.failed(new TranscriptionException(
+                    TranscriptionException.Reason.ENGINE_FAILED, "Window " + index + " failed", cause), action);
+        }
+    }
 
-        return whisperResult;
+    @Override
+    public void setPartialResultListener(PartialResultListener listener) {
+        mPartialListener = listener;
+    }
+
+    /**
+     * Transcribes up to 30 s of PCM16 audio.
+     *
+     * @param key Identifies the audio for the spectrogram cache, null if it is not to be cached
+     * @throws CancellationException If the token has been cancelled
+     */
+    private WhisperResult processSamples(ByteBuffer pcm, AudioClip.Key key, Whisper.Action mAction, int mLangToken,
+                                         CancellationToken token) {
+        token.throwIfCancelled();
+        InterpreterPool pool = mPool;
+        if (pool == null) return new WhisperResult("", "", mAction);
+        InterpreterPool.Slot slot;
+        try {
+            slot = pool.acquire();
+        } catch (InterruptedException | IllegalStateException e) {
+            // Unloaded meanwhile
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            return new WhisperResult("", "", mAction);
+        }
+        mBusySlots.add(slot);
+        // Aborts a running inference; the pool resets the interpreter for its next job. Closing the
+        // registration waits for a late abort, which would otherwise hit the slot's next job
+        try (CancellationToken.Registration ignored = token.onCancel(() -> slot.interpreter.setCancelled(true))) {
+            float[] melSpectrogram = getMelSpectrogram(pcm, key, slot, token);
+
+            // Perform inference
+            WhisperResult whisperResult = runInference(slot.interpreter, melSpectrogram, mAction, mLangToken);
+            token.throwIfCancelled();
+            Log.d(TAG, "Inference is executed...!");
+
+            return whisperResult;
+        } finally {
+            mBusySlots.remove(slot);
+            pool.release(slot);
+        }
     }
 
 
     // Load TFLite model
     private void loadModel(String modelPath) throws IOException {
-        FileInputStream fileInputStream = new FileInputStream(modelPath);
-        FileChannel fileChannel = fileInputStream.getChannel();
-        long startOffset = 0;
-        long declaredLength = fileChannel.size();
-        ByteBuffer tfliteModel = fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
+        int count = mInterpreterCount;
+        if (count == 0) {
+            SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(mContext);
+            count = getInterpreterCount(sp);
+            if (sp.getBoolean("dualOutput", false)) count = Math.max(count, DUAL_INTERPRETERS);
+        }
+        if (mPool != null) mPool.close();
+        mPool = InterpreterPool.open(modelPath, count);
+    }
 
-        // Set the number of threads for inference
-        Interpreter.Options options = new Interpreter.Options();
-        options.setUseXNNPACK(false);  //cannot be used due to dynamic tensors
-        options.setNumThreads(Runtime.getRuntime().availableProcessors());
-        options.setCancellable(true);
+    @Override
+    public boolean canTranslate() {
+        InterpreterPool pool = mPool;
+        return pool != null && pool.hasSignature(SIGNATURE_TRANSLATE);
+    }
 
-        mInterpreter = new Interpreter(tfliteModel, options);
+    /**
+     * Transcribes the audio and translates it to English. Each window's spectrogram is
+     * calculated once and both signatures run on it at the same time, on two interpreters of
+     * the pool if it has more than one.
+     */
+    @Override
+    public WhisperResult processDual(AudioClip clip, int mLangToken, CancellationToken token) {
+        if (!canTranslate()) {
+            // runInference() would fall back to the default signature and transcribe twice
+            Log.w(TAG, "Model cannot translate, transcribing only");
+            return process(clip, Whisper.Action.TRANSCRIBE, mLangToken, token);
+        }
+        try {
+            ByteBuffer pcm = clip != null ? clip.view() : ByteBuffer.allocate(0);
+            AudioClip.Key key = clip != null ? clip.getKey() : null;
+            List<AudioSegmenter.Segment> segments = mSegmenter.split(pcm);
+            StringBuilder text = new StringBuilder();
+            StringBuilder translation = new StringBuilder();
+            WhisperResult first = null;
+            for (AudioSegmenter.Segment segment : segments) {
+                ByteBuffer window = segments.size() == 1 ? pcm : window(pcm, segment);
+                AudioClip.Key windowKey = key != null ? key.slice(segment.offset, segment.length) : null;
+                WhisperResult result = processSamplesDual(window, windowKey, mLangToken, token);
+                if (first == null) first = result;
+                append(text, result.getResult());
+                append(translation, result.getTranslation());
+                if (segments.size() > 1 && mPartialListener != null) mPartialListener.onPartialResult(text.toString());
+            }
+            return new WhisperResult(text.toString(), first.getLanguage(), Whisper.Action.TRANSCRIBE)
+                    .withTranslation(translation.toString());
+        } catch (CancellationException e) {
+            Log.d(TAG, "Transcription stopped: " + e.getMessage());
+            return WhisperResult.failed(TranscriptionException.cancelled(token), Whisper.Action.TRANSCRIBE);
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Translation failed", e);
+            return WhisperResult.failed(new TranscriptionException(
+                    TranscriptionException.Reason.ENGINE_FAILED, "Translation failed", e.getCause()), Whisper.Action.TRANSCRIBE);
+        }
     }
 
-    private float[] getMelSpectrogram() {
-        // Get samples in PCM_FLOAT format
-        float[] samples = RecordBuffer.getSamples();
+    private static <T> T getUninterruptibly(Future<T> future) throws ExecutionException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
 
-        int fixedInputSize = WhisperUtil.WHISPER_SAMPLE_RATE * WhisperUtil.WHISPER_CHUNK_SIZE;
-        float[] inputSamples = new float[fixedInputSize];
-        int copyLength = Math.min(samples.length, fixedInputSize);
-        System.arraycopy(samples, 0, inputSamples, 0, copyLength);
+    private static void append(StringBuilder text, String part) {
+        part = part.trim();
+        if (part.isEmpty()) return;
+        if (text.length() > 0) text.append(' ');
+        text.append(part);
+    }
+
+    /**
+     * Transcribes and translates up to 30 s of PCM16 audio.
+     *
+     * @throws CancellationException If the token has been cancelled
+     * @throws ExecutionException    If the translation failed
+     */
+    private WhisperResult processSamplesDual(ByteBuffer pcm, AudioClip.Key key, int mLangToken,
+                                             CancellationToken token) throws ExecutionException {
+        token.throwIfCancelled();
+        InterpreterPool pool = mPool;
+        WhisperResult empty = new WhisperResult("", "", Whisper.Action.TRANSCRIBE).withTranslation("");
+        if (pool == null) return empty;
+        List<InterpreterPool.Slot> slots;
+        try {
+            // Both at once, so that two dual-output jobs do not wait for each other's second one
+            slots = pool.acquire(Math.min(2, pool.size()));
+        } catch (InterruptedException | IllegalStateException e) {
+            // Unloaded meanwhile
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            return empty;
+        }
+        mBusySlots.addAll(slots);
+        InterpreterPool.Slot transcriber = slots.get(0);
+        InterpreterPool.Slot translator = slots.get(slots.size() - 1);
+        try (CancellationToken.Registration ignored = token.onCancel(() -> {
+            for (InterpreterPool.Slot slot : slots) slot.interpreter.setCancelled(true);
+        })) {
+            float[] melSpectrogram = getMelSpectrogram(pcm, key, transcriber, token);
+
+            WhisperResult transcription;
+            WhisperResult translation;
+            if (translator == transcriber) {
+                transcription = runInference(transcriber.interpreter, melSpectrogram, Whisper.Action.TRANSCRIBE, mLangToken);
+                token.throwIfCancelled();
+                translation = runInference(transcriber.interpreter, melSpectrogram, Whisper.Action.TRANSLATE, mLangToken);
+            } else {
+                // Each interpreter has half of the cores, so both take about as long as one alone
+                Future<WhisperResult> translating = sDualPool.submit(() ->
+                        runInference(translator.interpreter, melSpectrogram, Whisper.Action.TRANSLATE, mLangToken));
+                try {
+                    transcription = runInference(transcriber.interpreter, melSpectrogram, Whisper.Action.TRANSCRIBE, mLangToken);
+                } finally {
+                    // The translator is only released once its inference has returned
+                    translation = getUninterruptibly(translating);
+                }
+            }
+            token.throwIfCancelled();
+            Log.d(TAG, "Inference is executed for both signatures...!");
+            return transcription.withTranslation(translation.getResult());
+        } finally {
+            for (InterpreterPool.Slot slot : slots) {
+                mBusySlots.remove(slot);
+                pool.release(slot);
+            }
+        }
+    }
+
+    /**
+     * Returns the spectrogram of the audio, calculated on the slot's buffer unless the same
+     * audio has been transcribed recently.
+     *
+     * @param key Identifies the audio for the spectrogram cache, null if it is not to be cached
+     */
+    private float[] getMelSpectrogram(ByteBuffer pcm, AudioClip.Key key, InterpreterPool.Slot slot,
+                                      CancellationToken token) {
+        float[] melSpectrogram = key != null ? mMelCache.get(key) : null;
+        if (melSpectrogram != null) {
+            Log.d(TAG, "Mel spectrogram is cached for " + key);
+            return melSpectrogram;
+        }
+        Log.d(TAG, "Calculating Mel spectrogram...");
+        melSpectrogram = getMelSpectrogram(pcm, slot, token);
+        if (key != null) mMelCache.put(key, melSpectrogram);
+        Log.d(TAG, "Mel spectrogram is calculated...!");
+        return melSpectrogram;
+    }
 
-        int cores = Runtime.getRuntime().availableProcessors();
-        return mWhisperUtil.getMelSpectrogram(inputSamples, inputSamples.length, copyLength, cores);
+    private float[] getMelSpectrogram(ByteBuffer pcm, InterpreterPool.Slot slot, CancellationToken token) {
+        float[] inputSamples = slot.inputSamples;
+
+        // Get samples in PCM_FLOAT format, straight from the recording into the padded input
+        long start = System.nanoTime();
+        int copyLength = RecordBuffer.getSamples(pcm, inputSamples);
+        Arrays.fill(inputSamples, copyLength, inputSamples.length, 0f);
+        sMetrics.recordSince(MetricsRegistry.Stage.PCM_CONVERSION, start);
+
+        // The interpreter's share of the cores
+        start = System.nanoTime();
+        float[] melSpectrogram = mWhisperUtil.getMelSpectrogram(inputSamples, inputSamples.length, copyLength,
+                slot.numThreads, token);
+        sMetrics.recordSince(MetricsRegistry.Stage.MEL, start);
+        return melSpectrogram;
     }
 
-    private WhisperResult runInference(float[] inputData, Whisper.Action mAction, int mLangToken) {
+    private WhisperResult runInference(Interpreter mInterpreter, float[] inputData, Whisper.Action mAction, int mLangToken) {
         Log.d("Whisper","Signatures "+ Arrays.toString(mInterpreter.getSignatureKeys()));
 
         // Create input tensor
@@ -137,7 +450,7 @@ public class WhisperEngineJava implements WhisperEngine {
 
         String signature_key = "serving_default";
         if (mAction == Whisper.Action.TRANSLATE) {
-            if (Arrays.asList(mInterpreter.getSignatureKeys()).contains("serving_translate")) signature_key = "serving_translate";
+            if (Arrays.asList(mInterpreter.getSignatureKeys()).contains(SIGNATURE_TRANSLATE)) signature_key = SIGNATURE_TRANSLATE;
         } else if (mAction == Whisper.ACTION_TRANSCRIBE) {
             if (Arrays.asList(mInterpreter.getSignatureKeys()).contains("serving_transcribe_lang") && mLangToken != -1) signature_key = "serving_transcribe_lang";
             else if (Arrays.asList(mInterpreter.getSignatureKeys()).contains("serving_transcribe")) signature_key = "serving_transcribe";
@@ -159,11 +472,14 @@ public class WhisperEngineJava implements WhisperEngine {
         outputsMap.put(outputs[0], outputBuffer.getBuffer());
 
         // Run inference
+        long start = System.nanoTime();
         try {
             mInterpreter.runSignature(inputsMap, outputsMap, signature_key);
         } catch (Exception e) {
             return new WhisperResult("", "", mAction);
         }
+        sMetrics.recordSince(MetricsRegistry.Stage.INTERPRETER, start);
+        start = System.nanoTime();
 
         // Retrieve the results
         ArrayList<InputLang> inputLangList = InputLang.getLangList();
@@ -215,7 +531,9 @@ public class WhisperEngineJava implements WhisperEngine {
             offset += byteArray.length;
         }
 
-        return new WhisperResult(new String(combinedBytes, StandardCharsets.UTF_8), language, task);
+        String text = new String(combinedBytes, StandardCharsets.UTF_8);
+        sMetrics.recordSince(MetricsRegistry.Stage.DETOKENIZE, start);
+        return new WhisperResult(text, language, task);
     }
 
 }
@@ -6,23 +6,53 @@ import android.util.Log;
 
 import androidx.preference.PreferenceManager;
 
-import com.whispertflite.asr.RecordBuffer;
+import com.whispertflite.asr.AudioClip;
+import com.whispertflite.asr.TranscriptionException;
 import com.whispertflite.asr.Whisper;
 import com.whispertflite.asr.WhisperResult;
+import com.whispertflite.utils.AdaptiveTimeout;
 import com.whispertflite.utils.ApiEndpointBuilder;
 import com.whispertflite.utils.ApiResponseParser;
+import com.whispertflite.utils.AudioSegmenter;
+import com.whispertflite.utils.BoundedLruCache;
+import com.whispertflite.utils.CancellationToken;
+import com.whispertflite.utils.EndpointRouter;
+import com.whispertflite.utils.HedgePolicy;
 import com.whispertflite.utils.InputLang;
+import com.whispertflite.utils.MetricsRegistry;
+import com.whispertflite.utils.RemoteEndpoint;
+import com.whispertflite.utils.RetryPolicy;
+import com.whispertflite.utils.SerialExecutor;
+import com.whispertflite.utils.StreamingResponseParser;
 import com.whispertflite.utils.WavUtil;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.BufferedSource;
 
 /**
  * Remote Whisper engine that sends audio to a Whisper-compatible API endpoint.
@@ -31,16 +61,39 @@ import okhttp3.Response;
  */
 public class WhisperEngineRemote implements WhisperEngine {
     private static final String TAG = "WhisperEngineRemote";
+    private static final int BYTES_PER_SECOND = 16000 * 2;  // 16 kHz, mono, 16 bit
+    // Segments of long recordings uploaded at the same time
+    private static final int MAX_PARALLEL_UPLOADS = 4;
+    // Sends the translation of dual-output jobs next to their transcription. Separate from the
+    // upload executor, as a translation of a long recording waits for its segments there.
+    private static final ExecutorService sDualPool = SerialExecutor.newSharedPool("RemoteDual", 2);
 
     private final Context mContext;
     private boolean mIsInitialized = false;
     private OkHttpClient mClient;
+    private ThreadPoolExecutor mUploadExecutor;
+    private final AudioSegmenter mSegmenter = new AudioSegmenter();
+    // Segments of the last recordings, reused when the same audio is sent again with another
+    // action or language. The WAV bodies stream from the recording itself and are not kept,
+    // so the cache does not hold on to any audio.
+    static final int SEGMENT_CACHE_ENTRIES = 4;
+    private final BoundedLruCache<AudioClip.Key, List<AudioSegmenter.Segment>> mSegmentCache =
+            new BoundedLruCache<>(SEGMENT_CACHE_ENTRIES, Long.MAX_VALUE, segments -> segments.size());
 
-    private String mApiKey;
-    private String mEndpoint;
-    private String mModel;
     private String mCustomDictionary;
 
+    // Shared by all engine instances so that observed server times and endpoint
+    // statistics survive re-initialization
+    private static final AdaptiveTimeout sTimeout = new AdaptiveTimeout();
+    private static final EndpointRouter sRouter = new EndpointRouter();
+    private static final MetricsRegistry sMetrics = MetricsRegistry.getDefault();
+    private static HedgePolicy sHedgePolicy = new HedgePolicy();
+    private boolean mHedging = false;
+    private boolean mStreaming = false;
+    private PartialResultListener mPartialListener;
+    private RetryPolicy mRetryPolicy = new RetryPolicy();
+    private AdaptiveTimeout mTimeout = sTimeout;
+
     public WhisperEngineRemote(Context context) {
         mContext = context;
     }
@@ -53,24 +106,36 @@ public class WhisperEngineRemote implements WhisperEngine {
     @Override
     public void initialize(String modelPath, String vocabPath, boolean multilingual) throws IOException {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(mContext);
-        mApiKey = sp.getString("apiKey", "");
-        mEndpoint = sp.getString("apiEndpoint", ApiEndpointBuilder.OPENAI_BASE_URL);
-        mModel = sp.getString("apiModel", ApiEndpointBuilder.OPENAI_DEFAULT_MODEL);
+        String apiKey = sp.getString("apiKey", "");
+        String endpoint = sp.getString("apiEndpoint", ApiEndpointBuilder.OPENAI_BASE_URL);
+        String model = sp.getString("apiModel", ApiEndpointBuilder.OPENAI_DEFAULT_MODEL);
         mCustomDictionary = sp.getString("customDictionary", "");
+        mHedging = sp.getBoolean("apiHedging", false);
+        mStreaming = sp.getBoolean("apiStreaming", false);
 
-        String validationError = ApiEndpointBuilder.validateSettings(mApiKey, mEndpoint, mModel);
+        String validationError = ApiEndpointBuilder.validateSettings(apiKey, endpoint, model);
         if (validationError != null) {
             throw new IOException("Invalid API settings: " + validationError);
         }
 
+        // The primary endpoint plus any additional endpoints form the routing pool
+        List<RemoteEndpoint> endpoints = new ArrayList<>();
+        endpoints.add(new RemoteEndpoint(sp.getString("apiProvider", "primary"), endpoint, apiKey, model));
+        endpoints.addAll(RemoteEndpoint.parseList(sp.getString("apiAdditionalEndpoints", "")));
+        sRouter.setEndpoints(endpoints);
+
+        // Per-request timeouts are applied in executeWithRetry()
         mClient = new OkHttpClient.Builder()
-                .connectTimeout(30, TimeUnit.SECONDS)
-                .readTimeout(60, TimeUnit.SECONDS)
-                .writeTimeout(60, TimeUnit.SECONDS)
+                .connectTimeout(AdaptiveTimeout.DEFAULT_CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS)
                 .build();
 
+        // Threads for the segments of long recordings, released when idle
+        mUploadExecutor = new ThreadPoolExecutor(MAX_PARALLEL_UPLOADS, MAX_PARALLEL_UPLOADS,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> new Thread(r, "RemoteUpload"));
+        mUploadExecutor.allowCoreThreadTimeOut(true);
+
         mIsInitialized = true;
-        Log.d(TAG, "Remote engine initialized. Endpoint: " + mEndpoint + ", Model: " + mModel);
+        Log.d(TAG, "Remote engine initialized. Endpoint: " + endpoint + ", Model: " + model + ", pool size: " + endpoints.size());
     }
 
     @Override
@@ -79,6 +144,10 @@ public class WhisperEngineRemote implements WhisperEngine {
             mClient.dispatcher().cancelAll();
             mClient = null;
         }
+        if (mUploadExecutor != null) {
+            mUploadExecutor.shutdownNow();
+            mUploadExecutor = null;
+        }
         mIsInitialized = false;
     }
 
@@ -111,94 +180,557 @@ public class WhisperEngineRemote implements WhisperEngine {
     }
 
     @Override
-    public WhisperResult processRecordBuffer(Whisper.Action action, int langToken) {
+    public WhisperResult process(AudioClip clip, Whisper.Action action, int langToken) {
+        return process(clip, action, langToken, CancellationToken.NONE);
+    }
+
+    @Override
+    public WhisperResult process(AudioClip clip, Whisper.Action action, int langToken, CancellationToken token) {
+        return process(clip, action, langToken, mStreaming, token);
+    }
+
+    /**
+     * Sends the transcription and the translation request at the same time.
+     */
+    @Override
+    public WhisperResult processDual(AudioClip clip, int langToken, CancellationToken token) {
+        if (!mIsInitialized) return WhisperEngine.super.processDual(clip, langToken, token);
+        // Not streamed, partial results are those of the transcription
+        Future<WhisperResult> translating = sDualPool.submit(() ->
+                process(clip, Whisper.Action.TRANSLATE, langToken, false, token));
+        WhisperResult transcription = process(clip, Whisper.Action.TRANSCRIBE, langToken, mStreaming, token);
+        WhisperResult translation;
         try {
-            // Get raw PCM16 audio from the record buffer
-            byte[] pcmData = RecordBuffer.getOutputBuffer();
-            if (pcmData == null || pcmData.length == 0) {
-                Log.e(TAG, "No audio data in record buffer");
+            translation = translating.get();
+        } catch (InterruptedException | ExecutionException e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            translating.cancel(true);
+            Log.e(TAG, "Translation failed", e);
+            return WhisperResult.failed(new TranscriptionException(
+                    TranscriptionException.Reason.ENGINE_FAILED, "Translation failed", e), Whisper.Action.TRANSCRIBE);
+        }
+        if (transcription.isFailed()) return transcription;
+        if (translation.isFailed()) return translation;
+        return transcription.withTranslation(translation.getResult());
+    }
+
+    private WhisperResult process(AudioClip clip, Whisper.Action action, int langToken, boolean stream,
+                                  CancellationToken token) {
+        try {
+            if (clip == null || clip.size() == 0) {
+                Log.e(TAG, "No audio data in clip");
                 return new WhisperResult("", "", action);
             }
+            // Raw PCM16 audio, read in place
+            ByteBuffer pcm = clip.view();
 
-            // Convert PCM to WAV
-            byte[] wavData = WavUtil.pcmToWav16kMono(pcmData);
-            Log.d(TAG, "WAV data size: " + wavData.length + " bytes (" + pcmData.length + " PCM bytes)");
-
-            // Determine the API endpoint based on action
-            String url;
-            if (action == Whisper.Action.TRANSLATE) {
-                url = ApiEndpointBuilder.buildTranslationUrl(mEndpoint);
+            // Long recordings are split at pauses and the segments transcribed concurrently
+            List<AudioSegmenter.Segment> segments = mSegmentCache.get(clip.getKey());
+            if (segments == null) {
+                segments = mSegmenter.split(pcm);
+                mSegmentCache.put(clip.getKey(), segments);
+            }
+            String text;
+            if (segments.size() == 1) {
+                text = transcribe(pcm, 0, pcm.remaining(), action, langToken, stream, token);
             } else {
-                url = ApiEndpointBuilder.buildTranscriptionUrl(mEndpoint);
+                text = transcribeSegments(pcm, segments, action, langToken, token);
             }
 
-            // Build multipart request body
-            MultipartBody.Builder bodyBuilder = new MultipartBody.Builder()
-                    .setType(MultipartBody.FORM)
-                    .addFormDataPart("file", "audio.wav",
-                            RequestBody.create(wavData, MediaType.parse("audio/wav")))
-                    .addFormDataPart("model", mModel)
-                    .addFormDataPart("response_format", "json");
-
-            // Add language parameter if specified (not "auto")
+            // Determine language: the API might not return it, so use what we sent
+            String language = "";
             if (langToken != -1) {
-                String langCode = InputLang.getLanguageCodeById(InputLang.getLangList(), langToken);
-                if (langCode != null && !langCode.isEmpty()) {
-                    bodyBuilder.addFormDataPart("language", langCode);
-                    Log.d(TAG, "Language: " + langCode);
-                }
+                language = InputLang.getLanguageCodeById(InputLang.getLangList(), langToken);
+            }
+            Log.d(TAG, "Transcription result: " + text);
+            return new WhisperResult(text, language, action);
+
+        } catch (CancellationException e) {
+            Log.d(TAG, "Transcription stopped: " + e.getMessage());
+            return WhisperResult.failed(TranscriptionException.cancelled(token), action);
+        } catch (IOException e) {
+            // A cancelled call fails with an IOException
+            if (token.isCancelled()) return WhisperResult.failed(TranscriptionException.cancelled(token), action);
+            Log.e(TAG, "Network error during transcription", e);
+            return WhisperResult.failed(new TranscriptionException(
+                    TranscriptionException.Reason.REMOTE_FAILED, e.getMessage(), e), action);
+        } catch (Exception e) {
+            Log.e(TAG, "Unexpected error during transcription", e);
+            return WhisperResult.failed(new TranscriptionException(
+                    TranscriptionException.Reason.ENGINE_FAILED, e.getMessage(), e), action);
+        }
+    }
+
+    @Override
+    public void setPartialResultListener(PartialResultListener listener) {
+        mPartialListener = listener;
+    }
+
+    /**
+     * Uploads a range of the recording and returns its transcription.
+     *
+     * @param stream Request a streamed response and report partial results while it arrives
+     * @throws IOException If the request failed or the response could not be parsed
+     */
+    private String transcribe(ByteBuffer pcm, int offset, int length, Whisper.Action action, int langToken,
+                              boolean stream, CancellationToken token) throws IOException {
+        // Sent as WAV straight from the recording, without copying it to the heap
+        ByteBuffer audio = pcm.duplicate();
+        audio.position(offset);
+        audio.limit(offset + length);
+        WavRequestBody wav = new WavRequestBody(audio.slice());
+        Log.d(TAG, "WAV data size: " + wav.contentLength() + " bytes (" + length + " PCM bytes)");
+
+        // The audio part is shared by all attempts, whichever endpoint they go to
+        Upload upload = new Upload(wav, wav.contentLength(), length / (float) BYTES_PER_SECOND, action, langToken, stream);
+
+        // Execute synchronously (we're already on a background thread)
+        Attempt attempt = executeWithRetry(upload, token);
+
+        ApiResponseParser.ApiResult result = attempt.streamed != null ? attempt.streamed : ApiResponseParser.parse(attempt.body);
+        if (!result.isSuccess()) {
+            Log.e(TAG, "Parse error: " + result.getError());
+            throw new IOException(result.getError());
+        }
+        return result.getText();
+    }
+
+    /**
+     * Uploads all segments concurrently over the shared connection pool and joins their
+     * transcriptions in recording order. Fails as soon as any segment fails.
+     */
+    private String transcribeSegments(ByteBuffer pcm, List<AudioSegmenter.Segment> segments,
+                                      Whisper.Action action, int langToken, CancellationToken token) throws IOException {
+        Log.d(TAG, "Uploading " + segments.size() + " segments");
+        List<Future<String>> futures = new ArrayList<>();
+        for (AudioSegmenter.Segment segment : segments) {
+            futures.add(mUploadExecutor.submit(() -> transcribe(pcm, segment.offset, segment.length, action, langToken, false, token)));
+        }
+
+        StringBuilder text = new StringBuilder();
+        try {
+            for (Future<String> future : futures) {
+                String part = future.get().trim();
+                if (part.isEmpty()) continue;
+                if (text.length() > 0) text.append(' ');
+                text.append(part);
             }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for segments");
+        } finally {
+            // No-op for completed segments, stops the remaining ones after a failure
+            for (Future<String> future : futures) future.cancel(true);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Builds the multipart request for one attempt against the given endpoint.
+     */
+    private Request buildRequest(RemoteEndpoint endpoint, Upload upload) {
+        // Determine the API endpoint based on action
+        String url;
+        if (upload.action == Whisper.Action.TRANSLATE) {
+            url = ApiEndpointBuilder.buildTranslationUrl(endpoint.getBaseUrl());
+        } else {
+            url = ApiEndpointBuilder.buildTranscriptionUrl(endpoint.getBaseUrl());
+        }
+
+        // Build multipart request body
+        MultipartBody.Builder bodyBuilder = new MultipartBody.Builder()
+                .setType(MultipartBody.FORM)
+                .addFormDataPart("file", "audio.wav", upload.audio)
+                .addFormDataPart("model", endpoint.getModel())
+                .addFormDataPart("response_format", "json");
+
+        if (upload.stream) {
+            bodyBuilder.addFormDataPart("stream", "true");
+        }
+
+        // Add language parameter if specified (not "auto")
+        if (upload.langToken != -1) {
+            String langCode = InputLang.getLanguageCodeById(InputLang.getLangList(), upload.langToken);
+            if (langCode != null && !langCode.isEmpty()) {
+                bodyBuilder.addFormDataPart("language", langCode);
+                Log.d(TAG, "Language: " + langCode);
+            }
+        }
 
-            // Add custom dictionary as prompt parameter
-            String prompt = buildPrompt(mCustomDictionary);
-            if (prompt != null) {
-                bodyBuilder.addFormDataPart("prompt", prompt);
-                Log.d(TAG, "Prompt: " + prompt);
+        // Add custom dictionary as prompt parameter
+        String prompt = buildPrompt(mCustomDictionary);
+        if (prompt != null) {
+            bodyBuilder.addFormDataPart("prompt", prompt);
+            Log.d(TAG, "Prompt: " + prompt);
+        }
+
+        Log.d(TAG, "Sending request to: " + url + " (" + endpoint.getName() + ")");
+        return new Request.Builder()
+                .url(url)
+                .header("Authorization", "Bearer " + endpoint.getApiKey())
+                .post(bodyBuilder.build())
+                .build();
+    }
+
+    /**
+     * Executes an upload, retrying rate limits, server errors, connection failures and timeouts
+     * with jittered exponential backoff. Each attempt is routed by the endpoint router, which
+     * prefers endpoints that have not yet failed for this upload. Timeouts are derived from the
+     * upload size and the observed server processing time.
+     *
+     * @return The first successful attempt
+     * @throws IOException The last failure if all attempts failed or the failure is not retryable
+     */
+    private Attempt executeWithRetry(Upload upload, CancellationToken token) throws IOException {
+        IOException lastError = null;
+        Set<RemoteEndpoint> failedEndpoints = new HashSet<>();
+        for (int attempt = 0; attempt < mRetryPolicy.getMaxAttempts(); attempt++) {
+            token.throwIfCancelled();
+            RemoteEndpoint endpoint = sRouter.select(System.currentTimeMillis(), failedEndpoints);
+            if (endpoint == null) {
+                // Every endpoint failed once already, start over with the full pool
+                failedEndpoints.clear();
+                endpoint = sRouter.select(System.currentTimeMillis(), failedEndpoints);
             }
+            if (endpoint == null) throw new IOException("No remote endpoint configured");
 
-            Request request = new Request.Builder()
-                    .url(url)
-                    .header("Authorization", "Bearer " + mApiKey)
-                    .post(bodyBuilder.build())
+            OkHttpClient client = mClient.newBuilder()
+                    .connectTimeout(mTimeout.getConnectTimeoutMillis(), TimeUnit.MILLISECONDS)
+                    .writeTimeout(mTimeout.getWriteTimeoutMillis(upload.bytes), TimeUnit.MILLISECONDS)
+                    .readTimeout(mTimeout.getReadTimeoutMillis(upload.audioSeconds, attempt), TimeUnit.MILLISECONDS)
                     .build();
 
-            Log.d(TAG, "Sending request to: " + url);
+            Attempt result;
+            if (mHedging && sRouter.getEndpoints().size() > 1) {
+                result = executeHedged(client, endpoint, upload, failedEndpoints, token);
+            } else {
+                result = execute(client, endpoint, upload, token);
+            }
+
+            if (result.isSuccessful()) {
+                sRouter.recordSuccess(result.endpoint, result.latencyMs);
+                mTimeout.recordServerTime(result.processingMs >= 0 ? result.processingMs : result.exchangeMs,
+                        upload.audioSeconds);
+                // Only the server knows how much of the request it spent processing
+                sMetrics.recordMillis(MetricsRegistry.Stage.REQUEST, result.latencyMs);
+                if (result.processingMs >= 0) {
+                    sMetrics.recordMillis(MetricsRegistry.Stage.SERVER, result.processingMs);
+                    sMetrics.recordMillis(MetricsRegistry.Stage.UPLOAD, Math.max(0, result.latencyMs - result.processingMs));
+                }
+                return result;
+            }
+            recordFailure(result, token);
+            token.throwIfCancelled();
+            failedEndpoints.add(result.endpoint);
+
+            RetryPolicy.FailureKind failure;
+            long retryAfterMillis = -1;
+            if (result.error != null) {
+                failure = RetryPolicy.classifyException(result.error);
+                lastError = result.error;
+            } else {
+                ApiResponseParser.ApiResult errorResult = ApiResponseParser.parse(result.body);
+                String errorMsg = errorResult.isSuccess() || result.body.trim().isEmpty() ?
+                        "HTTP " + result.code :
+                        errorResult.getError();
+                Log.e(TAG, "API error: " + errorMsg);
+                failure = RetryPolicy.classifyStatus(result.code);
+                retryAfterMillis = RetryPolicy.parseRetryAfter(result.retryAfter, System.currentTimeMillis());
+                lastError = new IOException(errorMsg);
+            }
+
+            // Retry-After applies to the endpoint that sent it; another endpoint can be tried right away
+            boolean alternativeAvailable = failedEndpoints.size() < sRouter.getEndpoints().size();
+            long delay = mRetryPolicy.nextDelayMillis(failure, attempt, alternativeAvailable ? -1 : retryAfterMillis);
+            if (delay < 0) break;
+            Log.w(TAG, "Attempt " + (attempt + 1) + " on " + result.endpoint.getName() + " failed (" + failure + "), retrying in " + delay + "ms");
+            try {
+                if (!token.sleep(delay)) token.throwIfCancelled();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to retry");
+            }
+        }
+        throw lastError;
+    }
+
+    private Attempt execute(OkHttpClient client, RemoteEndpoint endpoint, Upload upload, CancellationToken token) {
+        long startTime = System.currentTimeMillis();
+        Call call = client.newCall(buildRequest(endpoint, upload));
+        try (CancellationToken.Registration ignored = token.onCancel(call::cancel);
+             Response response = call.execute()) {
+            return Attempt.fromResponse(endpoint, response, startTime, upload.stream ? mPartialListener : null);
+        } catch (IOException e) {
+            return Attempt.failed(endpoint, e, System.currentTimeMillis() - startTime);
+        }
+    }
 
-            // Execute synchronously (we're already on a background thread)
-            try (Response response = mClient.newCall(request).execute()) {
-                String responseBody = response.body() != null ? response.body().string() : "";
-                Log.d(TAG, "Response code: " + response.code() + ", body length: " + responseBody.length());
+    private Call enqueue(OkHttpClient client, RemoteEndpoint endpoint, Upload upload, BlockingQueue<Attempt> outcomes) {
+        long startTime = System.currentTimeMillis();
+        Call call = client.newCall(buildRequest(endpoint, upload));
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                outcomes.add(Attempt.failed(endpoint, e, System.currentTimeMillis() - startTime));
+            }
 
-                if (!response.isSuccessful()) {
-                    ApiResponseParser.ApiResult errorResult = ApiResponseParser.parse(responseBody);
-                    String errorMsg = errorResult.isSuccess() ?
-                            "HTTP " + response.code() :
-                            errorResult.getError();
-                    Log.e(TAG, "API error: " + errorMsg);
-                    return new WhisperResult("[Error: " + errorMsg + "]", "", action);
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (Response r = response) {
+                    // Partial results of concurrent calls would interleave, so hedged calls do not report them
+                    outcomes.add(Attempt.fromResponse(endpoint, r, startTime, null));
+                } catch (IOException e) {
+                    outcomes.add(Attempt.failed(endpoint, e, System.currentTimeMillis() - startTime));
                 }
+            }
+        });
+        return call;
+    }
 
-                ApiResponseParser.ApiResult result = ApiResponseParser.parse(responseBody);
-                if (result.isSuccess()) {
-                    // Determine language: the API might not return it, so use what we sent
-                    String language = "";
-                    if (langToken != -1) {
-                        language = InputLang.getLanguageCodeById(InputLang.getLangList(), langToken);
-                    }
-                    Log.d(TAG, "Transcription result: " + result.getText());
-                    return new WhisperResult(result.getText(), language, action);
+    /**
+     * Sends the upload to the primary endpoint and, if it has not answered within its observed
+     * p90 latency, also to a backup endpoint. The first successful answer wins and the other
+     * call is cancelled. Hedges are rate-limited by the hedge budget.
+     */
+    private Attempt executeHedged(OkHttpClient client, RemoteEndpoint primary, Upload upload,
+                                  Set<RemoteEndpoint> failedEndpoints, CancellationToken token) throws IOException {
+        sHedgePolicy.onRequest();
+        BlockingQueue<Attempt> outcomes = new LinkedBlockingQueue<>();
+        Call primaryCall = enqueue(client, primary, upload, outcomes);
+        long primaryStart = System.currentTimeMillis();
+        Call backupCall = null;
+        // Calls cancelled through the token fail and report their outcome, which recordFailure()
+        // does not count against the endpoint
+        CancellationToken.Registration primaryCancel = token.onCancel(primaryCall::cancel);
+        CancellationToken.Registration backupCancel = null;
+        try {
+            long hedgeDelay = sHedgePolicy.getHedgeDelayMillis(sRouter.getStats(primary));
+            Attempt first = outcomes.poll(hedgeDelay, TimeUnit.MILLISECONDS);
+            if (first != null) return first;
+
+            Set<RemoteEndpoint> exclude = new HashSet<>(failedEndpoints);
+            exclude.add(primary);
+            // Budget first: selecting a half-open endpoint claims its trial request, which
+            // must then actually be sent
+            if (exclude.containsAll(sRouter.getEndpoints()) || !sHedgePolicy.tryAcquire()) {
+                return outcomes.take();
+            }
+            RemoteEndpoint backup = sRouter.select(System.currentTimeMillis(), exclude);
+            if (backup == null) {
+                return outcomes.take();
+            }
+
+            Log.d(TAG, "No response from " + primary.getName() + " after " + hedgeDelay + "ms, hedging to " + backup.getName());
+            long backupStart = System.currentTimeMillis();
+            backupCall = enqueue(client, backup, upload, outcomes);
+            backupCancel = token.onCancel(backupCall::cancel);
+
+            Attempt result = outcomes.take();
+            if (!result.isSuccessful()) {
+                // One request failed, the other one may still succeed
+                Attempt second = outcomes.take();
+                if (second.isSuccessful()) {
+                    recordFailure(result, token);
+                    result = second;
                 } else {
-                    Log.e(TAG, "Parse error: " + result.getError());
-                    return new WhisperResult("[Error: " + result.getError() + "]", "", action);
+                    recordFailure(second, token);
+                    failedEndpoints.add(second.endpoint);
+                }
+            } else {
+                boolean primaryWon = result.endpoint == primary;
+                Attempt late = outcomes.poll();
+                if (late != null) {
+                    if (late.isSuccessful()) sRouter.recordSuccess(late.endpoint, late.latencyMs);
+                    else recordFailure(late, token);
+                } else {
+                    (primaryWon ? backupCall : primaryCall).cancel();
+                    sRouter.recordAbandoned(primaryWon ? backup : primary,
+                            System.currentTimeMillis() - (primaryWon ? backupStart : primaryStart));
                 }
             }
+            boolean backupWon = result.isSuccessful() && result.endpoint == backup;
+            sHedgePolicy.onHedgeCompleted(backupWon);
+            Log.d(TAG, "Hedge completed, winner: " + result.endpoint.getName() + ". " + sHedgePolicy.dumpStats());
+            return result;
+        } catch (InterruptedException e) {
+            primaryCall.cancel();
+            if (backupCall != null) backupCall.cancel();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for response");
+        } finally {
+            primaryCancel.close();
+            if (backupCancel != null) backupCancel.close();
+        }
+    }
 
-        } catch (IOException e) {
-            Log.e(TAG, "Network error during transcription", e);
-            return new WhisperResult("[Error: " + e.getMessage() + "]", "", action);
-        } catch (Exception e) {
-            Log.e(TAG, "Unexpected error during transcription", e);
-            return new WhisperResult("[Error: " + e.getMessage() + "]", "", action);
+    /**
+     * Records a failed attempt with the router, unless it failed because the job was cancelled,
+     * which says nothing about the endpoint. A cancelled call only releases the endpoint's
+     * half-open trial, if it held it.
+     */
+    private static void recordFailure(Attempt attempt, CancellationToken token) {
+        if (token.isCancelled()) {
+            sRouter.recordAbandoned(attempt.endpoint, attempt.latencyMs);
+        } else {
+            sRouter.recordFailure(attempt.endpoint, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Returns the router shared by all remote engine instances, e.g. to display its statistics.
+     */
+    public static EndpointRouter getRouter() {
+        return sRouter;
+    }
+
+    /**
+     * Returns the hedging policy shared by all remote engine instances, e.g. to display its statistics.
+     */
+    public static HedgePolicy getHedgePolicy() {
+        return sHedgePolicy;
+    }
+
+    static void setHedgePolicy(HedgePolicy hedgePolicy) {
+        sHedgePolicy = hedgePolicy;
+    }
+
+    void setRetryPolicy(RetryPolicy retryPolicy) {
+        mRetryPolicy = retryPolicy;
+    }
+
+    void setAdaptiveTimeout(AdaptiveTimeout timeout) {
+        mTimeout = timeout;
+    }
+
+    /**
+     * Outcome of one HTTP exchange with one endpoint: either a response or a transport failure.
+     */
+    private static final class Attempt {
+        final RemoteEndpoint endpoint;
+        final long latencyMs;
+        final int code;
+        final String body;
+        final String retryAfter;
+        // Reported by the server, -1 if it did not
+        final long processingMs;
+        // Request sent until the response headers arrived, including the upload of the body
+        final long exchangeMs;
+        final IOException error;
+        // Result of a streamed response, whose body has been consumed by the parser
+        final ApiResponseParser.ApiResult streamed;
+
+        private Attempt(RemoteEndpoint endpoint, long latencyMs, int code, String body, String retryAfter,
+                        long processingMs, long exchangeMs, IOException error, ApiResponseParser.ApiResult streamed) {
+            this.endpoint = endpoint;
+            this.latencyMs = latencyMs;
+            this.code = code;
+            this.body = body;
+            this.retryAfter = retryAfter;
+            this.processingMs = processingMs;
+            this.exchangeMs = exchangeMs;
+            this.error = error;
+            this.streamed = streamed;
+        }
+
+        /**
+         * Reads the response. A successful event stream is parsed as it arrives, reporting the
+         * text so far to the listener; a stream that ends with an error or prematurely fails.
+         */
+        static Attempt fromResponse(RemoteEndpoint endpoint, Response response, long startTime,
+                                    PartialResultListener listener) throws IOException {
+            long processingMs = AdaptiveTimeout.parseProcessingTime(response.header(AdaptiveTimeout.PROCESSING_TIME_HEADER));
+            long exchangeMs = response.receivedResponseAtMillis() - response.sentRequestAtMillis();
+            ResponseBody body = response.body();
+            if (response.isSuccessful() && body != null && isEventStream(body.contentType())) {
+                StreamingResponseParser parser = new StreamingResponseParser(listener != null ? listener::onPartialResult : null);
+                BufferedSource source = body.source();
+                String line;
+                while (!parser.isDone() && (line = source.readUtf8Line()) != null) {
+                    parser.feedLine(line);
+                }
+                parser.finish();
+                ApiResponseParser.ApiResult result = parser.getResult();
+                if (!result.isSuccess()) throw new IOException(result.getError());
+                Log.d(TAG, "Streamed response from " + endpoint.getName() + ", text length: " + result.getText().length());
+                return new Attempt(endpoint, System.currentTimeMillis() - startTime, response.code(), "",
+                        null, processingMs, exchangeMs, null, result);
+            }
+
+            String responseBody = body != null ? body.string() : "";
+            Log.d(TAG, "Response code: " + response.code() + " from " + endpoint.getName() + ", body length: " + responseBody.length());
+            return new Attempt(endpoint, System.currentTimeMillis() - startTime, response.code(), responseBody,
+                    response.header("Retry-After"), processingMs, exchangeMs, null, null);
+        }
+
+        private static boolean isEventStream(MediaType type) {
+            return type != null && "text".equals(type.type()) && "event-stream".equals(type.subtype());
+        }
+
+        static Attempt failed(RemoteEndpoint endpoint, IOException error, long latencyMs) {
+            Log.w(TAG, "Request to " + endpoint.getName() + " failed: " + error.getMessage());
+            return new Attempt(endpoint, latencyMs, -1, "", null, -1, -1, error, null);
+        }
+
+        boolean isSuccessful() {
+            return error == null && code >= 200 && code < 300;
+        }
+    }
+
+    /**
+     * WAV file whose audio is written from a (direct) buffer on every attempt.
+     */
+    private static final class WavRequestBody extends RequestBody {
+        private static final MediaType AUDIO_WAV = MediaType.parse("audio/wav");
+        private final byte[] header;
+        private final ByteBuffer pcm;
+
+        WavRequestBody(ByteBuffer pcm) {
+            this.pcm = pcm;
+            this.header = WavUtil.createHeader(pcm.remaining(), 16000, 1, 16);
+        }
+
+        @Override
+        public MediaType contentType() {
+            return AUDIO_WAV;
+        }
+
+        @Override
+        public long contentLength() {
+            return header.length + pcm.remaining();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            sink.write(header);
+            // Own cursor per write, attempts may run concurrently when hedging
+            ByteBuffer data = pcm.duplicate();
+            while (data.hasRemaining()) {
+                sink.write(data);
+            }
+        }
+    }
+
+    /**
+     * Audio and parameters of one transcription, independent of the endpoint it is sent to.
+     */
+    private static final class Upload {
+        final RequestBody audio;
+        final long bytes;
+        final float audioSeconds;
+        final Whisper.Action action;
+        final int langToken;
+        final boolean stream;
+
+        Upload(RequestBody audio, long bytes, float audioSeconds, Whisper.Action action, int langToken, boolean stream) {
+            this.audio = audio;
+            this.bytes = bytes;
+            this.audioSeconds = audioSeconds;
+            this.action = action;
+            this.langToken = langToken;
+            this.stream = stream;
         }
     }
 }
@@ -0,0 +1,116 @@
+package com.whispertflite.utils;
+
+/**
+ * Computes per-request timeouts for remote transcription calls.
+ * Pure Java, no Android dependencies — fully unit-testable.
+ *
+ * The write timeout scales with the upload size. The read timeout scales with the audio
+ * duration and an exponentially weighted moving average (EWMA) of the server processing
+ * time observed for previous requests, expressed in milliseconds per second of audio.
+ */
+public class AdaptiveTimeout {
+
+    public static final long DEFAULT_CONNECT_TIMEOUT_MS = 10000;
+    public static final long DEFAULT_MIN_READ_TIMEOUT_MS = 15000;
+    public static final long DEFAULT_MAX_READ_TIMEOUT_MS = 120000;
+    // Used until the first response has been observed (matches the former fixed read timeout)
+    public static final long DEFAULT_INITIAL_READ_TIMEOUT_MS = 60000;
+    // Slow mobile uplink, 16 KiB/s
+    public static final long DEFAULT_MIN_UPLOAD_BYTES_PER_SECOND = 16 * 1024;
+    // Response header in which OpenAI-compatible servers report their processing time
+    public static final String PROCESSING_TIME_HEADER = "openai-processing-ms";
+
+    private static final long WRITE_TIMEOUT_BASE_MS = 5000;
+    private static final double EWMA_ALPHA = 0.3;
+    // Allowed factor between the expected and the actual server time before giving up
+    private static final double SAFETY_FACTOR = 4.0;
+
+    private final long connectTimeoutMs;
+    private final long minReadTimeoutMs;
+    private final long maxReadTimeoutMs;
+    private final long minUploadBytesPerSecond;
+
+    private double ewmaServerMsPerAudioSecond = -1;
+
+    public AdaptiveTimeout() {
+        this(DEFAULT_CONNECT_TIMEOUT_MS, DEFAULT_MIN_READ_TIMEOUT_MS, DEFAULT_MAX_READ_TIMEOUT_MS, DEFAULT_MIN_UPLOAD_BYTES_PER_SECOND);
+    }
+
+    public AdaptiveTimeout(long connectTimeoutMs, long minReadTimeoutMs, long maxReadTimeoutMs, long minUploadBytesPerSecond) {
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.minReadTimeoutMs = minReadTimeoutMs;
+        this.maxReadTimeoutMs = Math.max(minReadTimeoutMs, maxReadTimeoutMs);
+        this.minUploadBytesPerSecond = Math.max(1, minUploadBytesPerSecond);
+    }
+
+    public long getConnectTimeoutMillis() {
+        return connectTimeoutMs;
+    }
+
+    /**
+     * Returns the write timeout for an upload of the given size.
+     */
+    public long getWriteTimeoutMillis(long uploadBytes) {
+        return WRITE_TIMEOUT_BASE_MS + uploadBytes * 1000 / minUploadBytesPerSecond;
+    }
+
+    /**
+     * Returns the read timeout for a request carrying the given amount of audio.
+     * Each retry after a timeout doubles the allowance, up to the configured maximum.
+     *
+     * @param audioSeconds Duration of the uploaded audio
+     * @param attempt      Zero-based attempt index
+     */
+    public synchronized long getReadTimeoutMillis(float audioSeconds, int attempt) {
+        long timeout;
+        if (ewmaServerMsPerAudioSecond < 0) {
+            timeout = DEFAULT_INITIAL_READ_TIMEOUT_MS;
+        } else {
+            timeout = minReadTimeoutMs + (long) (SAFETY_FACTOR * ewmaServerMsPerAudioSecond * Math.max(1f, audioSeconds));
+        }
+        timeout <<= Math.min(attempt, 4);
+        return Math.max(minReadTimeoutMs, Math.min(maxReadTimeoutMs, timeout));
+    }
+
+    /**
+     * Records how long the server took for a request.
+     *
+     * @param serverMillis Processing time the server reported (see parseProcessingTime()), or
+     *                     if it reports none, the time from sending the request until the
+     *                     response headers arrived. That includes the upload, which only
+     *                     makes the read timeout longer. Negative values are ignored.
+     */
+    public synchronized void recordServerTime(long serverMillis, float audioSeconds) {
+        if (serverMillis < 0) return;
+        double sample = serverMillis / Math.max(1f, audioSeconds);
+        if (ewmaServerMsPerAudioSecond < 0) {
+            ewmaServerMsPerAudioSecond = sample;
+        } else {
+            ewmaServerMsPerAudioSecond = EWMA_ALPHA * sample + (1 - EWMA_ALPHA) * ewmaServerMsPerAudioSecond;
+        }
+    }
+
+    /**
+     * Parses the processing time header, a number of milliseconds.
+     *
+     * @return Processing time in milliseconds, or -1 if the header is absent or malformed
+     */
+    public static long parseProcessingTime(String header) {
+        if (header == null || header.trim().isEmpty()) {
+            return -1;
+        }
+        try {
+            double millis = Double.parseDouble(header.trim());
+            return millis >= 0 && !Double.isInfinite(millis) ? Math.round(millis) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the EWMA of server time per second of audio, or -1 if nothing has been observed yet.
+     */
+    public synchronized double getEwmaServerMsPerAudioSecond() {
+        return ewmaServerMsPerAudioSecond;
+    }
+}
@@ -0,0 +1,120 @@
+package com.whispertflite.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits long PCM16 recordings into segments of bounded length so that they can be
+ * transcribed independently. Cuts are placed in the quietest stretch of audio within the
+ * allowed range, so that words are not cut in half.
+ * Pure Java, no Android dependencies — fully unit-testable.
+ */
+public class AudioSegmenter {
+
+    public static final float DEFAULT_MAX_SEGMENT_SECONDS = 30f;
+    public static final float DEFAULT_MIN_SEGMENT_SECONDS = 10f;
+
+    private static final int FRAME_MILLIS = 30;
+    // Length of the stretch whose energy is compared when looking for a pause (300 ms)
+    private static final int SILENCE_WINDOW_FRAMES = 10;
+
+    /**
+     * A range of bytes within the PCM buffer.
+     */
+    public static final class Segment {
+        public final int offset;
+        public final int length;
+
+        public Segment(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final int frameBytes;
+    private final int maxFrames;
+    private final int minFrames;
+
+    public AudioSegmenter() {
+        this(16000, DEFAULT_MAX_SEGMENT_SECONDS, DEFAULT_MIN_SEGMENT_SECONDS);
+    }
+
+    /**
+     * @param sampleRate        Sample rate of the mono PCM16 audio
+     * @param maxSegmentSeconds No segment is longer than this
+     * @param minSegmentSeconds No segment is shorter than this, except if the whole recording is;
+     *                          at most half of maxSegmentSeconds
+     */
+    public AudioSegmenter(int sampleRate, float maxSegmentSeconds, float minSegmentSeconds) {
+        frameBytes = sampleRate * 2 * FRAME_MILLIS / 1000;
+        maxFrames = Math.max(2, (int) (maxSegmentSeconds * 1000 / FRAME_MILLIS));
+        minFrames = Math.max(1, Math.min(maxFrames / 2, (int) (minSegmentSeconds * 1000 / FRAME_MILLIS)));
+    }
+
+    /**
+     * Returns the maximum segment length in bytes. Recordings up to this size are not split.
+     */
+    public int getMaxSegmentBytes() {
+        return maxFrames * frameBytes;
+    }
+
+    /**
+     * Splits the given little-endian PCM16 audio. Segments are returned in order, are
+     * contiguous and together cover the whole buffer.
+     */
+    public List<Segment> split(byte[] pcm) {
+        return split(ByteBuffer.wrap(pcm).order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    /**
+     * Splits the PCM16 audio between position and limit of the given buffer, read in the
+     * buffer's byte order. Segment offsets are relative to its position.
+     */
+    public List<Segment> split(ByteBuffer pcm) {
+        int base = pcm.position();
+        int length = pcm.remaining();
+        List<Segment> segments = new ArrayList<>();
+        if (length <= getMaxSegmentBytes()) {
+            segments.add(new Segment(0, length));
+            return segments;
+        }
+
+        // Prefix sums of the mean absolute amplitude per frame
+        int frames = (length + frameBytes - 1) / frameBytes;
+        long[] energy = new long[frames + 1];
+        for (int f = 0; f < frames; f++) {
+            int end = Math.min(length, (f + 1) * frameBytes);
+            long sum = 0;
+            int count = 0;
+            for (int i = f * frameBytes; i + 1 < end; i += 2) {
+                sum += Math.abs(pcm.getShort(base + i));
+                count++;
+            }
+            energy[f + 1] = energy[f] + (count > 0 ? sum / count : 0);
+        }
+
+        int start = 0;
+        while (frames - start > maxFrames) {
+            int from = start + minFrames;
+            // Leave at least a minimum length segment for the remainder
+            int to = Math.max(from, Math.min(start + maxFrames, frames - minFrames));
+            int cut = from;
+            long quietest = Long.MAX_VALUE;
+            for (int c = from; c <= to; c++) {
+                int lo = Math.max(0, c - SILENCE_WINDOW_FRAMES / 2);
+                int hi = Math.min(frames, c + SILENCE_WINDOW_FRAMES / 2);
+                long windowEnergy = energy[hi] - energy[lo];
+                if (windowEnergy < quietest) {
+                    quietest = windowEnergy;
+                    cut = c;
+                }
+            }
+            segments.add(new Segment(start * frameBytes, (cut - start) * frameBytes));
+            start = cut;
+        }
+        segments.add(new Segment(start * frameBytes, length - start * frameBytes));
+        return segments;
+    }
+}
@@ -0,0 +1,125 @@
+package com.whispertflite.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FIFO queue of pending jobs with a maximum depth. When a job arrives at a full queue, the
+ * overflow policy either rejects the new job or drops the oldest one, and the caller is handed
+ * the job that did not make it. The time each job spends waiting is recorded.
+ * Pure Java, no Android dependencies — fully unit-testable.
+ */
+public class BoundedJobQueue<T> {
+
+    public enum OverflowPolicy {
+        REJECT_NEW,     // keep the queued jobs, refuse the new one
+        DROP_OLDEST     // make room by dropping the job that waits longest
+    }
+
+    public static final int DEFAULT_CAPACITY = 8;
+
+    private static class Entry<T> {
+        final T job;
+        final long enqueuedAt;
+
+        Entry(T job, long enqueuedAt) {
+            this.job = job;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    private final ArrayDeque<Entry<T>> entries = new ArrayDeque<>();
+    private final LatencyHistogram waitHistogram;
+    private int capacity;
+    private OverflowPolicy policy;
+    private long rejectedCount = 0;
+    private long droppedCount = 0;
+
+    public BoundedJobQueue(int capacity, OverflowPolicy policy, LatencyHistogram waitHistogram) {
+        setCapacity(capacity, policy);
+        this.waitHistogram = waitHistogram;
+    }
+
+    /**
+     * Changes the depth and overflow policy. Jobs already queued beyond a smaller depth stay.
+     */
+    public synchronized void setCapacity(int capacity, OverflowPolicy policy) {
+        if (capacity < 1) throw new IllegalArgumentException("Invalid capacity " + capacity);
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Queues a job.
+     *
+     * @return null if the job was queued without overflow, otherwise the job that was not
+     *         accepted: the new one with REJECT_NEW, the dropped oldest one with DROP_OLDEST
+     */
+    public synchronized T offer(T job) {
+        if (entries.size() >= capacity) {
+            if (policy == OverflowPolicy.REJECT_NEW) {
+                rejectedCount++;
+                return job;
+            }
+            entries.add(new Entry<>(job, System.nanoTime()));
+            droppedCount++;
+            return entries.poll().job;
+        }
+        entries.add(new Entry<>(job, System.nanoTime()));
+        return null;
+    }
+
+    /**
+     * Puts a job that has been taken out but not finished back at the head of the queue, e.g.
+     * when it yields to more urgent work. It is not subject to the capacity, as it had been
+     * accepted already.
+     */
+    public synchronized void requeue(T job) {
+        entries.addFirst(new Entry<>(job, System.nanoTime()));
+    }
+
+    /**
+     * Removes the oldest job and records how long it waited, or returns null if none is queued.
+     */
+    public synchronized T poll() {
+        Entry<T> entry = entries.poll();
+        if (entry == null) return null;
+        if (waitHistogram != null) waitHistogram.recordNanos(System.nanoTime() - entry.enqueuedAt);
+        return entry.job;
+    }
+
+    /**
+     * Removes all queued jobs, oldest first, without recording their wait time.
+     */
+    public synchronized List<T> drain() {
+        List<T> jobs = new ArrayList<>(entries.size());
+        for (Entry<T> entry : entries) jobs.add(entry.job);
+        entries.clear();
+        return jobs;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+}
@@ -0,0 +1,80 @@
+package com.whispertflite.utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Keeps the most recently used values up to a number of entries and a total weight, e.g. the
+ * bytes of the cached arrays. The least recently used entries are evicted first.
+ * Pure Java, no Android dependencies — fully unit-testable.
+ */
+public class BoundedLruCache<K, V> {
+
+    private final int maxEntries;
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    // Access order, eldest first
+    private final LinkedHashMap<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param weigher Weight of a value, e.g. its size in bytes. Values heavier than maxWeight
+     *                are not cached.
+     */
+    public BoundedLruCache(int maxEntries, long maxWeight, ToLongFunction<V> weigher) {
+        if (maxEntries < 1) throw new IllegalArgumentException("maxEntries < 1");
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Returns the cached value and marks it as most recently used, or null if there is none.
+     */
+    public synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value != null) hits++;
+        else misses++;
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        long valueWeight = weigher.applyAsLong(value);
+        V old = entries.remove(key);
+        if (old != null) weight -= weigher.applyAsLong(old);
+        if (valueWeight > maxWeight) return;
+        entries.put(key, value);
+        weight += valueWeight;
+
+        Iterator<Map.Entry<K, V>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries || weight > maxWeight) {
+            weight -= weigher.applyAsLong(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+}
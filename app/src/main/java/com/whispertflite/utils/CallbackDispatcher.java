@@ -0,0 +1,45 @@
+package com.whispertflite.utils;
+
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Delivers callbacks to a listener on the executor chosen by the listener, e.g. the main
+ * thread's, instead of the worker thread raising them. Callbacks arrive one at a time in the
+ * order they were dispatched, whatever the executor.
+ * Pure Java, no Android dependencies — fully unit-testable.
+ */
+public class CallbackDispatcher<L> {
+
+    private static final class Target<L> {
+        final L listener;
+        final Executor executor;
+
+        Target(L listener, Executor executor) {
+            this.listener = listener;
+            this.executor = new SerialExecutor(executor);
+        }
+    }
+
+    private volatile Target<L> target = null;
+
+    /**
+     * Sets the listener and the executor its callbacks run on, or removes it if null.
+     * Callbacks already dispatched still reach the previous listener.
+     */
+    public void setListener(L listener, Executor executor) {
+        target = listener != null ? new Target<>(listener, executor) : null;
+    }
+
+    public boolean hasListener() {
+        return target != null;
+    }
+
+    /**
+     * Runs the callback with the listener on its executor, if a listener is set.
+     */
+    public void dispatch(Consumer<L> callback) {
+        Target<L> current = target;
+        if (current != null) current.executor.execute(() -> callback.accept(current.listener));
+    }
+}
@@ -0,0 +1,185 @@
+package com.whispertflite.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cancellation signal of one job, raised by cancel() or when its deadline passes. Long-running
+ * steps either poll it, e.g. between loop iterations, or register a callback that aborts work
+ * they cannot poll, like an interpreter run or an HTTP call.
+ * Pure Java, no Android dependencies — fully unit-testable.
+ */
+public class CancellationToken {
+
+    /**
+     * A token that is never cancelled.
+     */
+    public static final CancellationToken NONE = new CancellationToken();
+
+    /**
+     * Removes a callback registered with onCancel().
+     */
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * A registered callback. cancel() runs it outside the token's lock, so close() waits for a
+     * run in progress on another thread, and a callback closed before its run is skipped.
+     */
+    private final class Callback implements Registration {
+        private final Runnable action;
+        private boolean closed = false;  // guarded by the token
+        private Thread runner = null;    // guarded by the token
+
+        Callback(Runnable action) {
+            this.action = action;
+        }
+
+        void run() {
+            synchronized (CancellationToken.this) {
+                if (closed) return;
+                runner = Thread.currentThread();
+            }
+            try {
+                action.run();
+            } finally {
+                synchronized (CancellationToken.this) {
+                    runner = null;
+                    CancellationToken.this.notifyAll();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            boolean interrupted = false;
+            synchronized (CancellationToken.this) {
+                closed = true;
+                callbacks.remove(this);
+                // The callback itself may close its registration
+                while (runner != null && runner != Thread.currentThread()) {
+                    try {
+                        CancellationToken.this.wait();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final ScheduledThreadPoolExecutor sDeadlines = createDeadlineTimer();
+
+    private final CountDownLatch cancelled = new CountDownLatch(1);
+    private final List<Callback> callbacks = new ArrayList<>();  // guarded by this
+    private volatile boolean deadlineExceeded = false;
+    private ScheduledFuture<?> deadline = null;  // guarded by this
+
+    public CancellationToken() {
+    }
+
+    private static ScheduledThreadPoolExecutor createDeadlineTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "CancellationDeadline");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setKeepAliveTime(30, TimeUnit.SECONDS);
+        timer.allowCoreThreadTimeOut(true);
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    /**
+     * Creates a token that cancels itself after the given time.
+     */
+    public static CancellationToken withTimeout(long millis) {
+        CancellationToken token = new CancellationToken();
+        synchronized (token) {
+            token.deadline = sDeadlines.schedule(token::expire, millis, TimeUnit.MILLISECONDS);
+        }
+        return token;
+    }
+
+    private void expire() {
+        deadlineExceeded = true;
+        cancel();
+    }
+
+    /**
+     * Raises the signal and runs the registered callbacks on the calling thread. Later calls
+     * have no effect.
+     */
+    public void cancel() {
+        if (this == NONE) return;
+        List<Callback> pending;
+        synchronized (this) {
+            if (cancelled.getCount() == 0) return;
+            cancelled.countDown();
+            if (deadline != null) deadline.cancel(false);
+            pending = new ArrayList<>(callbacks);
+            callbacks.clear();
+        }
+        for (Callback callback : pending) callback.run();
+    }
+
+    /**
+     * Drops the deadline and callbacks once the job has ended, without cancelling it.
+     */
+    public synchronized void finish() {
+        if (deadline != null) deadline.cancel(false);
+        callbacks.clear();
+    }
+
+    public boolean isCancelled() {
+        return cancelled.getCount() == 0;
+    }
+
+    /**
+     * Returns whether the token was cancelled by its deadline rather than by cancel().
+     */
+    public boolean isDeadlineExceeded() {
+        return deadlineExceeded;
+    }
+
+    /**
+     * @throws CancellationException If the token has been cancelled
+     */
+    public void throwIfCancelled() {
+        if (isCancelled()) throw new CancellationException(deadlineExceeded ? "Deadline exceeded" : "Cancelled");
+    }
+
+    /**
+     * Runs the callback as soon as the token is cancelled, right away if it is already.
+     * Close the registration when the work it aborts has ended, before its resources are
+     * reused: once close() has returned, the callback neither runs nor is still running.
+     */
+    public Registration onCancel(Runnable callback) {
+        synchronized (this) {
+            if (!isCancelled()) {
+                Callback registration = new Callback(callback);
+                callbacks.add(registration);
+                return registration;
+            }
+        }
+        callback.run();
+        return () -> { };
+    }
+
+    /**
+     * Waits for the given time unless the token is cancelled meanwhile, e.g. before a retry.
+     *
+     * @return false if the token has been cancelled
+     */
+    public boolean sleep(long millis) throws InterruptedException {
+        return !cancelled.await(millis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,229 @@
+package com.whispertflite.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Routes remote transcription requests across a pool of endpoints.
+ * Pure Java, no Android dependencies — fully unit-testable.
+ *
+ * Each endpoint is scored by an EWMA of its latency, penalized by an EWMA of its error
+ * rate; the lowest score wins and endpoints without samples are tried first. A per-endpoint
+ * circuit breaker ejects an endpoint after consecutive failures. After a cooldown one trial
+ * request is let through; success closes the circuit, failure reopens it with a doubled cooldown.
+ */
+public class EndpointRouter {
+
+    private static final double LATENCY_ALPHA = 0.3;
+    private static final double ERROR_ALPHA = 0.2;
+    private static final double ERROR_PENALTY = 4.0;
+    private static final int LATENCY_WINDOW = 100;
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+    public static final long DEFAULT_OPEN_MILLIS = 30000;
+    public static final long MAX_OPEN_MILLIS = 300000;
+
+    public static class EndpointStats {
+        private double ewmaLatencyMs = -1;
+        private double ewmaErrorRate = 0;
+        private final long[] latencyWindow = new long[LATENCY_WINDOW];
+        private int latencyCount = 0;
+        private long requests = 0;
+        private long failures = 0;
+        private int consecutiveFailures = 0;
+        private long openUntil = 0;
+        private long openMillis = 0;
+        private boolean trialInFlight = false;
+
+        public synchronized double getEwmaLatencyMs() { return ewmaLatencyMs; }
+        public synchronized double getErrorRate() { return ewmaErrorRate; }
+        public synchronized long getRequests() { return requests; }
+        public synchronized long getFailures() { return failures; }
+
+        /**
+         * Returns the given percentile (0-100) of the recent latency samples, or -1 without samples.
+         */
+        public synchronized long getLatencyPercentile(int percentile) {
+            int n = Math.min(latencyCount, LATENCY_WINDOW);
+            if (n == 0) return -1;
+            long[] sorted = Arrays.copyOf(latencyWindow, n);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * n) - 1;
+            return sorted[Math.max(0, Math.min(n - 1, index))];
+        }
+
+        public synchronized boolean isOpen(long now) {
+            return openMillis > 0 && now < openUntil;
+        }
+
+        synchronized boolean isAvailable(long now) {
+            if (openMillis == 0) return true;               // closed
+            return now >= openUntil && !trialInFlight;       // half-open, no trial running yet
+        }
+
+        synchronized void onSelected(long now) {
+            if (openMillis > 0 && now >= openUntil) trialInFlight = true;
+        }
+
+        synchronized long getOpenUntil() { return openUntil; }
+
+        synchronized double score() {
+            if (ewmaLatencyMs < 0) return 0;  // explore endpoints without samples first
+            return ewmaLatencyMs * (1 + ERROR_PENALTY * ewmaErrorRate);
+        }
+
+        synchronized void recordSuccess(long latencyMs) {
+            requests++;
+            recordLatency(latencyMs);
+            ewmaErrorRate = (1 - ERROR_ALPHA) * ewmaErrorRate;
+            consecutiveFailures = 0;
+            openMillis = 0;
+            trialInFlight = false;
+        }
+
+        synchronized void recordLatency(long latencyMs) {
+            ewmaLatencyMs = ewmaLatencyMs < 0 ? latencyMs : LATENCY_ALPHA * latencyMs + (1 - LATENCY_ALPHA) * ewmaLatencyMs;
+            latencyWindow[latencyCount % LATENCY_WINDOW] = latencyMs;
+            latencyCount++;
+        }
+
+        synchronized void recordAbandoned(long elapsedMs) {
+            recordLatency(elapsedMs);
+            trialInFlight = false;
+        }
+
+        synchronized void recordFailure(long now, int failureThreshold, long baseOpenMillis) {
+            requests++;
+            failures++;
+            ewmaErrorRate = ERROR_ALPHA + (1 - ERROR_ALPHA) * ewmaErrorRate;
+            consecutiveFailures++;
+            if (trialInFlight) {
+                // Half-open trial failed: reopen with a longer cooldown
+                openMillis = Math.min(MAX_OPEN_MILLIS, openMillis * 2);
+                openUntil = now + openMillis;
+                trialInFlight = false;
+            } else if (openMillis == 0 && consecutiveFailures >= failureThreshold) {
+                openMillis = baseOpenMillis;
+                openUntil = now + openMillis;
+            }
+        }
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private List<RemoteEndpoint> endpoints = new ArrayList<>();
+    private final Map<String, EndpointStats> stats = new HashMap<>();
+
+    public EndpointRouter() {
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_MILLIS);
+    }
+
+    public EndpointRouter(int failureThreshold, long openMillis) {
+        this.failureThreshold = failureThreshold;
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Replaces the endpoint pool. Statistics of endpoints that remain in the pool are kept.
+     */
+    public synchronized void setEndpoints(List<RemoteEndpoint> newEndpoints) {
+        endpoints = new ArrayList<>(newEndpoints);
+        Map<String, EndpointStats> kept = new HashMap<>();
+        for (RemoteEndpoint endpoint : endpoints) {
+            EndpointStats existing = stats.get(endpoint.getId());
+            kept.put(endpoint.getId(), existing != null ? existing : new EndpointStats());
+        }
+        stats.clear();
+        stats.putAll(kept);
+    }
+
+    public synchronized List<RemoteEndpoint> getEndpoints() {
+        return Collections.unmodifiableList(new ArrayList<>(endpoints));
+    }
+
+    public synchronized EndpointStats getStats(RemoteEndpoint endpoint) {
+        return stats.get(endpoint.getId());
+    }
+
+    /**
+     * Picks the endpoint for the next request.
+     *
+     * @param now     Current time in milliseconds
+     * @param exclude Endpoints that should not be used, e.g. those that already failed for this request
+     * @return The selected endpoint, or null if every endpoint is excluded
+     */
+    public synchronized RemoteEndpoint select(long now, Collection<RemoteEndpoint> exclude) {
+        RemoteEndpoint best = null;
+        double bestScore = Double.MAX_VALUE;
+        RemoteEndpoint soonestOpen = null;
+        long soonestOpenUntil = Long.MAX_VALUE;
+
+        for (RemoteEndpoint endpoint : endpoints) {
+            if (exclude != null && exclude.contains(endpoint)) continue;
+            EndpointStats s = stats.get(endpoint.getId());
+            if (s.isAvailable(now)) {
+                double score = s.score();
+                if (score < bestScore) {
+                    bestScore = score;
+                    best = endpoint;
+                }
+            } else if (s.getOpenUntil() < soonestOpenUntil) {
+                soonestOpenUntil = s.getOpenUntil();
+                soonestOpen = endpoint;
+            }
+        }
+
+        // Every circuit is open: rather try the one closest to recovery than fail outright
+        if (best == null) best = soonestOpen;
+        if (best != null) stats.get(best.getId()).onSelected(now);
+        return best;
+    }
+
+    public void recordSuccess(RemoteEndpoint endpoint, long latencyMs) {
+        EndpointStats s = getStats(endpoint);
+        if (s != null) s.recordSuccess(latencyMs);
+    }
+
+    /**
+     * Records a lower bound for the latency of a request that was abandoned, e.g. the loser of a
+     * hedge, so that slow endpoints are not mistaken for fast ones. Error rate is not affected.
+     */
+    public void recordAbandoned(RemoteEndpoint endpoint, long elapsedMs) {
+        EndpointStats s = getStats(endpoint);
+        if (s != null) s.recordAbandoned(elapsedMs);
+    }
+
+    public void recordFailure(RemoteEndpoint endpoint, long now) {
+        EndpointStats s = getStats(endpoint);
+        if (s != null) s.recordFailure(now, failureThreshold, openMillis);
+    }
+
+    /**
+     * Returns a human-readable summary of the per-endpoint statistics used for routing.
+     */
+    public synchronized String dumpStats(long now) {
+        StringBuilder sb = new StringBuilder();
+        for (RemoteEndpoint endpoint : endpoints) {
+            EndpointStats s = stats.get(endpoint.getId());
+            sb.append(endpoint.getName()).append(" (").append(endpoint.getModel()).append("): ");
+            if (s.getRequests() == 0) {
+                sb.append("no requests yet");
+            } else {
+                sb.append(String.format(Locale.US, "p50 %d ms, p95 %d ms, ewma %.0f ms, errors %.0f%%, requests %d",
+                        s.getLatencyPercentile(50), s.getLatencyPercentile(95), s.getEwmaLatencyMs(),
+                        s.getErrorRate() * 100, s.getRequests()));
+            }
+            if (s.isOpen(now)) {
+                sb.append(", ejected for ").append((s.getOpenUntil() - now) / 1000).append(" s");
+            }
+            sb.append('\n');
+        }
+        return sb.toString().trim();
+    }
+}
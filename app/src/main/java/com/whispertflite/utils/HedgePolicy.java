@@ -0,0 +1,106 @@
+package com.whispertflite.utils;
+
+import java.util.Locale;
+
+/**
+ * Decides when a slow remote request is hedged, i.e. duplicated to a backup endpoint.
+ * Pure Java, no Android dependencies — fully unit-testable.
+ *
+ * The hedge fires once the primary has been silent for longer than its observed p90 latency.
+ * A token bucket caps the extra load: every request earns a fraction of a token and every
+ * hedge spends a whole one, so at most that fraction of requests is ever duplicated.
+ */
+public class HedgePolicy {
+
+    public static final long DEFAULT_MIN_DELAY_MS = 500;
+    // Used while the primary has too few latency samples for a percentile
+    public static final long DEFAULT_INITIAL_DELAY_MS = 5000;
+    public static final int DEFAULT_PERCENTILE = 90;
+    public static final int DEFAULT_MIN_SAMPLES = 5;
+    public static final double DEFAULT_BUDGET_RATIO = 0.1;
+    public static final double DEFAULT_MAX_TOKENS = 2.0;
+
+    private final long minDelayMs;
+    private final long initialDelayMs;
+    private final int percentile;
+    private final int minSamples;
+    private final double budgetRatio;
+    private final double maxTokens;
+
+    private double tokens;
+    private long requests = 0;
+    private long hedgesFired = 0;
+    private long hedgesDenied = 0;
+    private long hedgeWins = 0;
+
+    public HedgePolicy() {
+        this(DEFAULT_MIN_DELAY_MS, DEFAULT_INITIAL_DELAY_MS, DEFAULT_PERCENTILE, DEFAULT_MIN_SAMPLES, DEFAULT_BUDGET_RATIO, DEFAULT_MAX_TOKENS);
+    }
+
+    public HedgePolicy(long minDelayMs, long initialDelayMs, int percentile, int minSamples, double budgetRatio, double maxTokens) {
+        this.minDelayMs = minDelayMs;
+        this.initialDelayMs = initialDelayMs;
+        this.percentile = percentile;
+        this.minSamples = minSamples;
+        this.budgetRatio = budgetRatio;
+        this.maxTokens = maxTokens;
+        this.tokens = maxTokens;
+    }
+
+    /**
+     * Returns how long to wait for the primary before hedging.
+     */
+    public long getHedgeDelayMillis(EndpointRouter.EndpointStats primaryStats) {
+        if (primaryStats == null || primaryStats.getRequests() - primaryStats.getFailures() < minSamples) {
+            return Math.max(minDelayMs, initialDelayMs);
+        }
+        return Math.max(minDelayMs, primaryStats.getLatencyPercentile(percentile));
+    }
+
+    /**
+     * Called once per request that could be hedged; earns budget for future hedges.
+     */
+    public synchronized void onRequest() {
+        requests++;
+        tokens = Math.min(maxTokens, tokens + budgetRatio);
+    }
+
+    /**
+     * Spends budget for one hedge.
+     *
+     * @return true if the hedge may be sent
+     */
+    public synchronized boolean tryAcquire() {
+        if (tokens >= 1.0) {
+            tokens -= 1.0;
+            hedgesFired++;
+            return true;
+        }
+        hedgesDenied++;
+        return false;
+    }
+
+    /**
+     * Records which request of a fired hedge answered first.
+     */
+    public synchronized void onHedgeCompleted(boolean backupWon) {
+        if (backupWon) hedgeWins++;
+    }
+
+    public synchronized long getRequests() { return requests; }
+    public synchronized long getHedgesFired() { return hedgesFired; }
+    public synchronized long getHedgesDenied() { return hedgesDenied; }
+    public synchronized long getHedgeWins() { return hedgeWins; }
+
+    /**
+     * Returns the fraction of fired hedges in which the backup answered first, or 0 without hedges.
+     */
+    public synchronized double getWinRate() {
+        return hedgesFired == 0 ? 0 : (double) hedgeWins / hedgesFired;
+    }
+
+    public synchronized String dumpStats() {
+        return String.format(Locale.US, "Hedging: %d requests, %d hedges (%d denied by budget), backup won %.0f%%",
+                requests, hedgesFired, hedgesDenied, getWinRate() * 100);
+    }
+}
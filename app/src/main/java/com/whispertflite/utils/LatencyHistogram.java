@@ -0,0 +1,125 @@
+package com.whispertflite.utils;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of durations, cheap enough to record from the audio and inference paths.
+ * Durations are kept in microseconds in log-scale buckets, four per power of two, so
+ * percentiles are accurate to within a quarter of the value. Recording takes a few atomic
+ * updates and never blocks; a concurrent reader may see a sample in some totals only.
+ * Pure Java, no Android dependencies — fully unit-testable.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 4;
+    // Up to 2^40 µs, about 12 days
+    private static final int BUCKETS = 40 * SUB_BUCKETS;
+
+    private final String name;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    public void recordMillis(long millis) {
+        recordMicros(millis * 1000);
+    }
+
+    public void recordMicros(long micros) {
+        if (micros < 0) return;
+        buckets.incrementAndGet(bucketOf(micros));
+        count.incrementAndGet();
+        totalMicros.addAndGet(micros);
+        long max;
+        while (micros > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, micros)) {
+            // Another thread has recorded meanwhile, compare again
+        }
+    }
+
+    static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) return (int) micros;
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+        return Math.min(BUCKETS - 1, (exponent - 1) * SUB_BUCKETS + sub);
+    }
+
+    /**
+     * Returns the largest value that falls into the bucket.
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + 1;
+        long width = 1L << (exponent - 2);
+        return (SUB_BUCKETS + bucket % SUB_BUCKETS) * width + width - 1;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Returns the mean in microseconds, or -1 if nothing has been recorded yet.
+     */
+    public long getMeanMicros() {
+        long n = count.get();
+        return n > 0 ? totalMicros.get() / n : -1;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * Returns the value in microseconds that the given fraction of the samples does not
+     * exceed, e.g. 0.95 for the 95th percentile, or -1 if nothing has been recorded yet.
+     */
+    public long getPercentileMicros(double fraction) {
+        long[] counts = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            n += counts[i];
+        }
+        if (n == 0) return -1;
+        long rank = Math.max(1, (long) Math.ceil(fraction * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            // The last bucket takes all values beyond the range
+            if (seen >= rank) return i < BUCKETS - 1 ? Math.min(upperBoundOf(i), maxMicros.get()) : maxMicros.get();
+        }
+        return maxMicros.get();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) buckets.set(i, 0);
+        count.set(0);
+        totalMicros.set(0);
+        maxMicros.set(0);
+    }
+
+    /**
+     * Returns a line with the count, mean, percentiles and maximum in milliseconds.
+     */
+    public String dumpStats() {
+        long n = count.get();
+        if (n == 0) return name + ": no samples";
+        return String.format(Locale.US, "%s: n=%d, mean %.1f ms, p50 %.1f ms, p95 %.1f ms, p99 %.1f ms, max %.1f ms",
+                name, n, getMeanMicros() / 1000.0, getPercentileMicros(0.5) / 1000.0,
+                getPercentileMicros(0.95) / 1000.0, getPercentileMicros(0.99) / 1000.0, getMaxMicros() / 1000.0);
+    }
+}
@@ -0,0 +1,84 @@
+package com.whispertflite.utils;
+
+/**
+ * Latency histograms of the stages of a dictation, from starting the microphone to committing
+ * the text, recorded by the recorder, Whisper, the engines and the services. Recording never
+ * locks or allocates, so it stays on in release builds.
+ * Pure Java, no Android dependencies — fully unit-testable.
+ */
+public class MetricsRegistry {
+
+    public enum Stage {
+        MIC_START_NEW("mic start, new source"),         // start requested until the first frame
+        MIC_START_REUSED("mic start, reused source"),   // the same, of a restarted idle source
+        MIC_START_WARM("mic start, warm capture"),      // the same, of a source already capturing
+        VAD("VAD per frame"),                       // classifying one 30 ms frame
+        VAD_STOP("VAD stop detection"),             // end of speech detected until capture stopped
+        CAPTURE_STOP("capture stop"),               // capture stopped until the recording is handed over
+        QUEUE_WAIT("queue wait"),                   // submitted until the transcription starts
+        BACKGROUND_QUEUE_WAIT("background queue wait"), // queued or pre-empted until it runs again
+        PCM_CONVERSION("PCM conversion"),           // PCM16 to float samples
+        MEL("mel spectrogram"),
+        INTERPRETER("interpreter"),                 // one signature run
+        DETOKENIZE("detokenize"),                   // tokens to text
+        REQUEST("request"),                         // whole request of a successful attempt
+        UPLOAD("upload"),                           // request time outside the server, if it reports its time
+        SERVER("server time"),                      // processing time reported by the server
+        TRANSCRIPTION("transcription"),             // engine time of a whole job
+        CHINESE_CONVERSION("Chinese conversion"),   // simplified / traditional
+        COMMIT("commit");                           // handing the text to the app
+
+        final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final MetricsRegistry sDefault = new MetricsRegistry();
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+
+    public MetricsRegistry() {
+        for (Stage stage : Stage.values()) histograms[stage.ordinal()] = new LatencyHistogram(stage.label);
+    }
+
+    /**
+     * Returns the registry the app records into.
+     */
+    public static MetricsRegistry getDefault() {
+        return sDefault;
+    }
+
+    public LatencyHistogram get(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    /**
+     * Records the time since startNanos, a value of System.nanoTime().
+     */
+    public void recordSince(Stage stage, long startNanos) {
+        histograms[stage.ordinal()].recordNanos(System.nanoTime() - startNanos);
+    }
+
+    public void recordMillis(Stage stage, long millis) {
+        histograms[stage.ordinal()].recordMillis(millis);
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) histogram.reset();
+    }
+
+    /**
+     * Returns one line per stage with samples, in pipeline order.
+     */
+    public String dump() {
+        StringBuilder text = new StringBuilder();
+        for (LatencyHistogram histogram : histograms) {
+            if (histogram.getCount() == 0) continue;
+            if (text.length() > 0) text.append('\n');
+            text.append(histogram.dumpStats());
+        }
+        return text.length() > 0 ? text.toString() : "No measurements yet";
+    }
+}
@@ -0,0 +1,162 @@
+package com.whispertflite.utils;
+
+import java.util.Arrays;
+
+/**
+ * Streaming decimator for PCM16 audio by an integer factor, e.g. from 48 kHz to 16 kHz.
+ *
+ * A Kaiser windowed-sinc low-pass filter removes everything above the new Nyquist frequency
+ * before samples are dropped. Only the retained output samples are computed (the polyphase
+ * form of filtering followed by downsampling), so the cost is one filter length of
+ * multiply-adds per output sample. The filter state is kept between calls, so audio can be
+ * passed in blocks of any size, and process() does not allocate.
+ *
+ * Pure Java, no Android dependencies — fully unit-testable.
+ */
+public class PolyphaseDecimator {
+
+    // Default design: 60 dB stopband attenuation from the output Nyquist frequency on,
+    // flat passband up to 87.5 % of it (7 kHz at 16 kHz)
+    private static final double DEFAULT_ATTENUATION_DB = 60;
+    private static final double DEFAULT_PASSBAND = 0.875;
+
+    private final int factor;
+    private final float[] taps;  // reversed, so that the newest sample meets taps[length - 1]
+    // Input history, stored twice so that the last taps.length samples are always contiguous
+    private final float[] history;
+    private int head = 0;
+    private int phase = 0;
+
+    /**
+     * Creates a decimator with the default filter design.
+     *
+     * @throws IllegalArgumentException If inputRate is not a multiple of outputRate
+     */
+    public PolyphaseDecimator(int inputRate, int outputRate) {
+        this(factor(inputRate, outputRate), designLowPass(inputRate, outputRate, DEFAULT_PASSBAND, DEFAULT_ATTENUATION_DB));
+    }
+
+    private static int factor(int inputRate, int outputRate) {
+        if (outputRate <= 0 || inputRate < outputRate || inputRate % outputRate != 0) {
+            throw new IllegalArgumentException("Cannot decimate " + inputRate + " Hz to " + outputRate + " Hz");
+        }
+        return inputRate / outputRate;
+    }
+
+    /**
+     * Creates a decimator with the given FIR filter coefficients.
+     */
+    public PolyphaseDecimator(int factor, float[] filter) {
+        if (factor < 1) throw new IllegalArgumentException("Invalid factor " + factor);
+        this.factor = factor;
+        this.taps = new float[filter.length];
+        for (int i = 0; i < filter.length; i++) taps[i] = filter[filter.length - 1 - i];
+        this.history = new float[2 * filter.length];
+    }
+
+    public int getFactor() {
+        return factor;
+    }
+
+    public int getFilterLength() {
+        return taps.length;
+    }
+
+    /**
+     * Returns the number of output samples produced for the given number of input samples
+     * at most, e.g. to size the output array.
+     */
+    public int getMaxOutputLength(int inputLength) {
+        return (inputLength + factor - 1) / factor;
+    }
+
+    /**
+     * Filters and decimates input samples, continuing the stream of the previous calls.
+     *
+     * @param out Receives up to getMaxOutputLength(length) samples from outOffset on
+     * @return Number of output samples written
+     */
+    public int process(short[] in, int offset, int length, short[] out, int outOffset) {
+        final float[] taps = this.taps;
+        final float[] history = this.history;
+        final int n = taps.length;
+        int written = 0;
+        for (int i = offset; i < offset + length; i++) {
+            float sample = in[i];
+            history[head] = sample;
+            history[head + n] = sample;
+            head = head + 1 == n ? 0 : head + 1;
+            if (++phase < factor) continue;
+            phase = 0;
+
+            // history[head .. head + n) holds the last n samples, oldest first
+            float acc = 0f;
+            for (int k = 0; k < n; k++) {
+                acc += taps[k] * history[head + k];
+            }
+            int value = Math.round(acc);
+            if (value > Short.MAX_VALUE) value = Short.MAX_VALUE;
+            else if (value < Short.MIN_VALUE) value = Short.MIN_VALUE;
+            out[outOffset + written++] = (short) value;
+        }
+        return written;
+    }
+
+    /**
+     * Clears the filter state, e.g. before an unrelated stream.
+     */
+    public void reset() {
+        Arrays.fill(history, 0f);
+        head = 0;
+        phase = 0;
+    }
+
+    /**
+     * Designs a linear-phase low-pass filter for decimation from inputRate to outputRate with
+     * a Kaiser window. The transition band lies between passband * outputRate / 2 and
+     * outputRate / 2, the DC gain is 1.
+     */
+    public static float[] designLowPass(int inputRate, int outputRate, double passband, double attenuationDb) {
+        double nyquist = outputRate / 2.0;
+        double transition = (1 - passband) * nyquist / inputRate;  // normalized to the input rate
+        double cutoff = (1 + passband) / 2 * nyquist / inputRate;
+
+        // Kaiser's estimates for the window parameter and the filter length
+        double beta = attenuationDb > 50 ? 0.1102 * (attenuationDb - 8.7)
+                : attenuationDb >= 21 ? 0.5842 * Math.pow(attenuationDb - 21, 0.4) + 0.07886 * (attenuationDb - 21)
+                : 0;
+        int length = (int) Math.ceil((attenuationDb - 8) / (2.285 * 2 * Math.PI * transition)) + 1;
+        // A multiple of the decimation factor splits evenly into the polyphase branches
+        int factor = factor(inputRate, outputRate);
+        length = (length + factor - 1) / factor * factor;
+
+        double[] h = new double[length];
+        double sum = 0;
+        double center = (length - 1) / 2.0;
+        double i0Beta = besselI0(beta);
+        for (int i = 0; i < length; i++) {
+            double t = i - center;
+            double sinc = t == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * t) / (Math.PI * t);
+            double r = t / center;
+            double window = besselI0(beta * Math.sqrt(Math.max(0, 1 - r * r))) / i0Beta;
+            h[i] = sinc * window;
+            sum += h[i];
+        }
+
+        float[] filter = new float[length];
+        for (int i = 0; i < length; i++) filter[i] = (float) (h[i] / sum);
+        return filter;
+    }
+
+    // Zeroth order modified Bessel function of the first kind
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        for (int k = 1; k < 50; k++) {
+            term *= (x / (2 * k)) * (x / (2 * k));
+            sum += term;
+            if (term < sum * 1e-12) break;
+        }
+        return sum;
+    }
+}
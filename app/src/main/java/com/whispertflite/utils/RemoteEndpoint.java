@@ -0,0 +1,90 @@
+package com.whispertflite.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One Whisper-compatible API endpoint with its own credentials and model.
+ * Pure Java, no Android dependencies — fully unit-testable.
+ *
+ * Additional endpoints are configured as text, one per line:
+ * <pre>
+ * name | base URL | API key | model
+ * </pre>
+ * Blank lines and lines starting with '#' are ignored.
+ */
+public class RemoteEndpoint {
+
+    private final String name;
+    private final String baseUrl;
+    private final String apiKey;
+    private final String model;
+
+    public RemoteEndpoint(String name, String baseUrl, String apiKey, String model) {
+        this.name = name;
+        this.baseUrl = baseUrl;
+        this.apiKey = apiKey;
+        this.model = model;
+    }
+
+    public String getName() { return name; }
+    public String getBaseUrl() { return baseUrl; }
+    public String getApiKey() { return apiKey; }
+    public String getModel() { return model; }
+
+    /**
+     * Identifies the endpoint for statistics, so that stats survive a settings reload.
+     */
+    public String getId() {
+        return baseUrl + "#" + model;
+    }
+
+    /**
+     * Parses the additional endpoint configuration. Invalid lines are skipped.
+     */
+    public static List<RemoteEndpoint> parseList(String config) {
+        List<RemoteEndpoint> endpoints = new ArrayList<>();
+        if (config == null) return endpoints;
+
+        for (String line : config.split("\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) continue;
+
+            String[] fields = trimmed.split("\\|", -1);
+            if (fields.length != 4) continue;
+
+            String name = fields[0].trim();
+            String baseUrl = fields[1].trim();
+            String apiKey = fields[2].trim();
+            String model = fields[3].trim();
+            if (ApiEndpointBuilder.validateSettings(apiKey, baseUrl, model) != null) continue;
+            if (name.isEmpty()) name = baseUrl;
+
+            endpoints.add(new RemoteEndpoint(name, baseUrl, apiKey, model));
+        }
+        return endpoints;
+    }
+
+    /**
+     * Returns null if every non-comment line of the configuration is valid,
+     * otherwise an error message naming the first invalid line.
+     */
+    public static String validateList(String config) {
+        if (config == null) return null;
+        String[] lines = config.split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            String trimmed = lines[i].trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) continue;
+
+            String[] fields = trimmed.split("\\|", -1);
+            if (fields.length != 4) {
+                return "Line " + (i + 1) + ": expected name | URL | key | model";
+            }
+            String error = ApiEndpointBuilder.validateSettings(fields[2], fields[1], fields[3]);
+            if (error != null) {
+                return "Line " + (i + 1) + ": " + error;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,98 @@
+package com.whispertflite.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Fixed set of expensive, non thread-safe resources (e.g. interpreters) shared by concurrent
+ * jobs. acquire() hands out an idle resource, waiting until one is released if all are busy,
+ * so each job runs on whichever resource becomes idle first.
+ * Pure Java, no Android dependencies — fully unit-testable.
+ */
+public class ResourcePool<T> {
+
+    private final ArrayDeque<T> idle = new ArrayDeque<>();
+    private final int size;
+    private boolean closed = false;
+
+    public ResourcePool(Collection<T> resources) {
+        if (resources.isEmpty()) throw new IllegalArgumentException("No resources");
+        idle.addAll(resources);
+        size = resources.size();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * Returns an idle resource, waiting until one is released if necessary. The most recently
+     * released one is preferred, as its memory is most likely still cached.
+     *
+     * @throws IllegalStateException If the pool has been closed
+     */
+    public synchronized T acquire() throws InterruptedException {
+        while (idle.isEmpty() && !closed) wait();
+        if (closed) throw new IllegalStateException("Pool is closed");
+        return idle.pop();
+    }
+
+    /**
+     * Returns several idle resources at once, waiting until as many are idle, e.g. for a job
+     * that runs on two of them. Two such jobs cannot each hold one and wait for the other.
+     *
+     * @throws IllegalArgumentException If the pool has fewer resources
+     * @throws IllegalStateException    If the pool has been closed
+     */
+    public synchronized List<T> acquire(int count) throws InterruptedException {
+        if (count < 1 || count > size) throw new IllegalArgumentException("Cannot acquire " + count + " of " + size);
+        while (idle.size() < count && !closed) wait();
+        if (closed) throw new IllegalStateException("Pool is closed");
+        List<T> acquired = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) acquired.add(idle.pop());
+        return acquired;
+    }
+
+    /**
+     * Returns an idle resource, or null if all are busy.
+     */
+    public synchronized T tryAcquire() {
+        if (closed) throw new IllegalStateException("Pool is closed");
+        return idle.poll();
+    }
+
+    /**
+     * Makes an acquired resource available again.
+     *
+     * @return false if the pool has been closed meanwhile, the caller disposes of the resource
+     */
+    public synchronized boolean release(T resource) {
+        if (closed) return false;
+        idle.push(resource);
+        // Waiters for one and for several resources
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Closes the pool and returns the idle resources to be disposed of. Busy ones are returned
+     * by their release() instead, waiting jobs fail.
+     */
+    public synchronized List<T> close() {
+        closed = true;
+        List<T> resources = new ArrayList<>(idle);
+        idle.clear();
+        notifyAll();
+        return resources;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+}
@@ -0,0 +1,156 @@
+package com.whispertflite.utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Decides whether a failed remote API call should be retried and how long to wait before doing so.
+ * Pure Java, no Android dependencies — fully unit-testable.
+ *
+ * Transcription requests have no server-side effects, so every attempt sends the identical request
+ * and retrying is safe. Backoff is exponential with full jitter; a server supplied Retry-After
+ * header takes precedence over the computed delay.
+ */
+public class RetryPolicy {
+
+    public enum FailureKind {
+        RATE_LIMITED,   // HTTP 429
+        SERVER_ERROR,   // HTTP 5xx
+        CONNECT,        // could not reach the server
+        READ_TIMEOUT,   // server accepted the request but did not answer in time
+        CLIENT_ERROR,   // HTTP 4xx other than 429, e.g. invalid API key
+        UNKNOWN
+    }
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_BASE_DELAY_MS = 500;
+    public static final long DEFAULT_MAX_DELAY_MS = 8000;
+    // Do not keep the user waiting for servers that ask for long pauses
+    public static final long DEFAULT_MAX_RETRY_AFTER_MS = 20000;
+
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final long maxRetryAfterMs;
+    private final Random random;
+
+    public RetryPolicy() {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY_MS, DEFAULT_MAX_DELAY_MS, DEFAULT_MAX_RETRY_AFTER_MS, new Random());
+    }
+
+    public RetryPolicy(int maxAttempts, long baseDelayMs, long maxDelayMs, long maxRetryAfterMs, Random random) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.maxRetryAfterMs = maxRetryAfterMs;
+        this.random = random;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Classifies a non-2xx HTTP status code.
+     */
+    public static FailureKind classifyStatus(int code) {
+        if (code == 429) return FailureKind.RATE_LIMITED;
+        if (code == 408) return FailureKind.READ_TIMEOUT;
+        if (code >= 500 && code <= 599) return FailureKind.SERVER_ERROR;
+        if (code >= 400 && code <= 499) return FailureKind.CLIENT_ERROR;
+        return FailureKind.UNKNOWN;
+    }
+
+    /**
+     * Classifies an exception thrown while executing a call.
+     */
+    public static FailureKind classifyException(IOException e) {
+        if (e instanceof ConnectException || e instanceof UnknownHostException || e instanceof NoRouteToHostException) {
+            return FailureKind.CONNECT;
+        }
+        if (e instanceof SocketTimeoutException) {
+            String message = e.getMessage();
+            if (message != null && message.toLowerCase(Locale.US).contains("connect")) {
+                return FailureKind.CONNECT;
+            }
+            return FailureKind.READ_TIMEOUT;
+        }
+        if (e instanceof InterruptedIOException) {
+            // OkHttp reports an expired call timeout as InterruptedIOException("timeout")
+            return "timeout".equals(e.getMessage()) ? FailureKind.READ_TIMEOUT : FailureKind.UNKNOWN;
+        }
+        String message = e.getMessage();
+        if (message != null && message.contains("Canceled")) {
+            return FailureKind.UNKNOWN;
+        }
+        // Connection reset, unexpected end of stream and similar transport failures
+        return FailureKind.CONNECT;
+    }
+
+    public static boolean isRetryable(FailureKind kind) {
+        switch (kind) {
+            case RATE_LIMITED:
+            case SERVER_ERROR:
+            case CONNECT:
+            case READ_TIMEOUT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns the delay before the next attempt, or -1 if the call should not be retried.
+     *
+     * @param kind             Classification of the failure
+     * @param attempt          Zero-based index of the attempt that just failed
+     * @param retryAfterMillis Delay requested by the server, or -1 if none was given
+     */
+    public long nextDelayMillis(FailureKind kind, int attempt, long retryAfterMillis) {
+        if (!isRetryable(kind) || attempt + 1 >= maxAttempts) {
+            return -1;
+        }
+        if (retryAfterMillis >= 0) {
+            return retryAfterMillis <= maxRetryAfterMs ? retryAfterMillis : -1;
+        }
+        long ceiling = Math.min(maxDelayMs, baseDelayMs << Math.min(attempt, 20));
+        // Full jitter: uniformly distributed in [0, ceiling]
+        return (long) (random.nextDouble() * ceiling);
+    }
+
+    /**
+     * Parses a Retry-After header, which is either a number of seconds or an HTTP date.
+     *
+     * @return Delay in milliseconds, or -1 if the header is absent or malformed
+     */
+    public static long parseRetryAfter(String header, long nowMillis) {
+        if (header == null || header.trim().isEmpty()) {
+            return -1;
+        }
+        String value = header.trim();
+        try {
+            long seconds = Long.parseLong(value);
+            return seconds >= 0 ? seconds * 1000 : -1;
+        } catch (NumberFormatException ignored) {
+            // Not delta-seconds, try HTTP date below
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            Date date = format.parse(value);
+            return date == null ? -1 : Math.max(0, date.getTime() - nowMillis);
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.whispertflite.utils;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs tasks one after another in submission order on a shared executor, so that each
+ * component gets the semantics of a private worker thread without owning one. A thread of
+ * the shared executor is only occupied while a task is queued or running.
+ *
+ * Pure Java, no Android dependencies — fully unit-testable.
+ */
+public class SerialExecutor implements Executor {
+
+    private final Executor executor;
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    private Runnable active = null;
+
+    public SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public synchronized void execute(Runnable task) {
+        tasks.add(() -> {
+            try {
+                task.run();
+            } finally {
+                scheduleNext();
+            }
+        });
+        if (active == null) scheduleNext();
+    }
+
+    /**
+     * Returns whether no task is queued or running.
+     */
+    public synchronized boolean isIdle() {
+        return active == null;
+    }
+
+    private synchronized void scheduleNext() {
+        active = tasks.poll();
+        if (active != null) executor.execute(active);
+    }
+
+    /**
+     * Creates a shared pool of at most maxThreads threads, which end after 30 s without work.
+     */
+    public static ExecutorService newSharedPool(String name, int maxThreads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> new Thread(r, name));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
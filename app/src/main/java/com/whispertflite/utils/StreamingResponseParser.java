@@ -0,0 +1,112 @@
+package com.whispertflite.utils;
+
+/**
+ * Parses a streamed transcription response (server-sent events) as returned by
+ * Whisper-compatible APIs when the request contains stream=true.
+ * Pure Java, no Android dependencies — fully unit-testable.
+ *
+ * Handles these events:
+ * - Delta: data: {"type": "transcript.text.delta", "delta": "Hel"}
+ * - Done:  data: {"type": "transcript.text.done", "text": "Hello"}
+ * - Error: data: {"type": "error", "error": {"message": "..."}}
+ * - End:   data: [DONE]
+ *
+ * Feed the response line by line; the parser accumulates the deltas and reports
+ * the transcription so far after each of them.
+ */
+public class StreamingResponseParser {
+
+    public interface Listener {
+        void onPartialText(String textSoFar);
+    }
+
+    private final Listener listener;
+    private final StringBuilder text = new StringBuilder();
+    private final StringBuilder eventData = new StringBuilder();
+    private String finalText;
+    private String error;
+    private boolean done;
+
+    /**
+     * @param listener Receives the accumulated text after each delta, may be null
+     */
+    public StreamingResponseParser(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Feeds one line of the event stream, without its line terminator.
+     */
+    public void feedLine(String line) {
+        if (done) return;
+        if (line.isEmpty()) {
+            dispatch();
+        } else if (line.startsWith("data:")) {
+            String data = line.substring(5);
+            if (data.startsWith(" ")) data = data.substring(1);
+            if (eventData.length() > 0) eventData.append('\n');
+            eventData.append(data);
+        }
+        // Comments (":"), "event:", "id:" and "retry:" fields carry nothing we need
+    }
+
+    /**
+     * Signals the end of the stream, dispatching an event that was not followed by a blank line.
+     */
+    public void finish() {
+        dispatch();
+    }
+
+    /**
+     * Returns true once the final text, an error or the end marker has been received.
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Returns the text accumulated from the deltas received so far.
+     */
+    public String getPartialText() {
+        return text.toString();
+    }
+
+    /**
+     * Returns the outcome of the stream: the final text, the error sent by the server, or a
+     * failure if the stream ended before the transcription was complete.
+     */
+    public ApiResponseParser.ApiResult getResult() {
+        if (error != null) return ApiResponseParser.ApiResult.failure(error);
+        if (finalText != null) return ApiResponseParser.ApiResult.success(finalText);
+        if (done) return ApiResponseParser.ApiResult.success(text.toString());
+        return ApiResponseParser.ApiResult.failure("Stream ended before the transcription was complete");
+    }
+
+    private void dispatch() {
+        if (eventData.length() == 0) return;
+        String data = eventData.toString().trim();
+        eventData.setLength(0);
+
+        if (data.equals("[DONE]")) {
+            done = true;
+            return;
+        }
+
+        String type = ApiResponseParser.extractJsonString(data, "type");
+        if ("transcript.text.delta".equals(type)) {
+            String delta = ApiResponseParser.extractJsonString(data, "delta");
+            if (delta != null && !delta.isEmpty()) {
+                text.append(delta);
+                if (listener != null) listener.onPartialText(text.toString());
+            }
+        } else if ("transcript.text.done".equals(type)) {
+            finalText = ApiResponseParser.extractJsonString(data, "text");
+            if (finalText == null) finalText = text.toString();
+            done = true;
+        } else if ("error".equals(type) || data.contains("\"error\"")) {
+            error = ApiResponseParser.parse(data).getError();
+            done = true;
+        }
+        // Other event types (e.g. logprobs) are ignored
+    }
+}
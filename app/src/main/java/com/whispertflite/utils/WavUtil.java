@@ -24,7 +24,42 @@ public class WavUtil {
      * @return Complete WAV file as byte array
      */
     public static byte[] pcmToWav(byte[] pcmData, int sampleRate, int channels, int bitsPerSample) {
-        int dataSize = pcmData.length;
+        return pcmToWav(pcmData, 0, pcmData.length, sampleRate, channels, bitsPerSample);
+    }
+
+    /**
+     * Wraps a range of raw PCM16 audio data in a WAV container.
+     *
+     * @param pcmData      Raw PCM16 audio bytes (little-endian, signed 16-bit)
+     * @param offset       Offset of the first byte to include
+     * @param length       Number of bytes to include
+     * @param sampleRate   Sample rate in Hz (e.g. 16000)
+     * @param channels     Number of channels (1 = mono, 2 = stereo)
+     * @param bitsPerSample Bits per sample (16)
+     * @return Complete WAV file as byte array
+     */
+    public static byte[] pcmToWav(byte[] pcmData, int offset, int length, int sampleRate, int channels, int bitsPerSample) {
+        int dataSize = length;
+
+        // Combine header + PCM data
+        byte[] wav = new byte[HEADER_SIZE + dataSize];
+        System.arraycopy(createHeader(dataSize, sampleRate, channels, bitsPerSample), 0, wav, 0, HEADER_SIZE);
+        System.arraycopy(pcmData, offset, wav, HEADER_SIZE, dataSize);
+
+        return wav;
+    }
+
+    /**
+     * Creates the WAV header for the given amount of PCM data, e.g. to stream a WAV file
+     * without copying the audio.
+     *
+     * @param dataSize     Number of PCM bytes following the header
+     * @param sampleRate   Sample rate in Hz (e.g. 16000)
+     * @param channels     Number of channels (1 = mono, 2 = stereo)
+     * @param bitsPerSample Bits per sample (16)
+     * @return The 44 byte header
+     */
+    public static byte[] createHeader(int dataSize, int sampleRate, int channels, int bitsPerSample) {
         int byteRate = sampleRate * channels * bitsPerSample / 8;
         short blockAlign = (short) (channels * bitsPerSample / 8);
 
@@ -62,12 +97,7 @@ public class WavUtil {
         header.put((byte) 'a');
         header.putInt(dataSize);                // SubChunk2Size
 
-        // Combine header + PCM data
-        byte[] wav = new byte[HEADER_SIZE + dataSize];
-        System.arraycopy(header.array(), 0, wav, 0, HEADER_SIZE);
-        System.arraycopy(pcmData, 0, wav, HEADER_SIZE, dataSize);
-
-        return wav;
+        return header.array();
     }
 
     /**
@@ -77,6 +107,54 @@ public class WavUtil {
         return pcmToWav(pcmData, 16000, 1, 16);
     }
 
+    /**
+     * Extracts the PCM data of a WAV file in Whisper's default format (16kHz, mono, 16-bit).
+     * Chunks other than "fmt " and "data" are skipped.
+     *
+     * @throws IOException If the file is not a WAV file or has a different format
+     */
+    public static byte[] wav16kMonoToPcm(byte[] wav) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(wav).order(ByteOrder.LITTLE_ENDIAN);
+        if (wav.length < 12 || !chunkId(buffer, 0).equals("RIFF") || !chunkId(buffer, 8).equals("WAVE")) {
+            throw new IOException("Not a WAV file");
+        }
+        boolean formatChecked = false;
+        int pos = 12;
+        while (pos + 8 <= wav.length) {
+            String id = chunkId(buffer, pos);
+            int size = buffer.getInt(pos + 4);
+            if (size < 0) throw new IOException("Invalid WAV chunk size");
+            int body = pos + 8;
+            if (id.equals("fmt ")) {
+                if (size < 16 || body + 16 > wav.length) throw new IOException("Invalid WAV format chunk");
+                short audioFormat = buffer.getShort(body);
+                short channels = buffer.getShort(body + 2);
+                int sampleRate = buffer.getInt(body + 4);
+                short bitsPerSample = buffer.getShort(body + 14);
+                if (audioFormat != AUDIO_FORMAT_PCM || channels != 1 || sampleRate != 16000 || bitsPerSample != 16) {
+                    throw new IOException("Unsupported WAV format: " + sampleRate + " Hz, "
+                            + channels + " channels, " + bitsPerSample + " bit");
+                }
+                formatChecked = true;
+            } else if (id.equals("data")) {
+                if (!formatChecked) throw new IOException("WAV data before format chunk");
+                // Tolerate a data size that is not updated after recording
+                int length = Math.min(size, wav.length - body) & ~1;
+                byte[] pcm = new byte[length];
+                System.arraycopy(wav, body, pcm, 0, length);
+                return pcm;
+            }
+            pos = body + size + (size & 1);  // chunks are padded to even sizes
+        }
+        throw new IOException("No WAV data chunk");
+    }
+
+    private static String chunkId(ByteBuffer buffer, int offset) {
+        char[] id = new char[4];
+        for (int i = 0; i < 4; i++) id[i] = (char) buffer.get(offset + i);
+        return new String(id);
+    }
+
     /**
      * Returns just the WAV header size (44 bytes).
      */
@@ -29,7 +29,6 @@ public class WhisperUtil {
 
     private final WhisperVocab vocab = new WhisperVocab();
     private final WhisperFilter filters = new WhisperFilter();
-    private final WhisperMel mel = new WhisperMel();
 
     // Helper functions definitions
     public int getTokenTranslate() {
@@ -153,10 +152,18 @@ public class WhisperUtil {
     // nSamples size => WHISPER_SAMPLE_RATE * WHISPER_CHUNK_SIZE => 480000
     // meaningfulSamples is the part which contains recorded data
     public float[] getMelSpectrogram(float[] samples, int nSamples, int meaningfulSamples, int nThreads) {
+        return getMelSpectrogram(samples, nSamples, meaningfulSamples, nThreads, CancellationToken.NONE);
+    }
+
+    // The workers stop at the next frame once the token is cancelled
+    public float[] getMelSpectrogram(float[] samples, int nSamples, int meaningfulSamples, int nThreads,
+                                     CancellationToken token) {
 
         int fftSize = WHISPER_N_FFT;
         int fftStep = WHISPER_HOP_LENGTH;
 
+        // Local, so that concurrent calls do not share the result
+        WhisperMel mel = new WhisperMel();
         mel.nMel = WHISPER_N_MEL;
         mel.nLen = nSamples / fftStep;
         mel.data = new float[mel.nMel * mel.nLen];
@@ -184,6 +191,7 @@ public class WhisperUtil {
                 float[] fftOut = new float[fftSize * 2];
 
                 for (int i = ith; i < meaningfulFrames; i += nThreads) { // Limit to meaningful frames
+                    if (token.isCancelled()) return;
 
                     int offset = i * fftStep;
 
@@ -242,6 +250,7 @@ public class WhisperUtil {
                 e.printStackTrace();
             }
         }
+        token.throwIfCancelled();
 
         // clamping and normalization
         double mmax = -1e20;
@@ -0,0 +1,71 @@
+package com.whispertflite;
+
+import com.whispertflite.utils.AdaptiveTimeout;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AdaptiveTimeoutTest {
+
+    @Test
+    public void testInitialReadTimeoutMatchesDefault() {
+        AdaptiveTimeout timeout = new AdaptiveTimeout();
+        assertEquals(AdaptiveTimeout.DEFAULT_INITIAL_READ_TIMEOUT_MS, timeout.getReadTimeoutMillis(10f, 0));
+        assertEquals(-1, timeout.getEwmaServerMsPerAudioSecond(), 0.0);
+    }
+
+    @Test
+    public void testWriteTimeoutScalesWithUploadSize() {
+        AdaptiveTimeout timeout = new AdaptiveTimeout(1000, 1000, 10000, 1000);
+        long small = timeout.getWriteTimeoutMillis(1000);
+        long large = timeout.getWriteTimeoutMillis(100000);
+        assertEquals(99000, large - small);
+    }
+
+    @Test
+    public void testReadTimeoutScalesWithAudioDuration() {
+        AdaptiveTimeout timeout = new AdaptiveTimeout(1000, 1000, 1000000, 1000);
+        timeout.recordServerTime(1000, 10f);   // 100 ms per second of audio
+        long shortAudio = timeout.getReadTimeoutMillis(5f, 0);
+        long longAudio = timeout.getReadTimeoutMillis(30f, 0);
+        assertTrue(longAudio > shortAudio);
+        assertEquals(1000 + 4 * 100 * 30, longAudio);
+    }
+
+    @Test
+    public void testEwmaTracksObservations() {
+        AdaptiveTimeout timeout = new AdaptiveTimeout();
+        timeout.recordServerTime(1000, 10f);
+        assertEquals(100.0, timeout.getEwmaServerMsPerAudioSecond(), 0.001);
+        timeout.recordServerTime(2000, 10f);
+        assertEquals(0.3 * 200 + 0.7 * 100, timeout.getEwmaServerMsPerAudioSecond(), 0.001);
+    }
+
+    @Test
+    public void testNegativeObservationsAreIgnored() {
+        AdaptiveTimeout timeout = new AdaptiveTimeout();
+        timeout.recordServerTime(-1, 10f);
+        assertEquals(-1, timeout.getEwmaServerMsPerAudioSecond(), 0.0);
+    }
+
+    @Test
+    public void testParseProcessingTime() {
+        assertEquals(250, AdaptiveTimeout.parseProcessingTime("250"));
+        assertEquals(13, AdaptiveTimeout.parseProcessingTime(" 12.6 "));
+        assertEquals(-1, AdaptiveTimeout.parseProcessingTime(null));
+        assertEquals(-1, AdaptiveTimeout.parseProcessingTime(""));
+        assertEquals(-1, AdaptiveTimeout.parseProcessingTime("fast"));
+        assertEquals(-1, AdaptiveTimeout.parseProcessingTime("-5"));
+    }
+
+    @Test
+    public void testRetryAttemptsExtendReadTimeoutWithinBounds() {
+        AdaptiveTimeout timeout = new AdaptiveTimeout(1000, 1000, 8000, 1000);
+        timeout.recordServerTime(100, 1f);
+        long first = timeout.getReadTimeoutMillis(1f, 0);
+        long second = timeout.getReadTimeoutMillis(1f, 1);
+        assertEquals(first * 2, second);
+        assertEquals(8000, timeout.getReadTimeoutMillis(1f, 10));
+    }
+}
@@ -0,0 +1,133 @@
+package com.whispertflite;
+
+import com.whispertflite.asr.AudioClip;
+import com.whispertflite.asr.RecordBuffer;
+import com.whispertflite.asr.RecordingArena;
+import com.whispertflite.asr.RecordingArenaPool;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class AudioClipTest {
+
+    private static byte[] bytes(AudioClip clip) {
+        ByteBuffer view = clip.view();
+        byte[] bytes = new byte[view.remaining()];
+        view.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testFromPcmCopies() {
+        byte[] pcm = {1, 2, 3, 4};
+        AudioClip clip = AudioClip.fromPcm(pcm);
+        pcm[0] = 9;
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, bytes(clip));
+        assertEquals(4, clip.size());
+        clip.release();
+    }
+
+    @Test
+    public void testDuration() {
+        AudioClip clip = AudioClip.fromPcm(new byte[16000 * 2 * 3 / 2]);
+        assertEquals(1500, clip.getDurationMillis());
+        clip.release();
+    }
+
+    @Test
+    public void testViewIsReadOnly() {
+        AudioClip clip = AudioClip.fromPcm(new byte[4]);
+        assertTrue(clip.view().isReadOnly());
+        clip.release();
+    }
+
+    @Test
+    public void testKeepsRecordBufferSnapshot() {
+        RecordBuffer.setOutputBuffer(new byte[]{1, 1});
+        AudioClip clip = AudioClip.fromRecordBuffer();
+        assertNotNull(clip);
+        // A later recording of another session does not change the clip
+        RecordBuffer.setOutputBuffer(new byte[]{2, 2, 2, 2});
+        assertArrayEquals(new byte[]{1, 1}, bytes(clip));
+        clip.release();
+        RecordBuffer.publish(null);
+        assertNull(AudioClip.fromRecordBuffer());
+    }
+
+    @Test
+    public void testHoldsReferenceToArena() {
+        RecordingArena arena = RecordingArena.wrap(new byte[]{5, 6});
+        AudioClip clip = AudioClip.of(arena);
+        arena.release();
+        // Still readable through the clip's own reference
+        assertArrayEquals(new byte[]{5, 6}, bytes(clip));
+        clip.retain();
+        clip.release();
+        clip.release();
+        try {
+            arena.release();
+            fail();
+        } catch (IllegalStateException expected) {
+            // All references have been dropped
+        }
+    }
+
+    @Test
+    public void testSliceSharesAudio() {
+        AudioClip clip = AudioClip.fromPcm(new byte[]{1, 2, 3, 4, 5, 6});
+        AudioClip slice = clip.slice(2, 2);
+        clip.release();
+        // Still readable through the slice's own reference
+        assertArrayEquals(new byte[]{3, 4}, bytes(slice));
+        assertEquals(2, slice.size());
+        AudioClip inner = slice.slice(1, 1);
+        assertArrayEquals(new byte[]{4}, bytes(inner));
+        inner.release();
+        slice.release();
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testSliceOutOfBounds() {
+        AudioClip clip = AudioClip.fromPcm(new byte[4]);
+        clip.slice(2, 4);
+    }
+
+    @Test
+    public void testKeyIdentifiesRecording() {
+        AudioClip clip = AudioClip.fromPcm(new byte[8]);
+        AudioClip same = clip.retain();
+        AudioClip copy = AudioClip.fromPcm(new byte[8]);
+        assertEquals(clip.getKey(), same.getKey());
+        assertEquals(clip.getKey().hashCode(), same.getKey().hashCode());
+        // Same bytes, but another recording
+        assertFalse(clip.getKey().equals(copy.getKey()));
+
+        AudioClip slice = clip.slice(2, 4);
+        assertEquals(slice.getKey(), clip.getKey().slice(2, 4));
+        assertFalse(slice.getKey().equals(clip.getKey()));
+        slice.release();
+        same.release();
+        clip.release();
+        copy.release();
+    }
+
+    @Test
+    public void testRecycledArenaGetsNewKey() {
+        RecordingArenaPool pool = new RecordingArenaPool(4, 2, 1);
+        RecordingArena arena = pool.acquire();
+        AudioClip clip = AudioClip.of(arena);
+        AudioClip.Key key = clip.getKey();
+        clip.release();
+        arena.release();
+
+        RecordingArena next = pool.acquire();
+        assertSame(arena, next);
+        AudioClip nextClip = AudioClip.of(next);
+        assertFalse(key.equals(nextClip.getKey()));
+        nextClip.release();
+        next.release();
+    }
+}
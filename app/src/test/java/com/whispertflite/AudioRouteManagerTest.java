@@ -0,0 +1,133 @@
+package com.whispertflite;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Application;
+import android.content.Context;
+import android.content.Intent;
+import android.media.AudioDeviceInfo;
+import android.media.AudioManager;
+
+import com.whispertflite.asr.AudioRouteManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.AudioDeviceInfoBuilder;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks when the recorder's audio is routed through a Bluetooth headset.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class AudioRouteManagerTest {
+
+    private Application application;
+    private AudioManager audioManager;
+    private AudioRouteManager route;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        application = RuntimeEnvironment.getApplication();
+        audioManager = (AudioManager) application.getSystemService(Context.AUDIO_SERVICE);
+        route = new AudioRouteManager(application);
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        route.deactivate();
+        executor.shutdownNow();
+    }
+
+    private void setInputs(int... types) {
+        AudioDeviceInfo[] devices = new AudioDeviceInfo[types.length];
+        for (int i = 0; i < types.length; i++) {
+            devices[i] = AudioDeviceInfoBuilder.newBuilder().setType(types[i]).build();
+        }
+        shadowOf(audioManager).setInputDevices(Arrays.asList(devices));
+    }
+
+    private void sendScoState(int state) {
+        application.sendBroadcast(new Intent(AudioManager.ACTION_SCO_AUDIO_STATE_UPDATED)
+                .putExtra(AudioManager.EXTRA_SCO_AUDIO_STATE, state));
+    }
+
+    /**
+     * Waits until activate() listens for SCO state broadcasts.
+     */
+    private void awaitScoReceiver() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (shadowOf(application).getRegisteredReceivers().isEmpty()) {
+            assertTrue("activate() did not wait for SCO", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void builtInMicrophoneDoesNotStartSco() throws Exception {
+        setInputs(AudioDeviceInfo.TYPE_BUILTIN_MIC);
+
+        assertFalse(route.hasBluetoothInput());
+        assertFalse(route.activate(AudioRouteManager.DEFAULT_SCO_TIMEOUT_MS));
+        assertFalse(audioManager.isBluetoothScoOn());
+    }
+
+    @Test
+    public void noInputDevicesDoNotStartSco() throws Exception {
+        setInputs();
+
+        assertFalse(route.activate(AudioRouteManager.DEFAULT_SCO_TIMEOUT_MS));
+        assertFalse(audioManager.isBluetoothScoOn());
+    }
+
+    @Test
+    public void headsetIsUsedOnceScoConnects() throws Exception {
+        setInputs(AudioDeviceInfo.TYPE_BUILTIN_MIC, AudioDeviceInfo.TYPE_BLUETOOTH_SCO);
+        assertTrue(route.hasBluetoothInput());
+
+        Future<Boolean> activated = executor.submit(() -> route.activate(AudioRouteManager.DEFAULT_SCO_TIMEOUT_MS));
+        awaitScoReceiver();
+        sendScoState(AudioManager.SCO_AUDIO_STATE_CONNECTED);
+
+        assertTrue(activated.get(5, TimeUnit.SECONDS));
+        assertTrue(audioManager.isBluetoothScoOn());
+        assertTrue(shadowOf(application).getRegisteredReceivers().isEmpty());
+
+        route.deactivate();
+        assertFalse(audioManager.isBluetoothScoOn());
+    }
+
+    @Test
+    public void scoTimeoutFallsBackToDefaultMicrophone() throws Exception {
+        setInputs(AudioDeviceInfo.TYPE_BLUETOOTH_SCO);
+
+        long start = System.currentTimeMillis();
+        assertFalse(route.activate(200));
+        assertTrue(System.currentTimeMillis() - start >= 200);
+        // SCO is stopped again, capture uses the default microphone
+        assertFalse(audioManager.isBluetoothScoOn());
+        assertTrue(shadowOf(application).getRegisteredReceivers().isEmpty());
+    }
+
+    @Test
+    public void deactivateWithoutScoDoesNothing() {
+        setInputs(AudioDeviceInfo.TYPE_BUILTIN_MIC);
+        audioManager.setBluetoothScoOn(true);
+
+        // SCO was not started by the route manager, so it is left alone
+        route.deactivate();
+        assertTrue(audioManager.isBluetoothScoOn());
+        audioManager.setBluetoothScoOn(false);
+    }
+}
@@ -0,0 +1,97 @@
+package com.whispertflite;
+
+import com.whispertflite.utils.AudioSegmenter;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AudioSegmenterTest {
+
+    private static final int BYTES_PER_SECOND = 16000 * 2;
+
+    /**
+     * Builds PCM16 audio from alternating (seconds, amplitude) pairs.
+     */
+    private static byte[] audio(float... parts) {
+        int total = 0;
+        for (int i = 0; i < parts.length; i += 2) total += (int) (parts[i] * BYTES_PER_SECOND);
+        byte[] pcm = new byte[total];
+        int pos = 0;
+        for (int i = 0; i < parts.length; i += 2) {
+            int end = pos + (int) (parts[i] * BYTES_PER_SECOND);
+            short amplitude = (short) parts[i + 1];
+            for (int j = 0; pos < end; pos += 2, j++) {
+                short sample = (short) (j % 2 == 0 ? amplitude : -amplitude);
+                pcm[pos] = (byte) sample;
+                pcm[pos + 1] = (byte) (sample >> 8);
+            }
+        }
+        return pcm;
+    }
+
+    private static void assertCovers(byte[] pcm, List<AudioSegmenter.Segment> segments) {
+        int expectedOffset = 0;
+        for (AudioSegmenter.Segment segment : segments) {
+            assertEquals(expectedOffset, segment.offset);
+            assertTrue(segment.length > 0);
+            expectedOffset += segment.length;
+        }
+        assertEquals(pcm.length, expectedOffset);
+    }
+
+    @Test
+    public void testShortRecordingIsNotSplit() {
+        byte[] pcm = audio(20, 1000);
+        List<AudioSegmenter.Segment> segments = new AudioSegmenter().split(pcm);
+        assertEquals(1, segments.size());
+        assertEquals(0, segments.get(0).offset);
+        assertEquals(pcm.length, segments.get(0).length);
+    }
+
+    @Test
+    public void testCutsAtPause() {
+        // 20 s of speech, 1 s pause, 25 s of speech
+        byte[] pcm = audio(20, 1000, 1, 0, 25, 1000);
+        List<AudioSegmenter.Segment> segments = new AudioSegmenter().split(pcm);
+        assertEquals(2, segments.size());
+        assertCovers(pcm, segments);
+        int cut = segments.get(1).offset;
+        assertTrue("Cut at " + cut + " is not within the pause",
+                cut >= 20 * BYTES_PER_SECOND && cut <= 21 * BYTES_PER_SECOND);
+    }
+
+    @Test
+    public void testSegmentsRespectMaximumLength() {
+        // Two minutes of uninterrupted speech
+        byte[] pcm = audio(120, 1000);
+        AudioSegmenter segmenter = new AudioSegmenter();
+        List<AudioSegmenter.Segment> segments = segmenter.split(pcm);
+        assertTrue(segments.size() >= 4);
+        assertCovers(pcm, segments);
+        for (AudioSegmenter.Segment segment : segments) {
+            assertTrue(segment.length <= segmenter.getMaxSegmentBytes());
+        }
+    }
+
+    @Test
+    public void testPrefersQuietestPause() {
+        // A soft pause at 12 s and a silent one at 22 s
+        byte[] pcm = audio(12, 1000, 1, 100, 9, 1000, 1, 0, 15, 1000);
+        List<AudioSegmenter.Segment> segments = new AudioSegmenter().split(pcm);
+        int cut = segments.get(1).offset;
+        assertTrue(cut >= 22 * BYTES_PER_SECOND && cut <= 23 * BYTES_PER_SECOND);
+    }
+
+    @Test
+    public void testLastSegmentIsNotTiny() {
+        // Just over the limit: the remainder must not be a few milliseconds long
+        byte[] pcm = audio(30.5f, 1000);
+        List<AudioSegmenter.Segment> segments = new AudioSegmenter(16000, 30, 10).split(pcm);
+        assertEquals(2, segments.size());
+        assertTrue(segments.get(1).length >= 10 * BYTES_PER_SECOND);
+        assertCovers(pcm, segments);
+    }
+}
@@ -0,0 +1,96 @@
+package com.whispertflite;
+
+import com.whispertflite.utils.BoundedJobQueue;
+import com.whispertflite.utils.BoundedJobQueue.OverflowPolicy;
+import com.whispertflite.utils.LatencyHistogram;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class BoundedJobQueueTest {
+
+    @Test
+    public void testFifo() {
+        BoundedJobQueue<String> queue = new BoundedJobQueue<>(4, OverflowPolicy.REJECT_NEW, null);
+        assertNull(queue.offer("a"));
+        assertNull(queue.offer("b"));
+        assertEquals(2, queue.size());
+        assertEquals("a", queue.poll());
+        assertEquals("b", queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testRejectNew() {
+        BoundedJobQueue<String> queue = new BoundedJobQueue<>(2, OverflowPolicy.REJECT_NEW, null);
+        queue.offer("a");
+        queue.offer("b");
+        assertEquals("c", queue.offer("c"));
+        assertEquals(1, queue.getRejectedCount());
+        assertEquals(0, queue.getDroppedCount());
+        assertEquals(Arrays.asList("a", "b"), queue.drain());
+    }
+
+    @Test
+    public void testDropOldest() {
+        BoundedJobQueue<String> queue = new BoundedJobQueue<>(2, OverflowPolicy.DROP_OLDEST, null);
+        queue.offer("a");
+        queue.offer("b");
+        assertEquals("a", queue.offer("c"));
+        assertEquals(0, queue.getRejectedCount());
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(Arrays.asList("b", "c"), queue.drain());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testChangeCapacity() {
+        BoundedJobQueue<String> queue = new BoundedJobQueue<>(1, OverflowPolicy.REJECT_NEW, null);
+        queue.offer("a");
+        assertEquals("b", queue.offer("b"));
+        queue.setCapacity(3, OverflowPolicy.DROP_OLDEST);
+        assertEquals(3, queue.getCapacity());
+        assertEquals(OverflowPolicy.DROP_OLDEST, queue.getPolicy());
+        assertNull(queue.offer("b"));
+        assertNull(queue.offer("c"));
+        assertEquals("a", queue.offer("d"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new BoundedJobQueue<String>(0, OverflowPolicy.REJECT_NEW, null);
+    }
+
+    @Test
+    public void testRecordsWaitTime() throws InterruptedException {
+        LatencyHistogram waits = new LatencyHistogram("queue wait");
+        BoundedJobQueue<String> queue = new BoundedJobQueue<>(4, OverflowPolicy.REJECT_NEW, waits);
+        queue.offer("a");
+        queue.offer("b");
+        Thread.sleep(20);
+        queue.poll();
+        assertEquals(1, waits.getCount());
+        assertTrue(waits.getMaxMicros() >= 20_000);
+        // Drained jobs never started, their wait is not recorded
+        queue.drain();
+        assertEquals(1, waits.getCount());
+    }
+
+    @Test
+    public void testRequeueGoesFirstBeyondCapacity() {
+        BoundedJobQueue<String> queue = new BoundedJobQueue<>(2, OverflowPolicy.REJECT_NEW, null);
+        queue.offer("a");
+        queue.offer("b");
+        String first = queue.poll();
+        queue.offer("c");
+        queue.requeue(first);
+        assertEquals(3, queue.size());
+        assertEquals("a", queue.poll());
+        assertEquals("b", queue.poll());
+        assertEquals("c", queue.poll());
+    }
+}
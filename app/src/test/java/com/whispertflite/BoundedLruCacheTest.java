@@ -0,0 +1,59 @@
+package com.whispertflite;
+
+import com.whispertflite.utils.BoundedLruCache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BoundedLruCacheTest {
+
+    private static BoundedLruCache<String, byte[]> cache(int maxEntries, long maxBytes) {
+        return new BoundedLruCache<>(maxEntries, maxBytes, value -> value.length);
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedEntry() {
+        BoundedLruCache<String, byte[]> cache = cache(2, 100);
+        cache.put("a", new byte[1]);
+        cache.put("b", new byte[1]);
+        // "a" becomes the most recently used one
+        assertNotNull(cache.get("a"));
+        cache.put("c", new byte[1]);
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testEvictsUntilWithinWeight() {
+        BoundedLruCache<String, byte[]> cache = cache(10, 10);
+        cache.put("a", new byte[4]);
+        cache.put("b", new byte[4]);
+        cache.put("c", new byte[4]);
+        assertEquals(8, cache.getWeight());
+        assertNull(cache.get("a"));
+
+        // Heavier than the cache, not kept
+        cache.put("d", new byte[11]);
+        assertNull(cache.get("d"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testReplaceUpdatesWeight() {
+        BoundedLruCache<String, byte[]> cache = cache(10, 10);
+        cache.put("a", new byte[4]);
+        cache.put("a", new byte[6]);
+        assertEquals(1, cache.size());
+        assertEquals(6, cache.getWeight());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeight());
+    }
+}
@@ -0,0 +1,62 @@
+package com.whispertflite;
+
+import com.whispertflite.utils.CallbackDispatcher;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CallbackDispatcherTest {
+
+    @Test
+    public void testNoListener() {
+        CallbackDispatcher<List<Integer>> dispatcher = new CallbackDispatcher<>();
+        assertFalse(dispatcher.hasListener());
+        dispatcher.dispatch(list -> fail("No listener set"));
+    }
+
+    @Test
+    public void testCallbacksRunOnExecutorInOrder() throws InterruptedException {
+        // Several threads, yet the callbacks must not overlap or be reordered
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Integer> received = new ArrayList<>();
+        List<String> threads = new ArrayList<>();
+        CallbackDispatcher<List<Integer>> dispatcher = new CallbackDispatcher<>();
+        dispatcher.setListener(received, executor);
+
+        for (int i = 0; i < 1000; i++) {
+            int value = i;
+            dispatcher.dispatch(list -> {
+                list.add(value);
+                threads.add(Thread.currentThread().getName());
+            });
+        }
+        CountDownLatch done = new CountDownLatch(1);
+        dispatcher.dispatch(list -> done.countDown());
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertEquals(1000, received.size());
+        for (int i = 0; i < 1000; i++) assertEquals(i, (int) received.get(i));
+        assertFalse(threads.contains(Thread.currentThread().getName()));
+    }
+
+    @Test
+    public void testRemoveListener() {
+        List<Integer> received = new ArrayList<>();
+        CallbackDispatcher<List<Integer>> dispatcher = new CallbackDispatcher<>();
+        dispatcher.setListener(received, Runnable::run);
+        dispatcher.dispatch(list -> list.add(1));
+        dispatcher.setListener(null, null);
+        dispatcher.dispatch(list -> list.add(2));
+        assertFalse(dispatcher.hasListener());
+        assertEquals(1, received.size());
+    }
+}
@@ -0,0 +1,135 @@
+package com.whispertflite;
+
+import com.whispertflite.utils.CancellationToken;
+
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CancellationTokenTest {
+
+    @Test
+    public void testCancelRunsCallbacksOnce() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger calls = new AtomicInteger();
+        token.onCancel(calls::incrementAndGet);
+        assertFalse(token.isCancelled());
+
+        token.cancel();
+        token.cancel();
+        assertTrue(token.isCancelled());
+        assertFalse(token.isDeadlineExceeded());
+        assertEquals(1, calls.get());
+
+        // Registered after cancellation, runs right away
+        token.onCancel(calls::incrementAndGet);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testClosedRegistrationIsNotRun() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger calls = new AtomicInteger();
+        try (CancellationToken.Registration ignored = token.onCancel(calls::incrementAndGet)) {
+            assertEquals(0, calls.get());
+        }
+        token.cancel();
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    public void testCloseWaitsForCallbackRunningOnAnotherThread() throws Exception {
+        CancellationToken token = new CancellationToken();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        AtomicInteger finished = new AtomicInteger();
+        CancellationToken.Registration registration = token.onCancel(() -> {
+            running.countDown();
+            try {
+                proceed.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finished.incrementAndGet();
+        });
+        Thread canceller = new Thread(token::cancel);
+        canceller.start();
+        assertTrue(running.await(1, TimeUnit.SECONDS));
+
+        AtomicInteger finishedWhenClosed = new AtomicInteger(-1);
+        Thread closer = new Thread(() -> {
+            registration.close();
+            finishedWhenClosed.set(finished.get());
+        });
+        closer.start();
+        closer.join(100);
+        assertTrue("close() returned while the callback was running", closer.isAlive());
+
+        proceed.countDown();
+        closer.join(1000);
+        canceller.join(1000);
+        assertFalse(closer.isAlive());
+        // Whatever the callback touches can be reused once close() has returned
+        assertEquals(1, finishedWhenClosed.get());
+    }
+
+    @Test
+    public void testRegistrationClosedWhileCancellingIsNotRun() {
+        CancellationToken token = new CancellationToken();
+        AtomicInteger calls = new AtomicInteger();
+        CancellationToken.Registration[] second = new CancellationToken.Registration[1];
+        // Closed after cancel() has taken the callbacks, before the second one's turn
+        token.onCancel(() -> second[0].close());
+        second[0] = token.onCancel(calls::incrementAndGet);
+
+        token.cancel();
+        assertEquals(0, calls.get());
+    }
+
+    @Test
+    public void testThrowIfCancelled() {
+        CancellationToken token = new CancellationToken();
+        token.throwIfCancelled();
+        token.cancel();
+        try {
+            token.throwIfCancelled();
+            fail("Not thrown");
+        } catch (CancellationException e) {
+            assertEquals("Cancelled", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testDeadline() throws InterruptedException {
+        CancellationToken token = CancellationToken.withTimeout(50);
+        CountDownLatch called = new CountDownLatch(1);
+        token.onCancel(called::countDown);
+        long start = System.nanoTime();
+        assertFalse(token.sleep(5000));
+        assertTrue((System.nanoTime() - start) / 1_000_000 < 2000);
+        assertTrue(token.isCancelled());
+        assertTrue(token.isDeadlineExceeded());
+        // Runs on the timer thread
+        assertTrue(called.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFinishDropsDeadline() throws InterruptedException {
+        CancellationToken token = CancellationToken.withTimeout(30);
+        token.finish();
+        assertTrue(token.sleep(100));
+        assertFalse(token.isCancelled());
+    }
+
+    @Test
+    public void testNoneIsNeverCancelled() throws InterruptedException {
+        CancellationToken.NONE.cancel();
+        assertFalse(CancellationToken.NONE.isCancelled());
+        assertTrue(CancellationToken.NONE.sleep(1));
+    }
+}
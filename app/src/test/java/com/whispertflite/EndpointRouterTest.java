@@ -0,0 +1,148 @@
+package com.whispertflite;
+
+import com.whispertflite.utils.EndpointRouter;
+import com.whispertflite.utils.RemoteEndpoint;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EndpointRouterTest {
+
+    private RemoteEndpoint fast;
+    private RemoteEndpoint slow;
+    private EndpointRouter router;
+
+    @Before
+    public void setUp() {
+        fast = new RemoteEndpoint("fast", "https://fast.example.com", "key1", "whisper-1");
+        slow = new RemoteEndpoint("slow", "https://slow.example.com", "key2", "whisper-1");
+        router = new EndpointRouter(3, 1000);
+        router.setEndpoints(Arrays.asList(slow, fast));
+    }
+
+    @Test
+    public void testUnmeasuredEndpointsAreExploredFirst() {
+        router.recordSuccess(slow, 500);
+        assertSame(fast, router.select(0, null));
+    }
+
+    @Test
+    public void testPicksLowestLatency() {
+        router.recordSuccess(slow, 900);
+        router.recordSuccess(fast, 200);
+        assertSame(fast, router.select(0, null));
+    }
+
+    @Test
+    public void testErrorRatePenalizesEndpoint() {
+        router.recordSuccess(slow, 400);
+        router.recordSuccess(fast, 300);
+        router.recordFailure(fast, 0);
+        router.recordFailure(fast, 0);
+        assertSame(slow, router.select(0, null));
+    }
+
+    @Test
+    public void testExcludedEndpointIsSkipped() {
+        router.recordSuccess(slow, 900);
+        router.recordSuccess(fast, 200);
+        assertSame(slow, router.select(0, Collections.singleton(fast)));
+        assertNull(router.select(0, Arrays.asList(fast, slow)));
+    }
+
+    @Test
+    public void testCircuitOpensAfterConsecutiveFailures() {
+        router.recordSuccess(slow, 900);
+        router.recordSuccess(fast, 200);
+        for (int i = 0; i < 3; i++) router.recordFailure(fast, 100);
+
+        assertTrue(router.getStats(fast).isOpen(100));
+        assertSame(slow, router.select(500, null));
+    }
+
+    @Test
+    public void testHalfOpenAllowsSingleTrial() {
+        router.setEndpoints(Collections.singletonList(fast));
+        for (int i = 0; i < 3; i++) router.recordFailure(fast, 0);
+
+        // After the cooldown exactly one trial goes through
+        assertSame(fast, router.select(1000, null));
+        assertFalse(router.getStats(fast).isOpen(1000));
+        router.recordSuccess(fast, 100);
+        assertFalse(router.getStats(fast).isOpen(1001));
+        assertSame(fast, router.select(1001, null));
+    }
+
+    @Test
+    public void testFailedTrialDoublesCooldown() {
+        router.recordSuccess(slow, 900);
+        for (int i = 0; i < 3; i++) router.recordFailure(fast, 0);
+        assertSame(fast, router.select(1000, null));   // half-open trial
+        router.recordFailure(fast, 1000);
+
+        assertTrue(router.getStats(fast).isOpen(2999));
+        assertFalse(router.getStats(fast).isOpen(3000));
+    }
+
+    @Test
+    public void testAllOpenFallsBackToSoonestRecovery() {
+        for (int i = 0; i < 3; i++) router.recordFailure(slow, 0);
+        for (int i = 0; i < 3; i++) router.recordFailure(fast, 200);
+        assertSame(slow, router.select(300, null));
+    }
+
+    @Test
+    public void testPercentiles() {
+        for (int i = 1; i <= 100; i++) router.recordSuccess(fast, i * 10);
+        assertEquals(500, router.getStats(fast).getLatencyPercentile(50));
+        assertEquals(950, router.getStats(fast).getLatencyPercentile(95));
+        assertEquals(-1, router.getStats(slow).getLatencyPercentile(50));
+    }
+
+    @Test
+    public void testStatsSurviveEndpointReload() {
+        router.recordSuccess(fast, 123);
+        RemoteEndpoint reloaded = new RemoteEndpoint("renamed", fast.getBaseUrl(), "newKey", fast.getModel());
+        router.setEndpoints(Collections.singletonList(reloaded));
+        assertEquals(1, router.getStats(reloaded).getRequests());
+    }
+
+    @Test
+    public void testDumpStatsListsEveryEndpoint() {
+        router.recordSuccess(fast, 100);
+        String dump = router.dumpStats(0);
+        assertTrue(dump.contains("fast"));
+        assertTrue(dump.contains("p50 100 ms"));
+        assertTrue(dump.contains("slow (whisper-1): no requests yet"));
+    }
+
+    @Test
+    public void testParseEndpointList() {
+        String config = "# comment\n"
+                + "backup | https://api.openai.com | sk-1 | whisper-1\n"
+                + "\n"
+                + "broken line\n"
+                + " | http://localhost:8000 | key | large-v3 \n"
+                + "nokey | https://x.example.com |  | whisper-1\n";
+        List<RemoteEndpoint> endpoints = RemoteEndpoint.parseList(config);
+        assertEquals(2, endpoints.size());
+        assertEquals("backup", endpoints.get(0).getName());
+        assertEquals("sk-1", endpoints.get(0).getApiKey());
+        assertEquals("http://localhost:8000", endpoints.get(1).getName());
+        assertEquals("large-v3", endpoints.get(1).getModel());
+    }
+
+    @Test
+    public void testValidateEndpointList() {
+        assertNull(RemoteEndpoint.validateList(""));
+        assertNull(RemoteEndpoint.validateList("a | https://a.example.com | k | m"));
+        assertNotNull(RemoteEndpoint.validateList("a | https://a.example.com | k"));
+        assertTrue(RemoteEndpoint.validateList("a | ftp://a.example.com | k | m").startsWith("Line 1"));
+    }
+}
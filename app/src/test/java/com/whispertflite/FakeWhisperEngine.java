@@ -0,0 +1,129 @@
+package com.whispertflite;
+
+import com.whispertflite.asr.AudioClip;
+import com.whispertflite.asr.TranscriptionException;
+import com.whispertflite.asr.Whisper;
+import com.whispertflite.asr.WhisperResult;
+import com.whispertflite.engine.WhisperEngine;
+import com.whispertflite.utils.CancellationToken;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Engine for the tests of the pipeline, which transcribes a clip to its size in bytes and
+ * translates it to "e" followed by its size. It can hold every clip until let through, take
+ * a given time per clip unless cancelled, like an interpreter run, and lack a translate model.
+ */
+class FakeWhisperEngine implements WhisperEngine {
+    // Sizes of the clips as they are started, and as they are done
+    final BlockingQueue<Integer> entered = new LinkedBlockingQueue<>();
+    final List<Integer> processed = Collections.synchronizedList(new ArrayList<>());
+    final AtomicInteger aborted = new AtomicInteger();
+    final AtomicInteger dualCalls = new AtomicInteger();
+    final AtomicInteger unloadedWhileRunning = new AtomicInteger();
+    final CountDownLatch unloaded = new CountDownLatch(1);
+    private final AtomicInteger running = new AtomicInteger();
+    private final Semaphore gate = new Semaphore(0);
+    private volatile boolean gated = false;
+    private volatile boolean translates = true;
+    volatile long millis = 0;
+
+    /**
+     * Holds every clip until release() or open() lets it through.
+     */
+    FakeWhisperEngine gated() {
+        gated = true;
+        return this;
+    }
+
+    /**
+     * Takes the given time per clip, unless the token is cancelled first.
+     */
+    FakeWhisperEngine taking(long millis) {
+        this.millis = millis;
+        return this;
+    }
+
+    /**
+     * Behaves like a local model without a translate signature.
+     */
+    FakeWhisperEngine withoutTranslation() {
+        translates = false;
+        return this;
+    }
+
+    /**
+     * Lets the given number of held clips through, in the order they were started.
+     */
+    void release(int clips) {
+        gate.release(clips);
+    }
+
+    /**
+     * Lets every clip through, held or to come.
+     */
+    void open() {
+        gated = false;
+        gate.release(Integer.MAX_VALUE / 2);
+    }
+
+    @Override
+    public boolean isInitialized() {
+        return true;
+    }
+
+    @Override
+    public void initialize(String modelPath, String vocabPath, boolean multilingual) { }
+
+    @Override
+    public void deinitialize() {
+        if (running.get() > 0) unloadedWhileRunning.incrementAndGet();
+        unloaded.countDown();
+    }
+
+    @Override
+    public WhisperResult process(AudioClip clip, Whisper.Action action, int langToken) {
+        return process(clip, action, langToken, CancellationToken.NONE);
+    }
+
+    @Override
+    public WhisperResult process(AudioClip clip, Whisper.Action action, int langToken,
+                                 CancellationToken token) {
+        running.incrementAndGet();
+        try {
+            entered.add(clip.size());
+            if (gated) gate.acquire();
+            if (millis > 0 && !token.sleep(millis)) {
+                aborted.incrementAndGet();
+                return WhisperResult.failed(TranscriptionException.cancelled(token), action);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running.decrementAndGet();
+        }
+        processed.add(clip.size());
+        String text = action == Whisper.Action.TRANSLATE ? "e" + clip.size() : String.valueOf(clip.size());
+        return new WhisperResult(text, "en", action);
+    }
+
+    @Override
+    public boolean canTranslate() {
+        return translates;
+    }
+
+    @Override
+    public WhisperResult processDual(AudioClip clip, int langToken, CancellationToken token) {
+        dualCalls.incrementAndGet();
+        // Like the local engine with a model that has no translate signature
+        if (!translates) return process(clip, Whisper.Action.TRANSCRIBE, langToken, token);
+        return WhisperEngine.super.processDual(clip, langToken, token);
+    }
+}
@@ -0,0 +1,143 @@
+package com.whispertflite;
+
+import com.whispertflite.asr.AudioSource;
+import com.whispertflite.asr.FileAudioSource;
+import com.whispertflite.utils.WavUtil;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class FileAudioSourceTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static byte[] pcm(int bytes) {
+        byte[] pcm = new byte[bytes];
+        for (int i = 0; i < bytes; i++) pcm[i] = (byte) i;
+        return pcm;
+    }
+
+    @Test
+    public void testReplaysInOrder() {
+        byte[] pcm = pcm(1000);
+        FileAudioSource source = new FileAudioSource(pcm, false);
+        assertTrue(source.start());
+
+        byte[] replayed = new byte[1000];
+        int total = 0;
+        int read;
+        while ((read = source.read(replayed, total, Math.min(300, replayed.length - total))) > 0) {
+            total += read;
+        }
+        assertEquals(1000, total);
+        assertArrayEquals(pcm, replayed);
+        assertEquals(1000, source.getPosition());
+    }
+
+    @Test
+    public void testEndOfAudio() {
+        FileAudioSource source = new FileAudioSource(pcm(100), false);
+        source.start();
+        assertEquals(100, source.read(new byte[200], 0, 200));
+        assertEquals(-1, source.read(new byte[200], 0, 200));
+
+        // A completely replayed source cannot be restarted, only rewound
+        assertFalse(source.start());
+        source.rewind();
+        assertTrue(source.start());
+        assertEquals(100, source.read(new byte[200], 0, 200));
+    }
+
+    @Test
+    public void testReadsWholeSamples() {
+        FileAudioSource source = new FileAudioSource(pcm(100), false);
+        source.start();
+        assertEquals(6, source.read(new byte[7], 0, 7));
+    }
+
+    @Test
+    public void testNotStarted() {
+        FileAudioSource source = new FileAudioSource(pcm(100), false);
+        assertEquals(-1, source.read(new byte[10], 0, 10));
+        source.start();
+        assertEquals(10, source.read(new byte[10], 0, 10));
+        source.stop();
+        assertEquals(-1, source.read(new byte[10], 0, 10));
+
+        // Continues where it stopped
+        source.start();
+        byte[] frame = new byte[10];
+        source.read(frame, 0, 10);
+        assertEquals(10, frame[0]);
+    }
+
+    @Test
+    public void testByteBufferReadKeepsPosition() {
+        FileAudioSource source = new FileAudioSource(pcm(100), false);
+        source.start();
+        ByteBuffer window = ByteBuffer.allocate(20);
+        window.position(4);
+        assertEquals(20, source.read(window, 50));
+        assertEquals(4, window.position());
+        for (int i = 0; i < 20; i++) assertEquals(i, window.get(i));
+    }
+
+    @Test
+    public void testRealTimePacing() {
+        // 0.25 s of audio
+        FileAudioSource source = new FileAudioSource(pcm(AudioSource.SAMPLE_RATE / 2), true);
+        long start = System.nanoTime();
+        source.start();
+        byte[] frame = new byte[960];
+        while (source.read(frame, 0, frame.length) > 0) { }
+        long millis = (System.nanoTime() - start) / 1000000;
+        assertTrue("Replayed in " + millis + " ms", millis >= 240);
+    }
+
+    @Test
+    public void testFastReplayDoesNotWait() {
+        // 10 s of audio
+        FileAudioSource source = new FileAudioSource(pcm(AudioSource.SAMPLE_RATE * 20), false);
+        long start = System.nanoTime();
+        source.start();
+        byte[] frame = new byte[960];
+        while (source.read(frame, 0, frame.length) > 0) { }
+        long millis = (System.nanoTime() - start) / 1000000;
+        assertTrue("Replayed in " + millis + " ms", millis < 1000);
+    }
+
+    @Test
+    public void testFromWavFile() throws Exception {
+        byte[] pcm = pcm(200);
+        File file = new File(tmp.getRoot(), "speech.wav");
+        Files.write(file.toPath(), WavUtil.pcmToWav16kMono(pcm));
+
+        FileAudioSource source = FileAudioSource.fromFile(file, false);
+        source.start();
+        byte[] replayed = new byte[300];
+        assertEquals(200, source.read(replayed, 0, 300));
+        for (int i = 0; i < 200; i++) assertEquals(pcm[i], replayed[i]);
+    }
+
+    @Test
+    public void testFactoryReplaysFromStart() {
+        AudioSource.Factory factory = FileAudioSource.factory(pcm(100), false);
+        AudioSource first = factory.create();
+        first.start();
+        first.read(new byte[50], 0, 50);
+
+        AudioSource second = factory.create();
+        second.start();
+        byte[] frame = new byte[10];
+        second.read(frame, 0, 10);
+        assertEquals(0, frame[0]);
+    }
+}
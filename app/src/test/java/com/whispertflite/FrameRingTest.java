@@ -0,0 +1,121 @@
+package com.whispertflite;
+
+import com.whispertflite.asr.FrameRing;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class FrameRingTest {
+
+    private static void put(FrameRing ring, int value) {
+        byte[] slot = ring.claim();
+        assertNotNull(slot);
+        slot[0] = (byte) value;
+        ring.publish();
+    }
+
+    @Test
+    public void testFramesInOrder() {
+        FrameRing ring = new FrameRing(4, 960, 0);
+        assertNull(ring.peek());
+        put(ring, 1);
+        put(ring, 2);
+        assertEquals(2, ring.size());
+        assertEquals(1, ring.peek()[0]);
+        ring.advance();
+        assertEquals(2, ring.peek()[0]);
+        ring.advance();
+        assertNull(ring.peek());
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    public void testWrapsAround() {
+        FrameRing ring = new FrameRing(3, 2, 0);
+        for (int i = 0; i < 10; i++) {
+            put(ring, i);
+            assertEquals(i, ring.peek()[0]);
+            ring.advance();
+        }
+        assertEquals(0, ring.getOverrunCount());
+    }
+
+    @Test
+    public void testOverrunWhenFull() {
+        FrameRing ring = new FrameRing(2, 2, 0);
+        put(ring, 1);
+        put(ring, 2);
+        assertNull(ring.claim());
+        assertEquals(1, ring.getOverrunCount());
+        // The frames already in the ring are kept
+        assertEquals(1, ring.peek()[0]);
+        ring.advance();
+        put(ring, 3);
+        assertEquals(2, ring.peek()[0]);
+    }
+
+    @Test
+    public void testAwaitTimesOutAsUnderrun() {
+        FrameRing ring = new FrameRing(2, 2, TimeUnit.MILLISECONDS.toNanos(5));
+        assertNull(ring.await(10, TimeUnit.MILLISECONDS));
+        assertEquals(1, ring.getUnderrunCount());
+        put(ring, 7);
+        assertEquals(7, ring.await(10, TimeUnit.MILLISECONDS)[0]);
+        assertEquals(1, ring.getUnderrunCount());
+    }
+
+    @Test
+    public void testShortWaitIsNoUnderrun() throws InterruptedException {
+        FrameRing ring = new FrameRing(2, 2, TimeUnit.SECONDS.toNanos(5));
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ignored) {
+            }
+            put(ring, 7);
+        });
+        producer.start();
+        byte[] frame = null;
+        while (frame == null) frame = ring.await(1, TimeUnit.SECONDS);
+        producer.join();
+        assertEquals(7, frame[0]);
+        assertEquals(0, ring.getUnderrunCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testAdvanceEmpty() {
+        new FrameRing(2, 2, 0).advance();
+    }
+
+    @Test
+    public void testConcurrentProducerAndConsumer() throws InterruptedException {
+        final int frames = 100000;
+        FrameRing ring = new FrameRing(32, 4, 0);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < frames; i++) {
+                byte[] slot;
+                while ((slot = ring.claim()) == null) Thread.yield();
+                slot[0] = (byte) i;
+                slot[1] = (byte) (i >> 8);
+                slot[2] = (byte) (i >> 16);
+                ring.publish();
+            }
+        });
+        producer.start();
+
+        int expected = 0;
+        while (expected < frames) {
+            byte[] frame = ring.await(100, TimeUnit.MILLISECONDS);
+            if (frame == null) continue;
+            int value = (frame[0] & 0xff) | (frame[1] & 0xff) << 8 | (frame[2] & 0xff) << 16;
+            assertEquals(expected, value);
+            ring.advance();
+            expected++;
+        }
+        producer.join();
+        assertNull(ring.peek());
+    }
+}
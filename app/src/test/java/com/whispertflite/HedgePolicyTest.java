@@ -0,0 +1,73 @@
+package com.whispertflite;
+
+import com.whispertflite.utils.EndpointRouter;
+import com.whispertflite.utils.HedgePolicy;
+import com.whispertflite.utils.RemoteEndpoint;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class HedgePolicyTest {
+
+    private HedgePolicy newPolicy() {
+        return new HedgePolicy(100, 3000, 90, 5, 0.1, 1.0);
+    }
+
+    @Test
+    public void testInitialDelayWithoutSamples() {
+        assertEquals(3000, newPolicy().getHedgeDelayMillis(null));
+    }
+
+    @Test
+    public void testDelayFollowsPrimaryP90() {
+        RemoteEndpoint endpoint = new RemoteEndpoint("a", "https://a.example.com", "k", "m");
+        EndpointRouter router = new EndpointRouter();
+        router.setEndpoints(Collections.singletonList(endpoint));
+        for (int i = 1; i <= 10; i++) router.recordSuccess(endpoint, i * 100);
+
+        assertEquals(900, newPolicy().getHedgeDelayMillis(router.getStats(endpoint)));
+    }
+
+    @Test
+    public void testDelayHasFloor() {
+        RemoteEndpoint endpoint = new RemoteEndpoint("a", "https://a.example.com", "k", "m");
+        EndpointRouter router = new EndpointRouter();
+        router.setEndpoints(Collections.singletonList(endpoint));
+        for (int i = 0; i < 10; i++) router.recordSuccess(endpoint, 5);
+
+        assertEquals(100, newPolicy().getHedgeDelayMillis(router.getStats(endpoint)));
+    }
+
+    @Test
+    public void testBudgetCapsHedgeRate() {
+        HedgePolicy policy = newPolicy();
+        int fired = 0;
+        for (int i = 0; i < 100; i++) {
+            policy.onRequest();
+            if (policy.tryAcquire()) fired++;
+        }
+        // One initial token plus 0.1 per request
+        assertTrue("fired " + fired, fired <= 11);
+        assertTrue("fired " + fired, fired >= 10);
+        assertEquals(100 - fired, policy.getHedgesDenied());
+    }
+
+    @Test
+    public void testWinRate() {
+        HedgePolicy policy = newPolicy();
+        policy.onRequest();
+        assertTrue(policy.tryAcquire());
+        policy.onHedgeCompleted(true);
+        assertEquals(1.0, policy.getWinRate(), 0.0001);
+        assertEquals(1, policy.getHedgeWins());
+        assertTrue(policy.dumpStats().contains("backup won 100%"));
+    }
+
+    @Test
+    public void testWinRateWithoutHedges() {
+        assertEquals(0.0, newPolicy().getWinRate(), 0.0);
+    }
+}
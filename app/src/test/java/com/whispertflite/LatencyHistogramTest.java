@@ -0,0 +1,89 @@
+package com.whispertflite;
+
+import com.whispertflite.utils.LatencyHistogram;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram("mel");
+        assertEquals(0, histogram.getCount());
+        assertEquals(-1, histogram.getMeanMicros());
+        assertEquals(-1, histogram.getPercentileMicros(0.5));
+        assertEquals("mel: no samples", histogram.dumpStats());
+    }
+
+    @Test
+    public void testPercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram("interpreter");
+        // 1 ms to 100 ms
+        for (int i = 1; i <= 100; i++) histogram.recordMillis(i);
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(50_500, histogram.getMeanMicros());
+        assertEquals(100_000, histogram.getMaxMicros());
+        assertWithin(50_000, histogram.getPercentileMicros(0.5));
+        assertWithin(95_000, histogram.getPercentileMicros(0.95));
+        assertEquals(100_000, histogram.getPercentileMicros(1.0));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("Expected about " + expected + ", got " + actual,
+                actual >= expected && actual <= expected * 1.25);
+    }
+
+    @Test
+    public void testSmallAndNegativeValues() {
+        LatencyHistogram histogram = new LatencyHistogram("vad");
+        histogram.recordMicros(0);
+        histogram.recordMicros(3);
+        histogram.recordMicros(-5);
+        histogram.recordNanos(999);
+        assertEquals(3, histogram.getCount());
+        assertEquals(3, histogram.getMaxMicros());
+        assertEquals(0, histogram.getPercentileMicros(0.5));
+    }
+
+    @Test
+    public void testHugeValueIsKept() {
+        LatencyHistogram histogram = new LatencyHistogram("upload");
+        histogram.recordMicros(Long.MAX_VALUE / 2);
+        assertEquals(1, histogram.getCount());
+        assertEquals(Long.MAX_VALUE / 2, histogram.getPercentileMicros(0.99));
+    }
+
+    @Test
+    public void testConcurrentRecording() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram("commit");
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) histogram.recordMicros(i % 1000);
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) thread.join();
+
+        assertEquals(40_000, histogram.getCount());
+        assertEquals(999, histogram.getMaxMicros());
+        assertEquals(499, histogram.getMeanMicros());
+    }
+
+    @Test
+    public void testReset() {
+        LatencyHistogram histogram = new LatencyHistogram("mel");
+        histogram.recordMillis(10);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMaxMicros());
+        assertEquals(-1, histogram.getPercentileMicros(0.5));
+    }
+}
@@ -0,0 +1,40 @@
+package com.whispertflite;
+
+import com.whispertflite.utils.MetricsRegistry;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void testDumpListsStagesWithSamplesInPipelineOrder() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        assertEquals("No measurements yet", metrics.dump());
+
+        metrics.recordMillis(MetricsRegistry.Stage.INTERPRETER, 400);
+        metrics.recordMillis(MetricsRegistry.Stage.MEL, 40);
+        metrics.recordSince(MetricsRegistry.Stage.COMMIT, System.nanoTime());
+
+        String[] lines = metrics.dump().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("mel spectrogram: n=1"));
+        assertTrue(lines[1], lines[1].startsWith("interpreter: n=1"));
+        assertTrue(lines[2], lines[2].startsWith("commit: n=1"));
+    }
+
+    @Test
+    public void testReset() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        metrics.recordMillis(MetricsRegistry.Stage.UPLOAD, 120);
+        assertEquals(1, metrics.get(MetricsRegistry.Stage.UPLOAD).getCount());
+        metrics.reset();
+        assertEquals(0, metrics.get(MetricsRegistry.Stage.UPLOAD).getCount());
+    }
+
+    @Test
+    public void testDefaultIsShared() {
+        assertSame(MetricsRegistry.getDefault(), MetricsRegistry.getDefault());
+    }
+}
@@ -0,0 +1,144 @@
+package com.whispertflite;
+
+import com.whispertflite.utils.PolyphaseDecimator;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.*;
+
+public class PolyphaseDecimatorTest {
+
+    private static final int INPUT_RATE = 48000;
+    private static final int OUTPUT_RATE = 16000;
+
+    private static short[] sine(double frequency, double amplitude, int samples) {
+        short[] pcm = new short[samples];
+        for (int i = 0; i < samples; i++) {
+            pcm[i] = (short) Math.round(amplitude * Math.sin(2 * Math.PI * frequency * i / INPUT_RATE));
+        }
+        return pcm;
+    }
+
+    /**
+     * Returns the gain in dB of a sine after decimation, ignoring the filter's settling time.
+     */
+    private static double gainDb(double frequency) {
+        double amplitude = 10000;
+        short[] in = sine(frequency, amplitude, INPUT_RATE);  // 1 s
+        PolyphaseDecimator decimator = new PolyphaseDecimator(INPUT_RATE, OUTPUT_RATE);
+        short[] out = new short[decimator.getMaxOutputLength(in.length)];
+        int length = decimator.process(in, 0, in.length, out, 0);
+
+        double sum = 0;
+        int from = decimator.getFilterLength();  // output samples, more than the settling time
+        for (int i = from; i < length; i++) sum += (double) out[i] * out[i];
+        double rms = Math.sqrt(sum / (length - from));
+        return 20 * Math.log10(rms / (amplitude / Math.sqrt(2)));
+    }
+
+    @Test
+    public void testOutputLength() {
+        PolyphaseDecimator decimator = new PolyphaseDecimator(INPUT_RATE, OUTPUT_RATE);
+        assertEquals(3, decimator.getFactor());
+        assertEquals(0, decimator.getFilterLength() % 3);
+        short[] out = new short[1000];
+        assertEquals(480, decimator.process(new short[1440], 0, 1440, out, 0));
+        // The phase is kept across calls
+        assertEquals(0, decimator.process(new short[2], 0, 2, out, 0));
+        assertEquals(1, decimator.process(new short[1], 0, 1, out, 0));
+    }
+
+    @Test
+    public void testDcGain() {
+        PolyphaseDecimator decimator = new PolyphaseDecimator(INPUT_RATE, OUTPUT_RATE);
+        short[] in = new short[3000];
+        java.util.Arrays.fill(in, (short) 1000);
+        short[] out = new short[1000];
+        int length = decimator.process(in, 0, in.length, out, 0);
+        for (int i = decimator.getFilterLength(); i < length; i++) assertEquals(1000, out[i], 1);
+    }
+
+    @Test
+    public void testPassband() {
+        for (double frequency : new double[]{100, 1000, 3000, 5000, 6500}) {
+            double gain = gainDb(frequency);
+            assertEquals("Gain at " + frequency + " Hz", 0, gain, 0.1);
+        }
+    }
+
+    @Test
+    public void testStopband() {
+        // Would alias into the speech band without filtering
+        for (double frequency : new double[]{8000, 8100, 8500, 10000, 12000, 16000, 20000, 23000}) {
+            double gain = gainDb(frequency);
+            assertTrue("Gain at " + frequency + " Hz: " + gain + " dB", gain < -60);
+        }
+    }
+
+    @Test
+    public void testBlockSizeDoesNotMatter() {
+        short[] in = sine(1234, 8000, 4801);
+        PolyphaseDecimator whole = new PolyphaseDecimator(INPUT_RATE, OUTPUT_RATE);
+        short[] expected = new short[2000];
+        int expectedLength = whole.process(in, 0, in.length, expected, 0);
+
+        PolyphaseDecimator blocks = new PolyphaseDecimator(INPUT_RATE, OUTPUT_RATE);
+        short[] actual = new short[2000];
+        int length = 0;
+        for (int offset = 0, block = 1; offset < in.length; offset += block, block = block % 97 + 7) {
+            int n = Math.min(block, in.length - offset);
+            length += blocks.process(in, offset, n, actual, length);
+        }
+        assertEquals(expectedLength, length);
+        for (int i = 0; i < length; i++) assertEquals(expected[i], actual[i]);
+    }
+
+    @Test
+    public void testClipping() {
+        PolyphaseDecimator decimator = new PolyphaseDecimator(3, new float[]{1f, 1f, 1f});
+        short[] out = new short[2];
+        decimator.process(new short[]{Short.MAX_VALUE, Short.MAX_VALUE, Short.MAX_VALUE,
+                Short.MIN_VALUE, Short.MIN_VALUE, Short.MIN_VALUE}, 0, 6, out, 0);
+        assertEquals(Short.MAX_VALUE, out[0]);
+        assertEquals(Short.MIN_VALUE, out[1]);
+    }
+
+    @Test
+    public void testReset() {
+        PolyphaseDecimator decimator = new PolyphaseDecimator(INPUT_RATE, OUTPUT_RATE);
+        short[] in = sine(440, 8000, 960);
+        short[] first = new short[320];
+        short[] second = new short[320];
+        decimator.process(in, 0, in.length, first, 0);
+        decimator.reset();
+        decimator.process(in, 0, in.length, second, 0);
+        for (int i = 0; i < first.length; i++) assertEquals(first[i], second[i]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsNonIntegerRatio() {
+        new PolyphaseDecimator(44100, 16000);
+    }
+
+    @Test
+    public void testDoesNotAllocate() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported()) return;
+
+        PolyphaseDecimator decimator = new PolyphaseDecimator(INPUT_RATE, OUTPUT_RATE);
+        short[] in = sine(440, 8000, 1440);  // one 30 ms VAD frame
+        short[] out = new short[480];
+        for (int i = 0; i < 200; i++) decimator.process(in, 0, in.length, out, 0);
+
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1000; i++) decimator.process(in, 0, in.length, out, 0);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertTrue("Allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
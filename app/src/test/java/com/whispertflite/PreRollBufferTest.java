@@ -0,0 +1,85 @@
+package com.whispertflite;
+
+import com.whispertflite.asr.PreRollBuffer;
+import com.whispertflite.asr.RecordingArena;
+import com.whispertflite.asr.RecordingArenaPool;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class PreRollBufferTest {
+
+    private static byte[] range(int from, int count) {
+        byte[] bytes = new byte[count];
+        for (int i = 0; i < count; i++) bytes[i] = (byte) (from + i);
+        return bytes;
+    }
+
+    private static byte[] contents(RecordingArena arena) {
+        ByteBuffer view = arena.view();
+        byte[] bytes = new byte[view.remaining()];
+        view.get(bytes);
+        return bytes;
+    }
+
+    @Test
+    public void testDrainInOrder() {
+        PreRollBuffer preRoll = new PreRollBuffer(10);
+        preRoll.write(range(0, 4), 0, 4);
+        preRoll.write(range(4, 3), 0, 3);
+        assertEquals(7, preRoll.size());
+
+        RecordingArena arena = new RecordingArenaPool(100, 10, 1).acquire();
+        assertEquals(7, preRoll.drainTo(arena));
+        assertArrayEquals(range(0, 7), contents(arena));
+        assertEquals(0, preRoll.size());
+    }
+
+    @Test
+    public void testKeepsNewestBytesWhenWrapping() {
+        PreRollBuffer preRoll = new PreRollBuffer(10);
+        for (int i = 0; i < 5; i++) preRoll.write(range(i * 4, 4), 0, 4);
+        assertEquals(10, preRoll.size());
+
+        RecordingArena arena = new RecordingArenaPool(100, 10, 1).acquire();
+        preRoll.drainTo(arena);
+        assertArrayEquals(range(10, 10), contents(arena));
+    }
+
+    @Test
+    public void testWriteLargerThanCapacity() {
+        PreRollBuffer preRoll = new PreRollBuffer(10);
+        preRoll.write(range(0, 3), 0, 3);
+        preRoll.write(range(0, 25), 0, 25);
+
+        RecordingArena arena = new RecordingArenaPool(100, 10, 1).acquire();
+        preRoll.drainTo(arena);
+        assertArrayEquals(range(15, 10), contents(arena));
+    }
+
+    @Test
+    public void testDrainIntoSmallArenaKeepsNewest() {
+        PreRollBuffer preRoll = new PreRollBuffer(10);
+        preRoll.write(range(0, 10), 0, 10);
+
+        RecordingArena arena = new RecordingArenaPool(4, 2, 1).acquire();
+        assertEquals(4, preRoll.drainTo(arena));
+        assertArrayEquals(range(6, 4), contents(arena));
+    }
+
+    @Test
+    public void testRecordingContinuesAfterPreRoll() {
+        PreRollBuffer preRoll = new PreRollBuffer(10);
+        preRoll.write(range(0, 6), 0, 6);
+
+        RecordingArena arena = new RecordingArenaPool(100, 10, 1).acquire();
+        preRoll.drainTo(arena);
+        arena.writeWindow(4).put(range(6, 4));
+        arena.advance(4);
+        assertArrayEquals(range(0, 10), contents(arena));
+        assertEquals(1, arena.getFrameCount());
+    }
+}
@@ -0,0 +1,373 @@
+package com.whispertflite;
+
+import static org.junit.Assert.*;
+
+import com.whispertflite.asr.AudioClip;
+import com.whispertflite.asr.FileAudioSource;
+import com.whispertflite.asr.RecordBuffer;
+import com.whispertflite.asr.Recorder;
+import com.whispertflite.asr.RecordingArena;
+import com.whispertflite.asr.SpeechDetector;
+import com.whispertflite.asr.Whisper;
+import com.whispertflite.asr.WhisperResult;
+import com.whispertflite.engine.WhisperEngine;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Runs the capture path on replayed audio instead of the microphone.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class RecorderReplayTest {
+
+    private static byte[] pcm(int bytes) {
+        byte[] pcm = new byte[bytes];
+        for (int i = 0; i < bytes; i += 2) pcm[i] = (byte) (i / 2);
+        return pcm;
+    }
+
+    private static byte[] recorded() {
+        RecordingArena arena = RecordBuffer.acquire();
+        assertNotNull(arena);
+        try {
+            ByteBuffer view = arena.view();
+            byte[] bytes = new byte[view.remaining()];
+            view.get(bytes);
+            return bytes;
+        } finally {
+            arena.release();
+        }
+    }
+
+    /**
+     * Returns silence with utterances of the given levels, each followed by a pause.
+     *
+     * @param endInSpeech End the audio during the last utterance, without a pause
+     */
+    private static byte[] utterances(boolean endInSpeech, int... levels) {
+        int speechSamples = 16000 * 3 / 10;  // 0.3 s
+        int pauseSamples = 16000 * 4 / 10;   // 0.4 s
+        ByteBuffer pcm = ByteBuffer.allocate(2 * (pauseSamples + levels.length * (speechSamples + pauseSamples)))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        pcm.position(2 * pauseSamples);
+        for (int level : levels) {
+            for (int i = 0; i < speechSamples; i++) pcm.putShort((short) (i % 2 == 0 ? level : -level));
+            pcm.position(pcm.position() + 2 * pauseSamples);
+        }
+        int length = endInSpeech ? pcm.capacity() - 2 * pauseSamples : pcm.capacity();
+        return Arrays.copyOf(pcm.array(), length);
+    }
+
+    private static int maxLevel(ByteBuffer pcm) {
+        ByteBuffer view = pcm.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int max = 0;
+        while (view.remaining() >= 2) max = Math.max(max, Math.abs(view.getShort()));
+        return max;
+    }
+
+    /**
+     * Takes loud frames as speech, which ends after a few quiet frames like the silence
+     * duration of WebRTC VAD.
+     */
+    private static class LevelDetector implements SpeechDetector {
+        private static final int HANGOVER_FRAMES = 5;
+        private int quietFrames = HANGOVER_FRAMES;
+        volatile int frames = 0;
+        volatile boolean closed = false;
+
+        @Override
+        public boolean isSpeech(byte[] frame) {
+            frames++;
+            boolean loud = false;
+            for (int i = 0; i + 1 < frame.length && !loud; i += 2) {
+                loud = Math.abs((short) ((frame[i] & 0xff) | (frame[i + 1] << 8))) > 500;
+            }
+            quietFrames = loud ? 0 : quietFrames + 1;
+            return quietFrames < HANGOVER_FRAMES;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    /**
+     * Records the audio in continuous mode and returns the levels of the utterances handed over.
+     */
+    private static List<Integer> recordUtterances(byte[] pcm) throws InterruptedException {
+        List<Integer> levels = new CopyOnWriteArrayList<>();
+        recordUtterances(pcm, true, new LevelDetector(), utterance -> levels.add(maxLevel(utterance.view())));
+        return levels;
+    }
+
+    /**
+     * Records the audio in continuous mode and returns the closed recorder.
+     */
+    private static Recorder recordUtterances(byte[] pcm, boolean realTime, LevelDetector detector,
+                                             Consumer<RecordingArena> onUtterance) throws InterruptedException {
+        BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+        Recorder recorder = new Recorder(RuntimeEnvironment.getApplication());
+        recorder.setListener(new Recorder.RecorderListener() {
+            @Override
+            public void onUpdateReceived(String message) {
+                messages.add(message);
+            }
+
+            @Override
+            public void onUtteranceRecorded(RecordingArena utterance) {
+                onUtterance.accept(utterance);
+            }
+        });
+        recorder.setAudioSource(FileAudioSource.factory(pcm, realTime));
+        recorder.setContinuous(true);
+        recorder.initVad(detector);
+
+        recorder.start();
+        awaitEnd(messages);
+        assertTrue(detector.closed);
+        recorder.close();
+        return recorder;
+    }
+
+    /**
+     * Counts the sources that are capturing, i.e. started and neither stopped nor released.
+     */
+    private static class TrackedSource extends FileAudioSource {
+        static final AtomicInteger capturing = new AtomicInteger();
+        private boolean running = false;
+
+        TrackedSource(byte[] pcm) {
+            super(pcm, true);
+        }
+
+        @Override
+        public synchronized boolean start() {
+            if (!running) capturing.incrementAndGet();
+            running = true;
+            return super.start();
+        }
+
+        @Override
+        public synchronized void stop() {
+            if (running) capturing.decrementAndGet();
+            running = false;
+            super.stop();
+        }
+    }
+
+    private static Recorder createRecorder(BlockingQueue<String> messages) {
+        Recorder recorder = new Recorder(RuntimeEnvironment.getApplication());
+        recorder.setListener(messages::add);
+        return recorder;
+    }
+
+    private static String awaitEnd(BlockingQueue<String> messages) throws InterruptedException {
+        while (true) {
+            String message = messages.poll(10, TimeUnit.SECONDS);
+            assertNotNull("Recording did not finish", message);
+            if (!message.equals(Recorder.MSG_RECORDING)) return message;
+        }
+    }
+
+    @Test
+    public void recordsReplayedAudio() throws Exception {
+        byte[] pcm = pcm(16000 * 2);  // 1 s
+        BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+        Recorder recorder = createRecorder(messages);
+        recorder.setAudioSource(FileAudioSource.factory(pcm, false));
+
+        recorder.start();
+        assertEquals(Recorder.MSG_RECORDING_DONE, awaitEnd(messages));
+        assertArrayEquals(pcm, recorded());
+        recorder.releaseIdle();
+    }
+
+    @Test
+    public void replaysEachRecordingFromTheStart() throws Exception {
+        byte[] pcm = pcm(16000);  // 0.5 s
+        BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+        Recorder recorder = createRecorder(messages);
+        recorder.setAudioSource(FileAudioSource.factory(pcm, false));
+
+        for (int i = 0; i < 2; i++) {
+            recorder.start();
+            assertEquals(Recorder.MSG_RECORDING_DONE, awaitEnd(messages));
+            assertArrayEquals(pcm, recorded());
+        }
+        recorder.releaseIdle();
+    }
+
+    @Test
+    public void tooShortRecordingIsReported() throws Exception {
+        BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+        Recorder recorder = createRecorder(messages);
+        recorder.setAudioSource(FileAudioSource.factory(pcm(3200), false));  // 0.1 s
+
+        recorder.start();
+        assertEquals(Recorder.MSG_RECORDING_ERROR, awaitEnd(messages));
+        recorder.releaseIdle();
+    }
+
+    @Test
+    public void realTimeReplayTakesTheAudioDuration() throws Exception {
+        BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+        Recorder recorder = createRecorder(messages);
+        recorder.setAudioSource(FileAudioSource.factory(pcm(16000), true));  // 0.5 s
+
+        long start = System.nanoTime();
+        recorder.start();
+        assertEquals(Recorder.MSG_RECORDING_DONE, awaitEnd(messages));
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue("Recorded in " + millis + " ms", millis >= 480);
+        recorder.releaseIdle();
+    }
+
+    @Test
+    public void stopReturnsOnceRecordingHasEnded() throws Exception {
+        byte[] pcm = pcm(10 * 16000 * 2);  // 10 s, read in real time
+        BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+        Recorder recorder = createRecorder(messages);
+        recorder.setAudioSource(FileAudioSource.factory(pcm, true));
+
+        recorder.start();
+        assertEquals(Recorder.MSG_RECORDING, messages.poll(10, TimeUnit.SECONDS));
+        recorder.stop();
+        // Published before stop() returned, and cut short
+        assertTrue(recorded().length < pcm.length);
+        assertFalse(recorder.isInProgress());
+        recorder.releaseIdle();
+    }
+
+    @Test
+    public void stopDoesNotWaitForRecordingThatAlreadyEnded() throws Exception {
+        BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+        Recorder recorder = createRecorder(messages);
+        recorder.setAudioSource(FileAudioSource.factory(pcm(16000), false));
+
+        recorder.start();
+        awaitEnd(messages);
+        // E.g. isInProgress() was checked just before the recording ended by itself
+        CompletableFuture.runAsync(recorder::stop).get(1, TimeUnit.SECONDS);
+
+        // Nor for one of a closed recorder
+        recorder.close();
+        CompletableFuture.runAsync(recorder::stop).get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void stoppingWarmCaptureDuringHandoverReleasesTheSource() throws Exception {
+        byte[] pcm = pcm(16000);  // 0.5 s, read in real time
+        BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+        Recorder recorder = new Recorder(RuntimeEnvironment.getApplication());
+        // Called on the worker thread after the recording has handed over its source to warm
+        // capture, but before warm capture resumes
+        recorder.setListener(message -> {
+            if (!message.equals(Recorder.MSG_RECORDING)) recorder.stopWarmCapture();
+            messages.add(message);
+        });
+        recorder.setAudioSource(() -> new TrackedSource(pcm));
+
+        recorder.startWarmCapture();
+        Thread.sleep(100);
+        recorder.start();
+        awaitEnd(messages);
+        assertFalse(recorder.isWarm());
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (TrackedSource.capturing.get() > 0 && System.currentTimeMillis() < deadline) Thread.sleep(10);
+        assertEquals("Source left capturing", 0, TrackedSource.capturing.get());
+        recorder.close();
+    }
+
+    @Test
+    public void continuousModeHandsOverEachUtteranceInOrder() throws Exception {
+        List<Integer> levels = recordUtterances(utterances(false, 1000, 2000, 3000));
+        assertEquals(Arrays.asList(1000, 2000, 3000), levels);
+    }
+
+    @Test
+    public void utteranceInProgressWhenStoppedIsHandedOverOnce() throws Exception {
+        List<Integer> levels = recordUtterances(utterances(true, 1000, 2000));
+        assertEquals(Arrays.asList(1000, 2000), levels);
+    }
+
+    @Test
+    public void utterancesAreTranscribedInRecordingOrder() throws Exception {
+        // Slower than the recording, so that utterances queue up
+        Whisper whisper = new Whisper(new WhisperEngine() {
+            @Override
+            public boolean isInitialized() {
+                return true;
+            }
+
+            @Override
+            public void initialize(String modelPath, String vocabPath, boolean multilingual) { }
+
+            @Override
+            public void deinitialize() { }
+
+            @Override
+            public WhisperResult process(AudioClip clip, Whisper.Action action, int langToken) {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new WhisperResult(String.valueOf(maxLevel(clip.view())), "en", action);
+            }
+        });
+        BlockingQueue<String> results = new LinkedBlockingQueue<>();
+        whisper.setListener(new Whisper.WhisperListener() {
+            @Override
+            public void onUpdateReceived(String message) { }
+
+            @Override
+            public void onResultReceived(WhisperResult result) {
+                results.add(result.getResult());
+            }
+        });
+
+        recordUtterances(utterances(false, 1000, 2000, 3000), true, new LevelDetector(), whisper::enqueue);
+        for (String expected : new String[]{"1000", "2000", "3000"}) {
+            assertEquals(expected, results.poll(10, TimeUnit.SECONDS));
+        }
+        assertNull(results.poll(500, TimeUnit.MILLISECONDS));
+        whisper.close();
+    }
+
+    @Test
+    public void vadAnalyzesEveryFrameOfRealTimeCapture() throws Exception {
+        byte[] pcm = utterances(false, 1000, 2000, 3000);
+        LevelDetector detector = new LevelDetector();
+        Recorder recorder = recordUtterances(pcm, true, detector, utterance -> { });
+
+        assertEquals(pcm.length / 960, detector.frames);
+        assertEquals(0, recorder.getOverrunCount());
+    }
+
+    @Test
+    public void framesMissedByVadAreCountedAsOverruns() throws Exception {
+        // Read as fast as possible, the VAD worker may fall behind
+        byte[] pcm = utterances(false, 1000, 2000, 3000);
+        LevelDetector detector = new LevelDetector();
+        Recorder recorder = recordUtterances(pcm, false, detector, utterance -> { });
+
+        assertEquals(pcm.length / 960, detector.frames + recorder.getOverrunCount());
+    }
+}
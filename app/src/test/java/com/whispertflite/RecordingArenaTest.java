@@ -0,0 +1,217 @@
+package com.whispertflite;
+
+import com.whispertflite.asr.RecordBuffer;
+import com.whispertflite.asr.RecordingArena;
+import com.whispertflite.asr.RecordingArenaPool;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+import static org.junit.Assert.*;
+
+public class RecordingArenaTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static void record(RecordingArena arena, int bytes, byte value) {
+        ByteBuffer window = arena.writeWindow(bytes);
+        assertEquals(0, window.position());
+        for (int i = 0; i < bytes; i++) window.put(value);
+        arena.advance(bytes);
+    }
+
+    @Test
+    public void testInitialState() {
+        RecordingArena arena = new RecordingArenaPool(100, 10, 1).acquire();
+        assertEquals(0, arena.size());
+        assertEquals(100, arena.capacity());
+        assertEquals(100, arena.remaining());
+        assertEquals(0, arena.getFrameCount());
+        assertFalse(arena.isFull());
+    }
+
+    @Test
+    public void testFramesAreIndexed() {
+        RecordingArena arena = new RecordingArenaPool(100, 10, 1).acquire();
+        record(arena, 10, (byte) 1);
+        record(arena, 10, (byte) 2);
+        record(arena, 5, (byte) 3);  // incomplete frame
+
+        assertEquals(25, arena.size());
+        assertEquals(2, arena.getFrameCount());
+
+        byte[] frame = new byte[10];
+        arena.copyFrame(1, frame);
+        for (byte b : frame) assertEquals(2, b);
+        arena.copyFrame(0, frame);
+        for (byte b : frame) assertEquals(1, b);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testIncompleteFrameIsNotAccessible() {
+        RecordingArena arena = new RecordingArenaPool(100, 10, 1).acquire();
+        record(arena, 15, (byte) 1);
+        arena.copyFrame(1, new byte[10]);
+    }
+
+    @Test
+    public void testWriteWindowIsLimitedToCapacity() {
+        RecordingArena arena = new RecordingArenaPool(20, 10, 1).acquire();
+        record(arena, 15, (byte) 1);
+        assertEquals(5, arena.writeWindow(10).remaining());
+        record(arena, 5, (byte) 1);
+        assertTrue(arena.isFull());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCannotAdvancePastCapacity() {
+        RecordingArena arena = new RecordingArenaPool(20, 10, 1).acquire();
+        arena.advance(21);
+    }
+
+    @Test
+    public void testViewIsReadOnlyAndCoversRecording() {
+        RecordingArena arena = new RecordingArenaPool(100, 10, 1).acquire();
+        record(arena, 30, (byte) 7);
+        ByteBuffer view = arena.view();
+        assertTrue(view.isReadOnly());
+        assertTrue(view.isDirect());
+        assertEquals(0, view.position());
+        assertEquals(30, view.remaining());
+        assertEquals(7, view.get(29));
+        try {
+            view.put(0, (byte) 1);
+            fail("View should be read-only");
+        } catch (ReadOnlyBufferException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testReleasedArenaIsReused() {
+        RecordingArenaPool pool = new RecordingArenaPool(100, 10, 2);
+        RecordingArena first = pool.acquire();
+        record(first, 30, (byte) 1);
+        first.release();
+        assertEquals(1, pool.getPooledCount());
+
+        RecordingArena second = pool.acquire();
+        assertSame(first, second);
+        assertEquals(0, second.size());
+        assertEquals(1, pool.getAllocatedCount());
+    }
+
+    @Test
+    public void testRetainedArenaIsNotReused() {
+        RecordingArenaPool pool = new RecordingArenaPool(100, 10, 2);
+        RecordingArena first = pool.acquire();
+        first.retain();
+        first.release();
+
+        RecordingArena second = pool.acquire();
+        assertNotSame(first, second);
+        assertEquals(2, pool.getAllocatedCount());
+    }
+
+    @Test
+    public void testPoolKeepsAtMostMaxPooled() {
+        RecordingArenaPool pool = new RecordingArenaPool(100, 10, 1);
+        RecordingArena a = pool.acquire();
+        RecordingArena b = pool.acquire();
+        a.release();
+        b.release();
+        assertEquals(1, pool.getPooledCount());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDoubleReleaseIsDetected() {
+        RecordingArena arena = new RecordingArenaPool(100, 10, 1).acquire();
+        arena.release();
+        arena.release();
+    }
+
+    @Test
+    public void testPublishedRecordingStaysUntilReplaced() {
+        RecordingArenaPool pool = new RecordingArenaPool(3200, 320, 2);
+        RecordingArena recording = pool.acquire();
+        record(recording, 3200, (byte) 0);
+        RecordBuffer.publish(recording);
+        recording.release();
+        assertEquals(0, pool.getPooledCount());
+
+        RecordingArena reader = RecordBuffer.acquire();
+        assertSame(recording, reader);
+        assertEquals(1600, RecordBuffer.getSamples().length);
+
+        // Replacing the recording does not recycle the arena while it is being read
+        RecordBuffer.setOutputBuffer(new byte[64]);
+        assertEquals(0, pool.getPooledCount());
+        reader.release();
+        assertEquals(1, pool.getPooledCount());
+        assertEquals(32, RecordBuffer.getSamples().length);
+    }
+
+    @Test
+    public void testSamplesAreWrittenIntoDestination() {
+        RecordBuffer.setOutputBuffer(new byte[]{0, 0x40, 0, (byte) 0xC0, 0, 0x20});
+        RecordingArena recording = RecordBuffer.acquire();
+        float[] samples = new float[10];
+        int count = RecordBuffer.getSamples(recording.view(), samples);
+        recording.release();
+
+        assertEquals(3, count);
+        assertEquals(1.0f, samples[0], 0.0001f);
+        assertEquals(-1.0f, samples[1], 0.0001f);
+        assertEquals(0.5f, samples[2], 0.0001f);
+    }
+
+    @Test
+    public void testSpilledArenaIsBackedByFile() throws Exception {
+        File file = new File(tmp.getRoot(), "recording.pcm");
+        RecordingArena arena = RecordingArena.spill(file, 4000, 10);
+        assertTrue(arena.isSpilled());
+        assertTrue(file.exists());
+        assertEquals(4000, file.length());
+        assertEquals(4000, arena.capacity());
+
+        record(arena, 2000, (byte) 5);
+        byte[] frame = new byte[10];
+        arena.copyFrame(199, frame);
+        for (byte b : frame) assertEquals(5, b);
+        assertEquals(2000, arena.view().remaining());
+        arena.release();
+    }
+
+    @Test
+    public void testSpilledArenaGrowsBeyondSpillWindow() throws Exception {
+        int capacity = 3 * 1024 * 1024;
+        RecordingArena arena = RecordingArena.spill(new File(tmp.getRoot(), "long.pcm"), capacity, 960);
+        for (int i = 0; i < capacity / 960; i++) record(arena, 960, (byte) i);
+
+        byte[] frame = new byte[960];
+        arena.copyFrame(1234, frame);
+        assertEquals((byte) 1234, frame[0]);
+        ByteBuffer view = arena.view();
+        assertEquals(capacity / 960 * 960, view.remaining());
+        assertEquals((byte) 7, view.get(7 * 960));
+        arena.release();
+    }
+
+    @Test
+    public void testSpillFileIsDeletedOnLastRelease() throws Exception {
+        File file = new File(tmp.getRoot(), "recording.pcm");
+        RecordingArena arena = RecordingArena.spill(file, 1000, 10);
+        RecordBuffer.publish(arena);
+        arena.release();
+        assertTrue(file.exists());
+
+        RecordBuffer.publish(null);
+        assertFalse(file.exists());
+    }
+}
@@ -0,0 +1,118 @@
+package com.whispertflite;
+
+import com.whispertflite.utils.ResourcePool;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ResourcePoolTest {
+
+    @Test
+    public void testAcquireAndRelease() throws InterruptedException {
+        ResourcePool<String> pool = new ResourcePool<>(Arrays.asList("a", "b"));
+        assertEquals(2, pool.size());
+        String first = pool.acquire();
+        String second = pool.acquire();
+        assertFalse(first.equals(second));
+        assertEquals(0, pool.getIdleCount());
+        assertNull(pool.tryAcquire());
+        assertTrue(pool.release(first));
+        assertEquals(1, pool.getIdleCount());
+        // The most recently released one is handed out first
+        assertTrue(pool.release(second));
+        assertEquals(second, pool.acquire());
+    }
+
+    @Test
+    public void testAcquireWaitsForRelease() throws Exception {
+        ResourcePool<String> pool = new ResourcePool<>(Arrays.asList("a"));
+        String held = pool.acquire();
+        AtomicReference<String> acquired = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                acquired.set(pool.acquire());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        });
+        waiter.start();
+        assertFalse(done.await(50, TimeUnit.MILLISECONDS));
+        pool.release(held);
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals("a", acquired.get());
+    }
+
+    @Test
+    public void testAcquireSeveralWaitsForAll() throws Exception {
+        ResourcePool<String> pool = new ResourcePool<>(Arrays.asList("a", "b"));
+        String held = pool.acquire();
+        AtomicReference<List<String>> acquired = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                acquired.set(pool.acquire(2));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        });
+        waiter.start();
+        // One is idle, but both are needed
+        assertFalse(done.await(50, TimeUnit.MILLISECONDS));
+        pool.release(held);
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(2, acquired.get().size());
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAcquireMoreThanSize() throws InterruptedException {
+        new ResourcePool<>(Arrays.asList("a")).acquire(2);
+    }
+
+    @Test
+    public void testCloseFailsWaitersAndRefusesRelease() throws Exception {
+        ResourcePool<String> pool = new ResourcePool<>(Arrays.asList("a", "b"));
+        String held = pool.acquire();
+        pool.acquire();
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                pool.acquire();
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        });
+        waiter.start();
+        Thread.sleep(20);
+
+        assertTrue(pool.close().isEmpty());
+        waiter.join(1000);
+        assertTrue(error.get() instanceof IllegalStateException);
+        // The caller disposes of a busy resource released after close
+        assertFalse(pool.release(held));
+        assertTrue(pool.isClosed());
+    }
+
+    @Test
+    public void testCloseReturnsIdleResources() throws InterruptedException {
+        ResourcePool<String> pool = new ResourcePool<>(Arrays.asList("a", "b"));
+        pool.acquire();
+        assertEquals(1, pool.close().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmpty() {
+        new ResourcePool<String>(new ArrayList<>());
+    }
+}
@@ -0,0 +1,112 @@
+package com.whispertflite;
+
+import com.whispertflite.utils.RetryPolicy;
+import com.whispertflite.utils.RetryPolicy.FailureKind;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RetryPolicyTest {
+
+    private RetryPolicy newPolicy() {
+        return new RetryPolicy(4, 100, 1000, 5000, new Random(42));
+    }
+
+    @Test
+    public void testClassifyStatusCodes() {
+        assertEquals(FailureKind.RATE_LIMITED, RetryPolicy.classifyStatus(429));
+        assertEquals(FailureKind.SERVER_ERROR, RetryPolicy.classifyStatus(500));
+        assertEquals(FailureKind.SERVER_ERROR, RetryPolicy.classifyStatus(503));
+        assertEquals(FailureKind.READ_TIMEOUT, RetryPolicy.classifyStatus(408));
+        assertEquals(FailureKind.CLIENT_ERROR, RetryPolicy.classifyStatus(401));
+        assertEquals(FailureKind.CLIENT_ERROR, RetryPolicy.classifyStatus(400));
+    }
+
+    @Test
+    public void testClassifyExceptions() {
+        assertEquals(FailureKind.CONNECT, RetryPolicy.classifyException(new ConnectException("refused")));
+        assertEquals(FailureKind.CONNECT, RetryPolicy.classifyException(new UnknownHostException("api.example.com")));
+        assertEquals(FailureKind.CONNECT, RetryPolicy.classifyException(new SocketTimeoutException("connect timed out")));
+        assertEquals(FailureKind.READ_TIMEOUT, RetryPolicy.classifyException(new SocketTimeoutException("timeout")));
+        assertEquals(FailureKind.READ_TIMEOUT, RetryPolicy.classifyException(new InterruptedIOException("timeout")));
+        assertEquals(FailureKind.UNKNOWN, RetryPolicy.classifyException(new IOException("Canceled")));
+    }
+
+    @Test
+    public void testClientErrorsAreNotRetried() {
+        assertEquals(-1, newPolicy().nextDelayMillis(FailureKind.CLIENT_ERROR, 0, -1));
+        assertEquals(-1, newPolicy().nextDelayMillis(FailureKind.UNKNOWN, 0, -1));
+    }
+
+    @Test
+    public void testStopsAfterMaxAttempts() {
+        RetryPolicy policy = newPolicy();
+        assertTrue(policy.nextDelayMillis(FailureKind.SERVER_ERROR, 2, -1) >= 0);
+        assertEquals(-1, policy.nextDelayMillis(FailureKind.SERVER_ERROR, 3, -1));
+    }
+
+    @Test
+    public void testBackoffIsJitteredWithinExponentialCeiling() {
+        RetryPolicy policy = newPolicy();
+        for (int i = 0; i < 100; i++) {
+            long first = policy.nextDelayMillis(FailureKind.SERVER_ERROR, 0, -1);
+            long second = policy.nextDelayMillis(FailureKind.CONNECT, 1, -1);
+            long third = policy.nextDelayMillis(FailureKind.READ_TIMEOUT, 2, -1);
+            assertTrue(first >= 0 && first <= 100);
+            assertTrue(second >= 0 && second <= 200);
+            assertTrue(third >= 0 && third <= 400);
+        }
+    }
+
+    @Test
+    public void testBackoffIsCapped() {
+        RetryPolicy policy = new RetryPolicy(30, 100, 1000, 5000, new Random(1));
+        for (int i = 0; i < 100; i++) {
+            assertTrue(policy.nextDelayMillis(FailureKind.SERVER_ERROR, 25, -1) <= 1000);
+        }
+    }
+
+    @Test
+    public void testRetryAfterTakesPrecedence() {
+        assertEquals(3000, newPolicy().nextDelayMillis(FailureKind.RATE_LIMITED, 0, 3000));
+    }
+
+    @Test
+    public void testExcessiveRetryAfterGivesUp() {
+        assertEquals(-1, newPolicy().nextDelayMillis(FailureKind.RATE_LIMITED, 0, 60000));
+    }
+
+    @Test
+    public void testParseRetryAfterSeconds() {
+        assertEquals(2000, RetryPolicy.parseRetryAfter("2", 0));
+        assertEquals(0, RetryPolicy.parseRetryAfter(" 0 ", 0));
+    }
+
+    @Test
+    public void testParseRetryAfterHttpDate() {
+        // Sun, 06 Nov 1994 08:49:37 GMT = 784111777000 ms
+        long now = 784111777000L - 5000;
+        assertEquals(5000, RetryPolicy.parseRetryAfter("Sun, 06 Nov 1994 08:49:37 GMT", now));
+    }
+
+    @Test
+    public void testParseRetryAfterDateInPastIsZero() {
+        assertEquals(0, RetryPolicy.parseRetryAfter("Sun, 06 Nov 1994 08:49:37 GMT", 784111777000L + 1000));
+    }
+
+    @Test
+    public void testParseRetryAfterInvalid() {
+        assertEquals(-1, RetryPolicy.parseRetryAfter(null, 0));
+        assertEquals(-1, RetryPolicy.parseRetryAfter("", 0));
+        assertEquals(-1, RetryPolicy.parseRetryAfter("soon", 0));
+        assertEquals(-1, RetryPolicy.parseRetryAfter("-5", 0));
+    }
+}
@@ -0,0 +1,90 @@
+package com.whispertflite;
+
+import com.whispertflite.utils.SerialExecutor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SerialExecutorTest {
+
+    @Test
+    public void testRunsInSubmissionOrder() throws InterruptedException {
+        ExecutorService pool = SerialExecutor.newSharedPool("Test", 4);
+        SerialExecutor serial = new SerialExecutor(pool);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            final int n = i;
+            serial.execute(() -> {
+                order.add(n);
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) assertEquals(i, (int) order.get(i));
+        pool.shutdown();
+    }
+
+    @Test
+    public void testOneTaskAtATime() throws InterruptedException {
+        ExecutorService pool = SerialExecutor.newSharedPool("Test", 4);
+        SerialExecutor serial = new SerialExecutor(pool);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(20);
+        for (int i = 0; i < 20; i++) {
+            serial.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(2);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, maxRunning.get());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testContinuesAfterFailingTask() throws InterruptedException {
+        SerialExecutor serial = new SerialExecutor(Runnable::run);
+        try {
+            serial.execute(() -> {
+                throw new IllegalStateException("failed");
+            });
+            fail();
+        } catch (IllegalStateException expected) {
+            // Thrown on the calling thread by the direct executor
+        }
+        assertTrue(serial.isIdle());
+        AtomicInteger ran = new AtomicInteger();
+        serial.execute(ran::incrementAndGet);
+        assertEquals(1, ran.get());
+    }
+
+    @Test
+    public void testSharedPoolIsBounded() throws InterruptedException {
+        ExecutorService pool = SerialExecutor.newSharedPool("Test", 2);
+        int baseline = Thread.activeCount();
+        CountDownLatch done = new CountDownLatch(200);
+        for (int i = 0; i < 200; i++) {
+            new SerialExecutor(pool).execute(done::countDown);
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(Thread.activeCount() <= baseline + 2);
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,96 @@
+package com.whispertflite;
+
+import com.whispertflite.utils.ApiResponseParser;
+import com.whispertflite.utils.StreamingResponseParser;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class StreamingResponseParserTest {
+
+    private static void feed(StreamingResponseParser parser, String stream) {
+        for (String line : stream.split("\n", -1)) parser.feedLine(line);
+        parser.finish();
+    }
+
+    @Test
+    public void testDeltasAreAccumulated() {
+        List<String> partials = new ArrayList<>();
+        StreamingResponseParser parser = new StreamingResponseParser(partials::add);
+        feed(parser,
+                "data: {\"type\": \"transcript.text.delta\", \"delta\": \"Hello\"}\n\n" +
+                "data: {\"type\": \"transcript.text.delta\", \"delta\": \" world\"}\n\n" +
+                "data: {\"type\": \"transcript.text.done\", \"text\": \"Hello world.\"}\n\n");
+
+        assertEquals(Arrays.asList("Hello", "Hello world"), partials);
+        assertTrue(parser.isDone());
+        ApiResponseParser.ApiResult result = parser.getResult();
+        assertTrue(result.isSuccess());
+        assertEquals("Hello world.", result.getText());
+    }
+
+    @Test
+    public void testDoneMarkerWithoutFinalText() {
+        StreamingResponseParser parser = new StreamingResponseParser(null);
+        feed(parser,
+                "data: {\"type\": \"transcript.text.delta\", \"delta\": \"Hi\"}\n\n" +
+                "data: [DONE]\n\n");
+
+        assertTrue(parser.isDone());
+        assertEquals("Hi", parser.getResult().getText());
+    }
+
+    @Test
+    public void testCommentsAndOtherFieldsAreIgnored() {
+        List<String> partials = new ArrayList<>();
+        StreamingResponseParser parser = new StreamingResponseParser(partials::add);
+        feed(parser,
+                ": keep-alive\n" +
+                "event: transcript.text.delta\n" +
+                "id: 1\n" +
+                "data:{\"type\": \"transcript.text.delta\", \"delta\": \"A\"}\n\n");
+
+        assertEquals(Arrays.asList("A"), partials);
+    }
+
+    @Test
+    public void testEscapedDelta() {
+        StreamingResponseParser parser = new StreamingResponseParser(null);
+        feed(parser, "data: {\"type\": \"transcript.text.delta\", \"delta\": \"say \\\"hi\\\"\"}\n\n");
+        assertEquals("say \"hi\"", parser.getPartialText());
+    }
+
+    @Test
+    public void testErrorEvent() {
+        StreamingResponseParser parser = new StreamingResponseParser(null);
+        feed(parser, "data: {\"type\": \"error\", \"error\": {\"message\": \"Audio too short\"}}\n\n");
+
+        assertTrue(parser.isDone());
+        assertFalse(parser.getResult().isSuccess());
+        assertEquals("Audio too short", parser.getResult().getError());
+    }
+
+    @Test
+    public void testTruncatedStreamFails() {
+        StreamingResponseParser parser = new StreamingResponseParser(null);
+        feed(parser, "data: {\"type\": \"transcript.text.delta\", \"delta\": \"Hel\"}\n\n");
+
+        assertFalse(parser.isDone());
+        assertFalse(parser.getResult().isSuccess());
+        assertEquals("Hel", parser.getPartialText());
+    }
+
+    @Test
+    public void testEventWithoutTrailingBlankLineIsDispatchedOnFinish() {
+        StreamingResponseParser parser = new StreamingResponseParser(null);
+        parser.feedLine("data: {\"type\": \"transcript.text.done\", \"text\": \"End\"}");
+        assertFalse(parser.isDone());
+        parser.finish();
+        assertEquals("End", parser.getResult().getText());
+    }
+}
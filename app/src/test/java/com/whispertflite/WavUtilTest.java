@@ -167,4 +167,36 @@ public class WavUtilTest {
         ByteBuffer bb = ByteBuffer.wrap(wav, 20, 2).order(ByteOrder.LITTLE_ENDIAN);
         assertEquals(1, bb.getShort());
     }
+
+    @Test
+    public void testWavToPcmRoundTrip() throws Exception {
+        byte[] pcmData = new byte[100];
+        for (int i = 0; i < pcmData.length; i++) pcmData[i] = (byte) i;
+        assertArrayEquals(pcmData, WavUtil.wav16kMonoToPcm(WavUtil.pcmToWav16kMono(pcmData)));
+    }
+
+    @Test
+    public void testWavToPcmSkipsOtherChunks() throws Exception {
+        byte[] pcmData = {1, 2, 3, 4};
+        byte[] wav = WavUtil.pcmToWav16kMono(pcmData);
+        // Insert a "LIST" chunk with an odd size (padded) between "fmt " and "data"
+        ByteBuffer list = ByteBuffer.allocate(8 + 4).order(ByteOrder.LITTLE_ENDIAN);
+        list.put(new byte[]{'L', 'I', 'S', 'T'}).putInt(3).put(new byte[]{9, 9, 9, 0});
+        byte[] withList = new byte[wav.length + list.capacity()];
+        System.arraycopy(wav, 0, withList, 0, 36);
+        System.arraycopy(list.array(), 0, withList, 36, list.capacity());
+        System.arraycopy(wav, 36, withList, 36 + list.capacity(), wav.length - 36);
+
+        assertArrayEquals(pcmData, WavUtil.wav16kMonoToPcm(withList));
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void testWavToPcmRejectsOtherFormats() throws Exception {
+        WavUtil.wav16kMonoToPcm(WavUtil.pcmToWav(new byte[100], 44100, 2, 16));
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void testWavToPcmRejectsNonWav() throws Exception {
+        WavUtil.wav16kMonoToPcm(new byte[100]);
+    }
 }
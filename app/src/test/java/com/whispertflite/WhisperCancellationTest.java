@@ -0,0 +1,117 @@
+package com.whispertflite;
+
+import static org.junit.Assert.*;
+
+import com.whispertflite.asr.AudioClip;
+import com.whispertflite.asr.TranscriptionException;
+import com.whispertflite.asr.Whisper;
+import com.whispertflite.asr.WhisperResult;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aborts transcriptions while the engine is running them, through the future, stop() and
+ * deadlines, and checks that the same engine transcribes the next job right away.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WhisperCancellationTest {
+
+    private static CompletableFuture<WhisperResult> submit(Whisper whisper, Whisper.Options options) {
+        AudioClip clip = AudioClip.fromPcm(new byte[16000 * 2]);
+        try {
+            return whisper.submit(clip, options);
+        } finally {
+            clip.release();
+        }
+    }
+
+    private static Whisper.Options options() {
+        return new Whisper.Options(Whisper.Action.TRANSCRIBE, -1);
+    }
+
+    private static void awaitIdle(Whisper whisper, long timeoutMillis) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeoutMillis;
+        while (whisper.isInProgress() && System.currentTimeMillis() < end) Thread.sleep(5);
+    }
+
+    @Test
+    public void cancelledFutureAbortsRunningJob() throws Exception {
+        FakeWhisperEngine engine = new FakeWhisperEngine().taking(5000);
+        Whisper whisper = new Whisper(engine);
+
+        CompletableFuture<WhisperResult> running = submit(whisper, options());
+        Thread.sleep(50);
+        long start = System.nanoTime();
+        assertTrue(running.cancel(false));
+        awaitIdle(whisper, 1000);
+        long stopped = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertFalse(whisper.isInProgress());
+        assertTrue("Stopped after " + stopped + " ms", stopped < 1000);
+        assertEquals(1, engine.aborted.get());
+
+        // The engine takes the next job without being reloaded
+        engine.millis = 10;
+        assertEquals(String.valueOf(16000 * 2), submit(whisper, options()).get(1, TimeUnit.SECONDS).getResult());
+        whisper.close();
+    }
+
+    @Test
+    public void stopAbortsRunningAndQueuedJobs() throws Exception {
+        FakeWhisperEngine engine = new FakeWhisperEngine().taking(5000);
+        Whisper whisper = new Whisper(engine);
+
+        CompletableFuture<WhisperResult> running = submit(whisper, options());
+        CompletableFuture<WhisperResult> queued = submit(whisper, options());
+        Thread.sleep(50);
+        whisper.stop();
+        awaitIdle(whisper, 1000);
+
+        assertTrue(running.isCancelled());
+        assertTrue(queued.isCancelled());
+        assertFalse(whisper.isInProgress());
+        assertEquals(1, engine.aborted.get());
+        whisper.close();
+    }
+
+    @Test
+    public void deadlineFailsJobWithTimedOut() throws Exception {
+        FakeWhisperEngine engine = new FakeWhisperEngine().taking(5000);
+        Whisper whisper = new Whisper(engine);
+
+        CompletableFuture<WhisperResult> running = submit(whisper, options().withTimeout(100));
+        try {
+            running.get(1, TimeUnit.SECONDS);
+            fail("Not timed out");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TranscriptionException);
+            assertEquals(TranscriptionException.Reason.TIMED_OUT,
+                    ((TranscriptionException) e.getCause()).getReason());
+        }
+
+        // Jobs that finish in time are not affected
+        engine.millis = 10;
+        assertEquals(String.valueOf(16000 * 2), submit(whisper, options().withTimeout(1000)).get(1, TimeUnit.SECONDS).getResult());
+        whisper.close();
+    }
+
+    @Test
+    public void closeUnloadsModelAfterRunningJobHasReturned() throws Exception {
+        FakeWhisperEngine engine = new FakeWhisperEngine().taking(5000);
+        Whisper whisper = new Whisper(engine);
+
+        CompletableFuture<WhisperResult> running = submit(whisper, options());
+        Thread.sleep(50);
+        whisper.close();
+
+        assertTrue(engine.unloaded.await(1, TimeUnit.SECONDS));
+        assertTrue(running.isCancelled());
+        assertEquals(1, engine.aborted.get());
+        assertEquals(0, engine.unloadedWhileRunning.get());
+    }
+}
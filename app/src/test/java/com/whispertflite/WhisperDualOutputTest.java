@@ -0,0 +1,92 @@
+package com.whispertflite;
+
+import static org.junit.Assert.*;
+
+import com.whispertflite.asr.AudioClip;
+import com.whispertflite.asr.Whisper;
+import com.whispertflite.asr.WhisperResult;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs dual-output jobs, which transcribe and translate the same audio, and checks what the
+ * result carries for short clips, long background clips and engines that cannot translate.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WhisperDualOutputTest {
+
+    private static final int BYTES_PER_SECOND = 16000 * 2;
+
+    private static WhisperResult transcribe(Whisper whisper, int seconds, Whisper.Priority priority) throws Exception {
+        AudioClip clip = AudioClip.fromPcm(new byte[seconds * BYTES_PER_SECOND]);
+        try {
+            return whisper.submit(clip, new Whisper.Options(Whisper.Action.TRANSLATE, -1, priority)
+                    .withDualOutput(true)).get(5, TimeUnit.SECONDS);
+        } finally {
+            clip.release();
+        }
+    }
+
+    private static long sum(String text, String prefix) {
+        long total = 0;
+        for (String part : text.split(" ")) {
+            assertTrue(part, part.startsWith(prefix));
+            total += Long.parseLong(part.substring(prefix.length()));
+        }
+        return total;
+    }
+
+    @Test
+    public void dualJobCarriesTranscriptionAndTranslation() throws Exception {
+        FakeWhisperEngine engine = new FakeWhisperEngine();
+        Whisper whisper = new Whisper(engine);
+
+        WhisperResult result = transcribe(whisper, 3, Whisper.Priority.INTERACTIVE);
+
+        // Whatever the action, the text is the transcription
+        assertEquals(String.valueOf(3 * BYTES_PER_SECOND), result.getResult());
+        assertEquals(Whisper.Action.TRANSCRIBE, result.getTask());
+        assertTrue(result.hasTranslation());
+        assertEquals("e" + 3 * BYTES_PER_SECOND, result.getTranslation());
+        assertEquals(1, engine.dualCalls.get());
+        whisper.close();
+    }
+
+    @Test
+    public void backgroundDualJobJoinsWindowsOfBoth() throws Exception {
+        FakeWhisperEngine engine = new FakeWhisperEngine();
+        Whisper whisper = new Whisper(engine);
+
+        WhisperResult result = transcribe(whisper, 100, Whisper.Priority.BACKGROUND);
+
+        // Every window transcribed and translated once, in the same order
+        int windows = result.getResult().split(" ").length;
+        assertTrue("Only " + windows + " windows", windows >= 4);
+        assertEquals(windows, engine.dualCalls.get());
+        assertEquals(100L * BYTES_PER_SECOND, sum(result.getResult(), ""));
+        assertTrue(result.hasTranslation());
+        assertEquals(100L * BYTES_PER_SECOND, sum(result.getTranslation(), "e"));
+        assertEquals("e" + result.getResult().replace(" ", " e"), result.getTranslation());
+        whisper.close();
+    }
+
+    @Test
+    public void engineThatCannotTranslateOnlyTranscribes() throws Exception {
+        FakeWhisperEngine engine = new FakeWhisperEngine().withoutTranslation();
+        Whisper whisper = new Whisper(engine);
+        assertFalse(whisper.canTranslate());
+
+        WhisperResult interactive = transcribe(whisper, 3, Whisper.Priority.INTERACTIVE);
+        assertEquals(String.valueOf(3 * BYTES_PER_SECOND), interactive.getResult());
+        assertFalse(interactive.hasTranslation());
+
+        WhisperResult background = transcribe(whisper, 100, Whisper.Priority.BACKGROUND);
+        assertEquals(100L * BYTES_PER_SECOND, sum(background.getResult(), ""));
+        assertFalse(background.hasTranslation());
+        whisper.close();
+    }
+}
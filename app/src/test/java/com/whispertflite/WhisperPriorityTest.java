@@ -0,0 +1,87 @@
+package com.whispertflite;
+
+import static org.junit.Assert.*;
+
+import com.whispertflite.asr.AudioClip;
+import com.whispertflite.asr.Whisper;
+import com.whispertflite.asr.WhisperResult;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs interactive transcriptions next to a long background transcription and checks that
+ * they pre-empt it at window boundaries, while it still completes every window once. The
+ * engine holds every clip until let through, so that the order does not depend on timing.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WhisperPriorityTest {
+
+    private static final int BYTES_PER_SECOND = 16000 * 2;
+
+    private static AudioClip clip(int seconds) {
+        return AudioClip.fromPcm(new byte[seconds * BYTES_PER_SECOND]);
+    }
+
+    private static CompletableFuture<WhisperResult> submit(Whisper whisper, int seconds, Whisper.Priority priority) {
+        AudioClip clip = clip(seconds);
+        try {
+            return whisper.submit(clip, new Whisper.Options(Whisper.Action.TRANSCRIBE, -1, priority));
+        } finally {
+            clip.release();
+        }
+    }
+
+    @Test
+    public void interactiveJobRunsAtNextWindowBoundary() throws Exception {
+        FakeWhisperEngine engine = new FakeWhisperEngine().gated();
+        Whisper whisper = new Whisper(engine);
+
+        // 10 minutes, 20 windows
+        CompletableFuture<WhisperResult> background = submit(whisper, 600, Whisper.Priority.BACKGROUND);
+        assertNotNull(engine.entered.poll(1, TimeUnit.SECONDS));
+        CompletableFuture<WhisperResult> interactive = submit(whisper, 3, Whisper.Priority.INTERACTIVE);
+
+        // Only the window in progress when it was queued runs before it
+        engine.release(1);
+        assertEquals(Integer.valueOf(3 * BYTES_PER_SECOND), engine.entered.poll(1, TimeUnit.SECONDS));
+        engine.release(1);
+        assertEquals(String.valueOf(3 * BYTES_PER_SECOND), interactive.get(1, TimeUnit.SECONDS).getResult());
+        assertFalse(background.isDone());
+
+        // Every window has been transcribed once, in order
+        engine.open();
+        WhisperResult result = background.get(10, TimeUnit.SECONDS);
+        long total = 0;
+        for (String part : result.getResult().split(" ")) total += Long.parseLong(part);
+        assertEquals(600L * BYTES_PER_SECOND, total);
+        assertEquals(result.getResult().split(" ").length + 1, engine.processed.size());
+        whisper.close();
+    }
+
+    @Test
+    public void cancelledBackgroundJobStopsAtWindowBoundary() throws Exception {
+        FakeWhisperEngine engine = new FakeWhisperEngine().gated();
+        Whisper whisper = new Whisper(engine);
+
+        CompletableFuture<WhisperResult> background = submit(whisper, 600, Whisper.Priority.BACKGROUND);
+        assertNotNull(engine.entered.poll(1, TimeUnit.SECONDS));
+        background.cancel(false);
+        engine.release(1);
+
+        // No further window runs, the next clip is the interactive one
+        CompletableFuture<WhisperResult> interactive = submit(whisper, 3, Whisper.Priority.INTERACTIVE);
+        assertEquals(Integer.valueOf(3 * BYTES_PER_SECOND), engine.entered.poll(1, TimeUnit.SECONDS));
+        engine.release(1);
+        interactive.get(1, TimeUnit.SECONDS);
+
+        assertTrue(background.isCancelled());
+        assertEquals(2, engine.processed.size());
+        assertTrue(engine.entered.isEmpty());
+        whisper.close();
+    }
+}
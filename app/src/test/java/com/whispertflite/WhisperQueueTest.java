@@ -0,0 +1,137 @@
+package com.whispertflite;
+
+import static org.junit.Assert.*;
+
+import com.whispertflite.asr.AudioClip;
+import com.whispertflite.asr.PipelineListener;
+import com.whispertflite.asr.TranscriptionException;
+import com.whispertflite.asr.Whisper;
+import com.whispertflite.asr.WhisperResult;
+import com.whispertflite.utils.BoundedJobQueue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Submits jobs while the engine is busy and checks that callers never wait for the
+ * transcription, and how a full queue treats the next job.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WhisperQueueTest {
+
+    private static CompletableFuture<WhisperResult> submit(Whisper whisper, int bytes) {
+        AudioClip clip = AudioClip.fromPcm(new byte[bytes]);
+        try {
+            return whisper.submit(clip, new Whisper.Options(Whisper.Action.TRANSCRIBE, -1));
+        } finally {
+            clip.release();
+        }
+    }
+
+    private static TranscriptionException.Reason failureOf(CompletableFuture<WhisperResult> future)
+            throws Exception {
+        try {
+            future.get(1, TimeUnit.SECONDS);
+            fail("Job did not fail");
+            return null;
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TranscriptionException);
+            return ((TranscriptionException) e.getCause()).getReason();
+        }
+    }
+
+    @Test
+    public void submitReturnsFutureBeforeTranscription() throws Exception {
+        FakeWhisperEngine engine = new FakeWhisperEngine().gated();
+        Whisper whisper = new Whisper(engine);
+
+        CompletableFuture<WhisperResult> future = submit(whisper, 3200);
+        assertNotNull(engine.entered.poll(1, TimeUnit.SECONDS));
+        assertFalse(future.isDone());
+        assertTrue(whisper.isInProgress());
+
+        engine.open();
+        assertEquals("3200", future.get(1, TimeUnit.SECONDS).getResult());
+        whisper.close();
+    }
+
+    @Test
+    public void rejectNewFailsJobSubmittedToFullQueue() throws Exception {
+        FakeWhisperEngine engine = new FakeWhisperEngine().gated();
+        Whisper whisper = new Whisper(engine);
+        whisper.setQueueCapacity(2, BoundedJobQueue.OverflowPolicy.REJECT_NEW);
+
+        CompletableFuture<WhisperResult> running = submit(whisper, 100);
+        assertNotNull(engine.entered.poll(1, TimeUnit.SECONDS));
+        CompletableFuture<WhisperResult> first = submit(whisper, 200);
+        CompletableFuture<WhisperResult> second = submit(whisper, 300);
+        CompletableFuture<WhisperResult> rejected = submit(whisper, 400);
+
+        // Fails right away, while the engine is still busy
+        assertTrue(rejected.isCompletedExceptionally());
+        assertEquals(TranscriptionException.Reason.QUEUE_FULL, failureOf(rejected));
+
+        engine.open();
+        assertEquals("100", running.get(1, TimeUnit.SECONDS).getResult());
+        assertEquals("200", first.get(1, TimeUnit.SECONDS).getResult());
+        assertEquals("300", second.get(1, TimeUnit.SECONDS).getResult());
+        assertTrue(whisper.getQueueStats().contains("rejected: 1, dropped: 0"));
+        whisper.close();
+    }
+
+    @Test
+    public void dropOldestCancelsJobWaitingLongest() throws Exception {
+        FakeWhisperEngine engine = new FakeWhisperEngine().gated();
+        Whisper whisper = new Whisper(engine);
+        whisper.setQueueCapacity(2, BoundedJobQueue.OverflowPolicy.DROP_OLDEST);
+
+        CompletableFuture<WhisperResult> running = submit(whisper, 100);
+        assertNotNull(engine.entered.poll(1, TimeUnit.SECONDS));
+        CompletableFuture<WhisperResult> oldest = submit(whisper, 200);
+        CompletableFuture<WhisperResult> second = submit(whisper, 300);
+        CompletableFuture<WhisperResult> newest = submit(whisper, 400);
+
+        assertTrue(oldest.isCancelled());
+
+        engine.open();
+        assertEquals("100", running.get(1, TimeUnit.SECONDS).getResult());
+        assertEquals("300", second.get(1, TimeUnit.SECONDS).getResult());
+        assertEquals("400", newest.get(1, TimeUnit.SECONDS).getResult());
+        assertTrue(whisper.getQueueStats().contains("rejected: 0, dropped: 1"));
+        whisper.close();
+    }
+
+    @Test
+    public void startReturnsWithoutWaitingForTranscription() throws Exception {
+        FakeWhisperEngine engine = new FakeWhisperEngine().gated();
+        Whisper whisper = new Whisper(engine);
+        whisper.setAction(Whisper.Action.TRANSCRIBE);
+        BlockingQueue<WhisperResult> results = new LinkedBlockingQueue<>();
+        whisper.setListener(new PipelineListener() {
+            @Override
+            public void onResult(WhisperResult result) {
+                results.add(result);
+            }
+        }, Runnable::run);
+
+        AudioClip clip = AudioClip.fromPcm(new byte[3200]);
+        whisper.start(clip);
+        clip.release();
+        // start() has returned although the engine is held
+        assertNotNull(engine.entered.poll(1, TimeUnit.SECONDS));
+        assertTrue(results.isEmpty());
+
+        engine.open();
+        WhisperResult result = results.poll(1, TimeUnit.SECONDS);
+        assertNotNull("Result not delivered", result);
+        assertEquals("3200", result.getResult());
+        whisper.close();
+    }
+}
@@ -50,4 +50,18 @@ public class WhisperResultTest {
         WhisperResult result = new WhisperResult("  hello world  ", "en", Whisper.Action.TRANSCRIBE);
         assertEquals("  hello world  ", result.getResult());
     }
+
+    @Test
+    public void dualOutputCarriesTranslation() {
+        WhisperResult transcription = new WhisperResult("hallo welt", "de", Whisper.Action.TRANSCRIBE);
+        assertFalse(transcription.hasTranslation());
+        assertNull(transcription.getTranslation());
+
+        WhisperResult dual = transcription.withTranslation("hello world");
+        assertTrue(dual.hasTranslation());
+        assertEquals("hallo welt", dual.getResult());
+        assertEquals("hello world", dual.getTranslation());
+        assertEquals("de", dual.getLanguage());
+        assertEquals(Whisper.Action.TRANSCRIBE, dual.getTask());
+    }
 }
@@ -0,0 +1,99 @@
+package com.whispertflite;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+
+import com.whispertflite.asr.AudioClip;
+import com.whispertflite.asr.FileAudioSource;
+import com.whispertflite.asr.Recorder;
+import com.whispertflite.asr.Whisper;
+import com.whispertflite.asr.WhisperResult;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens and closes recognition sessions the way the RecognitionService does and checks
+ * that Recorder and Whisper run on shared pools instead of leaking a thread each.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WorkerLifecycleTest {
+
+    private static final int SESSIONS = 1000;
+
+    private static void runSession(Context context, byte[] pcm) throws InterruptedException {
+        BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+        Recorder recorder = new Recorder(context);
+        recorder.setListener(messages::add);
+        recorder.setAudioSource(FileAudioSource.factory(pcm, false));
+        Whisper whisper = new Whisper(context);
+        whisper.setListener(new Whisper.WhisperListener() {
+            @Override
+            public void onUpdateReceived(String message) {
+                messages.add(message);
+            }
+
+            @Override
+            public void onResultReceived(WhisperResult result) { }
+        });
+
+        recorder.start();
+        String message;
+        do {
+            message = messages.poll(10, TimeUnit.SECONDS);
+            assertNotNull("Recording did not finish", message);
+        } while (message.equals(Recorder.MSG_RECORDING));
+        assertEquals(Recorder.MSG_RECORDING_DONE, message);
+
+        // No model is loaded, the transcription task only reports that
+        AudioClip recording = recorder.acquireLastRecording();
+        assertNotNull(recording);
+        whisper.start(recording);
+        recording.release();
+        assertNotNull("Transcription did not run", messages.poll(10, TimeUnit.SECONDS));
+
+        whisper.close();
+        recorder.close();
+        assertTrue(whisper.isClosed());
+        assertTrue(recorder.isClosed());
+    }
+
+    @Test
+    public void threadCountStaysConstant() throws Exception {
+        Context context = RuntimeEnvironment.getApplication();
+        byte[] pcm = new byte[16000];  // 0.5 s of silence
+
+        // Let the shared pools start their threads
+        for (int i = 0; i < 10; i++) runSession(context, pcm);
+        int baseline = Thread.activeCount();
+
+        for (int i = 0; i < SESSIONS; i++) runSession(context, pcm);
+        int threads = Thread.activeCount();
+
+        // At most the remaining pool threads may have been started
+        int poolThreads = 2 * Recorder.MAX_WORKER_THREADS + Whisper.MAX_WORKER_THREADS + 1;
+        assertTrue("Threads grew from " + baseline + " to " + threads + " in " + SESSIONS + " sessions",
+                threads <= baseline + poolThreads);
+    }
+
+    @Test
+    public void closedSessionIgnoresStart() throws Exception {
+        Context context = RuntimeEnvironment.getApplication();
+        Recorder recorder = new Recorder(context);
+        Whisper whisper = new Whisper(context);
+        recorder.close();
+        whisper.close();
+
+        recorder.start();
+        whisper.start(null);
+        assertFalse(recorder.isInProgress());
+        assertFalse(whisper.isInProgress());
+    }
+}
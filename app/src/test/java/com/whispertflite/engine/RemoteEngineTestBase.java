@@ -0,0 +1,70 @@
+package com.whispertflite.engine;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.preference.PreferenceManager;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.whispertflite.asr.RecordBuffer;
+import com.whispertflite.utils.AdaptiveTimeout;
+import com.whispertflite.utils.HedgePolicy;
+import com.whispertflite.utils.MetricsRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+
+import java.util.Collections;
+
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * Runs a WhisperEngineRemote against a local MockWebServer. The endpoint router, the hedge
+ * policy and the metrics are shared by all remote engines; they are reset before and after
+ * every test so that no test sees the statistics or open circuits another one left behind.
+ */
+public abstract class RemoteEngineTestBase {
+
+    protected MockWebServer server;
+    protected WhisperEngineRemote engine;
+
+    /**
+     * Adds the settings of a test to those pointing the engine at {@link #server}.
+     */
+    protected void configure(SharedPreferences.Editor settings) throws Exception { }
+
+    @Before
+    public void setUpEngine() throws Exception {
+        resetSharedState();
+        server = new MockWebServer();
+        server.start();
+
+        Context context = ApplicationProvider.getApplicationContext();
+        SharedPreferences.Editor settings = PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putBoolean("useRemoteApi", true)
+                .putString("apiKey", "test-key")
+                .putString("apiEndpoint", server.url("/").toString())
+                .putString("apiModel", "whisper-1");
+        configure(settings);
+        settings.commit();
+
+        engine = new WhisperEngineRemote(context);
+        engine.initialize("", "", true);
+        engine.setAdaptiveTimeout(new AdaptiveTimeout());
+
+        RecordBuffer.setOutputBuffer(new byte[16000 * 2]);  // 1 s of silence
+    }
+
+    @After
+    public void tearDownEngine() throws Exception {
+        engine.deinitialize();
+        server.shutdown();
+        resetSharedState();
+    }
+
+    private static void resetSharedState() {
+        WhisperEngineRemote.getRouter().setEndpoints(Collections.emptyList());
+        WhisperEngineRemote.setHedgePolicy(new HedgePolicy());
+        MetricsRegistry.getDefault().reset();
+    }
+}
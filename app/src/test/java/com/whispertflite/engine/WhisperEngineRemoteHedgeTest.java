@@ -0,0 +1,140 @@
+package com.whispertflite.engine;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.preference.PreferenceManager;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.whispertflite.asr.Whisper;
+import com.whispertflite.asr.WhisperResult;
+import com.whispertflite.utils.EndpointRouter;
+import com.whispertflite.utils.HedgePolicy;
+import com.whispertflite.utils.RemoteEndpoint;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+/**
+ * Exercises hedged requests of WhisperEngineRemote against two local MockWebServers.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WhisperEngineRemoteHedgeTest extends RemoteEngineTestBase {
+
+    private MockWebServer primary;
+    private MockWebServer backup;
+    private HedgePolicy hedgePolicy;
+
+    @Override
+    protected void configure(SharedPreferences.Editor settings) throws Exception {
+        primary = server;
+        backup = new MockWebServer();
+        backup.start();
+        hedgePolicy = new HedgePolicy(50, 300, 90, 5, 0.1, 1.0);
+        WhisperEngineRemote.setHedgePolicy(hedgePolicy);
+        settings.putBoolean("apiHedging", true)
+                .putString("apiAdditionalEndpoints", "backup | " + backup.url("/") + " | backup-key | whisper-1");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        backup.shutdown();
+    }
+
+    @Test
+    public void fastPrimaryIsNotHedged() {
+        primary.enqueue(new MockResponse().setBody("{\"text\": \"primary\"}"));
+
+        WhisperResult result = engine.processRecordBuffer(Whisper.Action.TRANSCRIBE, -1);
+
+        assertEquals("primary", result.getResult());
+        assertEquals(0, backup.getRequestCount());
+        assertEquals(0, hedgePolicy.getHedgesFired());
+    }
+
+    @Test
+    public void slowPrimaryIsHedgedAndBackupWins() {
+        primary.enqueue(new MockResponse().setHeadersDelay(5, TimeUnit.SECONDS).setBody("{\"text\": \"slow\"}"));
+        backup.enqueue(new MockResponse().setBody("{\"text\": \"fast\"}"));
+
+        long start = System.currentTimeMillis();
+        WhisperResult result = engine.processRecordBuffer(Whisper.Action.TRANSCRIBE, -1);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals("fast", result.getResult());
+        assertTrue("Hedge should not wait for the slow primary, elapsed " + elapsed, elapsed < 5000);
+        assertEquals(1, hedgePolicy.getHedgesFired());
+        assertEquals(1, hedgePolicy.getHedgeWins());
+        assertEquals(1.0, hedgePolicy.getWinRate(), 0.0001);
+    }
+
+    @Test
+    public void exhaustedBudgetWaitsForPrimary() {
+        // Spend the only token
+        hedgePolicy.tryAcquire();
+        primary.enqueue(new MockResponse().setHeadersDelay(600, TimeUnit.MILLISECONDS).setBody("{\"text\": \"primary\"}"));
+
+        WhisperResult result = engine.processRecordBuffer(Whisper.Action.TRANSCRIBE, -1);
+
+        assertEquals("primary", result.getResult());
+        assertEquals(0, backup.getRequestCount());
+        assertEquals(1, hedgePolicy.getHedgesDenied());
+    }
+
+    @Test
+    public void failedPrimaryDoesNotHideSuccessfulHedge() {
+        primary.enqueue(new MockResponse().setHeadersDelay(600, TimeUnit.MILLISECONDS).setResponseCode(500));
+        backup.enqueue(new MockResponse().setHeadersDelay(900, TimeUnit.MILLISECONDS).setBody("{\"text\": \"backup\"}"));
+
+        WhisperResult result = engine.processRecordBuffer(Whisper.Action.TRANSCRIBE, -1);
+
+        assertEquals("backup", result.getResult());
+        assertEquals(1, primary.getRequestCount());
+        assertEquals(1, hedgePolicy.getHedgeWins());
+    }
+
+    @Test
+    public void deniedHedgeDoesNotClaimHalfOpenTrial() throws Exception {
+        MockWebServer third = new MockWebServer();
+        third.start();
+        try {
+            Context context = ApplicationProvider.getApplicationContext();
+            PreferenceManager.getDefaultSharedPreferences(context).edit()
+                    .putString("apiAdditionalEndpoints", "backup | " + backup.url("/") + " | backup-key | whisper-1\n"
+                            + "third | " + third.url("/") + " | third-key | whisper-1")
+                    .commit();
+            engine.deinitialize();
+            engine.initialize("", "", true);
+
+            // The backup failed long ago, its cooldown is over and it may take one trial request
+            EndpointRouter router = WhisperEngineRemote.getRouter();
+            RemoteEndpoint backupEndpoint = router.getEndpoints().get(1);
+            long past = System.currentTimeMillis() - 2 * EndpointRouter.DEFAULT_OPEN_MILLIS;
+            for (int i = 0; i < EndpointRouter.DEFAULT_FAILURE_THRESHOLD; i++) router.recordFailure(backupEndpoint, past);
+
+            // No budget: the slow primary is not hedged
+            hedgePolicy.tryAcquire();
+            primary.enqueue(new MockResponse().setHeadersDelay(600, TimeUnit.MILLISECONDS).setBody("{\"text\": \"primary\"}"));
+            assertEquals("primary", engine.processRecordBuffer(Whisper.Action.TRANSCRIBE, -1).getResult());
+            assertEquals(1, hedgePolicy.getHedgesDenied());
+
+            // The trial is still free: the backup, which has no latency samples yet, is preferred
+            // over the measured primary and the third endpoint listed after it
+            backup.enqueue(new MockResponse().setBody("{\"text\": \"backup\"}"));
+            third.enqueue(new MockResponse().setBody("{\"text\": \"third\"}"));
+            assertEquals("backup", engine.processRecordBuffer(Whisper.Action.TRANSCRIBE, -1).getResult());
+            assertEquals(0, third.getRequestCount());
+        } finally {
+            third.shutdown();
+        }
+    }
+}
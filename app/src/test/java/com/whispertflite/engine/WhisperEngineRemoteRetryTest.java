@@ -0,0 +1,208 @@
+package com.whispertflite.engine;
+
+import static org.junit.Assert.*;
+
+import android.content.Context;
+
+import androidx.preference.PreferenceManager;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.whispertflite.asr.AudioClip;
+import com.whispertflite.asr.TranscriptionException;
+import com.whispertflite.asr.Whisper;
+import com.whispertflite.asr.WhisperResult;
+import com.whispertflite.utils.AdaptiveTimeout;
+import com.whispertflite.utils.CancellationToken;
+import com.whispertflite.utils.EndpointRouter;
+import com.whispertflite.utils.MetricsRegistry;
+import com.whispertflite.utils.RetryPolicy;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+
+/**
+ * Exercises the retry and timeout handling of WhisperEngineRemote against a local
+ * MockWebServer that injects faults.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WhisperEngineRemoteRetryTest extends RemoteEngineTestBase {
+
+    @Before
+    public void setUp() {
+        engine.setRetryPolicy(new RetryPolicy(3, 10, 50, 2000, new Random(7)));
+        engine.setAdaptiveTimeout(new AdaptiveTimeout(1000, 500, 500, 1024 * 1024));
+    }
+
+    @Test
+    public void successOnFirstAttemptIsNotRetried() {
+        server.enqueue(new MockResponse().setBody("{\"text\": \"hello\"}"));
+
+        WhisperResult result = engine.processRecordBuffer(Whisper.Action.TRANSCRIBE, -1);
+
+        assertEquals("hello", result.getResult());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void serverTimeIsOnlySplitOffWhenReported() {
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        server.enqueue(new MockResponse().setBody("{\"text\": \"hello\"}"));
+        engine.processRecordBuffer(Whisper.Action.TRANSCRIBE, -1);
+        assertEquals(1, metrics.get(MetricsRegistry.Stage.REQUEST).getCount());
+        assertEquals(0, metrics.get(MetricsRegistry.Stage.SERVER).getCount());
+        assertEquals(0, metrics.get(MetricsRegistry.Stage.UPLOAD).getCount());
+
+        server.enqueue(new MockResponse().setHeader(AdaptiveTimeout.PROCESSING_TIME_HEADER, "250")
+                .setBody("{\"text\": \"hello\"}"));
+        engine.processRecordBuffer(Whisper.Action.TRANSCRIBE, -1);
+        assertEquals(2, metrics.get(MetricsRegistry.Stage.REQUEST).getCount());
+        assertEquals(1, metrics.get(MetricsRegistry.Stage.SERVER).getCount());
+        assertEquals(1, metrics.get(MetricsRegistry.Stage.UPLOAD).getCount());
+    }
+
+    @Test
+    public void serverErrorIsRetried() {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setBody("{\"text\": \"recovered\"}"));
+
+        WhisperResult result = engine.processRecordBuffer(Whisper.Action.TRANSCRIBE, -1);
+
+        assertEquals("recovered", result.getResult());
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void rateLimitHonoursRetryAfter() {
+        server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"));
+        server.enqueue(new MockResponse().setBody("{\"text\": \"after pause\"}"));
+
+        long start = System.currentTimeMillis();
+        WhisperResult result = engine.processRecordBuffer(Whisper.Action.TRANSCRIBE, -1);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals("after pause", result.getResult());
+        assertEquals(2, server.getRequestCount());
+        assertTrue("Retry-After of 1 s should be honoured, elapsed " + elapsed, elapsed >= 1000);
+    }
+
+    @Test
+    public void readTimeoutIsRetried() {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        server.enqueue(new MockResponse().setBody("{\"text\": \"second try\"}"));
+
+        WhisperResult result = engine.processRecordBuffer(Whisper.Action.TRANSCRIBE, -1);
+
+        assertEquals("second try", result.getResult());
+    }
+
+    @Test
+    public void droppedConnectionIsRetried() {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+        server.enqueue(new MockResponse().setBody("{\"text\": \"reconnected\"}"));
+
+        WhisperResult result = engine.processRecordBuffer(Whisper.Action.TRANSCRIBE, -1);
+
+        assertEquals("reconnected", result.getResult());
+    }
+
+    @Test
+    public void clientErrorIsNotRetried() {
+        server.enqueue(new MockResponse().setResponseCode(401)
+                .setBody("{\"error\": {\"message\": \"Invalid API key\"}}"));
+        server.enqueue(new MockResponse().setBody("{\"text\": \"should not be used\"}"));
+
+        WhisperResult result = engine.processRecordBuffer(Whisper.Action.TRANSCRIBE, -1);
+
+        assertEquals("[Error: Invalid API key]", result.getResult());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void exhaustedRetriesReportLastError() {
+        server.enqueue(new MockResponse().setResponseCode(500));
+        server.enqueue(new MockResponse().setResponseCode(502));
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setBody("{\"text\": \"too late\"}"));
+
+        WhisperResult result = engine.processRecordBuffer(Whisper.Action.TRANSCRIBE, -1);
+
+        assertEquals("[Error: HTTP 503]", result.getResult());
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void failingEndpointFailsOverToAdditionalEndpoint() throws Exception {
+        MockWebServer backup = new MockWebServer();
+        backup.start();
+        try {
+            Context context = ApplicationProvider.getApplicationContext();
+            PreferenceManager.getDefaultSharedPreferences(context).edit()
+                    .putString("apiAdditionalEndpoints", "backup | " + backup.url("/") + " | backup-key | whisper-1")
+                    .commit();
+            engine.initialize("", "", true);
+            engine.setRetryPolicy(new RetryPolicy(3, 10, 50, 2000, new Random(7)));
+
+            server.enqueue(new MockResponse().setResponseCode(503));
+            backup.enqueue(new MockResponse().setBody("{\"text\": \"from backup\"}"));
+
+            WhisperResult result = engine.processRecordBuffer(Whisper.Action.TRANSCRIBE, -1);
+
+            // The retry goes to the endpoint that has not failed yet
+            assertEquals("from backup", result.getResult());
+            assertEquals(1, server.getRequestCount());
+            assertEquals(1, backup.getRequestCount());
+            assertEquals("Bearer backup-key", backup.takeRequest().getHeader("Authorization"));
+        } finally {
+            backup.shutdown();
+        }
+    }
+
+    @Test
+    public void cancelledCallsDoNotCountAgainstTheEndpoint() throws Exception {
+        AudioClip clip = AudioClip.fromPcm(new byte[16000 * 2]);
+        ScheduledExecutorService canceller = Executors.newSingleThreadScheduledExecutor();
+        try {
+            // More cancelled calls than failures it takes to open the circuit
+            for (int i = 0; i <= EndpointRouter.DEFAULT_FAILURE_THRESHOLD; i++) {
+                server.enqueue(new MockResponse().setBody("{\"text\": \"too slow\"}")
+                        .setHeadersDelay(5, TimeUnit.SECONDS));
+                CancellationToken token = new CancellationToken();
+                canceller.schedule(token::cancel, 100, TimeUnit.MILLISECONDS);
+
+                long start = System.currentTimeMillis();
+                WhisperResult result = engine.process(clip, Whisper.Action.TRANSCRIBE, -1, token);
+                long elapsed = System.currentTimeMillis() - start;
+
+                assertTrue(result.isFailed());
+                assertEquals(TranscriptionException.Reason.CANCELLED, result.getError().getReason());
+                assertTrue("Call not aborted, took " + elapsed + " ms", elapsed < 2000);
+            }
+            // Not retried either
+            assertEquals(EndpointRouter.DEFAULT_FAILURE_THRESHOLD + 1, server.getRequestCount());
+
+            EndpointRouter router = WhisperEngineRemote.getRouter();
+            EndpointRouter.EndpointStats stats = router.getStats(router.getEndpoints().get(0));
+            assertEquals(0, stats.getFailures());
+            assertFalse(stats.isOpen(System.currentTimeMillis()));
+
+            server.enqueue(new MockResponse().setBody("{\"text\": \"still healthy\"}"));
+            WhisperResult result = engine.process(clip, Whisper.Action.TRANSCRIBE, -1, new CancellationToken());
+            assertEquals("still healthy", result.getResult());
+        } finally {
+            canceller.shutdownNow();
+            clip.release();
+        }
+    }
+}
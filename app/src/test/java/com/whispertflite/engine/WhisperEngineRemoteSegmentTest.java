@@ -0,0 +1,262 @@
+package com.whispertflite.engine;
+
+import static org.junit.Assert.*;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.whispertflite.asr.AudioClip;
+import com.whispertflite.asr.PipelineListener;
+import com.whispertflite.asr.RecordBuffer;
+import com.whispertflite.asr.TranscriptionException;
+import com.whispertflite.asr.Whisper;
+import com.whispertflite.asr.WhisperResult;
+import com.whispertflite.utils.CancellationToken;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Exercises the segmented upload of long recordings by WhisperEngineRemote.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WhisperEngineRemoteSegmentTest extends RemoteEngineTestBase {
+
+    private static final int BYTES_PER_SECOND = 16000 * 2;
+
+    @Before
+    public void setUp() {
+        // Three 20 s utterances separated by 1 s pauses, each at its own amplitude
+        RecordBuffer.setOutputBuffer(audio(20, 1000, 1, 0, 20, 2000, 1, 0, 20, 3000));
+    }
+
+    private static byte[] audio(int... parts) {
+        int total = 0;
+        for (int i = 0; i < parts.length; i += 2) total += parts[i] * BYTES_PER_SECOND;
+        byte[] pcm = new byte[total];
+        int pos = 0;
+        for (int i = 0; i < parts.length; i += 2) {
+            int end = pos + parts[i] * BYTES_PER_SECOND;
+            for (; pos < end; pos += 2) {
+                pcm[pos] = (byte) parts[i + 1];
+                pcm[pos + 1] = (byte) (parts[i + 1] >> 8);
+            }
+        }
+        return pcm;
+    }
+
+    /**
+     * Returns the largest sample in the WAV file embedded in a multipart request body.
+     */
+    private static int peakAmplitude(byte[] body) {
+        int data = -1;
+        for (int i = 0; i + 4 <= body.length; i++) {
+            if (body[i] == 'd' && body[i + 1] == 'a' && body[i + 2] == 't' && body[i + 3] == 'a') {
+                data = i + 8;
+                break;
+            }
+        }
+        int length = (body[data - 4] & 0xff) | (body[data - 3] & 0xff) << 8
+                | (body[data - 2] & 0xff) << 16 | (body[data - 1] & 0xff) << 24;
+        int peak = 0;
+        for (int i = data; i + 1 < data + length; i += 2) {
+            peak = Math.max(peak, Math.abs((short) ((body[i] & 0xff) | (body[i + 1] << 8))));
+        }
+        return peak;
+    }
+
+    @Test
+    public void segmentsAreUploadedConcurrentlyAndJoinedInOrder() {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                switch (peakAmplitude(request.getBody().readByteArray())) {
+                    case 1000:
+                        // The first segment answers last
+                        return new MockResponse().setHeadersDelay(1500, TimeUnit.MILLISECONDS)
+                                .setBody("{\"text\": \" one \"}");
+                    case 2000:
+                        return new MockResponse().setHeadersDelay(1000, TimeUnit.MILLISECONDS)
+                                .setBody("{\"text\": \"two\"}");
+                    case 3000:
+                        return new MockResponse().setHeadersDelay(500, TimeUnit.MILLISECONDS)
+                                .setBody("{\"text\": \"three\"}");
+                    default:
+                        return new MockResponse().setResponseCode(400);
+                }
+            }
+        });
+
+        long start = System.currentTimeMillis();
+        WhisperResult result = engine.processRecordBuffer(Whisper.Action.TRANSCRIBE, -1);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals("one two three", result.getResult());
+        assertEquals(3, server.getRequestCount());
+        // Sequential uploads would take at least 3 s
+        assertTrue("Segments were not uploaded concurrently, elapsed " + elapsed, elapsed < 2800);
+    }
+
+    @Test
+    public void failedSegmentFailsTranscription() {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                if (peakAmplitude(request.getBody().readByteArray()) == 2000) {
+                    return new MockResponse().setResponseCode(401)
+                            .setBody("{\"error\": {\"message\": \"Invalid API key\"}}");
+                }
+                return new MockResponse().setBody("{\"text\": \"ok\"}");
+            }
+        });
+
+        WhisperResult result = engine.processRecordBuffer(Whisper.Action.TRANSCRIBE, -1);
+
+        assertEquals("[Error: Invalid API key]", result.getResult());
+        assertTrue(result.isFailed());
+        assertEquals(TranscriptionException.Reason.REMOTE_FAILED, result.getError().getReason());
+    }
+
+    @Test
+    public void failureIsTypedForFutureAndListener() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setResponseCode(401)
+                        .setBody("{\"error\": {\"message\": \"Invalid API key\"}}");
+            }
+        });
+
+        Whisper whisper = new Whisper(ApplicationProvider.getApplicationContext(), true);
+        whisper.initRemote();
+        List<String> events = new CopyOnWriteArrayList<>();
+        whisper.setListener(new PipelineListener() {
+            @Override
+            public void onProcessingStarted() {
+                events.add("started");
+            }
+
+            @Override
+            public void onResult(WhisperResult result) {
+                events.add("result");
+            }
+
+            @Override
+            public void onFailure(TranscriptionException error) {
+                events.add(error.getReason().name());
+            }
+        }, Runnable::run);
+
+        AudioClip clip = AudioClip.fromPcm(audio(5, 4000));
+        try {
+            whisper.submit(clip, new Whisper.Options(Whisper.Action.TRANSCRIBE, -1)).get(10, TimeUnit.SECONDS);
+            fail("Transcription did not fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TranscriptionException);
+            assertEquals("Invalid API key", e.getCause().getMessage());
+        } finally {
+            clip.release();
+            whisper.close();
+        }
+        assertEquals(Arrays.asList("started", "REMOTE_FAILED"), events);
+    }
+
+    @Test
+    public void clipIsProcessedInsteadOfRecordBuffer() {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                int peak = peakAmplitude(request.getBody().readByteArray());
+                return new MockResponse().setBody("{\"text\": \"peak " + peak + "\"}");
+            }
+        });
+
+        // Another session publishes its recording meanwhile
+        AudioClip clip = AudioClip.fromPcm(audio(5, 4000));
+        RecordBuffer.setOutputBuffer(audio(5, 5000));
+        try {
+            WhisperResult result = engine.process(clip, Whisper.Action.TRANSCRIBE, -1);
+            assertEquals("peak 4000", result.getResult());
+        } finally {
+            clip.release();
+        }
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void dualOutputSendsTranscriptionAndTranslationAtOnce() throws Exception {
+        CountDownLatch bothArrived = new CountDownLatch(2);
+        AtomicInteger waitedAlone = new AtomicInteger();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                // Each request is held until the other one has arrived as well
+                bothArrived.countDown();
+                if (!bothArrived.await(3, TimeUnit.SECONDS)) waitedAlone.incrementAndGet();
+                boolean translation = request.getPath().endsWith("/audio/translations");
+                return new MockResponse().setBody(translation ? "{\"text\": \"hello\"}" : "{\"text\": \"hallo\"}");
+            }
+        });
+
+        AudioClip clip = AudioClip.fromPcm(audio(5, 4000));
+        try {
+            WhisperResult result = engine.processDual(clip, -1, new CancellationToken());
+
+            assertFalse(result.isFailed());
+            assertEquals("hallo", result.getResult());
+            assertEquals("hello", result.getTranslation());
+            assertEquals(Whisper.Action.TRANSCRIBE, result.getTask());
+            assertEquals(2, server.getRequestCount());
+            assertEquals("Requests were sent one after the other", 0, waitedAlone.get());
+        } finally {
+            clip.release();
+        }
+    }
+
+    @Test
+    public void concurrentDualOutputOfLongRecordingsCompletes() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                boolean translation = request.getPath().endsWith("/audio/translations");
+                return new MockResponse().setBody(translation ? "{\"text\": \"hello\"}" : "{\"text\": \"hallo\"}");
+            }
+        });
+
+        // More translations than upload threads, each waiting for its own segments
+        AudioClip clip = AudioClip.fromPcm(audio(20, 1000, 1, 0, 20, 2000, 1, 0, 20, 3000));
+        ExecutorService sessions = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<WhisperResult>> results = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                results.add(sessions.submit(() -> engine.processDual(clip, -1, new CancellationToken())));
+            }
+            for (Future<WhisperResult> future : results) {
+                WhisperResult result = future.get(10, TimeUnit.SECONDS);
+                assertFalse(result.isFailed());
+                assertEquals("hallo hallo hallo", result.getResult());
+                assertEquals("hello hello hello", result.getTranslation());
+            }
+        } finally {
+            sessions.shutdownNow();
+            clip.release();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.whispertflite.engine;
+
+import static org.junit.Assert.*;
+
+import android.content.SharedPreferences;
+
+import com.whispertflite.asr.Whisper;
+import com.whispertflite.asr.WhisperResult;
+import com.whispertflite.utils.RetryPolicy;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Exercises streamed (server-sent events) responses of WhisperEngineRemote against a
+ * local MockWebServer emitting scripted frames.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class WhisperEngineRemoteStreamingTest extends RemoteEngineTestBase {
+
+    private final List<String> partials = new ArrayList<>();
+
+    @Override
+    protected void configure(SharedPreferences.Editor settings) {
+        settings.putBoolean("apiStreaming", true)
+                .putString("apiModel", "gpt-4o-transcribe");
+    }
+
+    @Before
+    public void setUp() {
+        engine.setRetryPolicy(new RetryPolicy(3, 10, 50, 2000, new Random(7)));
+        engine.setPartialResultListener(partials::add);
+    }
+
+    private static MockResponse sse(String... frames) {
+        StringBuilder body = new StringBuilder();
+        for (String frame : frames) body.append("data: ").append(frame).append("\n\n");
+        return new MockResponse()
+                .setHeader("Content-Type", "text/event-stream")
+                .setChunkedBody(body.toString(), 32);
+    }
+
+    @Test
+    public void partialResultsAreReportedWhileStreaming() throws Exception {
+        server.enqueue(sse(
+                "{\"type\": \"transcript.text.delta\", \"delta\": \"Hello\"}",
+                "{\"type\": \"transcript.text.delta\", \"delta\": \" world\"}",
+                "{\"type\": \"transcript.text.done\", \"text\": \"Hello world.\"}"));
+
+        WhisperResult result = engine.processRecordBuffer(Whisper.Action.TRANSCRIBE, -1);
+
+        assertEquals("Hello world.", result.getResult());
+        assertEquals(Arrays.asList("Hello", "Hello world"), partials);
+
+        RecordedRequest request = server.takeRequest();
+        String body = request.getBody().readUtf8();
+        assertTrue("Request should ask for a stream", body.contains("name=\"stream\""));
+    }
+
+    @Test
+    public void plainJsonResponseIsAcceptedWhenStreamingIsIgnored() {
+        server.enqueue(new MockResponse().setBody("{\"text\": \"not streamed\"}"));
+
+        WhisperResult result = engine.processRecordBuffer(Whisper.Action.TRANSCRIBE, -1);
+
+        assertEquals("not streamed", result.getResult());
+        assertTrue(partials.isEmpty());
+    }
+
+    @Test
+    public void truncatedStreamIsRetried() {
+        server.enqueue(sse("{\"type\": \"transcript.text.delta\", \"delta\": \"Hel\"}"));
+        server.enqueue(sse(
+                "{\"type\": \"transcript.text.delta\", \"delta\": \"Hello\"}",
+                "{\"type\": \"transcript.text.done\", \"text\": \"Hello\"}"));
+
+        WhisperResult result = engine.processRecordBuffer(Whisper.Action.TRANSCRIBE, -1);
+
+        assertEquals("Hello", result.getResult());
+        assertEquals(2, server.getRequestCount());
+        assertEquals(Arrays.asList("Hel", "Hello"), partials);
+    }
+
+    @Test
+    public void errorEventFailsTranscription() {
+        RetryPolicy noRetry = new RetryPolicy(1, 10, 50, 2000, new Random(7));
+        engine.setRetryPolicy(noRetry);
+        server.enqueue(sse("{\"type\": \"error\", \"error\": {\"message\": \"Audio file is too short\"}}"));
+
+        WhisperResult result = engine.processRecordBuffer(Whisper.Action.TRANSCRIBE, -1);
+
+        assertEquals("[Error: Audio file is too short]", result.getResult());
+    }
+}